@@ -0,0 +1,118 @@
+import Benchmarks.Harness;
+import Benchmarks.InputData;
+import Benchmarks.Scenario;
+import Components.AggregateQuery;
+import Components.IOutput;
+import Components.ITransaction.CashflowDirection;
+import Helpers.RoaringBitmap;
+import Persistence.ArchiveIndex;
+import Persistence.ColumnarArchive;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Benchmarks of the reports served by a columnar archive, per archived transaction, so that they compare with
+ * re-parsing the input (parseInput)
+ */
+public final class ArchiveBenchmark {
+    /**
+     * Measures ranking the entities over the whole archive
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void archiveScan(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        measure("archiveScan", harness, scenario, results, null, null);
+    }
+
+    /**
+     * Measures ranking the entities over a single month, the row groups of the other months being skipped
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void archiveMonth(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        measure("archiveMonth", harness, scenario, results, LocalDate.of(2016, 3, 1), LocalDate.of(2016, 3, 31));
+    }
+
+    /**
+     * Measures ranking the entities by their outgoing AED cashflow, the rows being selected by intersecting the
+     * bitmap indexes
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void archiveFiltered(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        ColumnarArchive archive = archive(scenario);
+        ArchiveIndex index = ArchiveIndex.build(archive);
+
+        results.add(harness.measure("archiveFiltered", scenario,
+                () -> archive.getRanking(RoaringBitmap.and(index.getCurrencyRows("AED"),
+                        index.getDirectionRows(CashflowDirection.Outgoing)), 10).size(),
+                (int) Math.max(1, archive.getRowCount())));
+    }
+
+    /**
+     * Measures a query grouping the whole archive by month, currency and direction, in a single pass over its columns
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void archiveAggregate(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        ColumnarArchive archive = archive(scenario);
+        AggregateQuery query = new AggregateQuery();
+        query.setGroupBy(AggregateQuery.GroupKey.Month, AggregateQuery.GroupKey.Currency,
+                AggregateQuery.GroupKey.Direction);
+
+        results.add(harness.measure("archiveAggregate", scenario, () -> archive.aggregate(query).size(),
+                (int) Math.max(1, archive.getRowCount())));
+    }
+
+    /**
+     * Measures the daily summaries of the whole archive, each day run being aggregated by the amount kernel selected
+     * for the runtime (see {@link Helpers.AmountKernel})
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void archiveDaily(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        ColumnarArchive archive = archive(scenario);
+
+        results.add(harness.measure("archiveDaily", scenario, () -> archive.getDailySummaries(null, null).size(),
+                (int) Math.max(1, archive.getRowCount())));
+    }
+
+    private static void measure(String name, Harness harness, Scenario scenario, List<Harness.Result> results,
+                                LocalDate from, LocalDate to) {
+        ColumnarArchive archive = archive(scenario);
+
+        results.add(harness.measure(name, scenario,
+                () -> archive.getRanking(CashflowDirection.Incoming, from, to, 10).size(),
+                (int) Math.max(1, archive.getRowCount())));
+    }
+
+    private static ColumnarArchive archive(Scenario scenario) {
+        ReportGenerator reportGenerator = new ReportGenerator(InputData.input(scenario, SEED), NULL_OUTPUT);
+
+        try {
+            Path file = Files.createTempFile("bench-report", ".archive");
+            file.toFile().deleteOnExit();
+            reportGenerator.writeArchive(file);
+            return ColumnarArchive.open(file);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final IOutput NULL_OUTPUT = str -> { };
+    private static final long SEED = 42;
+}
@@ -0,0 +1,108 @@
+import Benchmarks.FeedBenchmark;
+import Benchmarks.Harness;
+import Benchmarks.MetricsBenchmark;
+import Benchmarks.ParsingBenchmark;
+import Benchmarks.Scenario;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Entry point running the benchmarks over a matrix of scenarios
+ *
+ * Arguments (all optional):
+ *   lines=1000,100000 entities=100,100000 days=365 malformed=0,0.05   the scenario parameter values
+ *   --filter=Ranking                                                 runs only the matching benchmarks
+ *   --csv=results.csv                                                also writes the results as CSV
+ *   --quick                                                          short iterations, for smoke testing
+ */
+public class BenchmarkRunner {
+    /**
+     * Interface used for the benchmark entry points
+     */
+    interface Benchmark {
+        void run(Harness harness, Scenario scenario, List<Harness.Result> results);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, List<String>> parameters = new HashMap<>();
+        String filter = "";
+        String csvFile = null;
+        boolean quick = false;
+
+        for (String arg : args) {
+            if (arg.startsWith("--filter=")) {
+                filter = arg.substring("--filter=".length());
+            }
+            else if (arg.startsWith("--csv=")) {
+                csvFile = arg.substring("--csv=".length());
+            }
+            else if (arg.equals("--quick")) {
+                quick = true;
+            }
+            else if (arg.contains("=")) {
+                parameters.put(arg.substring(0, arg.indexOf('=')), Arrays.asList(arg.substring(arg.indexOf('=') + 1).split(",")));
+            }
+            else {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        Map<String, Benchmark> benchmarks = new LinkedHashMap<>();
+        benchmarks.put("generateFeed", FeedBenchmark::generate);
+        benchmarks.put("metricsCounter", MetricsBenchmark::counter);
+        benchmarks.put("metricsHistogram", MetricsBenchmark::histogram);
+        benchmarks.put("lineToTransaction", ParsingBenchmark::lineToTransaction);
+        benchmarks.put("computeActualSettlementDate", ParsingBenchmark::settlement);
+        benchmarks.put("parseInput", ReportGeneratorBenchmark::parseInput);
+        benchmarks.put("parseInputApproximate", ReportGeneratorBenchmark::parseInputApproximate);
+        benchmarks.put("parseInputSpilling", ReportGeneratorBenchmark::parseInputSpilling);
+        benchmarks.put("ingestFiles", ReportGeneratorBenchmark::ingestFiles);
+        benchmarks.put("ingestGzip", ReportGeneratorBenchmark::ingestGzip);
+        benchmarks.put("archiveScan", ArchiveBenchmark::archiveScan);
+        benchmarks.put("archiveMonth", ArchiveBenchmark::archiveMonth);
+        benchmarks.put("archiveFiltered", ArchiveBenchmark::archiveFiltered);
+        benchmarks.put("archiveAggregate", ArchiveBenchmark::archiveAggregate);
+        benchmarks.put("archiveDaily", ArchiveBenchmark::archiveDaily);
+        benchmarks.put("printDailySummaries", ReportGeneratorBenchmark::printDailySummaries);
+        benchmarks.put("printRanking", ReportGeneratorBenchmark::printRanking);
+        benchmarks.put("rankingSort", ReportGeneratorBenchmark::rankingSort);
+        benchmarks.put("rangeRanking", ReportGeneratorBenchmark::rangeRanking);
+        benchmarks.put("rankingUnderLoad", ReportServerBenchmark::rankingUnderLoad);
+        benchmarks.put("binaryDecode", IngestServerBenchmark::binaryDecode);
+        benchmarks.put("binaryIngest", IngestServerBenchmark::binaryIngest);
+
+        Harness harness = quick ?
+                new Harness(1, 2, 50_000_000L) :
+                new Harness(5, 10, 1_000_000_000L);
+        List<Harness.Result> results = new ArrayList<>();
+
+        for (Scenario scenario : Scenario.matrix(parameters)) {
+            for (Map.Entry<String, Benchmark> benchmark : benchmarks.entrySet()) {
+                if (benchmark.getKey().contains(filter)) {
+                    int before = results.size();
+                    benchmark.getValue().run(harness, scenario, results);
+                    for (int i = before; i < results.size(); i++) {
+                        System.out.println(results.get(i));
+                    }
+                }
+            }
+        }
+
+        if (csvFile != null) {
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(csvFile), StandardCharsets.UTF_8))) {
+                writer.println(Harness.Result.CSV_HEADER);
+                for (Harness.Result result : results) {
+                    writer.println(result.toCsv());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package Benchmarks;
+
+import Helpers.FeedGenerator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Benchmark of the synthetic feed generation, which has to stay well ahead of the ingest
+ */
+public final class FeedBenchmark {
+    /**
+     * Measures the generation of the lines of a scenario, read through the feed reader
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void generate(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        FeedGenerator feed = InputData.feed(scenario, SEED);
+        char[] buffer = new char[64 * 1024];
+
+        results.add(harness.measure("generateFeed", scenario, () -> {
+            long characters = 0;
+            try (Reader reader = feed.openReader()) {
+                int read;
+                while ((read = reader.read(buffer, 0, buffer.length)) >= 0) {
+                    characters += read;
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return characters;
+        }, scenario.lineCount));
+    }
+
+    private static final long SEED = 42;
+}
@@ -0,0 +1,199 @@
+package Benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Minimal benchmark harness measuring throughput, latency percentiles and allocation rate of an operation
+ *
+ * Each invocation of the measured operation performs a known number of operations (e.g. parses a batch of lines),
+ * so the timer overhead is spread over the whole batch. Warmup iterations let the JIT compile the hot paths before
+ * anything is recorded.
+ */
+public final class Harness {
+    /**
+     * Interface used for the measured operation
+     */
+    public interface Operation {
+        /**
+         * Runs the operation once
+         * @return any value derived from the work done, consumed so that the work cannot be optimized away
+         */
+        long run();
+    }
+
+    /**
+     * Class holding the measurements of a benchmark
+     */
+    public static final class Result {
+        Result(String name, Scenario scenario, double opsPerSecond, double meanNanos, double p50Nanos,
+               double p99Nanos, double bytesPerOp) {
+            this.name = name;
+            this.scenario = scenario;
+            this.opsPerSecond = opsPerSecond;
+            this.meanNanos = meanNanos;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%-28s %14.0f ops/s %10.1f ns/op (p50 %8.1f, p99 %8.1f) %10.1f B/op   [%s]",
+                    name, opsPerSecond, meanNanos, p50Nanos, p99Nanos, bytesPerOp, scenario);
+        }
+
+        /**
+         * Formats the result as a CSV row, matching {@link #CSV_HEADER}
+         * @return the CSV row
+         */
+        public String toCsv() {
+            return String.format(
+                    "%s,%d,%d,%d,%s,%.0f,%.2f,%.2f,%.2f,%.2f",
+                    name, scenario.lineCount, scenario.entityCount, scenario.dateSpreadDays, scenario.malformedRatio,
+                    opsPerSecond, meanNanos, p50Nanos, p99Nanos, bytesPerOp);
+        }
+
+        public static final String CSV_HEADER =
+                "benchmark,lines,entities,days,malformed,ops_per_second,mean_ns,p50_ns,p99_ns,bytes_per_op";
+
+        public final String name;
+        public final Scenario scenario;
+        public final double opsPerSecond;
+        public final double meanNanos;
+        public final double p50Nanos;
+        public final double p99Nanos;
+        public final double bytesPerOp;
+    }
+
+    /**
+     * Constructor
+     * @param warmupIterations the number of discarded iterations
+     * @param measurementIterations the number of recorded iterations
+     * @param iterationNanos the minimum duration of an iteration
+     */
+    public Harness(int warmupIterations, int measurementIterations, long iterationNanos) {
+        if (warmupIterations < 0) {
+            throw new IllegalArgumentException("warmupIterations");
+        }
+        if (measurementIterations <= 0) {
+            throw new IllegalArgumentException("measurementIterations");
+        }
+        if (iterationNanos <= 0) {
+            throw new IllegalArgumentException("iterationNanos");
+        }
+
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationNanos;
+    }
+
+    /**
+     * Measures an operation
+     * @param name the name of the benchmark
+     * @param scenario the scenario the operation was set up for
+     * @param operation the measured operation
+     * @param opsPerInvocation the number of operations performed by a single invocation
+     * @return the measurements
+     */
+    public Result measure(String name, Scenario scenario, Operation operation, int opsPerInvocation) {
+        if (operation == null) {
+            throw new IllegalArgumentException("operation");
+        }
+        if (opsPerInvocation <= 0) {
+            throw new IllegalArgumentException("opsPerInvocation");
+        }
+
+        for (int i = 0; i < warmupIterations; i++) {
+            runIteration(operation, false);
+        }
+
+        sampleCount = 0;
+        long invocations = 0;
+        long totalNanos = 0;
+        long allocatedBytes = 0;
+
+        for (int i = 0; i < measurementIterations; i++) {
+            long bytesBefore = allocatedBytes();
+            long[] iteration = runIteration(operation, true);
+            allocatedBytes += allocatedBytes() - bytesBefore;
+
+            invocations += iteration[0];
+            totalNanos += iteration[1];
+        }
+
+        long[] sorted = Arrays.copyOf(samples, sampleCount);
+        Arrays.sort(sorted);
+        double ops = (double) invocations * opsPerInvocation;
+
+        return new Result(
+                name,
+                scenario,
+                ops / (totalNanos / 1e9),
+                totalNanos / ops,
+                percentile(sorted, 0.50) / opsPerInvocation,
+                percentile(sorted, 0.99) / opsPerInvocation,
+                allocatedBytes / ops
+        );
+    }
+
+    /**
+     * Runs the operation until the iteration duration elapses
+     * @param operation the measured operation
+     * @param record whether the invocation latencies should be recorded
+     * @return the number of invocations and the duration of the iteration
+     */
+    private long[] runIteration(Operation operation, boolean record) {
+        long invocations = 0;
+        long start = System.nanoTime();
+        long now = start;
+
+        while (now - start < iterationNanos) {
+            long invocationStart = now;
+            sink += operation.run();
+            now = System.nanoTime();
+
+            invocations++;
+            // the sample buffer is preallocated, so recording does not count as allocation of the operation
+            if (record && sampleCount < samples.length) {
+                samples[sampleCount++] = now - invocationStart;
+            }
+        }
+        return new long[] { invocations, now - start };
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(quantile * sorted.length))];
+    }
+
+    /**
+     * Getter used for obtaining the bytes allocated so far by the current thread
+     * @return the allocated bytes or 0 if the JVM does not support measuring them
+     */
+    private static long allocatedBytes() {
+        if (THREAD_BEAN == null) {
+            return 0;
+        }
+        return THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+            ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean ?
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean() : null;
+
+    // consumes the results of the operations so that they are not eliminated as dead code
+    public static volatile long sink;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+    private final long[] samples = new long[1 << 20];
+    private int sampleCount = 0;
+}
@@ -0,0 +1,71 @@
+package Benchmarks;
+
+import Helpers.FeedGenerator;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class used for building the deterministic input of a benchmark scenario
+ */
+public final class InputData {
+    /**
+     * Builds the instruction lines of a scenario
+     * @param scenario the scenario
+     * @param seed the seed of the random generator
+     * @return the lines, without line separators
+     */
+    public static String[] lines(Scenario scenario, long seed) {
+        return input(scenario, seed).split("\n");
+    }
+
+    /**
+     * Builds the whole input of a scenario
+     * @param scenario the scenario
+     * @param seed the seed of the random generator
+     * @return the input, with each line terminated by a line separator
+     */
+    public static String input(Scenario scenario, long seed) {
+        StringWriter input = new StringWriter(scenario.lineCount * 64);
+        try {
+            feed(scenario, seed).writeTo(input);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return input.toString();
+    }
+
+    /**
+     * Builds the feed generator of a scenario
+     * @param scenario the scenario
+     * @param seed the seed of the random generator
+     * @return the generator
+     */
+    public static FeedGenerator feed(Scenario scenario, long seed) {
+        FeedGenerator generator = new FeedGenerator(seed, scenario.lineCount, scenario.entityCount);
+        generator.setDateRange(FIRST_DAY, scenario.dateSpreadDays);
+        generator.setMalformedRatio(scenario.malformedRatio);
+        return generator;
+    }
+
+    /**
+     * Joins lines into a single input string
+     * @param lines the lines
+     * @return the input, with each line terminated by a line separator
+     */
+    public static String join(String[] lines) {
+        StringBuilder input = new StringBuilder(lines.length * 64);
+        for (String line : lines) {
+            input.append(line).append('\n');
+        }
+        return input.toString();
+    }
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2016, 1, 1);
+}
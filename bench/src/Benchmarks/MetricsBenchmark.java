@@ -0,0 +1,59 @@
+package Benchmarks;
+
+import Metrics.Counter;
+import Metrics.Histogram;
+import Metrics.MetricsRegistry;
+
+import java.util.List;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Benchmarks of the overhead of the metrics, per recorded event
+ */
+public final class MetricsBenchmark {
+    /**
+     * Measures a counter increment, with the registry enabled and disabled
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void counter(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        for (boolean enabled : new boolean[] { true, false }) {
+            MetricsRegistry registry = new MetricsRegistry();
+            registry.setEnabled(enabled);
+            Counter counter = registry.counter("events");
+
+            results.add(harness.measure(enabled ? "counterEnabled" : "counterDisabled", scenario, () -> {
+                for (int i = 0; i < BATCH; i++) {
+                    counter.increment();
+                }
+                return counter.get();
+            }, BATCH));
+        }
+    }
+
+    /**
+     * Measures the timing of an operation into a histogram, with the registry enabled and disabled
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void histogram(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        for (boolean enabled : new boolean[] { true, false }) {
+            MetricsRegistry registry = new MetricsRegistry();
+            registry.setEnabled(enabled);
+            Histogram histogram = registry.histogram("latency");
+
+            results.add(harness.measure(enabled ? "histogramEnabled" : "histogramDisabled", scenario, () -> {
+                for (int i = 0; i < BATCH; i++) {
+                    histogram.recordSince(histogram.startTimer());
+                }
+                return BATCH;
+            }, BATCH));
+        }
+    }
+
+    private static final int BATCH = 1000;
+}
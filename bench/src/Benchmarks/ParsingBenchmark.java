@@ -0,0 +1,71 @@
+package Benchmarks;
+
+import Components.ITransaction;
+import Components.Transaction;
+import Helpers.ParsingUtil;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Benchmarks of the line parsing and of the settlement date computation
+ */
+public final class ParsingBenchmark {
+    /**
+     * Measures ParsingUtil.lineToTransaction over the lines of a scenario
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void lineToTransaction(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        String[] lines = InputData.lines(scenario, SEED);
+        int batch = Math.min(BATCH, lines.length);
+        int[] cursor = { 0 };
+
+        results.add(harness.measure("lineToTransaction", scenario, () -> {
+            long parsed = 0;
+            for (int i = 0; i < batch; i++) {
+                ITransaction transaction = ParsingUtil.lineToTransaction(lines[cursor[0]]);
+                cursor[0] = cursor[0] + 1 == lines.length ? 0 : cursor[0] + 1;
+                if (transaction != null) {
+                    parsed += transaction.getActualSettlementDate().getDayOfMonth();
+                }
+            }
+            return parsed;
+        }, batch));
+    }
+
+    /**
+     * Measures the settlement date computation, which happens when constructing a Transaction
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void settlement(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        Random random = new Random(SEED);
+        LocalDate[] dates = new LocalDate[BATCH];
+        String[] currencies = new String[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            dates[i] = LocalDate.of(2016, 1, 1).plusDays(random.nextInt(scenario.dateSpreadDays));
+            currencies[i] = CURRENCIES[random.nextInt(CURRENCIES.length)];
+        }
+
+        results.add(harness.measure("computeActualSettlementDate", scenario, () -> {
+            long settled = 0;
+            for (int i = 0; i < BATCH; i++) {
+                Transaction transaction = new Transaction(
+                        "foo", ITransaction.CashflowDirection.Incoming, 1, currencies[i], dates[i], 1, 1);
+                settled += transaction.getActualSettlementDate().getDayOfMonth();
+            }
+            return settled;
+        }, BATCH));
+    }
+
+    private static final long SEED = 42;
+    private static final int BATCH = 1000;
+    private static final String[] CURRENCIES = { "SGP", "AED", "SAR", "EUR" };
+}
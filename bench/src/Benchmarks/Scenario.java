@@ -0,0 +1,83 @@
+package Benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class holding the parameters of a benchmark scenario
+ */
+public final class Scenario {
+    /**
+     * Constructor
+     * @param lineCount the number of input lines
+     * @param entityCount the number of distinct entities
+     * @param dateSpreadDays the number of distinct desired settlement days
+     * @param malformedRatio the fraction of the lines which cannot be parsed
+     */
+    public Scenario(int lineCount, int entityCount, int dateSpreadDays, double malformedRatio) {
+        if (lineCount <= 0) {
+            throw new IllegalArgumentException("lineCount");
+        }
+        if (entityCount <= 0) {
+            throw new IllegalArgumentException("entityCount");
+        }
+        if (dateSpreadDays <= 0) {
+            throw new IllegalArgumentException("dateSpreadDays");
+        }
+        if (malformedRatio < 0 || malformedRatio > 1) {
+            throw new IllegalArgumentException("malformedRatio");
+        }
+
+        this.lineCount = lineCount;
+        this.entityCount = entityCount;
+        this.dateSpreadDays = dateSpreadDays;
+        this.malformedRatio = malformedRatio;
+    }
+
+    /**
+     * Builds every combination of the given parameter values
+     * @param values the values of each parameter, keyed by the parameter name (lines, entities, days, malformed)
+     * @return the scenarios
+     */
+    public static List<Scenario> matrix(Map<String, List<String>> values) {
+        List<Scenario> scenarios = new ArrayList<>();
+
+        for (String lines : values.getOrDefault("lines", DEFAULT_LINES)) {
+            for (String entities : values.getOrDefault("entities", DEFAULT_ENTITIES)) {
+                for (String days : values.getOrDefault("days", DEFAULT_DAYS)) {
+                    for (String malformed : values.getOrDefault("malformed", DEFAULT_MALFORMED)) {
+                        scenarios.add(new Scenario(
+                                Integer.parseInt(lines),
+                                Integer.parseInt(entities),
+                                Integer.parseInt(days),
+                                Double.parseDouble(malformed)
+                        ));
+                    }
+                }
+            }
+        }
+        return scenarios;
+    }
+
+    @Override
+    public String toString() {
+        return "lines=" + lineCount + " entities=" + entityCount + " days=" + dateSpreadDays +
+                " malformed=" + malformedRatio;
+    }
+
+    public final int lineCount;
+    public final int entityCount;
+    public final int dateSpreadDays;
+    public final double malformedRatio;
+
+    private static final List<String> DEFAULT_LINES = Collections.singletonList("100000");
+    private static final List<String> DEFAULT_ENTITIES = Arrays.asList("100", "100000");
+    private static final List<String> DEFAULT_DAYS = Collections.singletonList("365");
+    private static final List<String> DEFAULT_MALFORMED = Arrays.asList("0", "0.05");
+}
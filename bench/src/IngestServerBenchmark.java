@@ -0,0 +1,99 @@
+import Benchmarks.Harness;
+import Benchmarks.InputData;
+import Benchmarks.Scenario;
+import Components.IOutput;
+import Components.ITransaction.CashflowDirection;
+import Components.ITransactionSink;
+import Helpers.ParsingUtil;
+import Network.IngestClient;
+import Network.IngestServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Benchmarks of the binary ingest protocol over a loopback connection, per instruction
+ *
+ * The instructions of the scenario are decoded from the text input once, then each invocation sends all of them
+ * over a single connection and waits until the server applied them.
+ */
+public final class IngestServerBenchmark {
+    /**
+     * Measures sending the instructions to a server applying them to a report
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void binaryIngest(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        ReportGenerator reportGenerator = new ReportGenerator(NULL_OUTPUT);
+        measure("binaryIngest", harness, scenario, results, reportGenerator);
+    }
+
+    /**
+     * Measures sending the instructions to a server which only decodes them, giving the cost of the protocol alone
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void binaryDecode(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        measure("binaryDecode", harness, scenario, results, batch -> { });
+    }
+
+    private static void measure(String name, Harness harness, Scenario scenario, List<Harness.Result> results,
+                                ITransactionSink sink) {
+        List<String[]> instructions = new ArrayList<>();
+        for (String line : InputData.lines(scenario, SEED)) {
+            // the malformed lines are not representable in the binary protocol
+            if (ParsingUtil.getRecordType(line) == ParsingUtil.RecordType.Instruction &&
+                    ParsingUtil.lineToTransaction(line) != null) {
+                instructions.add(line.split(","));
+            }
+        }
+
+        String[] entities = new String[instructions.size()];
+        CashflowDirection[] directions = new CashflowDirection[instructions.size()];
+        double[] agreedFx = new double[instructions.size()];
+        String[] currencies = new String[instructions.size()];
+        LocalDate[] dates = new LocalDate[instructions.size()];
+        int[] units = new int[instructions.size()];
+        double[] prices = new double[instructions.size()];
+        for (int i = 0; i < instructions.size(); i++) {
+            String[] fields = instructions.get(i);
+            entities[i] = fields[0];
+            directions[i] = fields[1].equals("S") ? CashflowDirection.Incoming : CashflowDirection.Outgoing;
+            agreedFx[i] = Double.parseDouble(fields[2]);
+            currencies[i] = fields[3];
+            dates[i] = LocalDate.parse(fields[5], ParsingUtil.dateFormat);
+            units[i] = Integer.parseInt(fields[6]);
+            prices[i] = Double.parseDouble(fields[7]);
+        }
+
+        try (IngestServer server = new IngestServer(sink, 0);
+             IngestClient client = new IngestClient(server.getAddress())) {
+            results.add(harness.measure(name, scenario, () -> {
+                try {
+                    for (int i = 0; i < entities.length; i++) {
+                        client.sendInstruction(entities[i], directions[i], agreedFx[i], currencies[i], dates[i],
+                                units[i], prices[i]);
+                    }
+                    return client.sync();
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, Math.max(1, entities.length)));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final IOutput NULL_OUTPUT = str -> { };
+    private static final long SEED = 42;
+}
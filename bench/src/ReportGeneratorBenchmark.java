@@ -0,0 +1,270 @@
+import Benchmarks.Harness;
+import Benchmarks.InputData;
+import Benchmarks.Scenario;
+import Components.IOutput;
+import Components.ITransaction.CashflowDirection;
+import Helpers.RankingSort;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Benchmarks of the ingest and of the report rendering of the ReportGenerator
+ */
+public final class ReportGeneratorBenchmark {
+    /**
+     * Measures the ingest of the whole input of a scenario into a new report
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void parseInput(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        String input = InputData.input(scenario, SEED);
+
+        results.add(harness.measure("parseInput", scenario, () -> {
+            ReportGenerator reportGenerator = new ReportGenerator(input, NULL_OUTPUT);
+            return reportGenerator.getInputOffset();
+        }, scenario.lineCount));
+    }
+
+    /**
+     * Measures the ingest of the whole input of a scenario into a new report ranking the entities approximately, in
+     * fixed memory, so that it compares with parseInput at large entity counts
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void parseInputApproximate(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        String input = InputData.input(scenario, SEED);
+
+        results.add(harness.measure("parseInputApproximate", scenario, () -> {
+            ReportGenerator reportGenerator = new ReportGenerator(NULL_OUTPUT);
+            reportGenerator.setApproximateRanking(APPROXIMATE_RANKING_CAPACITY);
+            reportGenerator.ingest(input);
+            return reportGenerator.getInputOffset();
+        }, scenario.lineCount));
+    }
+
+    /**
+     * Measures the ingest of the whole input of a scenario into a new report ranking the entities exactly in bounded
+     * memory, spilling their totals to run files, followed by printing the incoming ranking, which sorts them
+     * externally
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void parseInputSpilling(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        String input = InputData.input(scenario, SEED);
+
+        try {
+            Path directory = Files.createTempDirectory("bench-runs");
+            directory.toFile().deleteOnExit();
+
+            results.add(harness.measure("parseInputSpilling", scenario, () -> {
+                ReportGenerator reportGenerator = new ReportGenerator(NULL_OUTPUT);
+                try {
+                    reportGenerator.setSpillingRanking(Files.createTempDirectory(directory, "ranking"),
+                            SPILLING_RANKING_ENTITIES);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                reportGenerator.ingest(input);
+                reportGenerator.printRanking(CashflowDirection.Incoming);
+                return reportGenerator.getInputOffset();
+            }, scenario.lineCount));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Measures the concurrent ingest of the input of a scenario split into several files, one worker per core
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void ingestFiles(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        String[] lines = InputData.lines(scenario, SEED);
+        List<Path> files = new ArrayList<>();
+        int parallelism = Runtime.getRuntime().availableProcessors();
+
+        try {
+            Path directory = Files.createTempDirectory("bench-files");
+            for (int i = 0; i < FILE_COUNT; i++) {
+                StringBuilder content = new StringBuilder();
+                for (int line = i; line < lines.length; line += FILE_COUNT) {
+                    content.append(lines[line]).append('\n');
+                }
+                files.add(Files.write(directory.resolve("desk" + i + ".csv"),
+                        content.toString().getBytes(StandardCharsets.UTF_8)));
+                files.get(i).toFile().deleteOnExit();
+            }
+            directory.toFile().deleteOnExit();
+
+            results.add(harness.measure("ingestFiles", scenario, () -> {
+                ReportGenerator reportGenerator = new ReportGenerator(NULL_OUTPUT);
+                try {
+                    reportGenerator.ingestFiles(files, parallelism);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return reportGenerator.getInputOffset();
+            }, scenario.lineCount));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Measures ingesting the scenario input from a gzip file made of independent members (as written by bgzip), whose
+     * members are decompressed by concurrent workers, per line
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void ingestGzip(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        byte[] content = InputData.input(scenario, SEED).getBytes(StandardCharsets.UTF_8);
+        List<Path> files = new ArrayList<>();
+        int parallelism = Runtime.getRuntime().availableProcessors();
+
+        try {
+            ByteArrayOutputStream members = new ByteArrayOutputStream();
+            for (int from = 0; from < content.length; from += GZIP_MEMBER_SIZE) {
+                try (GZIPOutputStream member = new GZIPOutputStream(members)) {
+                    member.write(content, from, Math.min(GZIP_MEMBER_SIZE, content.length - from));
+                }
+            }
+            Path file = Files.createTempFile("bench-input", ".csv.gz");
+            file.toFile().deleteOnExit();
+            files.add(Files.write(file, members.toByteArray()));
+
+            results.add(harness.measure("ingestGzip", scenario, () -> {
+                ReportGenerator reportGenerator = new ReportGenerator(NULL_OUTPUT);
+                try {
+                    reportGenerator.ingestFiles(files, parallelism);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return reportGenerator.getInputOffset();
+            }, scenario.lineCount));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Measures the rendering of the daily summaries, per rendered row
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void printDailySummaries(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        CountingOutput output = new CountingOutput();
+        ReportGenerator reportGenerator = new ReportGenerator(InputData.input(scenario, SEED), output);
+        reportGenerator.printDailySummaries();
+        int rows = Math.max(1, output.lines);
+
+        results.add(harness.measure("printDailySummaries", scenario, () -> {
+            reportGenerator.printDailySummaries();
+            return rows;
+        }, rows));
+    }
+
+    /**
+     * Measures the rendering of the incoming ranking, per rendered row
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void printRanking(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        CountingOutput output = new CountingOutput();
+        ReportGenerator reportGenerator = new ReportGenerator(InputData.input(scenario, SEED), output);
+        reportGenerator.printRanking(CashflowDirection.Incoming);
+        int rows = Math.max(1, output.lines);
+
+        results.add(harness.measure("printRanking", scenario, () -> {
+            reportGenerator.printRanking(CashflowDirection.Incoming);
+            return rows;
+        }, rows));
+    }
+
+    /**
+     * Measures ordering the totals of the entities of a scenario for a full ranking, per entity: with the packed
+     * primitive keys of printRanking, and with a boxed comparator sort for comparison
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void rankingSort(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        Random random = new Random(SEED);
+        double[] amounts = new double[scenario.entityCount];
+        for (int i = 0; i < amounts.length; i++) {
+            // totals rounded to cents, so that some entities tie
+            amounts[i] = Math.round(random.nextDouble() * random.nextDouble() * 1e8) / 100.0;
+        }
+
+        results.add(harness.measure("rankingSortPacked", scenario,
+                () -> RankingSort.sortDescending(amounts)[0], amounts.length));
+        results.add(harness.measure("rankingSortBoxed", scenario, () -> {
+            List<Integer> indexes = new ArrayList<>(amounts.length);
+            for (int i = 0; i < amounts.length; i++) {
+                indexes.add(i);
+            }
+            indexes.sort((index1, index2) -> Double.compare(amounts[index2], amounts[index1]));
+            return indexes.get(0);
+        }, amounts.length));
+    }
+
+    /**
+     * Measures ranking the entities over the last week of the input, per ranked entity
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void rangeRanking(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        ReportGenerator reportGenerator = new ReportGenerator(InputData.input(scenario, SEED), NULL_OUTPUT);
+        LocalDate to = reportGenerator.getDailySummaries(null, null).lastKey();
+        LocalDate from = to.minusDays(6);
+
+        results.add(harness.measure("rangeRanking", scenario,
+                () -> reportGenerator.getRanking(CashflowDirection.Incoming, from, to, 10).size(),
+                scenario.entityCount));
+    }
+
+    /**
+     * Output discarding everything it receives, apart from counting the lines
+     */
+    private static final class CountingOutput implements IOutput {
+        public void outputString(String str) {
+            lines++;
+        }
+
+        int lines = 0;
+    }
+
+    private static final IOutput NULL_OUTPUT = str -> { };
+    private static final long SEED = 42;
+    private static final int FILE_COUNT = 8;
+    private static final int APPROXIMATE_RANKING_CAPACITY = 1024;
+    private static final int SPILLING_RANKING_ENTITIES = 10_000;
+    // the block size of bgzip
+    private static final int GZIP_MEMBER_SIZE = 64 * 1024;
+}
@@ -0,0 +1,123 @@
+import Benchmarks.Harness;
+import Benchmarks.InputData;
+import Benchmarks.Scenario;
+import Components.IOutput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Benchmark of the query latency of the ReportServer under load
+ *
+ * The measured thread queries the top 10 incoming entities while background clients keep querying the daily
+ * summaries and another thread keeps ingesting the input of the scenario in small batches, both at a steady rate.
+ */
+public final class ReportServerBenchmark {
+    /**
+     * Measures a ranking query, per request
+     * @param harness the harness
+     * @param scenario the scenario
+     * @param results the list receiving the measurements
+     */
+    public static void rankingUnderLoad(Harness harness, Scenario scenario, List<Harness.Result> results) {
+        String[] lines = InputData.lines(scenario, SEED);
+        ReportGenerator reportGenerator = new ReportGenerator(InputData.join(lines), NULL_OUTPUT);
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> load = new ArrayList<>();
+
+        ReportServer.enableNoDelay();
+        try (ReportServer server = new ReportServer(reportGenerator, 0)) {
+            String base = "http://127.0.0.1:" + server.getPort();
+
+            for (int i = 0; i < BACKGROUND_CLIENTS; i++) {
+                load.add(new Thread(() -> {
+                    while (running.get()) {
+                        query(base + "/daily?format=csv");
+                        pause(CLIENT_PAUSE_MILLIS);
+                    }
+                }));
+            }
+            load.add(new Thread(() -> {
+                for (int i = 0; running.get(); i = (i + INGEST_BATCH) % Math.max(1, lines.length - INGEST_BATCH)) {
+                    StringBuilder batch = new StringBuilder();
+                    for (int j = i; j < Math.min(lines.length, i + INGEST_BATCH); j++) {
+                        batch.append(lines[j]).append('\n');
+                    }
+                    reportGenerator.ingest(batch.toString());
+                    pause(INGEST_PAUSE_MILLIS);
+                }
+            }));
+            for (Thread thread : load) {
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            try {
+                results.add(harness.measure("rankingUnderLoad", scenario,
+                        () -> query(base + "/ranking?direction=incoming&top=10"), 1));
+            }
+            finally {
+                // the load is stopped before the server, so that no client is refused
+                running.set(false);
+                for (Thread thread : load) {
+                    thread.join();
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends a GET request and reads the whole response
+     * @param url the requested URL
+     * @return the length of the response
+     */
+    private static long query(String url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            long length = 0;
+            try (InputStream response = connection.getInputStream()) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = response.read(buffer)) >= 0) {
+                    length += read;
+                }
+            }
+            return length;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final IOutput NULL_OUTPUT = str -> { };
+    private static final long SEED = 42;
+    // each client sends about 50 queries per second, and about 100000 lines per second are ingested
+    private static final int BACKGROUND_CLIENTS = 32;
+    private static final long CLIENT_PAUSE_MILLIS = 20;
+    private static final int INGEST_BATCH = 100;
+    private static final long INGEST_PAUSE_MILLIS = 1;
+}
@@ -0,0 +1,321 @@
+package Components;
+
+import Components.ITransaction.CashflowDirection;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class describing an aggregation over settled transactions: the filters selecting the transactions, the keys they
+ * are grouped by and the order of the resulting groups, each group holding the count, sum, minimum, maximum and
+ * average of its USD amounts
+ *
+ * The daily summary is a query grouped by Date and Direction, the ranking one grouped by Entity, filtered by direction
+ * and ordered by Sum. The query is executed by the data source, e.g. {@link #execute(Iterable)} over transactions in
+ * memory, or a single pass over the columns of an archive.
+ */
+public final class AggregateQuery {
+    /**
+     * The keys transactions can be grouped by
+     * Date, Week and Month group by the settlement date, a week being represented by its Monday (ISO week) and a
+     * month by a YearMonth
+     */
+    public enum GroupKey { Date, Week, Month, Entity, Currency, Direction }
+
+    /**
+     * The aggregates computed for each group
+     */
+    public enum Aggregate { Count, Sum, Min, Max, Average }
+
+    /**
+     * Constructor for a query over every transaction, in a single group
+     */
+    public AggregateQuery() {
+    }
+
+    /**
+     * Sets the currencies of the selected transactions
+     * @param currencies the currencies or null for any currency
+     */
+    public void setCurrencies(Collection<String> currencies) {
+        this.currencies = copyOf(currencies, "currencies");
+    }
+
+    /**
+     * Sets the entities of the selected transactions
+     * @param entities the entity names or null for any entity
+     */
+    public void setEntities(Collection<String> entities) {
+        this.entities = copyOf(entities, "entities");
+    }
+
+    /**
+     * Sets the direction of the selected transactions
+     * @param direction the direction or null for both directions
+     */
+    public void setDirection(CashflowDirection direction) {
+        this.direction = direction;
+    }
+
+    /**
+     * Sets the range of settlement days of the selected transactions
+     * @param from the first day of the range (inclusive) or null for no lower bound
+     * @param to the last day of the range (inclusive) or null for no upper bound
+     */
+    public void setDateRange(LocalDate from, LocalDate to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Sets the keys the transactions are grouped by
+     * @param keys the distinct keys, none for a single group
+     */
+    public void setGroupBy(GroupKey... keys) {
+        if (keys == null) {
+            throw new IllegalArgumentException("keys");
+        }
+        EnumSet<GroupKey> distinct = EnumSet.noneOf(GroupKey.class);
+        for (GroupKey key : keys) {
+            if (key == null || !distinct.add(key)) {
+                throw new IllegalArgumentException("keys");
+            }
+        }
+
+        groupBy = Collections.unmodifiableList(Arrays.asList(keys.clone()));
+    }
+
+    /**
+     * Sets the order of the groups
+     * @param aggregate the aggregate ordering the groups by decreasing value, then by their keys, or null for
+     *                  ordering them by their keys only
+     */
+    public void setOrderBy(Aggregate aggregate) {
+        orderBy = aggregate;
+    }
+
+    /**
+     * Sets the maximum number of groups returned
+     * @param limit the maximum number of groups, the first ones in the order of the query being kept
+     */
+    public void setLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit");
+        }
+
+        this.limit = limit;
+    }
+
+    /**
+     * Getter used for obtaining the currency filter
+     * @return the selected currencies or null for any currency
+     */
+    public Set<String> getCurrencies() {
+        return currencies;
+    }
+
+    /**
+     * Getter used for obtaining the entity filter
+     * @return the selected entity names or null for any entity
+     */
+    public Set<String> getEntities() {
+        return entities;
+    }
+
+    /**
+     * Getter used for obtaining the direction filter
+     * @return the selected direction or null for both directions
+     */
+    public CashflowDirection getDirection() {
+        return direction;
+    }
+
+    /**
+     * Getter used for obtaining the first settlement day of the selected range
+     * @return the first day (inclusive) or null for no lower bound
+     */
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    /**
+     * Getter used for obtaining the last settlement day of the selected range
+     * @return the last day (inclusive) or null for no upper bound
+     */
+    public LocalDate getTo() {
+        return to;
+    }
+
+    /**
+     * Getter used for obtaining the group keys
+     * @return the keys, in the order of the keys of the result rows
+     */
+    public List<GroupKey> getGroupBy() {
+        return groupBy;
+    }
+
+    /**
+     * Checks whether a transaction is selected by the filters of the query
+     * @param transaction the transaction
+     * @return true if the transaction is part of the aggregation; false otherwise
+     */
+    public boolean matches(ITransaction transaction) {
+        if (transaction == null) {
+            throw new IllegalArgumentException("transaction");
+        }
+
+        LocalDate date = transaction.getActualSettlementDate();
+        return (direction == null || transaction.getCashflowDirection() == direction) &&
+                (from == null || !date.isBefore(from)) &&
+                (to == null || !date.isAfter(to)) &&
+                (currencies == null || currencies.contains(transaction.getCurrency())) &&
+                (entities == null || entities.contains(transaction.getEntityName()));
+    }
+
+    /**
+     * Computes the value of a date based group key
+     * @param key the group key, Date, Week or Month
+     * @param date the settlement date
+     * @return the date itself, the Monday of its week or its month
+     */
+    public static Object dateKey(GroupKey key, LocalDate date) {
+        switch (key) {
+            case Date:
+                return date;
+            case Week:
+                return date.minusDays(date.getDayOfWeek().getValue() - 1);
+            case Month:
+                return YearMonth.from(date);
+            default:
+                throw new IllegalArgumentException("key");
+        }
+    }
+
+    /**
+     * Executes the query over transactions held in memory
+     * @param transactions the transactions, in any order
+     * @return the groups, in the order of the query
+     */
+    public List<AggregateRow> execute(Iterable<? extends ITransaction> transactions) {
+        if (transactions == null) {
+            throw new IllegalArgumentException("transactions");
+        }
+
+        Accumulator accumulator = newAccumulator();
+        for (ITransaction transaction : transactions) {
+            accumulator.add(transaction);
+        }
+        return accumulator.getRows();
+    }
+
+    /**
+     * Starts executing the query over transactions held in memory, for data sources which do not hold them in a
+     * single collection
+     * @return an accumulator receiving the transactions
+     */
+    public Accumulator newAccumulator() {
+        return new Accumulator();
+    }
+
+    /**
+     * Orders the groups computed by a data source and keeps the first ones, up to the limit of the query
+     * @param rows the groups, in any order
+     * @return the groups, in the order of the query
+     */
+    public List<AggregateRow> order(Collection<AggregateRow> rows) {
+        if (rows == null) {
+            throw new IllegalArgumentException("rows");
+        }
+
+        List<AggregateRow> ordered = new ArrayList<>(rows);
+        Comparator<AggregateRow> byKeys = AggregateQuery::compareKeys;
+        if (orderBy != null) {
+            ordered.sort(Comparator.comparingDouble((AggregateRow row) -> row.getValue(orderBy)).reversed()
+                    .thenComparing(byKeys));
+        }
+        else {
+            ordered.sort(byKeys);
+        }
+        return ordered.size() > limit ? new ArrayList<>(ordered.subList(0, limit)) : ordered;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareKeys(AggregateRow first, AggregateRow second) {
+        for (int i = 0; i < first.getKeys().size(); i++) {
+            int comparison = ((Comparable) first.getKey(i)).compareTo(second.getKey(i));
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    private static Set<String> copyOf(Collection<String> values, String name) {
+        if (values == null) {
+            return null;
+        }
+        if (values.contains(null)) {
+            throw new IllegalArgumentException(name);
+        }
+        return Collections.unmodifiableSet(new HashSet<>(values));
+    }
+
+    /**
+     * Internal class grouping the transactions selected by the query
+     */
+    public final class Accumulator {
+        /**
+         * Adds a transaction to its group, unless the filters of the query leave it out
+         * @param transaction the transaction
+         */
+        public void add(ITransaction transaction) {
+            if (!matches(transaction)) {
+                return;
+            }
+
+            List<Object> keys = new ArrayList<>(groupBy.size());
+            for (GroupKey key : groupBy) {
+                switch (key) {
+                    case Entity:
+                        keys.add(transaction.getEntityName());
+                        break;
+                    case Currency:
+                        keys.add(transaction.getCurrency());
+                        break;
+                    case Direction:
+                        keys.add(transaction.getCashflowDirection());
+                        break;
+                    default:
+                        keys.add(dateKey(key, transaction.getActualSettlementDate()));
+                }
+            }
+            groups.computeIfAbsent(keys, AggregateRow::new).add(transaction.getUsdValue());
+        }
+
+        /**
+         * Getter used for obtaining the groups of the transactions added so far
+         * @return the groups, in the order of the query
+         */
+        public List<AggregateRow> getRows() {
+            return order(groups.values());
+        }
+
+        private Accumulator() {
+        }
+
+        private final Map<List<Object>, AggregateRow> groups = new HashMap<>();
+    }
+
+    private Set<String> currencies = null;
+    private Set<String> entities = null;
+    private CashflowDirection direction = null;
+    private LocalDate from = null;
+    private LocalDate to = null;
+    private List<GroupKey> groupBy = Collections.emptyList();
+    private Aggregate orderBy = null;
+    private int limit = Integer.MAX_VALUE;
+}
@@ -0,0 +1,146 @@
+package Components;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class holding the aggregates of the USD amounts of a group of transactions, as computed by an
+ * {@link AggregateQuery}
+ */
+public final class AggregateRow {
+    /**
+     * Constructor for an empty group
+     * @param keys the values of the group keys, in the order of the query
+     */
+    public AggregateRow(List<Object> keys) {
+        if (keys == null) {
+            throw new IllegalArgumentException("keys");
+        }
+
+        this.keys = Collections.unmodifiableList(keys);
+    }
+
+    /**
+     * Constructor for a group whose aggregates were already computed
+     * @param keys the values of the group keys, in the order of the query
+     * @param count the number of transactions
+     * @param sum the sum of the amounts in US Dollars
+     * @param min the smallest amount in US Dollars
+     * @param max the largest amount in US Dollars
+     */
+    public AggregateRow(List<Object> keys, long count, double sum, double min, double max) {
+        this(keys);
+        if (count < 0) {
+            throw new IllegalArgumentException("count");
+        }
+
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Adds a transaction amount to the group
+     * @param amount the amount in US Dollars
+     */
+    public void add(double amount) {
+        count++;
+        sum += amount;
+        min = Math.min(min, amount);
+        max = Math.max(max, amount);
+    }
+
+    /**
+     * Getter used for obtaining the values of the group keys
+     * @return the keys, in the order of the query
+     */
+    public List<Object> getKeys() {
+        return keys;
+    }
+
+    /**
+     * Getter used for obtaining the value of a group key
+     * @param index the index of the key in the query
+     * @return the value of the key
+     */
+    public Object getKey(int index) {
+        return keys.get(index);
+    }
+
+    /**
+     * Getter used for obtaining the number of transactions of the group
+     * @return the transaction count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Getter used for obtaining the total amount of the group
+     * @return the sum in US Dollars
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Getter used for obtaining the smallest amount of the group
+     * @return the minimum in US Dollars, or positive infinity for an empty group
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Getter used for obtaining the largest amount of the group
+     * @return the maximum in US Dollars, or negative infinity for an empty group
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Getter used for obtaining the average amount of the group
+     * @return the average in US Dollars, or NaN for an empty group
+     */
+    public double getAverage() {
+        return sum / count;
+    }
+
+    /**
+     * Getter used for obtaining an aggregate by its kind
+     * @param aggregate the aggregate
+     * @return the value of the aggregate
+     */
+    public double getValue(AggregateQuery.Aggregate aggregate) {
+        switch (aggregate) {
+            case Count:
+                return count;
+            case Sum:
+                return sum;
+            case Min:
+                return min;
+            case Max:
+                return max;
+            case Average:
+                return getAverage();
+            default:
+                throw new IllegalArgumentException("aggregate");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return keys + " count=" + count + " sum=" + sum + " min=" + min + " max=" + max;
+    }
+
+    private final List<Object> keys;
+    private long count = 0;
+    private double sum = 0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+}
@@ -0,0 +1,65 @@
+package Components;
+
+import Helpers.HyperLogLog;
+import Helpers.QuantileSketch;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class holding the distribution of the transactions of a settlement day in bounded memory, alongside its
+ * {@link DailySummary}: a quantile sketch of the USD amounts and a distinct count sketch of the entity names
+ * Note: The sketches only grow, so the transactions retracted by an amendment or a cancellation are still part of them
+ */
+public final class DailyDistribution {
+    /**
+     * Constructor for a day without transactions
+     */
+    public DailyDistribution() {
+    }
+
+    /**
+     * Adds a transaction to the distribution
+     * @param transaction the transaction
+     */
+    public void add(ITransaction transaction) {
+        if (transaction == null) {
+            throw new IllegalArgumentException("transaction");
+        }
+
+        amounts.add(transaction.getUsdValue());
+        entities.add(transaction.getEntityName());
+    }
+
+    /**
+     * Adds the transactions of another distribution to this one, e.g. of the same day in a partial aggregation
+     * @param other the distribution to be merged in, which is not modified
+     */
+    public void merge(DailyDistribution other) {
+        if (other == null) {
+            throw new IllegalArgumentException("other");
+        }
+
+        amounts.merge(other.amounts);
+        entities.merge(other.entities);
+    }
+
+    /**
+     * Getter used for obtaining the sketch of the USD amounts
+     * @return the quantile sketch
+     */
+    public QuantileSketch getAmounts() {
+        return amounts;
+    }
+
+    /**
+     * Getter used for obtaining the sketch of the entity names
+     * @return the distinct count sketch
+     */
+    public HyperLogLog getEntities() {
+        return entities;
+    }
+
+    private final QuantileSketch amounts = new QuantileSketch();
+    private final HyperLogLog entities = new HyperLogLog();
+}
@@ -0,0 +1,87 @@
+package Components;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class used for storing the total cashflow summary for a single day
+ */
+public class DailySummary {
+    /**
+     * Constructor for an empty summary
+     */
+    public DailySummary() {
+    }
+
+    /**
+     * Constructor for a summary with already known totals
+     * @param incoming the total incoming cashflow in US Dollars
+     * @param outgoing the total outgoing cashflow in US Dollars
+     * @param transactionCount the number of transactions accounted for
+     */
+    public DailySummary(double incoming, double outgoing, int transactionCount) {
+        this.incoming = incoming;
+        this.outgoing = outgoing;
+        this.transactionCount = transactionCount;
+    }
+
+    /**
+     * Adds a cashflow to the summary
+     * @param direction the direction of the cashflow
+     * @param amount the amount in US Dollars
+     */
+    public void add(ITransaction.CashflowDirection direction, double amount) {
+        switch (direction) {
+            case Incoming:
+                incoming += amount;
+                break;
+            case Outgoing:
+                outgoing += amount;
+                break;
+        }
+        transactionCount++;
+    }
+
+    /**
+     * Retracts a cashflow previously added to the summary
+     * @param direction the direction of the cashflow
+     * @param amount the amount in US Dollars
+     */
+    public void remove(ITransaction.CashflowDirection direction, double amount) {
+        switch (direction) {
+            case Incoming:
+                incoming -= amount;
+                break;
+            case Outgoing:
+                outgoing -= amount;
+                break;
+        }
+        transactionCount--;
+    }
+
+    /**
+     * Adds the totals of another summary to this one
+     * @param other the summary to be merged in
+     */
+    public void merge(DailySummary other) {
+        if (other == null) {
+            throw new IllegalArgumentException("other");
+        }
+
+        incoming += other.incoming;
+        outgoing += other.outgoing;
+        transactionCount += other.transactionCount;
+    }
+
+    /**
+     * Checks whether there is any transaction left in the summary
+     * @return true if no transaction is accounted for; false otherwise
+     */
+    public boolean isEmpty() {
+        return transactionCount <= 0;
+    }
+
+    public double incoming = 0;
+    public double outgoing = 0;
+    public int transactionCount = 0;
+}
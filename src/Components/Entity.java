@@ -1,7 +1,10 @@
 package Components;
 
-import java.util.ArrayList;
-import java.util.List;
+import Helpers.QuantileSketch;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * @author Alexandru Dochioiu
@@ -22,6 +25,19 @@ public class Entity {
         this.name = entityName;
     }
 
+    /**
+     * Constructor for an entity whose totals were already computed (e.g. restored from a checkpoint)
+     * @param entityName the name of the entity
+     * @param incoming the total incoming cashflow in US Dollars
+     * @param outgoing the total outgoing cashflow in US Dollars
+     */
+    public Entity(String entityName, double incoming, double outgoing) {
+        this(entityName);
+
+        this.incoming = incoming;
+        this.outgoing = outgoing;
+    }
+
     /**
      * Adds a transaction to the entity
      * @param transaction the transaction to be added to this entity
@@ -31,7 +47,18 @@ public class Entity {
             ITransaction transaction
     ) {
         try {
-            transactions.add(transaction);
+            series.add(transaction.getActualSettlementDate(), transaction.getCashflowDirection(),
+                    transaction.getUsdValue());
+            attach(transaction);
+            amounts.add(transaction.getUsdValue());
+            switch (transaction.getCashflowDirection()) {
+                case Incoming:
+                    incoming += transaction.getUsdValue();
+                    break;
+                case Outgoing:
+                    outgoing += transaction.getUsdValue();
+                    break;
+            }
             return true;
         }
         catch (Exception e) {
@@ -39,6 +66,137 @@ public class Entity {
         }
     }
 
+    /**
+     * Accounts for a transaction in the totals of the entity without keeping it
+     * Note: Used for the late transactions of days whose details already expired
+     * @param transaction the transaction to be accounted for
+     */
+    public void addExpiredTransaction(ITransaction transaction) {
+        if (transaction == null) {
+            throw new IllegalArgumentException("transaction");
+        }
+
+        amounts.add(transaction.getUsdValue());
+        switch (transaction.getCashflowDirection()) {
+            case Incoming:
+                incoming += transaction.getUsdValue();
+                break;
+            case Outgoing:
+                outgoing += transaction.getUsdValue();
+                break;
+        }
+    }
+
+    /**
+     * Removes a transaction from the entity, retracting its cashflow from the totals
+     * Note: Only the transactions settled on the same day are looked at
+     * @param transaction the transaction to be removed
+     * @return true if the transaction was found and removed; false otherwise
+     */
+    public boolean removeTransaction(ITransaction transaction) {
+        if (transaction == null) {
+            throw new IllegalArgumentException("transaction");
+        }
+
+        List<ITransaction> ofDay = transactions.get(transaction.getActualSettlementDate());
+        if (ofDay == null || !ofDay.remove(transaction)) {
+            return false;
+        }
+        if (ofDay.isEmpty()) {
+            transactions.remove(transaction.getActualSettlementDate());
+        }
+        series.remove(transaction.getActualSettlementDate(), transaction.getCashflowDirection(),
+                transaction.getUsdValue());
+
+        switch (transaction.getCashflowDirection()) {
+            case Incoming:
+                incoming -= transaction.getUsdValue();
+                break;
+            case Outgoing:
+                outgoing -= transaction.getUsdValue();
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Drops the transactions settled before a date, without altering the totals
+     * @param date the first settlement date whose transactions are kept
+     * @return the dropped transactions
+     */
+    public List<ITransaction> evictTransactionsBefore(LocalDate date) {
+        if (date == null) {
+            throw new IllegalArgumentException("date");
+        }
+
+        SortedMap<LocalDate, List<ITransaction>> expired = transactions.headMap(date);
+        if (expired.isEmpty()) {
+            return Collections.emptyList();
+        }
+        series.removeBefore(date);
+
+        List<ITransaction> evicted = new ArrayList<>();
+        for (List<ITransaction> ofDay : expired.values()) {
+            evicted.addAll(ofDay);
+        }
+        expired.clear();
+        return evicted;
+    }
+
+    /**
+     * Attaches transactions which are already accounted for in the totals of this entity
+     * Note: Used when restoring an entity from a checkpoint, the totals are not altered
+     * @param restored the transactions to be attached to this entity
+     */
+    public void attachTransactions(Collection<ITransaction> restored) {
+        if (restored == null) {
+            throw new IllegalArgumentException("restored");
+        }
+        for (ITransaction transaction : restored) {
+            series.add(transaction.getActualSettlementDate(), transaction.getCashflowDirection(),
+                    transaction.getUsdValue());
+            attach(transaction);
+            amounts.add(transaction.getUsdValue());
+        }
+    }
+
+    /**
+     * Moves the transactions and the totals of another entity into this one
+     * Note: Used when merging partial aggregations, the other entity must not be used afterwards
+     * @param other the entity to be merged in
+     */
+    public void merge(Entity other) {
+        if (other == null) {
+            throw new IllegalArgumentException("other");
+        }
+
+        for (Map.Entry<LocalDate, List<ITransaction>> day : other.transactions.entrySet()) {
+            List<ITransaction> ofDay = transactions.get(day.getKey());
+            if (ofDay == null) {
+                transactions.put(day.getKey(), day.getValue());
+            }
+            else {
+                ofDay.addAll(day.getValue());
+            }
+        }
+        series.merge(other.series);
+        amounts.merge(other.amounts);
+        incoming += other.incoming;
+        outgoing += other.outgoing;
+    }
+
+    /**
+     * Getter used for obtaining the transactions linked to this entity
+     * @return the transactions of this entity, ordered by their settlement date
+     */
+    public List<ITransaction> getTransactions() {
+        List<ITransaction> all = new ArrayList<>();
+        for (List<ITransaction> ofDay : transactions.values()) {
+            all.addAll(ofDay);
+        }
+        return all;
+    }
+
     /**
      * Getter used for obtaining the name of the entity
      * @return the entity name
@@ -47,21 +205,107 @@ public class Entity {
         return name;
     }
 
+    /**
+     * Getter used for obtaining the sketch of the USD amounts of the transactions of this entity, e.g. for its
+     * percentiles
+     * Note: The sketch only grows, so evicted or retracted transactions are still part of it, and it holds the
+     * restored transactions only after a restore from a checkpoint
+     * @return the quantile sketch
+     */
+    public QuantileSketch getAmounts() {
+        return amounts;
+    }
+
     /**
      * Computes the cashflow generated by this entity in either direction
      * @param direction the desired direction of the cashflow
      * @return the amount in US Dollars of cashflow generated in the requested direction
      */
     public double getTotalDirectedCashflow(Transaction.CashflowDirection direction) {
-        double amount = 0;
-        for (ITransaction t : transactions) {
-            if (t.getCashflowDirection() == direction) {
-                amount += t.getUsdValue();
+        // the totals are kept up to date when adding transactions, so there is no need to scan them
+        if (direction == ITransaction.CashflowDirection.Incoming) {
+            return incoming;
+        }
+        if (direction == ITransaction.CashflowDirection.Outgoing) {
+            return outgoing;
+        }
+        return 0;
+    }
+
+    /**
+     * Computes the cashflow generated by this entity in either direction, over a range of settlement days
+     * Note: Only the transactions which were not evicted are counted, and the cost is logarithmic in the number of
+     * settlement days of the entity (see {@link SettlementSeries})
+     * @param direction the desired direction of the cashflow
+     * @param from the first settlement day of the range (inclusive) or null for no lower bound
+     * @param to the last settlement day of the range (inclusive) or null for no upper bound
+     * @return the amount in US Dollars of cashflow generated in the requested direction
+     */
+    public double getDirectedCashflow(Transaction.CashflowDirection direction, LocalDate from, LocalDate to) {
+        if (direction == null || (from != null && to != null && from.isAfter(to))) {
+            return 0;
+        }
+        return series.getCashflow(direction, from, to);
+    }
+
+    /**
+     * Passes the transactions of a range of settlement days to a consumer, without copying them
+     * Note: Only the transactions which were not evicted are passed
+     * @param from the first settlement day of the range (inclusive) or null for no lower bound
+     * @param to the last settlement day of the range (inclusive) or null for no upper bound
+     * @param consumer the consumer of the transactions, called in the order of their settlement date
+     */
+    public void forEachTransaction(LocalDate from, LocalDate to, Consumer<ITransaction> consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("consumer");
+        }
+
+        for (List<ITransaction> ofDay : range(from, to).values()) {
+            for (ITransaction transaction : ofDay) {
+                consumer.accept(transaction);
             }
         }
-        return amount;
     }
 
-    private List<ITransaction> transactions = new ArrayList<>();
+    /**
+     * Getter used for obtaining the transactions of a range of settlement days, grouped by day
+     */
+    private NavigableMap<LocalDate, List<ITransaction>> range(LocalDate from, LocalDate to) {
+        NavigableMap<LocalDate, List<ITransaction>> range = transactions;
+        if (from != null && to != null && from.isAfter(to)) {
+            return Collections.emptyNavigableMap();
+        }
+        if (from != null) {
+            range = range.tailMap(from, true);
+        }
+        if (to != null) {
+            range = range.headMap(to, true);
+        }
+        return range;
+    }
+
+    /**
+     * Links a transaction to the settlement day it belongs to
+     * @param transaction the transaction to be linked
+     */
+    private void attach(ITransaction transaction) {
+        LocalDate date = transaction.getActualSettlementDate();
+        List<ITransaction> ofDay = transactions.get(date);
+
+        if (ofDay == null) {
+            ofDay = new ArrayList<>(2);
+            transactions.put(date, ofDay);
+        }
+        ofDay.add(transaction);
+    }
+
+    // the transactions grouped by their settlement date
+    private NavigableMap<LocalDate, List<ITransaction>> transactions = new TreeMap<>();
+    // the cashflow of the retained transactions per settlement day
+    private final SettlementSeries series = new SettlementSeries();
+    // the USD amounts of the transactions added so far
+    private final QuantileSketch amounts = new QuantileSketch();
     private String name;
+    private double incoming = 0;
+    private double outgoing = 0;
 }
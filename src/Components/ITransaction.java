@@ -9,6 +9,11 @@ import java.time.LocalDate;
  * Interface used for managing transactions
  */
 public interface ITransaction {
+    /**
+     * Instruction id of the transactions which were not given one (and thus cannot be amended or cancelled)
+     */
+    long NO_INSTRUCTION_ID = -1;
+
     /**
      * Enumeration giving the direction of a Cashflow
      */
@@ -36,10 +41,22 @@ public interface ITransaction {
      */
     CashflowDirection getCashflowDirection();
 
+    /**
+     * Getter used for obtaining the currency in which the transaction was traded
+     * @return the currency of the transaction
+     */
+    String getCurrency();
+
     /**
      * Getter used for obtaining the actual settlement date of the transaction
      * @return the settlement date of the transaction
      */
     LocalDate getActualSettlementDate();
 
+    /**
+     * Getter used for obtaining the id of the instruction which created the transaction
+     * @return the instruction id or NO_INSTRUCTION_ID if the instruction had no id
+     */
+    long getInstructionId();
+
 }
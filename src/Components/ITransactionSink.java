@@ -0,0 +1,16 @@
+package Components;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Interface used for consuming batches of already decoded instructions
+ */
+public interface ITransactionSink {
+    /**
+     * Applies a batch of instructions, in order
+     * Note: The batch is not retained, so the caller can reuse it afterwards
+     * @param batch the instructions to be applied
+     */
+    void addBatch(InstructionBatch batch);
+}
@@ -0,0 +1,121 @@
+package Components;
+
+import Helpers.ParsingUtil.RecordType;
+
+import java.util.Arrays;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Reusable holder of a batch of decoded instructions, given to an {@link ITransactionSink}
+ *
+ * Each entry has the kind of record, the transaction it creates (none for a cancellation) and the id of the
+ * instruction it refers to. The arrays grow as needed and are kept when the batch is cleared.
+ */
+public final class InstructionBatch {
+    /**
+     * Constructor
+     * @param initialCapacity the number of entries the batch is initially sized for
+     */
+    public InstructionBatch(int initialCapacity) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("initialCapacity");
+        }
+
+        types = new RecordType[initialCapacity];
+        transactions = new ITransaction[initialCapacity];
+        instructionIds = new long[initialCapacity];
+    }
+
+    /**
+     * Adds an instruction creating a transaction (a plain, New or Amend record)
+     * @param type the kind of record
+     * @param transaction the transaction created by the record
+     */
+    public void add(RecordType type, ITransaction transaction) {
+        if (type == null || type == RecordType.Cancel) {
+            throw new IllegalArgumentException("type");
+        }
+        if (transaction == null) {
+            throw new IllegalArgumentException("transaction");
+        }
+        append(type, transaction, transaction.getInstructionId());
+    }
+
+    /**
+     * Adds the cancellation of an instruction
+     * @param instructionId the id of the cancelled instruction
+     */
+    public void addCancel(long instructionId) {
+        append(RecordType.Cancel, null, instructionId);
+    }
+
+    /**
+     * Empties the batch, keeping its capacity
+     */
+    public void clear() {
+        Arrays.fill(transactions, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Getter used for obtaining the number of entries of the batch
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter used for obtaining the kind of record of an entry
+     * @param index the index of the entry
+     * @return the kind of record
+     */
+    public RecordType getType(int index) {
+        return types[checkIndex(index)];
+    }
+
+    /**
+     * Getter used for obtaining the transaction created by an entry
+     * @param index the index of the entry
+     * @return the transaction or null for a cancellation
+     */
+    public ITransaction getTransaction(int index) {
+        return transactions[checkIndex(index)];
+    }
+
+    /**
+     * Getter used for obtaining the id of the instruction an entry refers to
+     * @param index the index of the entry
+     * @return the instruction id or NO_INSTRUCTION_ID for a plain instruction
+     */
+    public long getInstructionId(int index) {
+        return instructionIds[checkIndex(index)];
+    }
+
+    private void append(RecordType type, ITransaction transaction, long instructionId) {
+        if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            transactions = Arrays.copyOf(transactions, size * 2);
+            instructionIds = Arrays.copyOf(instructionIds, size * 2);
+        }
+
+        types[size] = type;
+        transactions[size] = transaction;
+        instructionIds[size] = instructionId;
+        size++;
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index");
+        }
+        return index;
+    }
+
+    private RecordType[] types;
+    private ITransaction[] transactions;
+    private long[] instructionIds;
+    private int size = 0;
+}
@@ -0,0 +1,70 @@
+package Components;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class holding the cashflow of an entity within a ranking
+ */
+public final class RankingEntry {
+    /**
+     * Constructor
+     * @param entityName the name of the entity
+     * @param amount the amount in US Dollars of cashflow generated by the entity
+     */
+    public RankingEntry(String entityName, double amount) {
+        this(entityName, amount, 0);
+    }
+
+    /**
+     * Constructor for an approximate entry
+     * @param entityName the name of the entity
+     * @param amount the estimated amount in US Dollars of cashflow generated by the entity, never below the actual one
+     * @param error the largest overestimation of the amount, the actual cashflow being in [amount - error, amount]
+     */
+    public RankingEntry(String entityName, double amount, double error) {
+        if (entityName == null) {
+            throw new IllegalArgumentException("entityName");
+        }
+        if (!(error >= 0)) {
+            throw new IllegalArgumentException("error");
+        }
+
+        this.entityName = entityName;
+        this.amount = amount;
+        this.error = error;
+    }
+
+    /**
+     * Getter used for obtaining the name of the entity
+     * @return the entity name
+     */
+    public String getEntityName() {
+        return entityName;
+    }
+
+    /**
+     * Getter used for obtaining the cashflow of the entity
+     * @return the amount in US Dollars
+     */
+    public double getAmount() {
+        return amount;
+    }
+
+    /**
+     * Getter used for obtaining the largest overestimation of the cashflow
+     * @return the error in US Dollars, 0 for an exact entry
+     */
+    public double getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return error == 0 ? entityName + "=" + amount : entityName + "=" + amount + "(-" + error + ")";
+    }
+
+    private final String entityName;
+    private final double amount;
+    private final double error;
+}
@@ -0,0 +1,98 @@
+package Components;
+
+import java.time.LocalDate;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class used for transactions whose settlement was already computed (e.g. restored from a checkpoint)
+ */
+public class SettledTransaction implements ITransaction {
+    /**
+     * Constructor
+     * @param entity the entity taking part in the transaction
+     * @param direction the direction of the cashflow
+     * @param currency the currency of the transaction
+     * @param usdValue the value of the transaction in US Dollars
+     * @param actualSettlementDate the date when the transaction settled
+     */
+    public SettledTransaction(
+            String entity,
+            CashflowDirection direction,
+            String currency,
+            double usdValue,
+            LocalDate actualSettlementDate
+    ) {
+        this(entity, direction, currency, usdValue, actualSettlementDate, NO_INSTRUCTION_ID);
+    }
+
+    /**
+     * Constructor for a transaction created by an instruction with an id
+     * @param entity the entity taking part in the transaction
+     * @param direction the direction of the cashflow
+     * @param currency the currency of the transaction
+     * @param usdValue the value of the transaction in US Dollars
+     * @param actualSettlementDate the date when the transaction settled
+     * @param instructionId the id of the instruction
+     */
+    public SettledTransaction(
+            String entity,
+            CashflowDirection direction,
+            String currency,
+            double usdValue,
+            LocalDate actualSettlementDate,
+            long instructionId
+    ) {
+        if (entity == null) {
+            throw new IllegalArgumentException("entity");
+        }
+        if (direction == null) {
+            throw new IllegalArgumentException("direction");
+        }
+        if (currency == null) {
+            throw new IllegalArgumentException("currency");
+        }
+        if (actualSettlementDate == null) {
+            throw new IllegalArgumentException("actualSettlementDate");
+        }
+
+        this.entityName = entity;
+        this.cashflowDirection = direction;
+        this.currency = currency;
+        this.usdValue = usdValue;
+        this.actualSettlementDate = actualSettlementDate;
+        this.instructionId = instructionId;
+    }
+
+    public String getEntityName() {
+        return entityName;
+    }
+
+    public double getUsdValue() {
+        return usdValue;
+    }
+
+    public CashflowDirection getCashflowDirection() {
+        return cashflowDirection;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public LocalDate getActualSettlementDate() {
+        return actualSettlementDate;
+    }
+
+    public long getInstructionId() {
+        return instructionId;
+    }
+
+    private final String entityName;
+    private final CashflowDirection cashflowDirection;
+    private final String currency;
+    private final double usdValue;
+    private final LocalDate actualSettlementDate;
+    private final long instructionId;
+}
@@ -0,0 +1,112 @@
+package Components;
+
+import Metrics.SettlementCacheMissEvent;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class used for moving a desired settlement date to the first workday of a currency
+ * Note: Holidays are not excluded from the working days
+ *
+ * The settlement dates are cached per calendar in a direct mapped table indexed by the epoch day, so any window of
+ * CACHE_SIZE consecutive desired dates is resolved without allocating. The cache is safe to share between threads:
+ * its entries are immutable and a lost update only costs another miss.
+ */
+public final class SettlementCalendar {
+    public static final SettlementCalendar MONDAY_TO_FRIDAY =
+            new SettlementCalendar("Monday to Friday", DayOfWeek.SATURDAY, DayOfWeek.SUNDAY);
+    public static final SettlementCalendar SUNDAY_TO_THURSDAY =
+            new SettlementCalendar("Sunday to Thursday", DayOfWeek.FRIDAY, DayOfWeek.SATURDAY);
+
+    /**
+     * Getter used for obtaining the calendar of a currency
+     * @param currency the currency code
+     * @return SUNDAY_TO_THURSDAY for AED and SAR, MONDAY_TO_FRIDAY otherwise
+     */
+    public static SettlementCalendar forCurrency(String currency) {
+        if (currency == null) {
+            throw new IllegalArgumentException("currency");
+        }
+
+        if (currency.equalsIgnoreCase("AED") || currency.equalsIgnoreCase("SAR")) {
+            return SUNDAY_TO_THURSDAY;
+        }
+        return MONDAY_TO_FRIDAY;
+    }
+
+    private SettlementCalendar(String name, DayOfWeek firstWeekendDay, DayOfWeek secondWeekendDay) {
+        this.name = name;
+        this.firstWeekendDay = firstWeekendDay;
+        this.secondWeekendDay = secondWeekendDay;
+    }
+
+    /**
+     * Get the actual settlement date for a desired one
+     * @param desiredDate the date when the operation is desired to settle
+     * @return the first workday on or after the desired date
+     */
+    public LocalDate settlementDate(LocalDate desiredDate) {
+        if (desiredDate == null) {
+            throw new IllegalArgumentException("desiredDate");
+        }
+
+        long desiredDay = desiredDate.toEpochDay();
+        int slot = (int) (desiredDay & (CACHE_SIZE - 1));
+        CachedDay cached = cache[slot];
+        if (cached != null && cached.desiredDay == desiredDay) {
+            return cached.settlementDate;
+        }
+
+        SettlementCacheMissEvent event = new SettlementCacheMissEvent();
+        event.begin();
+
+        LocalDate settlementDate;
+        DayOfWeek dayOfWeek = desiredDate.getDayOfWeek();
+        if (dayOfWeek == firstWeekendDay) {
+            settlementDate = desiredDate.plusDays(2);
+        }
+        else if (dayOfWeek == secondWeekendDay) {
+            settlementDate = desiredDate.plusDays(1);
+        }
+        else {
+            settlementDate = desiredDate;
+        }
+        cache[slot] = new CachedDay(desiredDay, settlementDate);
+
+        if (event.shouldCommit()) {
+            event.calendar = name;
+            event.desiredDate = desiredDate.toString();
+            event.commit();
+        }
+        return settlementDate;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Class holding a cached settlement date
+     */
+    private static final class CachedDay {
+        CachedDay(long desiredDay, LocalDate settlementDate) {
+            this.desiredDay = desiredDay;
+            this.settlementDate = settlementDate;
+        }
+
+        final long desiredDay;
+        final LocalDate settlementDate;
+    }
+
+    private static final int CACHE_SIZE = 4096;
+
+    private final String name;
+    private final DayOfWeek firstWeekendDay;
+    private final DayOfWeek secondWeekendDay;
+    private final CachedDay[] cache = new CachedDay[CACHE_SIZE];
+}
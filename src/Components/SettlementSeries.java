@@ -0,0 +1,292 @@
+package Components;
+
+import Components.ITransaction.CashflowDirection;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class holding the cashflow of an entity per settlement day, with a range-sum index, so that the cashflow between two
+ * dates costs O(log D) for D active days instead of a scan of the transactions
+ *
+ * Only the days with transactions are stored, sorted, along with an implicit segment tree per direction whose leaves
+ * are the cashflow of the days. Each inner node is recomputed from its children, so retracted cashflow does not leave
+ * rounding residues behind and a range sum only adds the amounts of the range. The arrays grow by powers of two, so an
+ * entity trading on a few days only holds a few entries.
+ */
+public final class SettlementSeries {
+    /**
+     * Constructor for an empty series
+     */
+    public SettlementSeries() {
+    }
+
+    /**
+     * Adds a cashflow to its settlement day
+     * Note: Appending a day after the last one costs O(log D), inserting a day before it O(D)
+     * @param date the settlement date
+     * @param direction the direction of the cashflow
+     * @param amount the amount in US Dollars
+     */
+    public void add(LocalDate date, CashflowDirection direction, double amount) {
+        if (date == null) {
+            throw new IllegalArgumentException("date");
+        }
+        if (direction == null) {
+            throw new IllegalArgumentException("direction");
+        }
+
+        int day = Math.toIntExact(date.toEpochDay());
+        int index = Arrays.binarySearch(days, 0, size, day);
+        if (index < 0) {
+            index = -index - 1;
+            insertAt(index, day);
+        }
+
+        int d = direction.ordinal();
+        counts[d][index]++;
+        setLeaf(d, index, trees[d][capacity + index] + amount);
+    }
+
+    /**
+     * Retracts a cashflow previously added to its settlement day
+     * @param date the settlement date
+     * @param direction the direction of the cashflow
+     * @param amount the amount in US Dollars
+     * @return true if the day had a cashflow in that direction; false otherwise
+     */
+    public boolean remove(LocalDate date, CashflowDirection direction, double amount) {
+        if (date == null) {
+            throw new IllegalArgumentException("date");
+        }
+        if (direction == null) {
+            throw new IllegalArgumentException("direction");
+        }
+
+        int index = Arrays.binarySearch(days, 0, size, Math.toIntExact(date.toEpochDay()));
+        int d = direction.ordinal();
+        if (index < 0 || counts[d][index] == 0) {
+            return false;
+        }
+
+        // the cashflow of a day left without transactions is exactly 0
+        counts[d][index]--;
+        setLeaf(d, index, counts[d][index] == 0 ? 0 : trees[d][capacity + index] - amount);
+        if (counts[0][index] == 0 && counts[1][index] == 0) {
+            removeRange(index, index + 1);
+        }
+        return true;
+    }
+
+    /**
+     * Drops the days before a date
+     * @param date the first settlement date which is kept
+     */
+    public void removeBefore(LocalDate date) {
+        if (date == null) {
+            throw new IllegalArgumentException("date");
+        }
+
+        int end = lowerBound(date.toEpochDay());
+        if (end > 0) {
+            removeRange(0, end);
+        }
+    }
+
+    /**
+     * Adds the cashflow of another series to this one
+     * @param other the series to be merged in
+     */
+    public void merge(SettlementSeries other) {
+        if (other == null) {
+            throw new IllegalArgumentException("other");
+        }
+        if (other.size == 0) {
+            return;
+        }
+
+        int[] mergedDays = new int[size + other.size];
+        int[][] mergedCounts = new int[DIRECTIONS][size + other.size];
+        double[][] mergedAmounts = new double[DIRECTIONS][size + other.size];
+        int mergedSize = 0;
+        for (int i = 0, j = 0; i < size || j < other.size; mergedSize++) {
+            boolean fromThis = j == other.size || (i < size && days[i] <= other.days[j]);
+            boolean fromOther = i == size || (j < other.size && other.days[j] <= days[i]);
+            mergedDays[mergedSize] = fromThis ? days[i] : other.days[j];
+            for (int d = 0; d < DIRECTIONS; d++) {
+                if (fromThis) {
+                    mergedCounts[d][mergedSize] += counts[d][i];
+                    mergedAmounts[d][mergedSize] += trees[d][capacity + i];
+                }
+                if (fromOther) {
+                    mergedCounts[d][mergedSize] += other.counts[d][j];
+                    mergedAmounts[d][mergedSize] += other.trees[d][other.capacity + j];
+                }
+            }
+            i += fromThis ? 1 : 0;
+            j += fromOther ? 1 : 0;
+        }
+
+        resize(capacityFor(mergedSize));
+        System.arraycopy(mergedDays, 0, days, 0, mergedSize);
+        for (int d = 0; d < DIRECTIONS; d++) {
+            System.arraycopy(mergedCounts[d], 0, counts[d], 0, mergedSize);
+            System.arraycopy(mergedAmounts[d], 0, trees[d], capacity, mergedSize);
+            Arrays.fill(trees[d], capacity + mergedSize, 2 * capacity, 0);
+            rebuild(d);
+        }
+        size = mergedSize;
+    }
+
+    /**
+     * Computes the cashflow in a direction over a range of settlement days
+     * @param direction the direction of the cashflow
+     * @param from the first day of the range (inclusive) or null for no lower bound
+     * @param to the last day of the range (inclusive) or null for no upper bound
+     * @return the amount in US Dollars
+     */
+    public double getCashflow(CashflowDirection direction, LocalDate from, LocalDate to) {
+        if (direction == null) {
+            throw new IllegalArgumentException("direction");
+        }
+
+        int first = from == null ? 0 : lowerBound(from.toEpochDay());
+        int end = to == null ? size : lowerBound(to.toEpochDay() + 1);
+        double[] tree = trees[direction.ordinal()];
+        double amount = 0;
+        // bottom-up walk, adding the nodes which are fully inside the range
+        for (int left = first + capacity, right = end + capacity; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) != 0) {
+                amount += tree[left++];
+            }
+            if ((right & 1) != 0) {
+                amount += tree[--right];
+            }
+        }
+        return amount;
+    }
+
+    /**
+     * Getter used for obtaining the number of days with transactions
+     * @return the number of active days
+     */
+    public int getDayCount() {
+        return size;
+    }
+
+    /**
+     * Finds the index of the first day which is not before a day
+     */
+    private int lowerBound(long day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (days[middle] < day) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Inserts a day without cashflow
+     */
+    private void insertAt(int index, int day) {
+        if (size == capacity) {
+            resize(capacityFor(size + 1));
+        }
+
+        System.arraycopy(days, index, days, index + 1, size - index);
+        days[index] = day;
+        for (int d = 0; d < DIRECTIONS; d++) {
+            System.arraycopy(counts[d], index, counts[d], index + 1, size - index);
+            counts[d][index] = 0;
+            System.arraycopy(trees[d], capacity + index, trees[d], capacity + index + 1, size - index);
+            trees[d][capacity + index] = 0;
+        }
+        size++;
+        // appending only changes the path of the new leaf, which gets its amount afterwards
+        if (index < size - 1) {
+            for (int d = 0; d < DIRECTIONS; d++) {
+                rebuild(d);
+            }
+        }
+    }
+
+    /**
+     * Removes the days of a range of indexes
+     */
+    private void removeRange(int from, int to) {
+        int removed = to - from;
+        System.arraycopy(days, to, days, from, size - to);
+        for (int d = 0; d < DIRECTIONS; d++) {
+            System.arraycopy(counts[d], to, counts[d], from, size - to);
+            System.arraycopy(trees[d], capacity + to, trees[d], capacity + from, size - to);
+            Arrays.fill(trees[d], capacity + size - removed, capacity + size, 0);
+            rebuild(d);
+        }
+        size -= removed;
+
+        // the memory stays proportional to the active days
+        if (size <= capacity / 4) {
+            resize(capacityFor(size));
+        }
+    }
+
+    private void setLeaf(int direction, int index, double amount) {
+        double[] tree = trees[direction];
+        int node = capacity + index;
+        tree[node] = amount;
+        for (node >>= 1; node >= 1; node >>= 1) {
+            tree[node] = tree[2 * node] + tree[2 * node + 1];
+        }
+    }
+
+    private void rebuild(int direction) {
+        double[] tree = trees[direction];
+        for (int node = capacity - 1; node >= 1; node--) {
+            tree[node] = tree[2 * node] + tree[2 * node + 1];
+        }
+    }
+
+    /**
+     * Changes the capacity, keeping the days and their cashflow
+     */
+    private void resize(int newCapacity) {
+        days = Arrays.copyOf(days, newCapacity);
+        for (int d = 0; d < DIRECTIONS; d++) {
+            counts[d] = Arrays.copyOf(counts[d], newCapacity);
+            double[] tree = new double[2 * newCapacity];
+            System.arraycopy(trees[d], capacity, tree, newCapacity, Math.min(size, newCapacity));
+            trees[d] = tree;
+        }
+        capacity = newCapacity;
+        for (int d = 0; d < DIRECTIONS; d++) {
+            rebuild(d);
+        }
+    }
+
+    /**
+     * Computes the smallest power of two holding a number of days
+     */
+    private static int capacityFor(int dayCount) {
+        return dayCount <= 1 ? 1 : Integer.highestOneBit(dayCount - 1) << 1;
+    }
+
+    private static final int DIRECTIONS = CashflowDirection.values().length;
+
+    // the active days, as epoch days, and their transaction count per direction
+    private int[] days = new int[1];
+    private final int[][] counts = new int[DIRECTIONS][1];
+    // per direction, the inner nodes at [1, capacity) and the cashflow of the days at [capacity, 2 * capacity)
+    private final double[][] trees = new double[DIRECTIONS][2];
+    private int capacity = 1;
+    private int size = 0;
+}
@@ -0,0 +1,246 @@
+package Components;
+
+import Components.ITransaction.CashflowDirection;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class maintaining the cashflow summaries of a set of time resolutions (day, ISO week, month, year) incrementally,
+ * so that the summary of a week, a month or a year is a lookup instead of a scan of its days
+ * The buckets are keyed by their first day: the day itself, the Monday of the week, the first day of the month or of
+ * the year.
+ */
+public final class TimeBuckets {
+    /**
+     * The time resolutions of the buckets
+     */
+    public enum Resolution {
+        Day, Week, Month, Year;
+
+        /**
+         * Numbers the bucket holding a day: the epoch day, the week counted from the Monday before the epoch, the
+         * month counted from year 0 or the year
+         */
+        long numberOf(LocalDate date) {
+            switch (this) {
+                case Week:
+                    // the epoch day 0 is a Thursday
+                    return Math.floorDiv(date.toEpochDay() + 3, 7);
+                case Month:
+                    return date.getYear() * 12L + date.getMonthValue() - 1;
+                case Year:
+                    return date.getYear();
+                default:
+                    return date.toEpochDay();
+            }
+        }
+
+        /**
+         * Converts the number of a bucket back to its first day
+         */
+        LocalDate firstDayOf(long number) {
+            switch (this) {
+                case Week:
+                    return LocalDate.ofEpochDay(number * 7 - 3);
+                case Month:
+                    return LocalDate.of((int) Math.floorDiv(number, 12), Math.floorMod(number, 12) + 1, 1);
+                case Year:
+                    return LocalDate.of((int) number, 1, 1);
+                default:
+                    return LocalDate.ofEpochDay(number);
+            }
+        }
+    }
+
+    /**
+     * Constructor
+     * @param resolutions the resolutions whose buckets are maintained
+     */
+    public TimeBuckets(Set<Resolution> resolutions) {
+        if (resolutions == null || resolutions.isEmpty()) {
+            throw new IllegalArgumentException("resolutions");
+        }
+
+        for (Resolution resolution : resolutions) {
+            levels[resolution.ordinal()] = new Level();
+        }
+    }
+
+    /**
+     * Adds a cashflow to the buckets holding its settlement day
+     * @param date the settlement date
+     * @param direction the direction of the cashflow
+     * @param amount the amount in US Dollars
+     */
+    public void add(LocalDate date, CashflowDirection direction, double amount) {
+        for (Resolution resolution : RESOLUTIONS) {
+            Level level = levels[resolution.ordinal()];
+            if (level != null) {
+                level.getOrCreate(resolution.numberOf(date)).add(direction, amount);
+            }
+        }
+    }
+
+    /**
+     * Retracts a cashflow previously added to the buckets
+     * @param date the settlement date
+     * @param direction the direction of the cashflow
+     * @param amount the amount in US Dollars
+     */
+    public void remove(LocalDate date, CashflowDirection direction, double amount) {
+        for (Resolution resolution : RESOLUTIONS) {
+            Level level = levels[resolution.ordinal()];
+            if (level == null) {
+                continue;
+            }
+
+            DailySummary summary = level.get(resolution.numberOf(date));
+            if (summary != null) {
+                summary.remove(direction, amount);
+            }
+        }
+    }
+
+    /**
+     * Adds the summary of a period to the buckets holding it
+     * Note: The buckets finer than the period are not updated, e.g. a month rolled up by the retention only updates
+     * the month and year buckets
+     * @param period the resolution of the period
+     * @param date a day of the period
+     * @param summary the summary of the period
+     */
+    public void merge(Resolution period, LocalDate date, DailySummary summary) {
+        if (period == null) {
+            throw new IllegalArgumentException("period");
+        }
+        if (summary == null) {
+            throw new IllegalArgumentException("summary");
+        }
+
+        for (Resolution resolution : RESOLUTIONS) {
+            Level level = levels[resolution.ordinal()];
+            // a week may overlap two months, so a week is only merged into weeks
+            if (level == null || resolution.compareTo(period) < 0 ||
+                    (period == Resolution.Week && resolution != period)) {
+                continue;
+            }
+            level.getOrCreate(resolution.numberOf(date)).merge(summary);
+        }
+    }
+
+    /**
+     * Getter used for obtaining the summary of the bucket holding a day
+     * @param resolution the resolution of the bucket, which must be maintained
+     * @param date a day of the bucket
+     * @return the summary, or null if there is no cashflow in the bucket
+     */
+    public DailySummary get(Resolution resolution, LocalDate date) {
+        if (date == null) {
+            throw new IllegalArgumentException("date");
+        }
+
+        DailySummary summary = level(resolution).get(resolution.numberOf(date));
+        return summary == null || summary.isEmpty() ? null : summary;
+    }
+
+    /**
+     * Getter used for obtaining the summaries of the buckets overlapping a range of days
+     * @param resolution the resolution of the buckets, which must be maintained
+     * @param from the first day of the range (inclusive) or null for no lower bound
+     * @param to the last day of the range (inclusive) or null for no upper bound
+     * @return the summaries (not copied) of the buckets with cashflow, keyed by the first day of their bucket and
+     * chronologically ordered
+     */
+    public NavigableMap<LocalDate, DailySummary> getRange(Resolution resolution, LocalDate from, LocalDate to) {
+        Level level = level(resolution);
+        NavigableMap<LocalDate, DailySummary> result = new TreeMap<>();
+
+        // only the buckets of the range are looked at
+        long first = from == null ? level.first : Math.max(level.first, resolution.numberOf(from));
+        long last = to == null ? level.first + level.summaries.length - 1 :
+                Math.min(level.first + level.summaries.length - 1, resolution.numberOf(to));
+        for (long number = first; number <= last; number++) {
+            DailySummary summary = level.get(number);
+            if (summary != null && !summary.isEmpty()) {
+                result.put(resolution.firstDayOf(number), summary);
+            }
+        }
+        return result;
+    }
+
+    private Level level(Resolution resolution) {
+        if (resolution == null) {
+            throw new IllegalArgumentException("resolution");
+        }
+        Level level = levels[resolution.ordinal()];
+        if (level == null) {
+            throw new IllegalArgumentException("resolution");
+        }
+        return level;
+    }
+
+    /**
+     * Internal class holding the buckets of a resolution in an array indexed by their number, spanning from the
+     * first to the last bucket with cashflow, so that updating a bucket neither hashes nor allocates
+     */
+    private static final class Level {
+        DailySummary get(long number) {
+            long index = number - first;
+            return index >= 0 && index < summaries.length ? summaries[(int) index] : null;
+        }
+
+        DailySummary getOrCreate(long number) {
+            if (summaries.length == 0) {
+                first = number;
+                summaries = new DailySummary[1];
+            }
+            else if (number < first || number - first >= summaries.length) {
+                grow(number);
+            }
+
+            int index = (int) (number - first);
+            DailySummary summary = summaries[index];
+            if (summary == null) {
+                summary = new DailySummary();
+                summaries[index] = summary;
+            }
+            return summary;
+        }
+
+        /**
+         * Grows the array so that it holds a bucket, leaving as much room again on the side it grew
+         */
+        private void grow(long number) {
+            long newFirst = Math.min(first, number);
+            long newEnd = Math.max(first + summaries.length, number + 1);
+            long extra = Math.min(newEnd - newFirst, MAX_BUCKETS - (newEnd - newFirst));
+            if (extra < 0) {
+                throw new IllegalStateException("Too many buckets: " + (newEnd - newFirst));
+            }
+            if (number < first) {
+                newFirst -= extra;
+            }
+            else {
+                newEnd += extra;
+            }
+
+            DailySummary[] larger = new DailySummary[(int) (newEnd - newFirst)];
+            System.arraycopy(summaries, 0, larger, (int) (first - newFirst), summaries.length);
+            summaries = larger;
+            first = newFirst;
+        }
+
+        private long first = 0;
+        private DailySummary[] summaries = new DailySummary[0];
+    }
+
+    // the days from year 0 to year 9999
+    private static final long MAX_BUCKETS = 3_700_000;
+    private static final Resolution[] RESOLUTIONS = Resolution.values();
+
+    private final Level[] levels = new Level[RESOLUTIONS.length];
+}
@@ -1,9 +1,8 @@
 package Components;
 
+import Metrics.EngineMetrics;
+
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.Arrays;
-import java.util.List;
 
 /**
  * @author Alexandru Dochioiu
@@ -32,6 +31,30 @@ public class Transaction implements ITransaction{
             LocalDate desiredSettlementDate,
             int units,
             double pricePerUnit
+    ) {
+        this(entity, direction, agreedFx, currency, desiredSettlementDate, units, pricePerUnit, NO_INSTRUCTION_ID);
+    }
+
+    /**
+     * Constructor for a transaction created by an instruction with an id, which can later be amended or cancelled
+     * @param entity the entity taking part in the transaction
+     * @param direction the direction of the operation (buy/sell)
+     * @param agreedFx the exchange rate for the transaction currency to US Dollars
+     * @param currency the currency of the transaction
+     * @param desiredSettlementDate the date when the transaction is desired to settle
+     * @param units the number of units to be transacted
+     * @param pricePerUnit the price per unit
+     * @param instructionId the id of the instruction
+     */
+    public Transaction(
+            String entity,
+            CashflowDirection direction,
+            double agreedFx,
+            String currency,
+            LocalDate desiredSettlementDate,
+            int units,
+            double pricePerUnit,
+            long instructionId
     ) {
         if (entity == null) {
             throw new IllegalArgumentException("entityName");
@@ -52,8 +75,12 @@ public class Transaction implements ITransaction{
 
         entityName = entity;
         cashflowDirection = direction;
+        this.currency = currency;
         usdValue = pricePerUnit * units * agreedFx;
-        actualSettlementDate = computeActualSettlementDate(desiredSettlementDate, currency);
+        long start = EngineMetrics.SETTLEMENT_LATENCY.startTimer();
+        actualSettlementDate = SettlementCalendar.forCurrency(currency).settlementDate(desiredSettlementDate);
+        EngineMetrics.SETTLEMENT_LATENCY.recordSince(start);
+        this.instructionId = instructionId;
     }
 
     /**
@@ -80,6 +107,14 @@ public class Transaction implements ITransaction{
         return cashflowDirection;
     }
 
+    /**
+     * Getter used for obtaining the currency in which the transaction was traded
+     * @return the currency of the transaction
+     */
+    public String getCurrency() {
+        return currency;
+    }
+
     /**
      * Getter used for obtaining the actual settlement date of the transaction
      * @return the settlement date of the transaction
@@ -89,55 +124,17 @@ public class Transaction implements ITransaction{
     }
 
     /**
-     * Get the actual settlement date for a given operation
-     * @param desiredDate the date when the operation is desired to settle
-     * @param currency the currency of the operation
-     * @return the actual settlement date of the operation
+     * Getter used for obtaining the id of the instruction which created the transaction
+     * @return the instruction id or NO_INSTRUCTION_ID if the instruction had no id
      */
-    private LocalDate computeActualSettlementDate(LocalDate desiredDate, String currency)
-    {
-        String dayOfWeek = simpleDateformat.format(desiredDate);
-        LocalDate settlementDate;
-
-        if (sundayToThursdayCurrencies.contains(currency.toUpperCase()))
-        {
-            switch (dayOfWeek)
-            {
-                case "Fri":
-                    settlementDate = desiredDate.plusDays(2);
-                    break;
-                case "Sat":
-                    settlementDate = desiredDate.plusDays(1);
-                    break;
-                default:
-                    settlementDate = desiredDate;
-            }
-        }
-        else
-        {
-            switch (dayOfWeek)
-            {
-                case "Sat":
-                    settlementDate = desiredDate.plusDays(2);
-                    break;
-                case "Sun":
-                    settlementDate = desiredDate.plusDays(1);
-                    break;
-                default:
-                    settlementDate = desiredDate;
-            }
-        }
-
-        return settlementDate;
+    public long getInstructionId() {
+        return instructionId;
     }
 
     private String entityName;
     private CashflowDirection cashflowDirection;
+    private String currency;
     private LocalDate actualSettlementDate;
     private double usdValue;
-
-    // an array containing the currencies with weekday from Sunday to Thursday
-    private static List<String> sundayToThursdayCurrencies = Arrays.asList("AED", "SAR");
-    // date formatter giving the day of the week
-    private static DateTimeFormatter simpleDateformat = DateTimeFormatter.ofPattern("E");
+    private long instructionId;
 }
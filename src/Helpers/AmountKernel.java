@@ -0,0 +1,137 @@
+package Helpers;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Kernel aggregating a column of fixed point amounts by cashflow direction: for a range of rows, the count, sum,
+ * minimum and maximum of the amounts of each direction
+ *
+ * The columns are read in place from a (memory mapped) buffer: big endian longs for the amounts and one byte per row
+ * for the direction ordinals (0 or 1). The kernel is selected once at runtime: the SIMD implementation based on the
+ * incubating Vector API (module vector, Java 16 to 18) when the module jdk.incubator.vector is resolved
+ * (java --add-modules jdk.incubator.vector) and the implementation is on the class path, the scalar one otherwise or
+ * when the system property jpmc.kernel is set to scalar. The amounts being integers, both give identical results.
+ */
+public abstract class AmountKernel {
+    /**
+     * Getter used for obtaining the kernel selected for this runtime
+     * @return the kernel
+     */
+    public static AmountKernel getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Getter used for obtaining the scalar kernel, which is always available
+     * @return the scalar kernel
+     */
+    public static AmountKernel scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * Getter used for obtaining the name of the kernel
+     * @return the name, e.g. scalar
+     */
+    public abstract String getName();
+
+    /**
+     * Aggregates the amounts of a range of rows by direction, into the aggregates given by the caller
+     * @param columns the buffer holding the columns
+     * @param amountColumn the offset in bytes of the amount column
+     * @param directionColumn the offset in bytes of the direction column
+     * @param from the first row (inclusive)
+     * @param to the last row (exclusive)
+     * @param counts the row counts, per direction ordinal
+     * @param sums the sums, per direction ordinal, which wrap around beyond the range of a long (the count, minimum
+     *             and maximum tell when that may have happened)
+     * @param mins the minimums, per direction ordinal, initially Long.MAX_VALUE for no row
+     * @param maxs the maximums, per direction ordinal, initially Long.MIN_VALUE for no row
+     */
+    public abstract void aggregate(ByteBuffer columns, int amountColumn, int directionColumn, int from, int to,
+                                   long[] counts, long[] sums, long[] mins, long[] maxs);
+
+    /**
+     * Aggregates a range of rows one at a time, e.g. the rows left over by a SIMD loop
+     */
+    protected static void aggregateRows(ByteBuffer columns, int amountColumn, int directionColumn, int from, int to,
+                                        long[] counts, long[] sums, long[] mins, long[] maxs) {
+        for (int row = from; row < to; row++) {
+            long amount = columns.getLong(amountColumn + 8 * row);
+            int direction = columns.get(directionColumn + row);
+            counts[direction]++;
+            sums[direction] += amount;
+            mins[direction] = Math.min(mins[direction], amount);
+            maxs[direction] = Math.max(maxs[direction], amount);
+        }
+    }
+
+    /**
+     * Selects the SIMD kernel if it can be loaded and gives the same results as the scalar one on a sample
+     */
+    private static AmountKernel select() {
+        if ("scalar".equals(System.getProperty("jpmc.kernel")) ||
+                !ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return SCALAR;
+        }
+
+        try {
+            AmountKernel kernel = (AmountKernel) Class.forName("Helpers.VectorAmountKernel")
+                    .getDeclaredConstructor()
+                    .newInstance();
+            return SCALAR.sameResults(kernel) ? kernel : SCALAR;
+        }
+        catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+            // the implementation is not on the class path or was compiled against another version of the API
+            return SCALAR;
+        }
+    }
+
+    /**
+     * Checks that another kernel gives the same results as this one over a sample of rows
+     */
+    private boolean sameResults(AmountKernel other) {
+        int rowCount = 67;
+        ByteBuffer columns = ByteBuffer.allocate(9 * rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            columns.putLong(8 * row, (row * 0x9E3779B97F4A7C15L) >> 20);
+            columns.put(8 * rowCount + row, (byte) ((row * 7 >> 2) & 1));
+        }
+
+        long[][] expected = aggregates();
+        long[][] actual = aggregates();
+        aggregate(columns, 0, 8 * rowCount, 3, rowCount, expected[0], expected[1], expected[2], expected[3]);
+        other.aggregate(columns, 0, 8 * rowCount, 3, rowCount, actual[0], actual[1], actual[2], actual[3]);
+        return Arrays.deepEquals(expected, actual);
+    }
+
+    private static long[][] aggregates() {
+        long[][] aggregates = new long[4][2];
+        Arrays.fill(aggregates[2], Long.MAX_VALUE);
+        Arrays.fill(aggregates[3], Long.MIN_VALUE);
+        return aggregates;
+    }
+
+    /**
+     * Internal class aggregating the rows one at a time
+     */
+    private static final class Scalar extends AmountKernel {
+        @Override
+        public String getName() {
+            return "scalar";
+        }
+
+        @Override
+        public void aggregate(ByteBuffer columns, int amountColumn, int directionColumn, int from, int to,
+                              long[] counts, long[] sums, long[] mins, long[] maxs) {
+            aggregateRows(columns, amountColumn, directionColumn, from, to, counts, sums, mins, maxs);
+        }
+    }
+
+    private static final AmountKernel SCALAR = new Scalar();
+    private static final AmountKernel INSTANCE = select();
+}
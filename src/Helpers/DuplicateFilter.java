@@ -0,0 +1,285 @@
+package Helpers;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class used for dropping instructions which were already seen (e.g. replayed by a gateway after a reconnect)
+ *
+ * Every instruction is reduced to a 64 bit key. The keys of the last expectedInstructions accepted instructions are
+ * kept in a fixed size window (a ring of keys indexed by an open addressing table), the oldest key being forgotten
+ * when a new one is accepted. A Bloom filter answers most lookups for new instructions without touching the window,
+ * which is only probed when the Bloom filter reports a possible duplicate.
+ *
+ * An instruction is dropped when its key is in the window, so:
+ * - a replay is dropped as long as fewer than expectedInstructions distinct instructions were accepted since the
+ *   original one, which covers the replays of a gateway reconnect; an older repeat is accepted again
+ * - two distinct instructions are only confused if their 64 bit keys collide within the window, with a probability
+ *   of about (expectedInstructions^2 / 2^65), i.e. under 10^-7 for a window of one million instructions
+ * Note: No instruction text is retained, the memory used is fixed: the Bloom filter plus about 24 bytes per
+ * instruction of the window. As the Bloom filter does not forget, it fills up once far more instructions than
+ * expectedInstructions were seen, after which more lookups probe the window, with the same results
+ */
+public final class DuplicateFilter {
+    /**
+     * Constructor using the hash of the normalized instruction as key
+     * @param expectedInstructions the number of recent distinct instructions whose repeats are dropped
+     * @param falsePositiveRate the desired false positive rate of the Bloom filter (e.g. 0.01)
+     */
+    public DuplicateFilter(int expectedInstructions, double falsePositiveRate) {
+        this(expectedInstructions, falsePositiveRate, DuplicateFilter::normalizedHash);
+    }
+
+    /**
+     * Constructor
+     * @param expectedInstructions the number of recent distinct instructions whose repeats are dropped
+     * @param falsePositiveRate the desired false positive rate of the Bloom filter (e.g. 0.01)
+     * @param keyFunction the function computing the 64 bit key of an instruction line
+     */
+    public DuplicateFilter(int expectedInstructions, double falsePositiveRate, ToLongFunction<String> keyFunction) {
+        if (expectedInstructions <= 0 || expectedInstructions > MAX_RECENT_KEYS) {
+            throw new IllegalArgumentException("expectedInstructions");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate");
+        }
+        if (keyFunction == null) {
+            throw new IllegalArgumentException("keyFunction");
+        }
+
+        this.keyFunction = keyFunction;
+
+        // optimal Bloom filter size and number of hash functions, with the size rounded up to a power of two
+        double bits = -expectedInstructions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        int words = Integer.highestOneBit((int) Math.min(Integer.MAX_VALUE / 2, Math.ceil(bits / 64)) * 2 - 1);
+        bloom = new long[Math.max(words, 1)];
+        bloomMask = (long) bloom.length * 64 - 1;
+        hashCount = Math.max(1, (int) Math.round(bits / expectedInstructions * Math.log(2)));
+
+        recent = new long[expectedInstructions];
+        keys = new long[tableSizeFor(expectedInstructions)];
+    }
+
+    /**
+     * Checks an instruction, remembering it if it was not seen before
+     * @param line the instruction line
+     * @return true if the instruction is new; false if it is a duplicate and should be dropped
+     */
+    public boolean accept(String line) {
+        if (line == null) {
+            throw new IllegalArgumentException("line");
+        }
+
+        long key = keyFunction.applyAsLong(line);
+        if (mightContain(key) && containsKey(key)) {
+            duplicateCount++;
+            return false;
+        }
+
+        addToBloom(key);
+        if (recentCount == recent.length) {
+            removeKey(recent[recentNext]);
+        }
+        else {
+            recentCount++;
+        }
+        recent[recentNext] = key;
+        recentNext = recentNext + 1 == recent.length ? 0 : recentNext + 1;
+        addKey(key);
+        acceptedCount++;
+        return true;
+    }
+
+    /**
+     * Getter used for obtaining the number of discarded duplicates
+     * @return the number of instructions rejected as duplicates
+     */
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * Getter used for obtaining the number of distinct instructions seen
+     * @return the number of accepted instructions
+     */
+    public long getDistinctCount() {
+        return acceptedCount;
+    }
+
+    /**
+     * Computes the default instruction key: a 64 bit hash of the instruction with the numeric fields trimmed and the
+     * redundant trailing zeros of their decimals removed (so "0.50" and "0.5" are equal)
+     * Note: The other fields, e.g. the entity and the currency, are hashed verbatim since the report tells apart the
+     * entities which only differ by letter case or whitespace
+     * Note: Does not allocate
+     * @param line the instruction line
+     * @return the key of the instruction
+     */
+    public static long normalizedHash(String line) {
+        long hash = FNV_OFFSET;
+        int length = line.length();
+        int fieldStart = 0;
+
+        while (fieldStart <= length) {
+            int fieldEnd = line.indexOf(',', fieldStart);
+            if (fieldEnd < 0) {
+                fieldEnd = length;
+            }
+
+            int start = fieldStart;
+            int end = fieldEnd;
+            while (start < end && Character.isWhitespace(line.charAt(start))) {
+                start++;
+            }
+            while (end > start && Character.isWhitespace(line.charAt(end - 1))) {
+                end--;
+            }
+            if (start < end && isNumeric(line, start, end)) {
+                if (line.lastIndexOf('.', end - 1) >= start) {
+                    while (line.charAt(end - 1) == '0') {
+                        end--;
+                    }
+                    if (line.charAt(end - 1) == '.') {
+                        end--;
+                    }
+                }
+            }
+            else {
+                start = fieldStart;
+                end = fieldEnd;
+            }
+
+            for (int i = start; i < end; i++) {
+                hash = (hash ^ line.charAt(i)) * FNV_PRIME;
+            }
+            // field separator, so that moving characters between fields changes the key
+            hash = (hash ^ ',') * FNV_PRIME;
+
+            fieldStart = fieldEnd + 1;
+        }
+
+        return mix(hash);
+    }
+
+    private static boolean isNumeric(String line, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if ((c < '0' || c > '9') && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean mightContain(long key) {
+        long h1 = key;
+        long h2 = mix(key) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = (h1 + i * h2) & bloomMask;
+            if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addToBloom(long key) {
+        long h1 = key;
+        long h2 = mix(key) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = (h1 + i * h2) & bloomMask;
+            bloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private boolean containsKey(long key) {
+        if (key == 0) {
+            return hasZeroKey;
+        }
+
+        int mask = keys.length - 1;
+        for (int slot = (int) mix(key) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addKey(long key) {
+        // 0 marks an empty slot, so it is tracked separately
+        if (key == 0) {
+            hasZeroKey = true;
+            return;
+        }
+
+        int mask = keys.length - 1;
+        int slot = (int) mix(key) & mask;
+        while (keys[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+    }
+
+    /**
+     * Removes a key of the table, moving back the following keys of its cluster so that they are still found
+     */
+    private void removeKey(long key) {
+        if (key == 0) {
+            hasZeroKey = false;
+            return;
+        }
+
+        int mask = keys.length - 1;
+        int hole = (int) mix(key) & mask;
+        while (keys[hole] != key) {
+            hole = (hole + 1) & mask;
+        }
+        for (int slot = (hole + 1) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+            int home = (int) mix(keys[slot]) & mask;
+            // the key may fill the hole unless its home slot lies after the hole
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                keys[hole] = keys[slot];
+                hole = slot;
+            }
+        }
+        keys[hole] = 0;
+    }
+
+    private static int tableSizeFor(int expected) {
+        // the window never fills more than 3/4 of the table
+        return (int) Long.highestOneBit(Math.max(16L, expected * 4L / 3 + 1) * 2 - 1);
+    }
+
+    /**
+     * Finalizer of the 64 bit MurmurHash3, spreading the bits of a key
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int MAX_RECENT_KEYS = 1 << 28;
+
+    private final ToLongFunction<String> keyFunction;
+    private final long[] bloom;
+    private final long bloomMask;
+    private final int hashCount;
+
+    // the keys of the window, in the order they were accepted, and the table indexing them
+    private final long[] recent;
+    private final long[] keys;
+    private int recentNext = 0;
+    private int recentCount = 0;
+    private boolean hasZeroKey = false;
+    private long acceptedCount = 0;
+    private long duplicateCount = 0;
+}
@@ -0,0 +1,380 @@
+package Helpers;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class used for generating a synthetic feed of instructions, in the input format of {@link ParsingUtil}
+ *
+ * The feed is fully determined by the seed and the configuration, so the same lines are produced every time it is
+ * written or read. The entity popularity follows a Zipf distribution (entity1 being the most popular), sampled by
+ * rejection-inversion so that no memory is needed per entity. The lines are built directly into a character buffer,
+ * without any per line allocation, so the feed is produced much faster than it can be ingested.
+ */
+public final class FeedGenerator {
+    /**
+     * Constructor for a feed with the default configuration: uniformly popular entities, a mix of currencies with
+     * Monday to Friday and Sunday to Thursday work weeks, a year of desired settlement dates starting with 2016 and
+     * no malformed lines
+     * @param seed the seed of the random generator
+     * @param lineCount the number of lines in the feed
+     * @param entityCount the number of distinct entities
+     */
+    public FeedGenerator(long seed, long lineCount, int entityCount) {
+        if (lineCount < 0) {
+            throw new IllegalArgumentException("lineCount");
+        }
+        if (entityCount <= 0) {
+            throw new IllegalArgumentException("entityCount");
+        }
+
+        this.seed = seed;
+        this.lineCount = lineCount;
+        this.entityCount = entityCount;
+
+        Map<String, Double> currencyMix = new LinkedHashMap<>();
+        currencyMix.put("USD", 0.30);
+        currencyMix.put("EUR", 0.20);
+        currencyMix.put("GBP", 0.15);
+        currencyMix.put("SGP", 0.15);
+        currencyMix.put("AED", 0.10);
+        currencyMix.put("SAR", 0.10);
+        setCurrencyMix(currencyMix);
+        setDateRange(LocalDate.of(2016, 1, 1), 365);
+    }
+
+    /**
+     * Sets how skewed the popularity of the entities is
+     * @param exponent the exponent of the Zipf distribution (0 for uniform, around 1 for a typical skew)
+     */
+    public void setZipfExponent(double exponent) {
+        if (exponent < 0 || Double.isNaN(exponent) || Double.isInfinite(exponent)) {
+            throw new IllegalArgumentException("exponent");
+        }
+
+        zipfExponent = exponent;
+        if (exponent > 0) {
+            hIntegralX1 = hIntegral(1.5) - 1;
+            hIntegralNumberOfElements = hIntegral(entityCount + 0.5);
+            zipfShift = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+        }
+    }
+
+    /**
+     * Sets the currencies of the instructions
+     * @param weights the relative weight of each currency code
+     */
+    public void setCurrencyMix(Map<String, Double> weights) {
+        if (weights == null || weights.isEmpty()) {
+            throw new IllegalArgumentException("weights");
+        }
+
+        char[][] codes = new char[weights.size()][];
+        double[] cumulative = new double[weights.size()];
+        double total = 0;
+        int i = 0;
+
+        for (Map.Entry<String, Double> currency : weights.entrySet()) {
+            if (currency.getKey() == null || currency.getKey().isEmpty() || currency.getKey().length() > MAX_CURRENCY_LENGTH ||
+                    currency.getKey().indexOf(',') >= 0 || currency.getKey().indexOf('\n') >= 0) {
+                throw new IllegalArgumentException("weights");
+            }
+            if (currency.getValue() == null || !(currency.getValue() >= 0) || Double.isInfinite(currency.getValue())) {
+                throw new IllegalArgumentException("weights");
+            }
+
+            total += currency.getValue();
+            codes[i] = currency.getKey().toCharArray();
+            cumulative[i++] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("weights");
+        }
+
+        for (i = 0; i < cumulative.length; i++) {
+            cumulative[i] /= total;
+        }
+        currencyCodes = codes;
+        currencyCumulativeWeights = cumulative;
+    }
+
+    /**
+     * Sets the range of the desired settlement dates
+     * Note: The instruction date precedes the desired settlement date by up to 3 days
+     * @param firstDay the first desired settlement date
+     * @param dayCount the number of distinct desired settlement dates
+     */
+    public void setDateRange(LocalDate firstDay, int dayCount) {
+        if (firstDay == null) {
+            throw new IllegalArgumentException("firstDay");
+        }
+        if (dayCount <= 0 || dayCount > MAX_DAY_COUNT) {
+            throw new IllegalArgumentException("dayCount");
+        }
+
+        // every date is formatted once, the lines only copy the characters
+        char[][] dates = new char[dayCount + MAX_INSTRUCTION_LEAD][];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = ParsingUtil.dateFormat.format(firstDay.plusDays(i - MAX_INSTRUCTION_LEAD)).toCharArray();
+        }
+        formattedDates = dates;
+        this.dayCount = dayCount;
+    }
+
+    /**
+     * Sets the fraction of lines which cannot be parsed into a transaction
+     * @param ratio the fraction of malformed lines, between 0 and 1
+     */
+    public void setMalformedRatio(double ratio) {
+        if (!(ratio >= 0 && ratio <= 1)) {
+            throw new IllegalArgumentException("ratio");
+        }
+        malformedRatio = ratio;
+    }
+
+    /**
+     * Writes the whole feed
+     * @param destination the writer receiving the lines, each one terminated by a line separator
+     * @throws IOException if the writer fails
+     */
+    public void writeTo(Writer destination) throws IOException {
+        if (destination == null) {
+            throw new IllegalArgumentException("destination");
+        }
+
+        Generation generation = new Generation();
+        char[] buffer = new char[BUFFER_SIZE];
+        int length;
+        while ((length = generation.fill(buffer, 0, buffer.length)) > 0) {
+            destination.write(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Writes the whole feed to a file
+     * @param file the destination file, which is replaced if it exists
+     * @throws IOException if the file could not be written
+     */
+    public void writeTo(Path file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file");
+        }
+
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeTo(writer);
+        }
+    }
+
+    /**
+     * Opens a reader producing the feed on demand, so that arbitrarily large feeds never need to be stored
+     * @return the reader of the feed
+     */
+    public Reader openReader() {
+        return new Reader() {
+            @Override
+            public int read(char[] destination, int offset, int length) {
+                if (offset < 0 || length < 0 || offset + length > destination.length) {
+                    throw new IndexOutOfBoundsException();
+                }
+                if (length == 0) {
+                    return 0;
+                }
+
+                if (position == limit) {
+                    position = 0;
+                    limit = generation.fill(buffer, 0, buffer.length);
+                    if (limit == 0) {
+                        return -1;
+                    }
+                }
+
+                int count = Math.min(length, limit - position);
+                System.arraycopy(buffer, position, destination, offset, count);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+
+            private final Generation generation = new Generation();
+            private final char[] buffer = new char[BUFFER_SIZE];
+            private int position = 0;
+            private int limit = 0;
+        };
+    }
+
+    /**
+     * Class holding the progress of a single pass over the feed
+     */
+    private final class Generation {
+        /**
+         * Generates as many whole lines as fit in the destination
+         * @return the number of characters written or 0 if the feed is exhausted
+         */
+        int fill(char[] destination, int offset, int length) {
+            int position = offset;
+            int end = offset + length;
+
+            while (generatedLines < lineCount && end - position >= MAX_LINE_LENGTH) {
+                position = malformedRatio > 0 && random.nextDouble() < malformedRatio ?
+                        appendMalformed(destination, position) :
+                        appendInstruction(destination, position);
+                destination[position++] = '\n';
+                generatedLines++;
+            }
+            return position - offset;
+        }
+
+        private int appendInstruction(char[] destination, int position) {
+            position = append(destination, position, ENTITY_PREFIX);
+            position = appendLong(destination, position, nextEntity());
+            destination[position++] = ',';
+
+            destination[position++] = random.nextBoolean() ? 'B' : 'S';
+            destination[position++] = ',';
+
+            // agreed fx between 0.01 and 2.00
+            position = appendHundredths(destination, position, 1 + random.nextInt(200));
+            destination[position++] = ',';
+
+            position = append(destination, position, nextCurrency());
+            destination[position++] = ',';
+
+            int settlementDay = MAX_INSTRUCTION_LEAD + random.nextInt(dayCount);
+            position = append(destination, position, formattedDates[settlementDay - random.nextInt(MAX_INSTRUCTION_LEAD + 1)]);
+            destination[position++] = ',';
+            position = append(destination, position, formattedDates[settlementDay]);
+            destination[position++] = ',';
+
+            position = appendLong(destination, position, 1 + random.nextInt(1000));
+            destination[position++] = ',';
+
+            // price per unit between 0.01 and 500.00
+            return appendHundredths(destination, position, 1 + random.nextInt(50000));
+        }
+
+        private int appendMalformed(char[] destination, int position) {
+            return append(destination, position, MALFORMED_LINES[random.nextInt(MALFORMED_LINES.length)]);
+        }
+
+        private long nextEntity() {
+            if (zipfExponent == 0) {
+                return 1 + random.nextInt(entityCount);
+            }
+
+            // rejection-inversion sampling (Hormann and Derflinger)
+            while (true) {
+                double u = hIntegralNumberOfElements + random.nextDouble() * (hIntegralX1 - hIntegralNumberOfElements);
+                double x = hIntegralInverse(u);
+                long k = Math.max(1, Math.min(entityCount, (long) (x + 0.5)));
+                if (k - x <= zipfShift || u >= hIntegral(k + 0.5) - h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        private char[] nextCurrency() {
+            double u = random.nextDouble();
+            for (int i = 0; i < currencyCumulativeWeights.length - 1; i++) {
+                if (u < currencyCumulativeWeights[i]) {
+                    return currencyCodes[i];
+                }
+            }
+            return currencyCodes[currencyCodes.length - 1];
+        }
+
+        private final SplittableRandom random = new SplittableRandom(seed);
+        private long generatedLines = 0;
+    }
+
+    private static int append(char[] destination, int position, char[] characters) {
+        System.arraycopy(characters, 0, destination, position, characters.length);
+        return position + characters.length;
+    }
+
+    private static int appendLong(char[] destination, int position, long value) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            destination[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return position + digits;
+    }
+
+    private static int appendHundredths(char[] destination, int position, int hundredths) {
+        position = appendLong(destination, position, hundredths / 100);
+        destination[position++] = '.';
+        destination[position++] = (char) ('0' + hundredths / 10 % 10);
+        destination[position++] = (char) ('0' + hundredths % 10);
+        return position;
+    }
+
+    private double h(double x) {
+        return Math.exp(-zipfExponent * Math.log(x));
+    }
+
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return expm1OverX((1 - zipfExponent) * logX) * logX;
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = Math.max(-1, x * (1 - zipfExponent));
+        return Math.exp(log1pOverX(t) * x);
+    }
+
+    private static double log1pOverX(double x) {
+        return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1 / 3.0 - 0.25 * x));
+    }
+
+    private static double expm1OverX(double x) {
+        return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_CURRENCY_LENGTH = 16;
+    private static final int MAX_INSTRUCTION_LEAD = 3;
+    private static final int MAX_DAY_COUNT = 100 * 366;
+    // entity (6 + 10 digits), direction, fx, currency, two dates, units, price, separators and line separator
+    private static final int MAX_LINE_LENGTH = 16 + 1 + 4 + MAX_CURRENCY_LENGTH + 11 + 11 + 4 + 6 + 8;
+    private static final char[] ENTITY_PREFIX = "entity".toCharArray();
+    private static final char[][] MALFORMED_LINES = {
+            "garbage".toCharArray(),
+            "foo,X,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25".toCharArray(),
+            "foo,B,zero,SGP,01 Jan 2016,02 Jan 2016,200,100.25".toCharArray(),
+            "foo,B,0.50,SGP,01 Jan 2016,32 Jan 2016,200,100.25".toCharArray(),
+            "foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200".toCharArray()
+    };
+
+    private final long seed;
+    private final long lineCount;
+    private final int entityCount;
+
+    private double zipfExponent = 0;
+    private double hIntegralX1;
+    private double hIntegralNumberOfElements;
+    private double zipfShift;
+
+    private char[][] currencyCodes;
+    private double[] currencyCumulativeWeights;
+    private char[][] formattedDates;
+    private int dayCount;
+    private double malformedRatio = 0;
+}
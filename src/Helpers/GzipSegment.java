@@ -0,0 +1,401 @@
+package Helpers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Part of a gzip file made of several members (e.g. concatenated daily archives or the output of pigz/bgzip), which
+ * can be decompressed and aggregated independently of the other parts
+ *
+ * A gzip file is split at the headers found right after evenly spaced offsets. Such a header may also be a false
+ * match inside compressed data, so the decoding of a segment goes on past the end of the segment, member by member,
+ * until a member ends exactly on a split offset (or at the end of the file), every member being checked against its
+ * CRC32 and size. Starting from the first segment, the segment to be used next is the one starting where the previous
+ * one ended, and the segments in between are dropped: a segment starting at a false header either fails to decode or
+ * is never used.
+ *
+ * The lines of a segment are aggregated into a {@link PartialAggregation}, except for the bytes before its first and
+ * after its last line feed, which continue lines of the neighbouring segments and are kept to be joined with them.
+ * Note: An instance is not thread safe, each segment is decoded by a single thread
+ */
+public final class GzipSegment {
+    /**
+     * Checks whether a file starts with the gzip magic bytes
+     * @param file the file
+     * @return true if the file is gzip compressed
+     * @throws IOException if the file could not be read
+     */
+    public static boolean isGzip(Path file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file");
+        }
+
+        try (InputStream input = Files.newInputStream(file)) {
+            return input.read() == ID1 && input.read() == ID2;
+        }
+    }
+
+    /**
+     * Splits a gzip file into segments starting at member headers
+     * Note: Only a small window after each split offset is searched for a header, so a file made of members larger
+     * than that window (e.g. a single member) gives fewer segments
+     * @param file the gzip file
+     * @param segmentCount the desired number of segments, which are at least as large as the scan window
+     * @return the segments in file order, the first one starting at the beginning of the file
+     * @throws IOException if the file could not be read
+     */
+    public static List<GzipSegment> split(Path file, int segmentCount) throws IOException {
+        return split(file, segmentCount, false);
+    }
+
+    /**
+     * Splits a gzip file into segments starting at member headers, as {@link #split(Path, int)} does
+     * @param file the gzip file
+     * @param segmentCount the desired number of segments
+     * @param totalsOnly whether the aggregations of the segments only keep the totals of the entities
+     * @return the segments in file order, the first one starting at the beginning of the file
+     * @throws IOException if the file could not be read
+     */
+    public static List<GzipSegment> split(Path file, int segmentCount, boolean totalsOnly) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file");
+        }
+        if (segmentCount <= 0) {
+            throw new IllegalArgumentException("segmentCount");
+        }
+
+        List<Long> starts = new ArrayList<>();
+        starts.add(0L);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int count = (int) Math.max(1, Math.min(segmentCount, size / SCAN_WINDOW));
+            ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW + HEADER_SIZE);
+
+            for (int i = 1; i < count; i++) {
+                long offset = Math.max(size / count * i, starts.get(starts.size() - 1) + 1);
+                long header = findHeader(channel, offset, window);
+                if (header >= 0) {
+                    starts.add(header);
+                }
+            }
+        }
+
+        long[] boundaries = new long[starts.size()];
+        for (int i = 0; i < boundaries.length; i++) {
+            boundaries[i] = starts.get(i);
+        }
+
+        List<GzipSegment> segments = new ArrayList<>();
+        for (long start : boundaries) {
+            segments.add(new GzipSegment(file, start, boundaries, totalsOnly));
+        }
+        return segments;
+    }
+
+    /**
+     * Decompresses the members of the segment, aggregating their lines
+     * @return this segment
+     * @throws IOException if the file could not be read or a member is corrupted (including a false member header)
+     */
+    public GzipSegment decode() throws IOException {
+        Inflater inflater = new Inflater(true);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            this.channel = channel;
+            inputOffset = start;
+            long fileSize = channel.size();
+
+            while (true) {
+                readMember(inflater);
+                end = position();
+                if (end >= fileSize || Arrays.binarySearch(boundaries, end) >= 0) {
+                    break;
+                }
+                // trailing bytes which are not a member are ignored, as GZIPInputStream does
+                if (!fill(2) || (input[inputPosition] & 0xFF) != ID1 || (input[inputPosition + 1] & 0xFF) != ID2) {
+                    end = fileSize;
+                    break;
+                }
+            }
+        }
+        finally {
+            inflater.end();
+            channel = null;
+        }
+
+        if (newlineSeen) {
+            tail = Arrays.copyOf(pending, pendingLength);
+        }
+        return this;
+    }
+
+    /**
+     * Getter used for obtaining the offset of the first member of the segment
+     * @return the offset in the file
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Getter used for obtaining the offset right after the last decoded member, which is where the next segment to
+     * be used starts
+     * @return the offset in the file, once decoded
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Getter used for obtaining the bytes before the first line feed, which end the last line of the previous
+     * segment (or are the first line of the file)
+     * @return the bytes up to and including the first line feed or all the bytes if there is no line feed
+     */
+    public byte[] getHead() {
+        return head.toByteArray();
+    }
+
+    /**
+     * Getter used for obtaining the bytes after the last line feed, which start the first line of the next segment
+     * @return the bytes after the last line feed or null if there is no line feed in the segment
+     */
+    public byte[] getTail() {
+        return tail;
+    }
+
+    /**
+     * Getter used for obtaining the aggregation of the lines in between the first and the last line feed
+     * @return the partial aggregation
+     */
+    public PartialAggregation getAggregation() {
+        return aggregation;
+    }
+
+    private GzipSegment(Path file, long start, long[] boundaries, boolean totalsOnly) {
+        this.file = file;
+        this.start = start;
+        this.boundaries = boundaries;
+        this.aggregation = new PartialAggregation(totalsOnly);
+    }
+
+    /**
+     * Searches the first header after an offset, within the scan window
+     * @return the offset of the header or -1 if none was found
+     */
+    private static long findHeader(FileChannel channel, long offset, ByteBuffer window) throws IOException {
+        window.clear();
+        while (window.hasRemaining() && channel.read(window, offset + window.position()) > 0) {
+            // keep reading until the window is full or the file ends
+        }
+
+        byte[] bytes = window.array();
+        for (int i = 0; i + HEADER_SIZE <= window.position(); i++) {
+            // ID1, ID2, deflate, no reserved flag and a known operating system
+            if ((bytes[i] & 0xFF) == ID1 && (bytes[i + 1] & 0xFF) == ID2 && bytes[i + 2] == CM_DEFLATE &&
+                    (bytes[i + 3] & FRESERVED) == 0 && ((bytes[i + 9] & 0xFF) <= 13 || (bytes[i + 9] & 0xFF) == 255)) {
+                return offset + i;
+            }
+        }
+        return -1;
+    }
+
+    private void readMember(Inflater inflater) throws IOException {
+        long memberStart = position();
+        if (readByte() != ID1 || readByte() != ID2) {
+            throw new ZipException("Not in gzip format at " + memberStart);
+        }
+        if (readByte() != CM_DEFLATE) {
+            throw new ZipException("Unsupported compression method at " + memberStart);
+        }
+        int flags = readByte();
+        if ((flags & FRESERVED) != 0) {
+            throw new ZipException("Reserved flags set at " + memberStart);
+        }
+        // modification time, extra flags and operating system
+        skip(6);
+        if ((flags & FEXTRA) != 0) {
+            skip(readByte() | readByte() << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            while (readByte() != 0) {
+                // the original file name is not needed
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (readByte() != 0) {
+                // neither is the comment
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            skip(2);
+        }
+
+        inflater.reset();
+        crc.reset();
+        long size = 0;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (!fill(1)) {
+                        throw new EOFException("Truncated gzip member at " + memberStart);
+                    }
+                    inflater.setInput(input, inputPosition, inputLimit - inputPosition);
+                    inputPosition = inputLimit;
+                }
+                int inflated = inflater.inflate(output);
+                if (inflated > 0) {
+                    crc.update(output, 0, inflated);
+                    size += inflated;
+                    addOutput(inflated);
+                }
+                else if (inflater.needsDictionary()) {
+                    throw new ZipException("Preset dictionary in gzip member at " + memberStart);
+                }
+            }
+        }
+        catch (DataFormatException e) {
+            throw new ZipException("Corrupted gzip member at " + memberStart + ": " + e.getMessage());
+        }
+        inputPosition = inputLimit - inflater.getRemaining();
+
+        if (readInt() != (int) crc.getValue() || readInt() != (int) size) {
+            throw new ZipException("Corrupted gzip member at " + memberStart + ": CRC or size mismatch");
+        }
+    }
+
+    /**
+     * Splits the inflated bytes into the head, the whole lines given to the aggregation and the pending bytes
+     */
+    private void addOutput(int length) throws IOException {
+        int from = 0;
+        if (!newlineSeen) {
+            int newline = 0;
+            while (newline < length && output[newline] != '\n') {
+                newline++;
+            }
+            if (newline == length) {
+                head.write(output, 0, length);
+                checkLineLength(head.size());
+                return;
+            }
+            head.write(output, 0, newline + 1);
+            newlineSeen = true;
+            from = newline + 1;
+        }
+
+        System.arraycopy(output, from, pending, pendingLength, length - from);
+        pendingLength += length - from;
+
+        int lastLineEnd = pendingLength - 1;
+        while (lastLineEnd >= 0 && pending[lastLineEnd] != '\n') {
+            lastLineEnd--;
+        }
+        if (lastLineEnd >= 0) {
+            // a line feed byte is never part of a multi-byte UTF-8 character, so whole lines decode on their own
+            aggregation.ingestLines(new String(pending, 0, lastLineEnd + 1, StandardCharsets.UTF_8));
+            pendingLength -= lastLineEnd + 1;
+            System.arraycopy(pending, lastLineEnd + 1, pending, 0, pendingLength);
+        }
+        checkLineLength(pendingLength);
+    }
+
+    private void checkLineLength(int length) throws IOException {
+        if (length > MAX_LINE_LENGTH) {
+            throw new IOException("Line longer than " + MAX_LINE_LENGTH + " bytes in " + file);
+        }
+    }
+
+    private long position() {
+        return inputOffset + inputPosition;
+    }
+
+    private int readByte() throws IOException {
+        if (!fill(1)) {
+            throw new EOFException("Truncated gzip member in " + file);
+        }
+        return input[inputPosition++] & 0xFF;
+    }
+
+    private int readInt() throws IOException {
+        return readByte() | readByte() << 8 | readByte() << 16 | readByte() << 24;
+    }
+
+    private void skip(int bytes) throws IOException {
+        for (int i = 0; i < bytes; i++) {
+            readByte();
+        }
+    }
+
+    /**
+     * Makes sure some unread bytes are buffered, reading more of the file if needed
+     * @return false if the file ends before
+     */
+    private boolean fill(int bytes) throws IOException {
+        while (inputLimit - inputPosition < bytes) {
+            if (inputPosition > 0) {
+                System.arraycopy(input, inputPosition, input, 0, inputLimit - inputPosition);
+                inputOffset += inputPosition;
+                inputLimit -= inputPosition;
+                inputPosition = 0;
+            }
+
+            int read = channel.read(ByteBuffer.wrap(input, inputLimit, input.length - inputLimit),
+                    inputOffset + inputLimit);
+            if (read <= 0) {
+                return false;
+            }
+            inputLimit += read;
+        }
+        return true;
+    }
+
+    private static final int ID1 = 0x1F;
+    private static final int ID2 = 0x8B;
+    private static final int CM_DEFLATE = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int FRESERVED = 0xE0;
+    private static final int HEADER_SIZE = 10;
+    private static final int SCAN_WINDOW = 256 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_LINE_LENGTH = 1 << 20;
+
+    private final Path file;
+    private final long start;
+    // the offsets where the segments start, a decoded segment ends on one of them or at the end of the file
+    private final long[] boundaries;
+    private final PartialAggregation aggregation;
+    private final ByteArrayOutputStream head = new ByteArrayOutputStream();
+    private final byte[] input = new byte[BUFFER_SIZE];
+    private final byte[] output = new byte[BUFFER_SIZE];
+    private final byte[] pending = new byte[BUFFER_SIZE + MAX_LINE_LENGTH];
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel = null;
+    // offset in the file of the first buffered byte
+    private long inputOffset = 0;
+    private int inputPosition = 0;
+    private int inputLimit = 0;
+    private int pendingLength = 0;
+    private boolean newlineSeen = false;
+    private long end = -1;
+    private byte[] tail = null;
+}
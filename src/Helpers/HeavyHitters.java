@@ -0,0 +1,209 @@
+package Helpers;
+
+import Components.RankingEntry;
+
+import java.util.*;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class keeping the approximate totals of the largest keys of a weighted stream in fixed memory (weighted
+ * Space-Saving), used for ranking entities when there are too many of them to be kept individually
+ *
+ * A fixed number of counters is monitored. The amount of a monitored key is added to its counter; an unmonitored key
+ * takes over the counter with the smallest total, inheriting that total as its error. Every counter therefore
+ * overestimates its key by at most its error, and any key whose total exceeds (total amount / capacity) is monitored.
+ * The counters are kept in a binary min-heap, so an update costs O(log capacity) and no allocation once a key is
+ * monitored. Retracted amounts are subtracted from the counter of their key when it is monitored, which keeps both
+ * bounds valid.
+ */
+public final class HeavyHitters {
+    /**
+     * Constructor
+     * @param capacity the number of monitored keys, each one taking about 100 bytes
+     */
+    public HeavyHitters(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity");
+        }
+
+        heap = new Counter[capacity];
+        counters = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * Adds an amount to the total of a key
+     * @param key the key
+     * @param amount the amount, which must not be negative
+     */
+    public void add(String key, double amount) {
+        if (key == null) {
+            throw new IllegalArgumentException("key");
+        }
+        if (!(amount >= 0)) {
+            throw new IllegalArgumentException("amount");
+        }
+
+        totalAmount += amount;
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            if (size < heap.length) {
+                // a new leaf may be smaller than its parents
+                counter = new Counter(key, size);
+                heap[size++] = counter;
+                counters.put(key, counter);
+                counter.total += amount;
+                siftUp(counter.index);
+                return;
+            }
+            else {
+                // the key takes over the smallest counter, whose total bounds the total of the key so far
+                counter = heap[0];
+                evictedMaximum = Math.max(evictedMaximum, counter.total);
+                counters.remove(counter.key);
+                counter.key = key;
+                counter.error = counter.total;
+                counters.put(key, counter);
+            }
+        }
+
+        counter.total += amount;
+        siftDown(counter.index);
+    }
+
+    /**
+     * Retracts an amount previously added to the total of a key
+     * @param key the key
+     * @param amount the amount, which must not be negative
+     * @return true if the key is monitored and its total was updated; false otherwise
+     */
+    public boolean remove(String key, double amount) {
+        if (key == null) {
+            throw new IllegalArgumentException("key");
+        }
+        if (!(amount >= 0)) {
+            throw new IllegalArgumentException("amount");
+        }
+
+        totalAmount -= amount;
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            return false;
+        }
+
+        counter.total -= amount;
+        siftUp(counter.index);
+        return true;
+    }
+
+    /**
+     * Getter used for obtaining the keys with the largest estimated totals
+     * The actual total of a key is within [amount - error, amount] of its entry
+     * @param limit the maximum number of entries returned
+     * @return the entries, reverse ordered by their estimated total and then ordered by key
+     */
+    public List<RankingEntry> getTop(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit");
+        }
+
+        List<RankingEntry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new RankingEntry(heap[i].key, heap[i].total, heap[i].error));
+        }
+        entries.sort(Comparator.comparingDouble(RankingEntry::getAmount).reversed()
+                .thenComparing(RankingEntry::getEntityName));
+        return entries.size() > limit ? new ArrayList<>(entries.subList(0, limit)) : entries;
+    }
+
+    /**
+     * Getter used for obtaining the bound of the totals of the keys which are not monitored
+     * @return the largest total a key missing from {@link #getTop(int)} may have, 0 while no key was evicted
+     */
+    public double getErrorBound() {
+        return evictedMaximum;
+    }
+
+    /**
+     * Getter used for obtaining the sum of the amounts added and not retracted
+     * @return the total amount
+     */
+    public double getTotalAmount() {
+        return totalAmount;
+    }
+
+    /**
+     * Getter used for obtaining the number of monitored keys
+     * @return the number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter used for obtaining the maximum number of monitored keys
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return heap.length;
+    }
+
+    private void siftUp(int index) {
+        Counter counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].total <= counter.total) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(int index) {
+        Counter counter = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].total < heap[child].total) {
+                child++;
+            }
+            if (counter.total <= heap[child].total) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    private void place(Counter counter, int index) {
+        heap[index] = counter;
+        counter.index = index;
+    }
+
+    /**
+     * Internal class holding the estimated total of a monitored key and its position in the heap
+     */
+    private static final class Counter {
+        Counter(String key, int index) {
+            this.key = key;
+            this.index = index;
+        }
+
+        private String key;
+        private double total = 0;
+        private double error = 0;
+        private int index;
+    }
+
+    private final Counter[] heap;
+    private final Map<String, Counter> counters;
+    private int size = 0;
+    private double totalAmount = 0;
+    private double evictedMaximum = 0;
+}
@@ -0,0 +1,127 @@
+package Helpers;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class estimating the number of distinct values of a stream in fixed memory (HyperLogLog), e.g. the number of
+ * entities trading on a day
+ *
+ * Each value is hashed to 64 bits: the first p bits select one of 2^p registers, which keeps the largest number of
+ * leading zeros (plus one) seen in the remaining bits. The estimate is the normalized harmonic mean of 2^register,
+ * corrected by linear counting while registers are still empty. The relative standard error is 1.04/sqrt(2^p), i.e.
+ * 1.6% for the default precision 12 and its 4 KB of registers. Sketches of the same precision are merged by keeping
+ * the largest register of each pair.
+ */
+public final class HyperLogLog {
+    /**
+     * Constructor using the default precision
+     */
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Constructor
+     * @param precision the number of bits selecting a register, between 4 and 18
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision");
+        }
+
+        this.precision = precision;
+        registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds a string to the sketch
+     * Note: The hash of the string is derived from {@link String#hashCode()}, which the string caches, so distinct
+     * strings with the same hash code count once
+     * @param value the string
+     */
+    public void add(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value");
+        }
+
+        addHash(mix(value.hashCode()));
+    }
+
+    /**
+     * Adds a value to the sketch by its hash
+     * @param hash the 64 bit hash of the value, whose bits must be uniformly distributed
+     */
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // the bit set below caps the rank for the hashes whose remaining bits are all 0
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Adds the values of another sketch to this one
+     * @param other the sketch to be merged in, of the same precision, which is not modified
+     */
+    public void merge(HyperLogLog other) {
+        if (other == null || other.precision != precision) {
+            throw new IllegalArgumentException("other");
+        }
+
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+        }
+    }
+
+    /**
+     * Estimates the number of distinct values added
+     * @return the estimated count
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += Double.longBitsToDouble((1023L - register) << 52);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        int m = registers.length;
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Getter used for obtaining the relative standard error of the estimates
+     * @return the error, e.g. 0.016 for the default precision
+     */
+    public double getRelativeError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    /**
+     * Spreads the bits of a 32 bit hash code over 64 bits (MurmurHash3 finalizer)
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static final int DEFAULT_PRECISION = 12;
+    private static final int MIN_PRECISION = 4;
+    private static final int MAX_PRECISION = 18;
+
+    private final int precision;
+    private final byte[] registers;
+}
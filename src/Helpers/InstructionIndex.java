@@ -0,0 +1,253 @@
+package Helpers;
+
+import Components.ITransaction;
+import Components.SettledTransaction;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class used for finding the live transaction created by an instruction id
+ *
+ * The ids are stored in a primitive open addressing table (linear probing with backward shift deletion), next to
+ * an array referencing the transactions, so an entry costs about 12 to 16 bytes per slot without any boxing.
+ *
+ * A compact index, used when the report does not keep the entities, keeps only what a retraction needs instead of
+ * the transactions: the entity name, the value and the settlement day with the direction, in primitive columns next
+ * to the ids (about 28 bytes per slot plus the name). The transactions it returns are rebuilt from these columns.
+ */
+public final class InstructionIndex {
+    /**
+     * Constructor
+     * @param expectedInstructions the number of live instructions the index is initially sized for
+     */
+    public InstructionIndex(int expectedInstructions) {
+        this(expectedInstructions, false);
+    }
+
+    /**
+     * Constructor
+     * @param expectedInstructions the number of live instructions the index is initially sized for
+     * @param compact whether only the entity, value, direction and settlement date of the transactions are kept
+     */
+    public InstructionIndex(int expectedInstructions, boolean compact) {
+        if (expectedInstructions < 0) {
+            throw new IllegalArgumentException("expectedInstructions");
+        }
+
+        this.compact = compact;
+        allocate(Integer.highestOneBit(Math.max(16, (int) Math.min(1 << 29, expectedInstructions * 4L / 3)) * 2 - 1));
+    }
+
+    /**
+     * Getter used for obtaining the transaction created by an instruction
+     * @param instructionId the id of the instruction
+     * @return the live transaction or null if the id is not indexed; the currency of a compact index is empty
+     */
+    public ITransaction get(long instructionId) {
+        int slot = find(instructionId);
+        return slot < 0 ? null : load(slot);
+    }
+
+    /**
+     * Checks whether an instruction is live
+     * @param instructionId the id of the instruction
+     * @return true if the id is indexed; false otherwise
+     */
+    public boolean contains(long instructionId) {
+        return find(instructionId) >= 0;
+    }
+
+    /**
+     * Indexes (or re-indexes) the transaction created by an instruction
+     * @param instructionId the id of the instruction, which must not be negative
+     * @param transaction the transaction created by the instruction
+     * @return the previously indexed transaction or null if there was none
+     */
+    public ITransaction put(long instructionId, ITransaction transaction) {
+        if (instructionId < 0) {
+            throw new IllegalArgumentException("instructionId");
+        }
+        if (transaction == null) {
+            throw new IllegalArgumentException("transaction");
+        }
+
+        int mask = ids.length - 1;
+        int slot = slotOf(instructionId, mask);
+        while (ids[slot] != EMPTY) {
+            if (ids[slot] == instructionId) {
+                ITransaction previous = load(slot);
+                store(slot, transaction);
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        ids[slot] = instructionId;
+        store(slot, transaction);
+        if (++size * 4L > ids.length * 3L) {
+            rehash(ids.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Removes an instruction from the index
+     * @param instructionId the id of the instruction
+     * @return the removed transaction or null if the id was not indexed; the currency of a compact index is empty
+     */
+    public ITransaction remove(long instructionId) {
+        int slot = find(instructionId);
+        if (slot < 0) {
+            return null;
+        }
+
+        ITransaction removed = load(slot);
+        deleteSlot(slot);
+        return removed;
+    }
+
+    /**
+     * Getter used for obtaining the number of indexed instructions
+     * @return the number of live instructions
+     */
+    public int size() {
+        return size;
+    }
+
+    private int find(long instructionId) {
+        if (instructionId < 0) {
+            return -1;
+        }
+
+        int mask = ids.length - 1;
+        for (int slot = slotOf(instructionId, mask); ids[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (ids[slot] == instructionId) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Empties a slot, shifting back the entries of the same probe sequence so that no tombstones are needed
+     * @param slot the slot to be emptied
+     */
+    private void deleteSlot(int slot) {
+        int mask = ids.length - 1;
+        int hole = slot;
+
+        for (int next = (hole + 1) & mask; ids[next] != EMPTY; next = (next + 1) & mask) {
+            int home = slotOf(ids[next], mask);
+            // move the entry into the hole unless its home slot lies cyclically in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                ids[hole] = ids[next];
+                moveSlot(next, hole);
+                hole = next;
+            }
+        }
+
+        ids[hole] = EMPTY;
+        if (compact) {
+            entityNames[hole] = null;
+        }
+        else {
+            transactions[hole] = null;
+        }
+        size--;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldIds = ids;
+        ITransaction[] oldTransactions = transactions;
+        String[] oldEntityNames = entityNames;
+        double[] oldUsdValues = usdValues;
+        int[] oldSettlements = settlements;
+        allocate(capacity);
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != EMPTY) {
+                int slot = slotOf(oldIds[i], mask);
+                while (ids[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                ids[slot] = oldIds[i];
+                if (compact) {
+                    entityNames[slot] = oldEntityNames[i];
+                    usdValues[slot] = oldUsdValues[i];
+                    settlements[slot] = oldSettlements[i];
+                }
+                else {
+                    transactions[slot] = oldTransactions[i];
+                }
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        ids = new long[capacity];
+        Arrays.fill(ids, EMPTY);
+        if (compact) {
+            entityNames = new String[capacity];
+            usdValues = new double[capacity];
+            settlements = new int[capacity];
+        }
+        else {
+            transactions = new ITransaction[capacity];
+        }
+    }
+
+    private void store(int slot, ITransaction transaction) {
+        if (!compact) {
+            transactions[slot] = transaction;
+            return;
+        }
+
+        entityNames[slot] = transaction.getEntityName();
+        usdValues[slot] = transaction.getUsdValue();
+        // the epoch days of four digit years fit in an int along with the direction
+        settlements[slot] = Math.toIntExact(transaction.getActualSettlementDate().toEpochDay() * 2
+                + transaction.getCashflowDirection().ordinal());
+    }
+
+    private ITransaction load(int slot) {
+        if (!compact) {
+            return transactions[slot];
+        }
+
+        int settlement = settlements[slot];
+        return new SettledTransaction(entityNames[slot], ITransaction.CashflowDirection.values()[settlement & 1], "",
+                usdValues[slot], LocalDate.ofEpochDay(settlement >> 1), ids[slot]);
+    }
+
+    private void moveSlot(int from, int to) {
+        if (!compact) {
+            transactions[to] = transactions[from];
+            return;
+        }
+
+        entityNames[to] = entityNames[from];
+        usdValues[to] = usdValues[from];
+        settlements[to] = settlements[from];
+    }
+
+    private static int slotOf(long instructionId, int mask) {
+        long hash = instructionId * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    // instruction ids are never negative, so a negative value marks an empty slot
+    private static final long EMPTY = -1;
+
+    private final boolean compact;
+    private long[] ids;
+    private ITransaction[] transactions;
+    private String[] entityNames;
+    private double[] usdValues;
+    private int[] settlements;
+    private int size = 0;
+}
@@ -3,15 +3,112 @@ package Helpers;
 import Components.ITransaction.CashflowDirection;
 import Components.Transaction;
 import Components.ITransaction;
+import Metrics.EngineMetrics;
 
 import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 
 /**
  * @author Alexandru Dochioiu
  * Date : 21/10/17
  */
 public final class ParsingUtil {
+    /**
+     * Enumeration giving the kind of record found on an input line
+     */
+    public enum RecordType
+    {
+        // a plain instruction without an id: entity,B/S,fx,currency,instructionDate,settlementDate,units,price
+        Instruction,
+        // an instruction with an id: N,id,<instruction>
+        New,
+        // replaces the instruction with the given id: A,id,<instruction>
+        Amend,
+        // cancels the instruction with the given id: C,id
+        Cancel
+    }
+
+    /**
+     * Static method used for finding the kind of record found on a line
+     * Note: The record kind is given by the number of fields, so entities named N, A or C are still supported. Trailing
+     * empty fields are not counted, like {@link String#split(String)} does
+     * @param line the line to be looked at
+     * @return the kind of record or null if the line does not match any of them
+     */
+    public static RecordType getRecordType(String line) {
+        if (line == null) {
+            throw new IllegalArgumentException("line");
+        }
+
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) == ',') {
+            end--;
+        }
+        int separators = 0;
+        for (int i = line.indexOf(','); i >= 0 && i < end; i = line.indexOf(',', i + 1)) {
+            separators++;
+        }
+
+        if (separators == INSTRUCTION_FIELDS - 1) {
+            return RecordType.Instruction;
+        }
+        if (separators == INSTRUCTION_FIELDS + 1 && line.startsWith("N,")) {
+            return RecordType.New;
+        }
+        if (separators == INSTRUCTION_FIELDS + 1 && line.startsWith("A,")) {
+            return RecordType.Amend;
+        }
+        if (separators == 1 && line.startsWith("C,")) {
+            return RecordType.Cancel;
+        }
+        return null;
+    }
+
+    /**
+     * Static method used for parsing the instruction id of a New, Amend or Cancel record
+     * @param line the record line
+     * @return the instruction id or NO_INSTRUCTION_ID if it is missing or malformed
+     */
+    public static long getInstructionId(String line) {
+        if (line == null) {
+            throw new IllegalArgumentException("line");
+        }
+
+        int start = line.indexOf(',') + 1;
+        int end = line.indexOf(',', start);
+        try {
+            long id = Long.parseLong(line, start, end < 0 ? line.length() : end, 10);
+            return id < 0 ? ITransaction.NO_INSTRUCTION_ID : id;
+        }
+        catch (NumberFormatException e) {
+            return ITransaction.NO_INSTRUCTION_ID;
+        }
+    }
+
+    /**
+     * Static method used for parsing the transaction of a New or Amend record
+     * @param line the record line
+     * @return the Transaction parsed from the record or null if the record could not be parsed
+     */
+    public static ITransaction recordToTransaction(String line) {
+        long instructionId = getInstructionId(line);
+        if (instructionId == ITransaction.NO_INSTRUCTION_ID) {
+            return null;
+        }
+
+        int bodyStart = line.indexOf(',', line.indexOf(',') + 1) + 1;
+        if (bodyStart <= 0) {
+            return null;
+        }
+        long start = EngineMetrics.PARSE_LATENCY.startTimer();
+        ITransaction transaction = parseInstruction(line, bodyStart, instructionId);
+        EngineMetrics.PARSE_LATENCY.recordSince(start);
+        return transaction;
+    }
+
     /**
      * Static method used for parsing a string line into a transaction
      * @param line the line to be parsed
@@ -22,29 +119,64 @@ public final class ParsingUtil {
             throw new IllegalArgumentException("line");
         }
 
-        String[] transactionParams = line.split(",");
+        long start = EngineMetrics.PARSE_LATENCY.startTimer();
+        ITransaction transaction = parseInstruction(line, 0, ITransaction.NO_INSTRUCTION_ID);
+        EngineMetrics.PARSE_LATENCY.recordSince(start);
+        return transaction;
+    }
 
-        // Is the input length fine?
-        if (transactionParams.length != 8) {
-            return null;
+    /**
+     * Parses the eight fields of an instruction into a transaction
+     * Note: The fields are parsed in place, only the entity name (and new currencies) are copied out of the line
+     * @param line the line holding the instruction fields
+     * @param start the position of the first field in the line
+     * @param instructionId the id of the instruction
+     * @return the Transaction parsed from the fields or null if they could not be parsed
+     */
+    private static ITransaction parseInstruction(String line, int start, long instructionId) {
+        // fieldStarts[i] is the start of field i, fieldStarts[i + 1] - 1 its end
+        int[] fieldStarts = new int[INSTRUCTION_FIELDS + 1];
+        fieldStarts[0] = start;
+        for (int field = 1; field < INSTRUCTION_FIELDS; field++) {
+            int separator = line.indexOf(',', fieldStarts[field - 1]);
+            if (separator < 0) {
+                return null;
+            }
+            fieldStarts[field] = separator + 1;
         }
 
+        int lastEnd = line.indexOf(',', fieldStarts[INSTRUCTION_FIELDS - 1]);
+        if (lastEnd < 0) {
+            lastEnd = line.length();
+        }
+        // Is the input length fine? (trailing empty fields are ignored)
+        for (int i = lastEnd; i < line.length(); i++) {
+            if (line.charAt(i) != ',') {
+                return null;
+            }
+        }
+        fieldStarts[INSTRUCTION_FIELDS] = lastEnd + 1;
+
         try {
-            String entity = transactionParams[0];
-            CashflowDirection direction = getCashflowDirection(transactionParams[1]);
-            double agreedFx = Double.parseDouble(transactionParams[2]);
-            LocalDate desiredSettlementDate = LocalDate.parse(transactionParams[5], dateFormat);
-            int units = Integer.parseInt(transactionParams[6]);
-            double pricePerUnit = Double.parseDouble(transactionParams[7]);
+            CashflowDirection direction = getCashflowDirection(line, fieldStarts[1], fieldStarts[2] - 1);
+            if (direction == null) {
+                return null;
+            }
+
+            double agreedFx = parseDecimal(line, fieldStarts[2], fieldStarts[3] - 1);
+            LocalDate desiredSettlementDate = parseDate(line, fieldStarts[5], fieldStarts[6] - 1);
+            int units = Integer.parseInt(line, fieldStarts[6], fieldStarts[7] - 1, 10);
+            double pricePerUnit = parseDecimal(line, fieldStarts[7], fieldStarts[8] - 1);
 
             return new Transaction(
-                    entity,
+                    line.substring(fieldStarts[0], fieldStarts[1] - 1),
                     direction,
                     agreedFx,
-                    transactionParams[3],
+                    getCurrency(line, fieldStarts[3], fieldStarts[4] - 1),
                     desiredSettlementDate,
                     units,
-                    pricePerUnit
+                    pricePerUnit,
+                    instructionId
             );
         }
         catch (Exception e) {
@@ -54,15 +186,21 @@ public final class ParsingUtil {
 
     /**
      * Method used to compute the direction of the cashflow from the operation type (buy/sell)
-     * @param operationType string containing the operation type
-     * @return the cashflow direction
+     * @param line the line holding the operation type
+     * @param start the start of the operation type
+     * @param end the end of the operation type
+     * @return the cashflow direction or null if the operation type is unknown
      */
-    private static CashflowDirection getCashflowDirection(String operationType) {
-        if (operationType.equals("S")) {
+    private static CashflowDirection getCashflowDirection(String line, int start, int end) {
+        if (end - start != 1) {
+            return null;
+        }
+
+        if (line.charAt(start) == 'S') {
             return CashflowDirection.Incoming;
         }
         else {
-            if (operationType.equals("B")) {
+            if (line.charAt(start) == 'B') {
                 return CashflowDirection.Outgoing;
             }
             else {
@@ -71,5 +209,118 @@ public final class ParsingUtil {
         }
     }
 
+    /**
+     * Parses a decimal number, giving the same result as Double.parseDouble
+     * Note: Plain decimals with up to 15 digits are parsed in place, since both the digits and the power of ten are
+     * exact doubles and their quotient is correctly rounded. Anything else falls back to Double.parseDouble.
+     */
+    private static double parseDecimal(String line, int start, int end) {
+        long digits = 0;
+        int digitCount = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = digits * 10 + (c - '0');
+                digitCount++;
+                if (fraction) {
+                    fractionDigits++;
+                }
+            }
+            else if (c == '.' && !fraction) {
+                fraction = true;
+            }
+            else {
+                digitCount = MAX_EXACT_DIGITS + 1;
+                break;
+            }
+        }
+
+        if (digitCount == 0 || digitCount > MAX_EXACT_DIGITS) {
+            return Double.parseDouble(line.substring(start, end));
+        }
+        return digits / POWERS_OF_TEN[fractionDigits];
+    }
+
+    /**
+     * Parses a date in the dateFormat pattern, giving the same result as LocalDate.parse
+     * Note: The "dd MMM yyyy" dates are parsed in place, anything else falls back to LocalDate.parse
+     */
+    private static LocalDate parseDate(String line, int start, int end) {
+        int length = end - start;
+
+        for (int month = 0; month < MONTH_NAMES.length; month++) {
+            String name = MONTH_NAMES[month];
+            if (length != name.length() + 8 || !line.regionMatches(start + 3, name, 0, name.length())) {
+                continue;
+            }
+
+            int day = twoDigits(line, start);
+            int century = twoDigits(line, end - 4);
+            int yearOfCentury = twoDigits(line, end - 2);
+            int year = century * 100 + yearOfCentury;
+            if (day < 1 || day > 31 || century < 0 || yearOfCentury < 0 || year < 1 ||
+                    line.charAt(start + 2) != ' ' || line.charAt(end - 5) != ' ') {
+                break;
+            }
+
+            // a day past the end of the month is moved to the last day of the month, like the smart resolver does
+            int monthLength = Month.of(month + 1).length(Year.isLeap(year));
+            return LocalDate.of(year, month + 1, Math.min(day, monthLength));
+        }
+
+        return LocalDate.parse(line.substring(start, end), dateFormat);
+    }
+
+    private static int twoDigits(String line, int position) {
+        char first = line.charAt(position);
+        char second = line.charAt(position + 1);
+        if (first < '0' || first > '9' || second < '0' || second > '9') {
+            return -1;
+        }
+        return (first - '0') * 10 + (second - '0');
+    }
+
+    /**
+     * Getter used for obtaining the currency of an instruction, reusing the String of a currency seen before
+     */
+    private static String getCurrency(String line, int start, int end) {
+        String[] currencies = knownCurrencies;
+        for (String currency : currencies) {
+            if (currency.length() == end - start && line.regionMatches(start, currency, 0, end - start)) {
+                return currency;
+            }
+        }
+
+        String currency = line.substring(start, end);
+        if (currencies.length < MAX_KNOWN_CURRENCIES) {
+            String[] updated = Arrays.copyOf(currencies, currencies.length + 1);
+            updated[currencies.length] = currency;
+            knownCurrencies = updated;
+        }
+        return currency;
+    }
+
+    private static final int INSTRUCTION_FIELDS = 8;
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+    private static final int MAX_KNOWN_CURRENCIES = 64;
+    // copy on write, so it can be read without locking
+    private static volatile String[] knownCurrencies = new String[0];
+
     public static final DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("dd MMM yyyy");
+
+    // the month names of the dateFormat locale
+    static final String[] MONTH_NAMES = new String[12];
+
+    static {
+        DateTimeFormatter monthFormat = DateTimeFormatter.ofPattern("MMM", dateFormat.getLocale());
+        for (int month = 0; month < MONTH_NAMES.length; month++) {
+            MONTH_NAMES[month] = monthFormat.format(Month.of(month + 1));
+        }
+    }
 }
@@ -0,0 +1,271 @@
+package Helpers;
+
+import Components.DailyDistribution;
+import Components.DailySummary;
+import Components.Entity;
+import Components.ITransaction;
+import Components.InstructionBatch;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Private aggregation of a single input (e.g. one file), built by a worker thread and merged into a report afterwards
+ *
+ * The plain instructions only add up, so they are aggregated right away into entities and daily summaries. The
+ * records with an instruction id (New, Amend and Cancel) may refer to instructions of other inputs, so they are
+ * parsed but kept in order, to be applied by the report when the aggregation is merged. The engine metrics are also
+ * left to the merge, so an aggregation which is dropped is not counted.
+ *
+ * For a report which does not keep the entities, only the totals of each entity are kept instead of entities holding
+ * their transactions, so the aggregation grows with the distinct entities of the input, not with its instructions.
+ * Note: An instance is not thread safe, use one per input
+ */
+public final class PartialAggregation {
+    /**
+     * Constructor for an aggregation keeping the entities along with their transactions
+     */
+    public PartialAggregation() {
+        this(false);
+    }
+
+    /**
+     * Constructor
+     * @param totalsOnly whether only the totals of the entities are kept (see {@link #getEntityTotals()})
+     */
+    public PartialAggregation(boolean totalsOnly) {
+        this.totalsOnly = totalsOnly;
+    }
+
+    /**
+     * Aggregates the lines of an input, until its end
+     * Note: The reader is not closed
+     * @param input the reader of the input
+     * @throws IOException if the input could not be read
+     */
+    public void ingest(Reader input) throws IOException {
+        if (input == null) {
+            throw new IllegalArgumentException("input");
+        }
+
+        char[] buffer = new char[READ_BUFFER_SIZE];
+        StringBuilder pending = new StringBuilder();
+        int read;
+
+        while ((read = input.read(buffer)) >= 0) {
+            characterCount += read;
+            int lastLineEnd = read - 1;
+            while (lastLineEnd >= 0 && buffer[lastLineEnd] != '\n') {
+                lastLineEnd--;
+            }
+
+            // a line split across reads is kept until it is complete
+            if (lastLineEnd < 0) {
+                pending.append(buffer, 0, read);
+                continue;
+            }
+
+            pending.append(buffer, 0, lastLineEnd + 1);
+            addLines(pending.toString());
+            pending.setLength(0);
+            pending.append(buffer, lastLineEnd + 1, read - lastLineEnd - 1);
+        }
+
+        if (pending.length() > 0) {
+            addLines(pending.toString());
+        }
+    }
+
+    /**
+     * Aggregates whole lines
+     * @param lines the lines, the last one being complete even without a line feed
+     */
+    public void ingestLines(String lines) {
+        if (lines == null) {
+            throw new IllegalArgumentException("lines");
+        }
+
+        characterCount += lines.length();
+        addLines(lines);
+    }
+
+    /**
+     * Getter used for obtaining the entities of the plain instructions, in the order they were first seen
+     * @return the entities keyed by their name, none if only the totals are kept
+     */
+    public Map<String, Entity> getEntities() {
+        return entities;
+    }
+
+    /**
+     * Getter used for obtaining the totals of the entities of the plain instructions, in the order they were first
+     * seen, when only the totals are kept
+     * @return the cashflow of each direction (indexed by its ordinal) keyed by the entity name
+     */
+    public Map<String, double[]> getEntityTotals() {
+        return entityTotals;
+    }
+
+    /**
+     * Getter used for obtaining the daily summaries of the plain instructions
+     * @return the daily summaries keyed by the settlement date
+     */
+    public Map<LocalDate, DailySummary> getDailySummaries() {
+        return dailySummaries;
+    }
+
+    /**
+     * Getter used for obtaining the distributions of the plain instructions per settlement day
+     * @return the daily distributions keyed by the settlement date
+     */
+    public Map<LocalDate, DailyDistribution> getDailyDistributions() {
+        return dailyDistributions;
+    }
+
+    /**
+     * Getter used for obtaining the parsed records with an instruction id, in input order
+     * @return the New, Amend and Cancel records which were not malformed
+     */
+    public InstructionBatch getInstructionRecords() {
+        return instructionRecords;
+    }
+
+    /**
+     * Getter used for obtaining the number of characters read
+     * @return the number of input characters
+     */
+    public long getCharacterCount() {
+        return characterCount;
+    }
+
+    /**
+     * Getter used for obtaining the number of non empty lines
+     * @return the number of lines
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Getter used for obtaining the number of aggregated plain instructions
+     * @return the number of accepted plain instructions
+     */
+    public long getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    /**
+     * Getter used for obtaining the number of lines which could not be parsed
+     * @return the number of malformed lines
+     */
+    public long getMalformedCount() {
+        return malformedCount;
+    }
+
+    private void addLines(String lines) {
+        for (int lineStart = 0; lineStart < lines.length(); ) {
+            int separator = lines.indexOf('\n', lineStart);
+            int lineEnd = separator < 0 ? lines.length() : separator;
+
+            //Skip empty lines
+            if (lineEnd > lineStart) {
+                addLine(lines.substring(lineStart, lineEnd));
+            }
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    private void addLine(String line) {
+        lineCount++;
+
+        ParsingUtil.RecordType recordType = ParsingUtil.getRecordType(line);
+        if (recordType == null) {
+            rejectMalformed();
+            return;
+        }
+
+        ITransaction transaction;
+        switch (recordType) {
+            case Instruction:
+                transaction = ParsingUtil.lineToTransaction(line);
+                if (transaction == null) {
+                    rejectMalformed();
+                }
+                else {
+                    aggregate(transaction);
+                }
+                break;
+            case Cancel:
+                instructionRecords.addCancel(ParsingUtil.getInstructionId(line));
+                break;
+            default:
+                transaction = ParsingUtil.recordToTransaction(line);
+                if (transaction == null) {
+                    rejectMalformed();
+                }
+                else {
+                    instructionRecords.add(recordType, transaction);
+                }
+                break;
+        }
+    }
+
+    private void aggregate(ITransaction transaction) {
+        if (totalsOnly) {
+            double[] totals = entityTotals.get(transaction.getEntityName());
+            if (totals == null) {
+                totals = new double[ITransaction.CashflowDirection.values().length];
+                entityTotals.put(transaction.getEntityName(), totals);
+            }
+            totals[transaction.getCashflowDirection().ordinal()] += transaction.getUsdValue();
+        }
+        else {
+            Entity entity = entities.get(transaction.getEntityName());
+            if (entity == null) {
+                entity = new Entity(transaction.getEntityName());
+                entities.put(transaction.getEntityName(), entity);
+            }
+            entity.addTransaction(transaction);
+        }
+
+        DailySummary summaryOfDay = dailySummaries.get(transaction.getActualSettlementDate());
+        if (summaryOfDay == null) {
+            summaryOfDay = new DailySummary();
+            dailySummaries.put(transaction.getActualSettlementDate(), summaryOfDay);
+        }
+        summaryOfDay.add(transaction.getCashflowDirection(), transaction.getUsdValue());
+
+        DailyDistribution distributionOfDay = dailyDistributions.get(transaction.getActualSettlementDate());
+        if (distributionOfDay == null) {
+            distributionOfDay = new DailyDistribution();
+            dailyDistributions.put(transaction.getActualSettlementDate(), distributionOfDay);
+        }
+        distributionOfDay.add(transaction);
+
+        acceptedCount++;
+    }
+
+    private void rejectMalformed() {
+        malformedCount++;
+    }
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final boolean totalsOnly;
+    private final Map<String, Entity> entities = new LinkedHashMap<>();
+    private final Map<String, double[]> entityTotals = new LinkedHashMap<>();
+    private final Map<LocalDate, DailySummary> dailySummaries = new HashMap<>();
+    private final Map<LocalDate, DailyDistribution> dailyDistributions = new HashMap<>();
+    private final InstructionBatch instructionRecords = new InstructionBatch(64);
+    private long characterCount = 0;
+    private long lineCount = 0;
+    private long acceptedCount = 0;
+    private long malformedCount = 0;
+}
@@ -0,0 +1,290 @@
+package Helpers;
+
+import java.util.Arrays;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class estimating the quantiles of a stream of values in bounded memory (KLL sketch), e.g. the percentiles of the
+ * USD amounts of the transactions of a day
+ *
+ * The values are kept in levels, a value of level h standing for 2^h values of the stream. When the sketch is full,
+ * the lowest level above its capacity is sorted and every other value (starting at a random position) is promoted to
+ * the next level, the others being dropped. The capacities decrease geometrically from the top level down, so the
+ * sketch holds about 3k values whatever the length of the stream, and the rank of a returned quantile is within about
+ * 1.7/k of the requested one (k = 200 by default, i.e. under 1%, for about 5 KB). Sketches are mergeable: merging
+ * the sketches of parts of a stream gives the same guarantees as sketching the whole stream.
+ * Note: The random positions come from a generator with a fixed seed, so the same stream gives the same sketch
+ */
+public final class QuantileSketch {
+    /**
+     * Constructor using the default accuracy
+     */
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * Constructor
+     * @param k the capacity of the top level, the rank error decreasing as 1/k
+     */
+    public QuantileSketch(int k) {
+        if (k < MIN_K) {
+            throw new IllegalArgumentException("k");
+        }
+
+        this.k = k;
+        grow();
+    }
+
+    /**
+     * Adds a value to the sketch
+     * @param value the value, which must be a number
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("value");
+        }
+
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        append(0, value);
+        if (++size >= maxSize) {
+            compress();
+        }
+    }
+
+    /**
+     * Adds the values sketched by another sketch to this one
+     * @param other the sketch to be merged in, which is not modified
+     */
+    public void merge(QuantileSketch other) {
+        if (other == null) {
+            throw new IllegalArgumentException("other");
+        }
+        if (other.k != k) {
+            throw new IllegalArgumentException("other");
+        }
+        if (other.count == 0) {
+            return;
+        }
+
+        while (levelCount < other.levelCount) {
+            grow();
+        }
+        for (int h = 0; h < other.levelCount; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+            size += other.sizes[h];
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        while (size >= maxSize) {
+            compress();
+        }
+    }
+
+    /**
+     * Estimates a quantile of the values
+     * @param quantile the quantile, between 0 (the minimum) and 1 (the maximum)
+     * @return the value, or NaN if the sketch is empty
+     */
+    public double getQuantile(double quantile) {
+        return getQuantiles(quantile)[0];
+    }
+
+    /**
+     * Estimates several quantiles of the values at once
+     * @param quantiles the quantiles, each one between 0 (the minimum) and 1 (the maximum)
+     * @return the values, in the order of the quantiles, NaN if the sketch is empty
+     */
+    public double[] getQuantiles(double... quantiles) {
+        if (quantiles == null) {
+            throw new IllegalArgumentException("quantiles");
+        }
+        for (double quantile : quantiles) {
+            if (!(quantile >= 0 && quantile <= 1)) {
+                throw new IllegalArgumentException("quantiles");
+            }
+        }
+
+        double[] result = new double[quantiles.length];
+        if (count == 0) {
+            Arrays.fill(result, Double.NaN);
+            return result;
+        }
+
+        // the retained values sorted, each one with the weight of its level
+        double[] values = new double[size];
+        long[] weights = new long[size];
+        sortRetained(values, weights);
+
+        for (int q = 0; q < quantiles.length; q++) {
+            if (quantiles[q] == 0) {
+                result[q] = min;
+                continue;
+            }
+            if (quantiles[q] == 1) {
+                result[q] = max;
+                continue;
+            }
+
+            double target = quantiles[q] * count;
+            long cumulative = 0;
+            int i = 0;
+            while (i < values.length - 1 && cumulative + weights[i] < target) {
+                cumulative += weights[i++];
+            }
+            result[q] = values[i];
+        }
+        return result;
+    }
+
+    /**
+     * Getter used for obtaining the number of values added
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Getter used for obtaining the smallest value added
+     * @return the minimum, or positive infinity if the sketch is empty
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Getter used for obtaining the largest value added
+     * @return the maximum, or negative infinity if the sketch is empty
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Getter used for obtaining the number of values retained by the sketch
+     * @return the number of retained values, which bounds its memory
+     */
+    public int getRetainedCount() {
+        return size;
+    }
+
+    private void append(int level, double value) {
+        double[] values = levels[level];
+        if (sizes[level] == values.length) {
+            values = Arrays.copyOf(values, Math.max(INITIAL_LEVEL_SIZE, 2 * values.length));
+            levels[level] = values;
+        }
+        values[sizes[level]++] = value;
+    }
+
+    /**
+     * Compacts the lowest level which reached its capacity (lazy compaction)
+     */
+    private void compress() {
+        for (int h = 0; h < levelCount; h++) {
+            if (sizes[h] >= capacity(h)) {
+                if (h + 1 == levelCount) {
+                    grow();
+                }
+                compact(h);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sorts a level and promotes one value of each pair to the next level, an odd value being kept
+     */
+    private void compact(int level) {
+        double[] values = levels[level];
+        int n = sizes[level];
+        Arrays.sort(values, 0, n);
+
+        int odd = n & 1;
+        for (int i = odd + nextBit(); i < n; i += 2) {
+            append(level + 1, values[i]);
+        }
+        sizes[level] = odd;
+        size -= (n - odd) / 2;
+    }
+
+    /**
+     * Adds a level on top of the others, the capacities of the levels below shrinking accordingly
+     */
+    private void grow() {
+        levelCount++;
+        if (levelCount > levels.length) {
+            levels = Arrays.copyOf(levels, 2 * levelCount);
+            sizes = Arrays.copyOf(sizes, 2 * levelCount);
+        }
+        levels[levelCount - 1] = new double[0];
+
+        maxSize = 0;
+        for (int h = 0; h < levelCount; h++) {
+            maxSize += capacity(h);
+        }
+    }
+
+    private int capacity(int level) {
+        int depth = levelCount - level - 1;
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_RATIO, depth)));
+    }
+
+    /**
+     * Merges the sorted levels into sorted values and their weights
+     */
+    private void sortRetained(double[] values, long[] weights) {
+        int filled = 0;
+        for (int h = 0; h < levelCount; h++) {
+            double[] level = Arrays.copyOf(levels[h], sizes[h]);
+            Arrays.sort(level);
+            // merge the level into the values sorted so far, from the end
+            int i = filled - 1;
+            int j = level.length - 1;
+            for (int out = filled + level.length - 1; j >= 0; out--) {
+                if (i >= 0 && values[i] > level[j]) {
+                    values[out] = values[i];
+                    weights[out] = weights[i--];
+                }
+                else {
+                    values[out] = level[j--];
+                    weights[out] = 1L << h;
+                }
+            }
+            filled += level.length;
+        }
+    }
+
+    private int nextBit() {
+        // xorshift
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (int) (random >>> 63);
+    }
+
+    private static final int DEFAULT_K = 200;
+    private static final int MIN_K = 8;
+    private static final int MIN_CAPACITY = 2;
+    private static final double CAPACITY_RATIO = 2.0 / 3;
+    private static final int INITIAL_LEVEL_SIZE = 8;
+
+    private final int k;
+    private double[][] levels = new double[4][];
+    private int[] sizes = new int[4];
+    private int levelCount = 0;
+    private int size = 0;
+    private int maxSize = 0;
+    private long count = 0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private long random = 0x9E3779B97F4A7C15L;
+}
@@ -0,0 +1,192 @@
+package Helpers;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class used for building the rows of a report out of left aligned, fixed width columns
+ *
+ * The columns are written into a reused buffer, so the only allocation per row is the returned String. The output
+ * is the same as String.format with "%-Ns" for text and dates (in the {@link ParsingUtil#dateFormat} pattern) and
+ * "%-N.2f" for amounts: the amounts are rounded half up from their shortest decimal representation, like the
+ * Formatter does. Values the fast path does not cover (e.g. very large amounts or a locale with another decimal
+ * separator) are formatted by String.format.
+ * Note: An instance is not thread safe, use one per report
+ */
+public final class ReportFormat {
+    /**
+     * Constructor
+     * @param columnSize the minimum width of a column
+     */
+    public ReportFormat(int columnSize) {
+        if (columnSize < 0) {
+            throw new IllegalArgumentException("columnSize");
+        }
+        this.columnSize = columnSize;
+    }
+
+    /**
+     * Appends a text column
+     * @param text the text of the column
+     * @return this
+     */
+    public ReportFormat appendColumn(CharSequence text) {
+        int start = row.length();
+        row.append(text);
+        return pad(start);
+    }
+
+    /**
+     * Appends a date column
+     * @param date the date of the column
+     * @return this
+     */
+    public ReportFormat appendColumn(LocalDate date) {
+        int start = row.length();
+        int year = date.getYear();
+        String monthName = ParsingUtil.MONTH_NAMES[date.getMonthValue() - 1];
+
+        if (year < 1 || year > 9999) {
+            row.append(ParsingUtil.dateFormat.format(date));
+            return pad(start);
+        }
+
+        appendDigits(date.getDayOfMonth(), 2);
+        row.append(' ').append(monthName).append(' ');
+        appendDigits(year, 4);
+        return pad(start);
+    }
+
+    /**
+     * Appends an amount column, with two decimals
+     * @param amount the amount of the column
+     * @return this
+     */
+    public ReportFormat appendColumn(double amount) {
+        int start = row.length();
+
+        if (Double.isNaN(amount) || Double.isInfinite(amount) || Math.abs(amount) >= MAX_FAST_AMOUNT ||
+                !Locale.getDefault(Locale.Category.FORMAT).equals(DOT_SEPARATOR_LOCALE)) {
+            row.append(String.format("%.2f", amount));
+            return pad(start);
+        }
+
+        appendTwoDecimals(amount);
+        return pad(start);
+    }
+
+    /**
+     * Gives the row built so far and starts a new one
+     * @return the row
+     */
+    public String toRow() {
+        String result = row.toString();
+        row.setLength(0);
+        return result;
+    }
+
+    /**
+     * Rounds an amount half up to two decimals, starting from its shortest decimal representation
+     */
+    private void appendTwoDecimals(double amount) {
+        scratch.setLength(0);
+        scratch.append(amount);
+
+        // decimal digits of the amount, with the position of the decimal point in pointPosition
+        int digitCount = 0;
+        int pointPosition = -1;
+        int exponent = 0;
+        int i = 0;
+        boolean negative = scratch.charAt(0) == '-';
+        if (negative) {
+            i = 1;
+        }
+        for (; i < scratch.length(); i++) {
+            char c = scratch.charAt(i);
+            if (c == '.') {
+                pointPosition = digitCount;
+            }
+            else if (c == 'E') {
+                exponent = Integer.parseInt(scratch, i + 1, scratch.length(), 10);
+                break;
+            }
+            else {
+                digits[digitCount++] = c;
+            }
+        }
+
+        // skip the leading zeros, integerDigits being the number of digits before the decimal point
+        int first = 0;
+        int integerDigits = pointPosition + exponent;
+        while (first < digitCount - 1 && digits[first] == '0') {
+            first++;
+            integerDigits--;
+        }
+
+        // keep the digits up to the second decimal, rounding half up on the next one
+        int kept = Math.max(0, integerDigits + 2);
+        for (int k = 0; k < kept; k++) {
+            rounded[k] = first + k < digitCount ? digits[first + k] : '0';
+        }
+        if (integerDigits + 2 >= 0 && first + kept < digitCount && digits[first + kept] >= '5') {
+            int k = kept - 1;
+            while (k >= 0 && rounded[k] == '9') {
+                rounded[k--] = '0';
+            }
+            if (k >= 0) {
+                rounded[k]++;
+            }
+            else {
+                System.arraycopy(rounded, 0, rounded, 1, kept);
+                rounded[0] = '1';
+                kept++;
+                integerDigits++;
+            }
+        }
+        if (integerDigits + 2 < 0) {
+            integerDigits = -2;
+        }
+
+        if (negative) {
+            row.append('-');
+        }
+        if (integerDigits <= 0) {
+            row.append('0');
+        }
+        for (int k = 0; k < integerDigits; k++) {
+            row.append(rounded[k]);
+        }
+        row.append('.');
+        for (int k = integerDigits; k < integerDigits + 2; k++) {
+            row.append(k >= 0 && k < kept ? rounded[k] : '0');
+        }
+    }
+
+    private void appendDigits(int value, int width) {
+        for (int divisor = width == 4 ? 1000 : 10; divisor > 0; divisor /= 10) {
+            row.append((char) ('0' + value / divisor % 10));
+        }
+    }
+
+    private ReportFormat pad(int columnStart) {
+        for (int i = row.length() - columnStart; i < columnSize; i++) {
+            row.append(' ');
+        }
+        return this;
+    }
+
+    // amounts below 10^15 have at most 17 significant digits before being rounded to two decimals
+    private static final double MAX_FAST_AMOUNT = 1e15;
+    // the locale the fast path was checked against, or null if the default locale does not use a dot separator
+    private static final Locale DOT_SEPARATOR_LOCALE =
+            String.format("%.2f", 1.5).equals("1.50") ? Locale.getDefault(Locale.Category.FORMAT) : null;
+
+    private final int columnSize;
+    private final StringBuilder row = new StringBuilder(64);
+    private final StringBuilder scratch = new StringBuilder(32);
+    private final char[] digits = new char[32];
+    private final char[] rounded = new char[32];
+}
@@ -0,0 +1,531 @@
+package Helpers;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Compressed set of non-negative ints, following the Roaring bitmap design
+ *
+ * The values are partitioned by their 16 high bits into chunks of 65536 values. A chunk with at most 4096 values is
+ * held as a sorted array of its 16 low bits (at most 8KB), a denser chunk as a bitmap of 1024 longs (always 8KB), so
+ * a set never takes much more than 2 bytes per value nor more than 1 bit per possible value. AND and OR work chunk by
+ * chunk, skipping the chunks absent from either side (AND) or copying them (OR), with a specialized loop for each pair
+ * of container types.
+ * Note: An instance is not thread safe while it is being modified; the results of and/or are new instances
+ */
+public final class RoaringBitmap {
+    /**
+     * Adds a value to the set
+     * Note: Adding values in increasing order is the fastest
+     * @param value the value, which must not be negative
+     */
+    public void add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value");
+        }
+
+        char high = (char) (value >>> 16);
+        int index = size > 0 && keys[size - 1] == high ? size - 1 : findKey(high);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, high, new ArrayContainer());
+        }
+        containers[index] = containers[index].add((char) value);
+    }
+
+    /**
+     * Adds a range of values to the set
+     * @param from the first value of the range (inclusive), which must not be negative
+     * @param to the end of the range (exclusive)
+     */
+    public void addRange(int from, int to) {
+        if (from < 0) {
+            throw new IllegalArgumentException("from");
+        }
+        if (to < from) {
+            throw new IllegalArgumentException("to");
+        }
+
+        for (int start = from; start < to; ) {
+            char high = (char) (start >>> 16);
+            int chunkEnd = (int) Math.min(to, ((long) high + 1) << 16);
+            int index = findKey(high);
+            if (index < 0) {
+                index = -index - 1;
+                insertContainer(index, high, new ArrayContainer());
+            }
+            containers[index] = containers[index].addRange(start & 0xFFFF, chunkEnd - (high << 16));
+            start = chunkEnd;
+        }
+    }
+
+    /**
+     * Checks whether a value is in the set
+     * @param value the value
+     * @return true if the value was added
+     */
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = findKey((char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    /**
+     * Getter used for obtaining the number of values in the set
+     * @return the cardinality of the set
+     */
+    public int getCardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * Checks whether the set is empty
+     * @return true if there is no value in the set
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Getter used for obtaining the memory taken by the containers, an indication of the compression
+     * @return the approximate size in bytes
+     */
+    public long getSizeInBytes() {
+        long bytes = 3L * size;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i].sizeInBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Gives every value of the set to a consumer, in increasing order
+     * @param consumer the consumer of the values
+     */
+    public void forEach(IntConsumer consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("consumer");
+        }
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, consumer);
+        }
+    }
+
+    /**
+     * Getter used for obtaining the values of the set
+     * @return the values in increasing order
+     */
+    public int[] toArray() {
+        int[] values = new int[getCardinality()];
+        int[] position = {0};
+        forEach(value -> values[position[0]++] = value);
+        return values;
+    }
+
+    /**
+     * Computes the intersection of two sets
+     * @param first the first set
+     * @param second the second set
+     * @return a new set with the values which are in both sets
+     */
+    public static RoaringBitmap and(RoaringBitmap first, RoaringBitmap second) {
+        if (first == null) {
+            throw new IllegalArgumentException("first");
+        }
+        if (second == null) {
+            throw new IllegalArgumentException("second");
+        }
+
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < first.size && j < second.size) {
+            if (first.keys[i] < second.keys[j]) {
+                i++;
+            }
+            else if (first.keys[i] > second.keys[j]) {
+                j++;
+            }
+            else {
+                Container container = first.containers[i].and(second.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.insertContainer(result.size, first.keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the union of two sets
+     * @param first the first set
+     * @param second the second set
+     * @return a new set with the values which are in either set
+     */
+    public static RoaringBitmap or(RoaringBitmap first, RoaringBitmap second) {
+        if (first == null) {
+            throw new IllegalArgumentException("first");
+        }
+        if (second == null) {
+            throw new IllegalArgumentException("second");
+        }
+
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < first.size || j < second.size) {
+            if (j == second.size || (i < first.size && first.keys[i] < second.keys[j])) {
+                result.insertContainer(result.size, first.keys[i], first.containers[i].copy());
+                i++;
+            }
+            else if (i == first.size || first.keys[i] > second.keys[j]) {
+                result.insertContainer(result.size, second.keys[j], second.containers[j].copy());
+                j++;
+            }
+            else {
+                result.insertContainer(result.size, first.keys[i], first.containers[i].or(second.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    private int findKey(char high) {
+        return Arrays.binarySearch(keys, 0, size, high);
+    }
+
+    private void insertContainer(int index, char high, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(4, size * 2));
+            containers = Arrays.copyOf(containers, keys.length);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = high;
+        containers[index] = container;
+        size++;
+    }
+
+    /**
+     * Internal class holding the low 16 bits of the values of a chunk
+     */
+    private abstract static class Container {
+        /**
+         * Adds a value, possibly converting the container
+         * @return the container holding the value
+         */
+        abstract Container add(char value);
+
+        /**
+         * Adds the values from (inclusive) to (exclusive), possibly converting the container
+         * @return the container holding the values
+         */
+        abstract Container addRange(int from, int to);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract long sizeInBytes();
+
+        abstract void forEach(int high, IntConsumer consumer);
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container copy();
+    }
+
+    /**
+     * Container of a sparse chunk, as a sorted array
+     */
+    private static final class ArrayContainer extends Container {
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = cardinality > 0 && values[cardinality - 1] < value ?
+                    -cardinality - 1 :
+                    Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == MAX_ARRAY_SIZE) {
+                return toBitmap().add(value);
+            }
+
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(MAX_ARRAY_SIZE, cardinality * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container addRange(int from, int to) {
+            if (cardinality + to - from > MAX_ARRAY_SIZE) {
+                return toBitmap().addRange(from, to);
+            }
+            Container container = this;
+            for (int value = from; value < to; value++) {
+                container = container.add((char) value);
+            }
+            return container;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 2L * cardinality;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+            for (int i = 0; i < cardinality; i++) {
+                consumer.accept(high | values[i]);
+            }
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[Math.min(cardinality, other.cardinality())];
+            int count = 0;
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    }
+                    else if (values[i] > array.values[j]) {
+                        j++;
+                    }
+                    else {
+                        result[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            else {
+                BitmapContainer bitmap = (BitmapContainer) other;
+                for (int i = 0; i < cardinality; i++) {
+                    if (bitmap.contains(values[i])) {
+                        result[count++] = values[i];
+                    }
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+
+            ArrayContainer array = (ArrayContainer) other;
+            char[] result = new char[cardinality + array.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < array.cardinality) {
+                if (j == array.cardinality || (i < cardinality && values[i] < array.values[j])) {
+                    result[count++] = values[i++];
+                }
+                else if (i == cardinality || values[i] > array.values[j]) {
+                    result[count++] = array.values[j++];
+                }
+                else {
+                    result[count++] = values[i];
+                    i++;
+                    j++;
+                }
+            }
+
+            ArrayContainer union = new ArrayContainer(result, count);
+            return count > MAX_ARRAY_SIZE ? union.toBitmap() : union;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+
+        private char[] values;
+        private int cardinality;
+    }
+
+    /**
+     * Container of a dense chunk, as a bitmap
+     */
+    private static final class BitmapContainer extends Container {
+        BitmapContainer() {
+            this(new long[WORD_COUNT], 0);
+        }
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            long previous = words[value >>> 6];
+            words[value >>> 6] = previous | 1L << value;
+            if (words[value >>> 6] != previous) {
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container addRange(int from, int to) {
+            for (int value = from; value < to; ) {
+                int word = value >>> 6;
+                int wordEnd = Math.min(to, (word + 1) << 6);
+                // the bits from value to wordEnd (exclusive) of the word
+                long mask = (-1L << value) & (wordEnd - (word << 6) == 64 ? -1L : (1L << wordEnd) - 1);
+                cardinality += Long.bitCount(mask & ~words[word]);
+                words[word] |= mask;
+                value = wordEnd;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & 1L << value) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 8L * WORD_COUNT;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+            for (int word = 0; word < WORD_COUNT; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    consumer.accept(high | word << 6 | Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+
+            long[] otherWords = ((BitmapContainer) other).words;
+            long[] result = new long[WORD_COUNT];
+            int count = 0;
+            for (int word = 0; word < WORD_COUNT; word++) {
+                result[word] = words[word] & otherWords[word];
+                count += Long.bitCount(result[word]);
+            }
+
+            BitmapContainer intersection = new BitmapContainer(result, count);
+            return count <= MAX_ARRAY_SIZE ? intersection.toArray() : intersection;
+        }
+
+        @Override
+        Container or(Container other) {
+            BitmapContainer union = (BitmapContainer) copy();
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    union.add(array.values[i]);
+                }
+                return union;
+            }
+
+            long[] otherWords = ((BitmapContainer) other).words;
+            int count = 0;
+            for (int word = 0; word < WORD_COUNT; word++) {
+                union.words[word] |= otherWords[word];
+                count += Long.bitCount(union.words[word]);
+            }
+            union.cardinality = count;
+            return union;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        private ArrayContainer toArray() {
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int word = 0; word < WORD_COUNT; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    values[count++] = (char) (word << 6 | Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            return new ArrayContainer(values, count);
+        }
+
+        private final long[] words;
+        private int cardinality;
+    }
+
+    // beyond this size, an array takes more memory than a bitmap
+    private static final int MAX_ARRAY_SIZE = 4096;
+    private static final int WORD_COUNT = 1024;
+
+    private char[] keys = new char[0];
+    private Container[] containers = new Container[0];
+    private int size = 0;
+}
@@ -0,0 +1,45 @@
+package Metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Monotonic counter of events, which can be updated from any thread
+ */
+public final class Counter {
+    Counter(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Counts one event
+     */
+    public void increment() {
+        if (registry.enabled) {
+            count.increment();
+        }
+    }
+
+    /**
+     * Counts several events
+     * @param events the number of events
+     */
+    public void add(long events) {
+        if (registry.enabled) {
+            count.add(events);
+        }
+    }
+
+    /**
+     * Getter used for obtaining the number of events counted so far
+     * @return the value of the counter
+     */
+    public long get() {
+        return count.sum();
+    }
+
+    private final MetricsRegistry registry;
+    private final LongAdder count = new LongAdder();
+}
@@ -0,0 +1,39 @@
+package Metrics;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class holding the metrics instrumenting the ingest and the reports
+ * Note: The registry is disabled by default, call REGISTRY.setEnabled(true) to start recording
+ *
+ * All the latencies are in nanoseconds.
+ */
+public final class EngineMetrics {
+    public static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    static {
+        REGISTRY.setEnabled(false);
+    }
+
+    // ingest
+    public static final Counter LINES = REGISTRY.counter("ingest.lines");
+    public static final Counter ACCEPTED = REGISTRY.counter("ingest.accepted");
+    public static final Counter CANCELLED = REGISTRY.counter("ingest.cancelled");
+    public static final Counter REJECTED_MALFORMED = REGISTRY.counter("ingest.rejected.malformed");
+    public static final Counter REJECTED_DUPLICATE = REGISTRY.counter("ingest.rejected.duplicate");
+    public static final Counter REJECTED_AMEND = REGISTRY.counter("ingest.rejected.amend");
+    public static final Histogram BATCH_LATENCY = REGISTRY.histogram("ingest.batch.latency");
+
+    // parsing
+    public static final Histogram PARSE_LATENCY = REGISTRY.histogram("parse.line.latency");
+    public static final Histogram SETTLEMENT_LATENCY = REGISTRY.histogram("parse.settlement.latency");
+
+    // reports
+    public static final Histogram PRINT_DAILY_LATENCY = REGISTRY.histogram("report.daily.latency");
+    public static final Histogram PRINT_MONTHLY_LATENCY = REGISTRY.histogram("report.monthly.latency");
+    public static final Histogram PRINT_RANKING_LATENCY = REGISTRY.histogram("report.ranking.latency");
+
+    private EngineMetrics() {
+    }
+}
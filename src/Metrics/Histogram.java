@@ -0,0 +1,168 @@
+package Metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Fixed memory histogram of latencies (or any other non negative values), which can be updated from any thread
+ *
+ * The values are counted in logarithmic buckets: every power of two is split into 8 linear sub-buckets, so the whole
+ * range of long values fits in 488 counters and every value is known within 12.5%.
+ */
+public final class Histogram {
+    /**
+     * Class holding a copy of the values recorded by a histogram
+     */
+    public static final class Snapshot {
+        Snapshot(long[] buckets, long sum, long max) {
+            long count = 0;
+            for (long bucket : buckets) {
+                count += bucket;
+            }
+
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Getter used for obtaining the number of recorded values
+         * @return the number of values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Getter used for obtaining the mean of the recorded values
+         * @return the mean or 0 if no value was recorded
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Getter used for obtaining the largest recorded value
+         * @return the maximum or 0 if no value was recorded
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Getter used for obtaining a percentile of the recorded values
+         * @param quantile the quantile, between 0 and 1 (e.g. 0.99)
+         * @return the upper bound of the bucket holding the percentile, capped at the maximum
+         */
+        public long getPercentile(double quantile) {
+            if (!(quantile >= 0 && quantile <= 1)) {
+                throw new IllegalArgumentException("quantile");
+            }
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(max, upperBound(i));
+                }
+            }
+            return max;
+        }
+
+        private final long[] buckets;
+        private final long count;
+        private final long sum;
+        private final long max;
+    }
+
+    Histogram(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Records a value
+     * @param value the value, negative values being recorded as 0
+     */
+    public void record(long value) {
+        if (!registry.enabled) {
+            return;
+        }
+
+        value = Math.max(0, value);
+        buckets.getAndIncrement(bucketOf(value));
+        sum.getAndAdd(value);
+
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Starts timing an operation, to be recorded by {@link #recordSince(long)}
+     * @return the start time or a marker telling that the registry is disabled
+     */
+    public long startTimer() {
+        return registry.enabled ? System.nanoTime() : DISABLED;
+    }
+
+    /**
+     * Records the nanoseconds elapsed since a timer was started
+     * @param start the value returned by {@link #startTimer()}
+     */
+    public void recordSince(long start) {
+        if (start != DISABLED) {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Copies the values recorded so far
+     * @return the snapshot of the histogram
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = buckets.get(i);
+        }
+        return new Snapshot(copy, sum.get(), max.get());
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final long DISABLED = Long.MIN_VALUE;
+
+    private final MetricsRegistry registry;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+}
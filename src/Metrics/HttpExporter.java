@@ -0,0 +1,89 @@
+package Metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Exporter serving the metrics of a registry over HTTP, on the loopback interface, in the format of the
+ * {@link TextExporter} (GET /metrics)
+ */
+public final class HttpExporter implements Closeable {
+    /**
+     * Constructor, starting the HTTP server
+     * @param registry the registry to be served
+     * @param port the local port or 0 for any free port
+     * @throws IOException if the server could not be started
+     */
+    public HttpExporter(MetricsRegistry registry, int port) throws IOException {
+        if (registry == null) {
+            throw new IllegalArgumentException("registry");
+        }
+        if (port < 0 || port > 0xFFFF) {
+            throw new IllegalArgumentException("port");
+        }
+
+        this.registry = registry;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(PATH, this::handle);
+        server.start();
+    }
+
+    /**
+     * Getter used for obtaining the port the metrics are served on
+     * @return the local port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the HTTP server
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET") || !exchange.getRequestURI().getPath().equals(PATH)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            StringBuilder body = new StringBuilder();
+            synchronized (exporter) {
+                text = body;
+                exporter.export(registry);
+            }
+
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream response = exchange.getResponseBody()) {
+                response.write(bytes);
+            }
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private static final String PATH = "/metrics";
+
+    private final MetricsRegistry registry;
+    private final HttpServer server;
+    // a single exporter is kept so that the counter rates are computed between consecutive requests
+    private final TextExporter exporter = new TextExporter(line -> this.text.append(line).append('\n'));
+    private StringBuilder text;
+}
@@ -0,0 +1,37 @@
+package Metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Flight Recorder event emitted for every batch of ingested input
+ */
+@Name("jpmc.IngestBatch")
+@Label("Ingest Batch")
+@Category({"JPMC", "Ingest"})
+@Description("A batch of input lines ingested by a report")
+@StackTrace(false)
+public class IngestBatchEvent extends Event {
+    @Label("Lines")
+    @Description("The number of non empty lines in the batch")
+    public int lines;
+
+    @Label("Characters")
+    @Description("The number of UTF-16 characters of the batch input (not bytes), 0 for a batch of decoded records")
+    public long characters;
+
+    @Label("Accepted")
+    @Description("The number of transactions added to the report")
+    public int accepted;
+
+    @Label("Rejected")
+    @Description("The number of malformed, duplicate or invalid amend and cancel lines")
+    public int rejected;
+}
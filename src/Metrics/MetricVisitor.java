@@ -0,0 +1,30 @@
+package Metrics;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Interface used by the exporters for reading the metrics of a registry
+ */
+public interface MetricVisitor {
+    /**
+     * Called for each counter
+     * @param name the name of the counter
+     * @param value the number of events counted so far
+     */
+    void visitCounter(String name, long value);
+
+    /**
+     * Called for each gauge
+     * @param name the name of the gauge
+     * @param value the current value of the gauge
+     */
+    void visitGauge(String name, long value);
+
+    /**
+     * Called for each histogram
+     * @param name the name of the histogram
+     * @param snapshot a copy of the values recorded so far
+     */
+    void visitHistogram(String name, Histogram.Snapshot snapshot);
+}
@@ -0,0 +1,122 @@
+package Metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class holding named counters, gauges and latency histograms
+ *
+ * The metrics are created once and then updated without any allocation or locking. While the registry is disabled,
+ * updating a metric costs a single field read.
+ */
+public final class MetricsRegistry {
+    /**
+     * Gets or creates a counter
+     * @param name the name of the counter
+     * @return the counter registered with that name
+     */
+    public Counter counter(String name) {
+        return register(name, Counter.class, new Counter(this));
+    }
+
+    /**
+     * Gets or creates a latency histogram
+     * @param name the name of the histogram
+     * @return the histogram registered with that name
+     */
+    public Histogram histogram(String name) {
+        return register(name, Histogram.class, new Histogram(this));
+    }
+
+    /**
+     * Registers (or replaces) a gauge, whose value is read whenever the metrics are exported
+     * Note: The value is read from the exporting thread
+     * @param name the name of the gauge
+     * @param value the function giving the current value of the gauge
+     */
+    public void gauge(String name, LongSupplier value) {
+        if (name == null) {
+            throw new IllegalArgumentException("name");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("value");
+        }
+
+        Object previous = metrics.put(name, new Gauge(value));
+        if (previous != null && !(previous instanceof Gauge)) {
+            metrics.put(name, previous);
+            throw new IllegalArgumentException("name");
+        }
+    }
+
+    /**
+     * Visits every registered metric, in the order of their names
+     * @param visitor the visitor receiving the metrics
+     */
+    public void visit(MetricVisitor visitor) {
+        if (visitor == null) {
+            throw new IllegalArgumentException("visitor");
+        }
+
+        for (Map.Entry<String, Object> metric : metrics.entrySet()) {
+            if (metric.getValue() instanceof Counter) {
+                visitor.visitCounter(metric.getKey(), ((Counter) metric.getValue()).get());
+            }
+            else if (metric.getValue() instanceof Gauge) {
+                visitor.visitGauge(metric.getKey(), ((Gauge) metric.getValue()).value.getAsLong());
+            }
+            else {
+                visitor.visitHistogram(metric.getKey(), ((Histogram) metric.getValue()).snapshot());
+            }
+        }
+    }
+
+    /**
+     * Turns the recording of the metrics on or off
+     * @param enabled whether the metric updates are recorded
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Getter used for finding whether the metric updates are recorded
+     * @return true if the registry is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private <T> T register(String name, Class<T> type, T metric) {
+        if (name == null) {
+            throw new IllegalArgumentException("name");
+        }
+
+        Object registered = metrics.putIfAbsent(name, metric);
+        if (registered == null) {
+            return metric;
+        }
+        if (!type.isInstance(registered)) {
+            throw new IllegalArgumentException("name");
+        }
+        return type.cast(registered);
+    }
+
+    /**
+     * Class wrapping the function giving the value of a gauge
+     */
+    private static final class Gauge {
+        Gauge(LongSupplier value) {
+            this.value = value;
+        }
+
+        final LongSupplier value;
+    }
+
+    private final Map<String, Object> metrics = new ConcurrentSkipListMap<>();
+    volatile boolean enabled = true;
+}
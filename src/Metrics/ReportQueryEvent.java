@@ -0,0 +1,37 @@
+package Metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Flight Recorder event emitted for every printed report
+ */
+@Name("jpmc.ReportQuery")
+@Label("Report Query")
+@Category({"JPMC", "Report"})
+@Description("A report printed by a report generator")
+@StackTrace(false)
+public class ReportQueryEvent extends Event {
+    @Label("Type")
+    @Description("The printed report, e.g. daily, monthly or ranking")
+    public String type;
+
+    @Label("Rows")
+    @Description("The number of printed rows, without the header")
+    public int rows;
+
+    @Label("Range Start")
+    @Description("The first period of the report, if it covers a range of dates")
+    public String rangeStart;
+
+    @Label("Range End")
+    @Description("The last period of the report, if it covers a range of dates")
+    public String rangeEnd;
+}
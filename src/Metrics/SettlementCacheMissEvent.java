@@ -0,0 +1,27 @@
+package Metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Flight Recorder event emitted when a settlement date is not found in the cache of its calendar
+ */
+@Name("jpmc.SettlementCacheMiss")
+@Label("Settlement Calendar Cache Miss")
+@Category({"JPMC", "Ingest"})
+@Description("A settlement date computed because it was not cached")
+@StackTrace(false)
+public class SettlementCacheMissEvent extends Event {
+    @Label("Calendar")
+    public String calendar;
+
+    @Label("Desired Date")
+    public String desiredDate;
+}
@@ -0,0 +1,75 @@
+package Metrics;
+
+import Components.IOutput;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Exporter writing the metrics of a registry as "name value" lines
+ *
+ * Besides its total, every counter is exported with its rate per second since the previous export (e.g.
+ * ingest.lines.rate), and every histogram with its count, mean, p50, p90, p99, p999 and max.
+ */
+public final class TextExporter implements MetricVisitor {
+    /**
+     * Constructor
+     * @param outDestination the class used for outputting the lines
+     */
+    public TextExporter(IOutput outDestination) {
+        if (outDestination == null) {
+            throw new IllegalArgumentException("outDestination");
+        }
+        outputDestination = outDestination;
+    }
+
+    /**
+     * Writes the current value of every metric of a registry
+     * @param registry the registry
+     */
+    public synchronized void export(MetricsRegistry registry) {
+        if (registry == null) {
+            throw new IllegalArgumentException("registry");
+        }
+
+        long now = System.nanoTime();
+        elapsedSeconds = previousExport == Long.MIN_VALUE ? 0 : (now - previousExport) / 1e9;
+        previousExport = now;
+
+        registry.visit(this);
+    }
+
+    @Override
+    public void visitCounter(String name, long value) {
+        outputDestination.outputString(name + ' ' + value);
+
+        Long previous = previousCounts.put(name, value);
+        if (previous != null && elapsedSeconds > 0) {
+            outputDestination.outputString(name + ".rate " + Math.round((value - previous) / elapsedSeconds));
+        }
+    }
+
+    @Override
+    public void visitGauge(String name, long value) {
+        outputDestination.outputString(name + ' ' + value);
+    }
+
+    @Override
+    public void visitHistogram(String name, Histogram.Snapshot snapshot) {
+        outputDestination.outputString(name + ".count " + snapshot.getCount());
+        outputDestination.outputString(name + ".mean " + Math.round(snapshot.getMean()));
+        outputDestination.outputString(name + ".p50 " + snapshot.getPercentile(0.5));
+        outputDestination.outputString(name + ".p90 " + snapshot.getPercentile(0.9));
+        outputDestination.outputString(name + ".p99 " + snapshot.getPercentile(0.99));
+        outputDestination.outputString(name + ".p999 " + snapshot.getPercentile(0.999));
+        outputDestination.outputString(name + ".max " + snapshot.getMax());
+    }
+
+    private final IOutput outputDestination;
+    private final Map<String, Long> previousCounts = new HashMap<>();
+    private long previousExport = Long.MIN_VALUE;
+    private double elapsedSeconds = 0;
+}
@@ -0,0 +1,189 @@
+package Network;
+
+import Components.ITransaction;
+import Components.ITransaction.CashflowDirection;
+import Components.InstructionBatch;
+import Components.Transaction;
+import Helpers.ParsingUtil.RecordType;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Decoder of the frames of a single connection of the binary ingest protocol (see {@link WireFormat})
+ *
+ * The records are decoded straight into transactions, keeping the dictionaries of the connection and a small cache
+ * of the settlement dates, so a record costs a single transaction allocation in the common case.
+ * Note: An instance is not thread safe, use one per connection
+ */
+public final class FrameDecoder {
+    /**
+     * Decodes the complete frames available in a buffer, stopping after a SYNC frame
+     * Note: The decoded frames are consumed from the buffer, an incomplete frame is left in it
+     * @param in the buffer holding the received bytes, ready to be read
+     * @param batch the batch receiving the decoded records
+     * @return true if a SYNC frame was decoded, in which case its token is given by {@link #getSyncToken()}
+     * @throws ProtocolException if a frame is malformed
+     */
+    public boolean decode(ByteBuffer in, InstructionBatch batch) throws ProtocolException {
+        if (in == null) {
+            throw new IllegalArgumentException("in");
+        }
+        if (batch == null) {
+            throw new IllegalArgumentException("batch");
+        }
+
+        while (in.remaining() >= 4) {
+            int start = in.position();
+            int length = in.getInt(start);
+            if (length < 1 || length > WireFormat.MAX_FRAME_SIZE - 4) {
+                throw new ProtocolException("Invalid frame length " + length);
+            }
+            if (in.remaining() < length + 4) {
+                return false;
+            }
+
+            int end = start + 4 + length;
+            byte type = in.get(start + 4);
+            in.position(start + 5);
+
+            switch (type) {
+                case WireFormat.DEFINE_ENTITY:
+                    entities = define(entities, entityCount++, in, end);
+                    break;
+                case WireFormat.DEFINE_CURRENCY:
+                    currencies = define(currencies, currencyCount++, in, end);
+                    break;
+                case WireFormat.BATCH:
+                    if ((end - in.position()) % WireFormat.RECORD_SIZE != 0) {
+                        throw new ProtocolException("Truncated record");
+                    }
+                    while (in.position() < end) {
+                        decodeRecord(in, batch);
+                    }
+                    break;
+                case WireFormat.SYNC:
+                    if (length != 1 + 8) {
+                        throw new ProtocolException("Invalid sync frame");
+                    }
+                    syncToken = in.getLong();
+                    return true;
+                default:
+                    throw new ProtocolException("Unknown frame type " + type);
+            }
+            in.position(end);
+        }
+        return false;
+    }
+
+    /**
+     * Getter used for obtaining the token of the last decoded SYNC frame
+     * @return the token chosen by the client
+     */
+    public long getSyncToken() {
+        return syncToken;
+    }
+
+    private String[] define(String[] names, int id, ByteBuffer in, int end) throws ProtocolException {
+        if (end - in.position() < 4 || in.getInt() != id) {
+            throw new ProtocolException("Dictionary ids must be given in order");
+        }
+        int length = end - in.position();
+        if (length > WireFormat.MAX_NAME_LENGTH) {
+            throw new ProtocolException("Name too long");
+        }
+
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        if (id == names.length) {
+            names = Arrays.copyOf(names, Math.max(16, names.length * 2));
+        }
+        names[id] = new String(bytes, StandardCharsets.UTF_8);
+        return names;
+    }
+
+    private void decodeRecord(ByteBuffer in, InstructionBatch batch) throws ProtocolException {
+        byte kind = in.get();
+        byte operation = in.get();
+        int currencyId = in.getShort() & 0xFFFF;
+        int entityId = in.getInt();
+        long instructionId = in.getLong();
+        int desiredSettlementDay = in.getInt();
+        int units = in.getInt();
+        long agreedFx = in.getLong();
+        long pricePerUnit = in.getLong();
+
+        if (kind == WireFormat.RECORD_CANCEL) {
+            batch.addCancel(instructionId);
+            return;
+        }
+        if (kind < WireFormat.RECORD_INSTRUCTION || kind > WireFormat.RECORD_AMEND) {
+            throw new ProtocolException("Unknown record kind " + kind);
+        }
+        if (entityId < 0 || entityId >= entityCount || currencyId >= currencyCount) {
+            throw new ProtocolException("Undefined entity or currency");
+        }
+        if (kind == WireFormat.RECORD_INSTRUCTION) {
+            instructionId = ITransaction.NO_INSTRUCTION_ID;
+        }
+        else if (instructionId < 0) {
+            throw new ProtocolException("Invalid instruction id " + instructionId);
+        }
+
+        CashflowDirection direction;
+        if (operation == 'S') {
+            direction = CashflowDirection.Incoming;
+        }
+        else if (operation == 'B') {
+            direction = CashflowDirection.Outgoing;
+        }
+        else {
+            throw new ProtocolException("Unknown operation " + operation);
+        }
+
+        batch.add(RECORD_TYPES[kind], new Transaction(
+                entities[entityId],
+                direction,
+                agreedFx / WireFormat.AMOUNT_SCALE,
+                currencies[currencyId],
+                dateOf(desiredSettlementDay),
+                units,
+                pricePerUnit / WireFormat.AMOUNT_SCALE,
+                instructionId
+        ));
+    }
+
+    /**
+     * Getter used for obtaining the date of an epoch day, through a direct mapped cache
+     */
+    private LocalDate dateOf(int epochDay) throws ProtocolException {
+        int slot = epochDay & (dates.length - 1);
+        LocalDate date = dates[slot];
+        if (date == null || date.toEpochDay() != epochDay) {
+            if (epochDay < MIN_EPOCH_DAY || epochDay > MAX_EPOCH_DAY) {
+                throw new ProtocolException("Invalid date " + epochDay);
+            }
+            date = LocalDate.ofEpochDay(epochDay);
+            dates[slot] = date;
+        }
+        return date;
+    }
+
+    // indexed by the record kind
+    private static final RecordType[] RECORD_TYPES = { RecordType.Instruction, RecordType.New, RecordType.Amend };
+    private static final long MIN_EPOCH_DAY = LocalDate.of(1, 1, 1).toEpochDay();
+    private static final long MAX_EPOCH_DAY = LocalDate.of(9999, 12, 31).toEpochDay();
+
+    private String[] entities = new String[16];
+    private int entityCount = 0;
+    private String[] currencies = new String[16];
+    private int currencyCount = 0;
+    private final LocalDate[] dates = new LocalDate[1024];
+    private long syncToken = 0;
+}
@@ -0,0 +1,298 @@
+package Network;
+
+import Components.ITransaction;
+import Components.ITransaction.CashflowDirection;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Client sending instructions to an {@link IngestServer}, using the binary protocol described by {@link WireFormat}
+ *
+ * The records are accumulated in a buffer and sent in batch frames whenever the buffer fills up, on {@link #flush()}
+ * or on {@link #sync()}. Since the server applies the records asynchronously, {@link #sync()} is the way to wait until
+ * everything sent so far was applied.
+ * Note: An instance is not thread safe
+ */
+public final class IngestClient implements Closeable {
+    /**
+     * Constructor, connecting to a server
+     * @param address the address of the server
+     * @throws IOException if the connection failed
+     */
+    public IngestClient(InetSocketAddress address) throws IOException {
+        this(address, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor, connecting to a server
+     * @param address the address of the server
+     * @param bufferSize the size in bytes of the send buffer, which bounds the size of a batch frame
+     * @throws IOException if the connection failed
+     */
+    public IngestClient(InetSocketAddress address, int bufferSize) throws IOException {
+        if (address == null) {
+            throw new IllegalArgumentException("address");
+        }
+        if (bufferSize < MIN_BUFFER_SIZE || bufferSize > WireFormat.MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("bufferSize");
+        }
+
+        out = ByteBuffer.allocateDirect(bufferSize);
+        channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    /**
+     * Sends a plain instruction, which cannot be amended or cancelled
+     * @param entity the entity taking part in the transaction
+     * @param direction the direction of the operation (Outgoing for a buy, Incoming for a sell)
+     * @param agreedFx the exchange rate for the transaction currency to US Dollars
+     * @param currency the currency of the transaction
+     * @param desiredSettlementDate the date when the transaction is desired to settle
+     * @param units the number of units to be transacted
+     * @param pricePerUnit the price per unit
+     * @throws IOException if the records could not be sent
+     */
+    public void sendInstruction(String entity, CashflowDirection direction, double agreedFx, String currency,
+                                LocalDate desiredSettlementDate, int units, double pricePerUnit) throws IOException {
+        putRecord(WireFormat.RECORD_INSTRUCTION, ITransaction.NO_INSTRUCTION_ID, entity, direction, agreedFx,
+                currency, desiredSettlementDate, units, pricePerUnit);
+    }
+
+    /**
+     * Sends an instruction with an id, which can later be amended or cancelled
+     * @param instructionId the id of the instruction
+     * @param entity the entity taking part in the transaction
+     * @param direction the direction of the operation (Outgoing for a buy, Incoming for a sell)
+     * @param agreedFx the exchange rate for the transaction currency to US Dollars
+     * @param currency the currency of the transaction
+     * @param desiredSettlementDate the date when the transaction is desired to settle
+     * @param units the number of units to be transacted
+     * @param pricePerUnit the price per unit
+     * @throws IOException if the records could not be sent
+     */
+    public void sendNew(long instructionId, String entity, CashflowDirection direction, double agreedFx,
+                        String currency, LocalDate desiredSettlementDate, int units, double pricePerUnit)
+            throws IOException {
+        checkInstructionId(instructionId);
+        putRecord(WireFormat.RECORD_NEW, instructionId, entity, direction, agreedFx, currency, desiredSettlementDate,
+                units, pricePerUnit);
+    }
+
+    /**
+     * Sends the replacement of a live instruction
+     * @param instructionId the id of the amended instruction
+     * @param entity the entity taking part in the transaction
+     * @param direction the direction of the operation (Outgoing for a buy, Incoming for a sell)
+     * @param agreedFx the exchange rate for the transaction currency to US Dollars
+     * @param currency the currency of the transaction
+     * @param desiredSettlementDate the date when the transaction is desired to settle
+     * @param units the number of units to be transacted
+     * @param pricePerUnit the price per unit
+     * @throws IOException if the records could not be sent
+     */
+    public void sendAmend(long instructionId, String entity, CashflowDirection direction, double agreedFx,
+                          String currency, LocalDate desiredSettlementDate, int units, double pricePerUnit)
+            throws IOException {
+        checkInstructionId(instructionId);
+        putRecord(WireFormat.RECORD_AMEND, instructionId, entity, direction, agreedFx, currency, desiredSettlementDate,
+                units, pricePerUnit);
+    }
+
+    /**
+     * Sends the cancellation of a live instruction
+     * @param instructionId the id of the cancelled instruction
+     * @throws IOException if the records could not be sent
+     */
+    public void sendCancel(long instructionId) throws IOException {
+        checkInstructionId(instructionId);
+        reserveRecord();
+        out.put(WireFormat.RECORD_CANCEL).put((byte) 0).putShort((short) 0).putInt(0)
+                .putLong(instructionId)
+                .putInt(0).putInt(0).putLong(0).putLong(0);
+        batchRecords++;
+    }
+
+    /**
+     * Sends the buffered records
+     * @throws IOException if the records could not be sent
+     */
+    public void flush() throws IOException {
+        closeBatch();
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Sends the buffered records and waits until the server applied every record sent so far
+     * @return the number of records applied on this connection
+     * @throws IOException if the records could not be sent or the server closed the connection
+     */
+    public long sync() throws IOException {
+        long token = ++syncCount;
+        closeBatch();
+        reserve(4 + 1 + 8);
+        out.putInt(1 + 8).put(WireFormat.SYNC).putLong(token);
+        flush();
+
+        ByteBuffer reply = ByteBuffer.allocate(WireFormat.SYNC_REPLY_SIZE);
+        while (reply.hasRemaining()) {
+            if (channel.read(reply) < 0) {
+                throw new EOFException("The server closed the connection");
+            }
+        }
+        reply.flip();
+        if (reply.getInt() != WireFormat.SYNC_REPLY_SIZE - 4 || reply.get() != WireFormat.SYNC ||
+                reply.getLong() != token) {
+            throw new ProtocolException("Unexpected reply");
+        }
+        return reply.getLong();
+    }
+
+    /**
+     * Sends the buffered records and closes the connection
+     * Note: Use {@link #sync()} before closing to make sure the records were applied
+     * @throws IOException if the records could not be sent
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    private void putRecord(byte kind, long instructionId, String entity, CashflowDirection direction,
+                           double agreedFx, String currency, LocalDate desiredSettlementDate, int units,
+                           double pricePerUnit) throws IOException {
+        if (direction == null) {
+            throw new IllegalArgumentException("direction");
+        }
+        if (desiredSettlementDate == null) {
+            throw new IllegalArgumentException("desiredSettlementDate");
+        }
+        long fixedFx = toFixedPoint(agreedFx, "agreedFx");
+        long fixedPrice = toFixedPoint(pricePerUnit, "pricePerUnit");
+        int entityId = idOf(entityIds, entity, WireFormat.DEFINE_ENTITY, Integer.MAX_VALUE, "entity");
+        int currencyId = idOf(currencyIds, currency, WireFormat.DEFINE_CURRENCY, 0xFFFF, "currency");
+
+        reserveRecord();
+        out.put(kind).put((byte) (direction == CashflowDirection.Incoming ? 'S' : 'B'))
+                .putShort((short) currencyId).putInt(entityId)
+                .putLong(instructionId)
+                .putInt((int) desiredSettlementDate.toEpochDay()).putInt(units)
+                .putLong(fixedFx).putLong(fixedPrice);
+        batchRecords++;
+    }
+
+    /**
+     * Getter used for obtaining the dictionary id of a name, sending its definition the first time it is used
+     */
+    private int idOf(Map<String, Integer> ids, String name, byte frameType, int maxId, String parameter)
+            throws IOException {
+        if (name == null) {
+            throw new IllegalArgumentException(parameter);
+        }
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > WireFormat.MAX_NAME_LENGTH || ids.size() > maxId) {
+            throw new IllegalArgumentException(parameter);
+        }
+
+        // the definition must come before the batch frame using it
+        closeBatch();
+        reserve(4 + 1 + 4 + bytes.length);
+        out.putInt(1 + 4 + bytes.length).put(frameType).putInt(ids.size()).put(bytes);
+        ids.put(name, ids.size());
+        return ids.size() - 1;
+    }
+
+    /**
+     * Makes room for a record in the open batch frame, opening a new one if needed
+     */
+    private void reserveRecord() throws IOException {
+        if (batchStart >= 0 && out.remaining() >= WireFormat.RECORD_SIZE) {
+            return;
+        }
+
+        closeBatch();
+        reserve(4 + 1 + WireFormat.RECORD_SIZE);
+        batchStart = out.position();
+        out.putInt(0).put(WireFormat.BATCH);
+    }
+
+    /**
+     * Writes the length of the open batch frame, if any
+     */
+    private void closeBatch() {
+        if (batchStart < 0) {
+            return;
+        }
+        if (batchRecords == 0) {
+            out.position(batchStart);
+        }
+        else {
+            out.putInt(batchStart, 1 + batchRecords * WireFormat.RECORD_SIZE);
+        }
+        batchStart = -1;
+        batchRecords = 0;
+    }
+
+    private void reserve(int bytes) throws IOException {
+        if (out.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private static long toFixedPoint(double amount, String parameter) {
+        double scaled = Math.rint(amount * WireFormat.AMOUNT_SCALE);
+        if (Double.isNaN(scaled) || Math.abs(scaled) > MAX_FIXED_POINT) {
+            throw new IllegalArgumentException(parameter);
+        }
+        return (long) scaled;
+    }
+
+    private static void checkInstructionId(long instructionId) {
+        if (instructionId < 0) {
+            throw new IllegalArgumentException("instructionId");
+        }
+    }
+
+    private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    // a definition with the longest name must fit in the buffer
+    private static final int MIN_BUFFER_SIZE = 4 + 1 + 4 + WireFormat.MAX_NAME_LENGTH;
+    // fixed point values up to 2^53 are decoded exactly
+    private static final double MAX_FIXED_POINT = 0x1p53;
+
+    private final SocketChannel channel;
+    private final ByteBuffer out;
+    private final Map<String, Integer> entityIds = new HashMap<>();
+    private final Map<String, Integer> currencyIds = new HashMap<>();
+    // position of the length of the open batch frame or -1 if there is none
+    private int batchStart = -1;
+    private int batchRecords = 0;
+    private long syncCount = 0;
+}
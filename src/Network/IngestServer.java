@@ -0,0 +1,273 @@
+package Network;
+
+import Components.ITransactionSink;
+import Components.InstructionBatch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Non-blocking server receiving instructions in the binary protocol described by {@link WireFormat}, on the loopback
+ * interface, and applying them to a sink
+ *
+ * A single selector thread serves every connection. The records decoded from one read of a connection are given to
+ * the sink as one batch, so the batches grow with the rate of the feed (up to the size of the receive buffer).
+ * A connection sending a malformed frame is closed, and so is a connection whose batch the sink failed to apply (the
+ * failure is logged and counted), the other connections being still served.
+ */
+public final class IngestServer implements Closeable {
+    /**
+     * Constructor, starting the server
+     * @param sink the sink receiving the decoded instructions
+     * @param port the local port or 0 for any free port
+     * @throws IOException if the server could not be started
+     */
+    public IngestServer(ITransactionSink sink, int port) throws IOException {
+        if (sink == null) {
+            throw new IllegalArgumentException("sink");
+        }
+        if (port < 0 || port > 0xFFFF) {
+            throw new IllegalArgumentException("port");
+        }
+
+        this.sink = sink;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        thread = new Thread(this::run, "ingest-server-" + getPort());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Getter used for obtaining the address the server listens on
+     * @return the local address
+     */
+    public InetSocketAddress getAddress() {
+        try {
+            return (InetSocketAddress) serverChannel.getLocalAddress();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("The server is closed", e);
+        }
+    }
+
+    /**
+     * Getter used for obtaining the port the server listens on
+     * @return the local port
+     */
+    public int getPort() {
+        return getAddress().getPort();
+    }
+
+    /**
+     * Getter used for obtaining the number of records applied so far, over all the connections
+     * @return the number of applied records
+     */
+    public long getRecordCount() {
+        return recordCount.get();
+    }
+
+    /**
+     * Getter used for obtaining the number of connections closed because of a malformed frame
+     * @return the number of rejected connections
+     */
+    public long getProtocolErrorCount() {
+        return protocolErrorCount.get();
+    }
+
+    /**
+     * Getter used for obtaining the number of connections closed because the sink failed to apply one of their batches
+     * @return the number of failed connections
+     */
+    public long getSinkErrorCount() {
+        return sinkErrorCount.get();
+    }
+
+    /**
+     * Stops the server, closing every connection
+     * Note: The records received but not yet applied are lost
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.write();
+                        }
+                    }
+                    catch (ProtocolException e) {
+                        protocolErrorCount.incrementAndGet();
+                        connection.close();
+                    }
+                    catch (IOException e) {
+                        connection.close();
+                    }
+                    catch (RuntimeException e) {
+                        // the sink failed on a batch of this connection, which must not stop the other ones
+                        sinkErrorCount.incrementAndGet();
+                        LOGGER.log(System.Logger.Level.WARNING, "Closing a connection whose batch failed", e);
+                        connection.close();
+                    }
+                }
+            }
+        }
+        catch (IOException | ClosedSelectorException e) {
+            // nothing more can be served
+        }
+        finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        }
+        catch (IOException e) {
+            // already closing
+        }
+    }
+
+    /**
+     * Class holding the state of a single connection
+     */
+    private final class Connection {
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        /**
+         * Reads the available bytes, applying the complete frames to the sink and answering the SYNC frames
+         */
+        void read() throws IOException {
+            int read = channel.read(in);
+            if (read < 0) {
+                close();
+                return;
+            }
+
+            in.flip();
+            boolean sync;
+            do {
+                sync = decoder.decode(in, batch);
+                if (batch.size() > 0) {
+                    sink.addBatch(batch);
+                    appliedRecords += batch.size();
+                    recordCount.addAndGet(batch.size());
+                    batch.clear();
+                }
+                if (sync) {
+                    reply();
+                }
+            } while (sync);
+            in.compact();
+        }
+
+        /**
+         * Sends the pending replies
+         */
+        void write() throws IOException {
+            out.flip();
+            channel.write(out);
+            out.compact();
+            key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        void close() {
+            key.cancel();
+            closeQuietly(channel);
+        }
+
+        private void reply() throws IOException {
+            if (out.remaining() < WireFormat.SYNC_REPLY_SIZE) {
+                throw new ProtocolException("Too many unread replies");
+            }
+            out.putInt(WireFormat.SYNC_REPLY_SIZE - 4).put(WireFormat.SYNC)
+                    .putLong(decoder.getSyncToken()).putLong(appliedRecords);
+            write();
+        }
+
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocateDirect(WireFormat.MAX_FRAME_SIZE);
+        private final ByteBuffer out = ByteBuffer.allocate(REPLY_BUFFER_SIZE);
+        private final FrameDecoder decoder = new FrameDecoder();
+        private final InstructionBatch batch = new InstructionBatch(1024);
+        private long appliedRecords = 0;
+    }
+
+    private static final int REPLY_BUFFER_SIZE = 64 * WireFormat.SYNC_REPLY_SIZE;
+    private static final System.Logger LOGGER = System.getLogger(IngestServer.class.getName());
+
+    private final ITransactionSink sink;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread thread;
+    private final AtomicLong recordCount = new AtomicLong();
+    private final AtomicLong protocolErrorCount = new AtomicLong();
+    private final AtomicLong sinkErrorCount = new AtomicLong();
+    private volatile boolean running = true;
+}
@@ -0,0 +1,50 @@
+package Network;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Constants of the binary ingest protocol spoken between the {@link IngestClient} and the {@link IngestServer}
+ *
+ * The stream is a sequence of frames (big endian): int length of the rest of the frame, byte frame type, payload.
+ *   DEFINE_ENTITY   : int id, UTF-8 name (the rest of the frame)
+ *   DEFINE_CURRENCY : int id, UTF-8 code (the rest of the frame)
+ *   BATCH           : records of RECORD_SIZE bytes each
+ *   SYNC            : long token; the server answers with a SYNC frame holding the token and the number of records
+ *                     applied on the connection so far (long), once every preceding record was applied
+ *
+ * Entities and currencies are sent once per connection and referenced by their ids, which are given in increasing
+ * order starting from 0. A record (RECORD_SIZE bytes) holds:
+ *   byte record kind (RECORD_INSTRUCTION, RECORD_NEW, RECORD_AMEND or RECORD_CANCEL), byte operation ('B' or 'S'),
+ *   short currency id, int entity id, long instruction id (NO_INSTRUCTION_ID for a plain instruction),
+ *   int desired settlement date (epoch day), int units,
+ *   long agreed FX and long price per unit, both in fixed point with AMOUNT_DECIMALS decimals
+ * A cancellation only uses the record kind and the instruction id, the other fields are ignored.
+ *
+ * A fixed point amount n is decoded as n / 10^AMOUNT_DECIMALS, which is the double nearest to the decimal amount,
+ * so the transactions are the same as the ones parsed from the text input for amounts with up to AMOUNT_DECIMALS
+ * decimals.
+ */
+public final class WireFormat {
+    private WireFormat() {
+    }
+
+    public static final byte DEFINE_ENTITY = 1;
+    public static final byte DEFINE_CURRENCY = 2;
+    public static final byte BATCH = 3;
+    public static final byte SYNC = 4;
+
+    public static final byte RECORD_INSTRUCTION = 0;
+    public static final byte RECORD_NEW = 1;
+    public static final byte RECORD_AMEND = 2;
+    public static final byte RECORD_CANCEL = 3;
+
+    public static final int RECORD_SIZE = 40;
+    public static final int AMOUNT_DECIMALS = 8;
+    public static final double AMOUNT_SCALE = 1e8;
+
+    // the largest frame accepted by the server, length field included
+    public static final int MAX_FRAME_SIZE = 1 << 20;
+    public static final int MAX_NAME_LENGTH = 1024;
+    public static final int SYNC_REPLY_SIZE = 4 + 1 + 8 + 8;
+}
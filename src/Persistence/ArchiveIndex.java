@@ -0,0 +1,190 @@
+package Persistence;
+
+import Components.ITransaction.CashflowDirection;
+import Helpers.RoaringBitmap;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Secondary indexes of a {@link ColumnarArchive}, giving the ids of the rows (their position in the archive) with a
+ * given entity, currency, direction or settlement day as compressed bitmaps
+ *
+ * A filtered report combines the bitmaps with {@link RoaringBitmap#and} and {@link RoaringBitmap#or}, then
+ * aggregates only the selected rows, e.g. the outgoing AED cashflow of March:
+ *
+ *     RoaringBitmap rows = RoaringBitmap.and(index.getCurrencyRows("AED"),
+ *             RoaringBitmap.and(index.getDirectionRows(Outgoing), index.getDayRows(march1, march31)));
+ *     archive.getDailySummaries(rows);
+ *
+ * Since the archive is sorted by settlement day, the rows of a range of days follow each other, so the bitmap of a
+ * range is built from its first and last row instead of being the union of the bitmaps of its days.
+ * Note: The returned bitmaps are shared by the index and must not be modified
+ */
+public final class ArchiveIndex {
+    /**
+     * Builds the indexes of an archive, reading its entity, currency, direction and day columns once
+     * @param archive the archive
+     * @return the indexes
+     */
+    public static ArchiveIndex build(ColumnarArchive archive) {
+        if (archive == null) {
+            throw new IllegalArgumentException("archive");
+        }
+        if (archive.getRowCount() > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many rows to be indexed: " + archive.getRowCount());
+        }
+
+        List<String> entities = archive.getEntityNames();
+        List<String> currencies = archive.getCurrencies();
+        RoaringBitmap[] entityRows = newBitmaps(entities.size());
+        RoaringBitmap[] currencyRows = newBitmaps(currencies.size());
+        RoaringBitmap[] directionRows = newBitmaps(DIRECTIONS.length);
+        NavigableMap<Long, int[]> dayRows = new TreeMap<>();
+
+        int id = 0;
+        for (int index = 0; index < archive.getRowGroupCount(); index++) {
+            ColumnarArchive.RowGroup rowGroup = archive.getRowGroup(index);
+            for (int row = 0; row < rowGroup.rowCount; row++) {
+                entityRows[rowGroup.getEntity(row)].add(id + row);
+                currencyRows[rowGroup.getCurrency(row)].add(id + row);
+                directionRows[rowGroup.getDirection(row).ordinal()].add(id + row);
+            }
+
+            long day = rowGroup.minDay;
+            int runStart = id;
+            for (int run = 0; run < rowGroup.runCount; run++) {
+                day += rowGroup.getRunDelta(run);
+                int runEnd = runStart + rowGroup.getRunLength(run);
+                // a day may continue in the next row group
+                int[] range = dayRows.get(day);
+                if (range == null) {
+                    dayRows.put(day, new int[] {runStart, runEnd});
+                }
+                else {
+                    range[1] = runEnd;
+                }
+                runStart = runEnd;
+            }
+            id += rowGroup.rowCount;
+        }
+
+        Map<String, RoaringBitmap> entityIndex = new HashMap<>(entities.size() * 2);
+        for (int i = 0; i < entities.size(); i++) {
+            entityIndex.put(entities.get(i), entityRows[i]);
+        }
+        Map<String, RoaringBitmap> currencyIndex = new HashMap<>(currencies.size() * 2);
+        for (int i = 0; i < currencies.size(); i++) {
+            currencyIndex.put(currencies.get(i), currencyRows[i]);
+        }
+        return new ArchiveIndex(entityIndex, currencyIndex, directionRows, dayRows);
+    }
+
+    /**
+     * Getter used for obtaining the rows of an entity
+     * @param entity the name of the entity
+     * @return the ids of the rows, empty if the entity is not archived
+     */
+    public RoaringBitmap getEntityRows(String entity) {
+        if (entity == null) {
+            throw new IllegalArgumentException("entity");
+        }
+        return entityRows.getOrDefault(entity, EMPTY);
+    }
+
+    /**
+     * Getter used for obtaining the rows of a currency
+     * @param currency the currency
+     * @return the ids of the rows, empty if the currency is not archived
+     */
+    public RoaringBitmap getCurrencyRows(String currency) {
+        if (currency == null) {
+            throw new IllegalArgumentException("currency");
+        }
+        return currencyRows.getOrDefault(currency, EMPTY);
+    }
+
+    /**
+     * Getter used for obtaining the rows of a direction
+     * @param direction the direction of the cashflow
+     * @return the ids of the rows
+     */
+    public RoaringBitmap getDirectionRows(CashflowDirection direction) {
+        if (direction == null) {
+            throw new IllegalArgumentException("direction");
+        }
+        return directionRows[direction.ordinal()];
+    }
+
+    /**
+     * Getter used for obtaining the rows of a range of settlement days
+     * @param from the first day of the range (inclusive) or null for no lower bound
+     * @param to the last day of the range (inclusive) or null for no upper bound
+     * @return the ids of the rows, as a new bitmap
+     */
+    public RoaringBitmap getDayRows(LocalDate from, LocalDate to) {
+        NavigableMap<Long, int[]> days = dayRows;
+        if (from != null) {
+            days = days.tailMap(from.toEpochDay(), true);
+        }
+        if (to != null) {
+            days = days.headMap(to.toEpochDay(), true);
+        }
+
+        RoaringBitmap rows = new RoaringBitmap();
+        if (!days.isEmpty()) {
+            rows.addRange(days.firstEntry().getValue()[0], days.lastEntry().getValue()[1]);
+        }
+        return rows;
+    }
+
+    /**
+     * Getter used for obtaining the memory taken by the bitmaps
+     * @return the approximate size in bytes
+     */
+    public long getSizeInBytes() {
+        long bytes = 0;
+        for (RoaringBitmap rows : entityRows.values()) {
+            bytes += rows.getSizeInBytes();
+        }
+        for (RoaringBitmap rows : currencyRows.values()) {
+            bytes += rows.getSizeInBytes();
+        }
+        for (RoaringBitmap rows : directionRows) {
+            bytes += rows.getSizeInBytes();
+        }
+        return bytes + 16L * dayRows.size();
+    }
+
+    private ArchiveIndex(Map<String, RoaringBitmap> entityRows, Map<String, RoaringBitmap> currencyRows,
+                         RoaringBitmap[] directionRows, NavigableMap<Long, int[]> dayRows) {
+        this.entityRows = entityRows;
+        this.currencyRows = currencyRows;
+        this.directionRows = directionRows;
+        this.dayRows = dayRows;
+    }
+
+    private static RoaringBitmap[] newBitmaps(int count) {
+        RoaringBitmap[] bitmaps = new RoaringBitmap[count];
+        for (int i = 0; i < count; i++) {
+            bitmaps[i] = new RoaringBitmap();
+        }
+        return bitmaps;
+    }
+
+    private static final CashflowDirection[] DIRECTIONS = CashflowDirection.values();
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+
+    private final Map<String, RoaringBitmap> entityRows;
+    private final Map<String, RoaringBitmap> currencyRows;
+    private final RoaringBitmap[] directionRows;
+    // first (inclusive) and last (exclusive) row of each settlement day
+    private final NavigableMap<Long, int[]> dayRows;
+}
@@ -0,0 +1,477 @@
+package Persistence;
+
+import Components.DailySummary;
+import Components.Entity;
+import Components.ITransaction;
+import Components.ITransaction.CashflowDirection;
+import Components.SettledTransaction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class used for writing and reading a binary checkpoint of the aggregated report state
+ *
+ * Layout (big endian):
+ *   header       : int magic, short version, short flags, long inputOffset,
+ *                  int entityCount, int currencyCount, int dayCount, int monthCount, long transactionCount
+ *   entities     : short nameLength, byte[] name (UTF-8), double incoming, double outgoing
+ *   currencies   : short nameLength, byte[] name (UTF-8)
+ *   days         : long epochDay, int transactionCount, double incoming, double outgoing
+ *   months       : int year, byte month, int transactionCount, double incoming, double outgoing
+ *   transactions : int entityIndex, int currencyIndex, byte direction, long epochDay, double usdValue,
+ *                  long instructionId
+ *   trailer      : int CRC32 of everything before it
+ */
+public final class Checkpoint {
+    /**
+     * Constructor
+     * @param inputOffset the input offset covered by this checkpoint, in the unit of the write-ahead log (see
+     *                    {@link WriteAheadLog})
+     * @param entities the entities to be stored, keyed by their name
+     * @param dailySummaries the daily summaries to be stored, keyed by the settlement date
+     */
+    public Checkpoint(long inputOffset, Map<String, Entity> entities, Map<LocalDate, DailySummary> dailySummaries) {
+        this(inputOffset, entities, dailySummaries, Collections.emptyMap());
+    }
+
+    /**
+     * Constructor
+     * @param inputOffset the input offset covered by this checkpoint, in the unit of the write-ahead log (see
+     *                    {@link WriteAheadLog})
+     * @param entities the entities to be stored, keyed by their name
+     * @param dailySummaries the daily summaries to be stored, keyed by the settlement date
+     * @param monthlySummaries the summaries of the expired days rolled up by month
+     */
+    public Checkpoint(
+            long inputOffset,
+            Map<String, Entity> entities,
+            Map<LocalDate, DailySummary> dailySummaries,
+            Map<YearMonth, DailySummary> monthlySummaries
+    ) {
+        if (entities == null) {
+            throw new IllegalArgumentException("entities");
+        }
+        if (dailySummaries == null) {
+            throw new IllegalArgumentException("dailySummaries");
+        }
+        if (monthlySummaries == null) {
+            throw new IllegalArgumentException("monthlySummaries");
+        }
+
+        this.inputOffset = inputOffset;
+        this.entities = entities;
+        this.dailySummaries = dailySummaries;
+        this.monthlySummaries = monthlySummaries;
+    }
+
+    /**
+     * Getter used for obtaining the input offset covered by this checkpoint
+     * @return the number of input characters already accounted for
+     */
+    public long getInputOffset() {
+        return inputOffset;
+    }
+
+    /**
+     * Getter used for obtaining the checkpointed entities
+     * @return the entities keyed by their name
+     */
+    public Map<String, Entity> getEntities() {
+        return entities;
+    }
+
+    /**
+     * Getter used for obtaining the checkpointed daily summaries
+     * @return the daily summaries keyed by the settlement date
+     */
+    public Map<LocalDate, DailySummary> getDailySummaries() {
+        return dailySummaries;
+    }
+
+    /**
+     * Getter used for obtaining the checkpointed monthly roll-ups of the expired days
+     * @return the monthly summaries keyed by the month
+     */
+    public Map<YearMonth, DailySummary> getMonthlySummaries() {
+        return monthlySummaries;
+    }
+
+    /**
+     * Writes the checkpoint to a file
+     * Note: The data is written to a temporary file which atomically replaces the target once synced to disk
+     * @param file the destination file
+     * @param includeTransactions whether the individual transactions should be stored along with the aggregates
+     * @throws IOException if the checkpoint could not be written
+     */
+    public void write(Path file, boolean includeTransactions) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file");
+        }
+
+        List<Entity> entityList = new ArrayList<>(entities.values());
+        Map<String, Integer> currencyIndexes = new LinkedHashMap<>();
+        long transactionCount = 0;
+
+        if (includeTransactions) {
+            for (Entity entity : entityList) {
+                for (ITransaction transaction : entity.getTransactions()) {
+                    if (!currencyIndexes.containsKey(transaction.getCurrency())) {
+                        currencyIndexes.put(transaction.getCurrency(), currencyIndexes.size());
+                    }
+                    transactionCount++;
+                }
+            }
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(
+                temporary,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ChecksummedWriter writer = new ChecksummedWriter(channel);
+
+            writer.ensure(HEADER_SIZE);
+            writer.buffer.putInt(MAGIC);
+            writer.buffer.putShort(VERSION);
+            writer.buffer.putShort(includeTransactions ? FLAG_TRANSACTIONS : 0);
+            writer.buffer.putLong(inputOffset);
+            writer.buffer.putInt(entityList.size());
+            writer.buffer.putInt(currencyIndexes.size());
+            writer.buffer.putInt(dailySummaries.size());
+            writer.buffer.putInt(monthlySummaries.size());
+            writer.buffer.putLong(transactionCount);
+
+            for (Entity entity : entityList) {
+                writer.putString(entity.getName());
+                writer.ensure(16);
+                writer.buffer.putDouble(entity.getTotalDirectedCashflow(CashflowDirection.Incoming));
+                writer.buffer.putDouble(entity.getTotalDirectedCashflow(CashflowDirection.Outgoing));
+            }
+
+            for (String currency : currencyIndexes.keySet()) {
+                writer.putString(currency);
+            }
+
+            for (Map.Entry<LocalDate, DailySummary> day : dailySummaries.entrySet()) {
+                writer.ensure(DAY_SIZE);
+                writer.buffer.putLong(day.getKey().toEpochDay());
+                writer.buffer.putInt(day.getValue().transactionCount);
+                writer.buffer.putDouble(day.getValue().incoming);
+                writer.buffer.putDouble(day.getValue().outgoing);
+            }
+
+            for (Map.Entry<YearMonth, DailySummary> month : monthlySummaries.entrySet()) {
+                writer.ensure(MONTH_SIZE);
+                writer.buffer.putInt(month.getKey().getYear());
+                writer.buffer.put((byte) month.getKey().getMonthValue());
+                writer.buffer.putInt(month.getValue().transactionCount);
+                writer.buffer.putDouble(month.getValue().incoming);
+                writer.buffer.putDouble(month.getValue().outgoing);
+            }
+
+            if (includeTransactions) {
+                for (int entityIndex = 0; entityIndex < entityList.size(); entityIndex++) {
+                    for (ITransaction transaction : entityList.get(entityIndex).getTransactions()) {
+                        writer.ensure(TRANSACTION_SIZE);
+                        writer.buffer.putInt(entityIndex);
+                        writer.buffer.putInt(currencyIndexes.get(transaction.getCurrency()));
+                        writer.buffer.put((byte) transaction.getCashflowDirection().ordinal());
+                        writer.buffer.putLong(transaction.getActualSettlementDate().toEpochDay());
+                        writer.buffer.putDouble(transaction.getUsdValue());
+                        writer.buffer.putLong(transaction.getInstructionId());
+                    }
+                }
+            }
+
+            writer.finish();
+            channel.force(true);
+        }
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a checkpoint, streaming the file through a buffer so that checkpoints of any size can be read
+     * Note: The checksum is verified in a first pass, before anything is decoded
+     * @param file the checkpoint file
+     * @return the restored checkpoint
+     * @throws IOException if the file could not be read, is corrupted or has an unsupported version
+     */
+    public static Checkpoint read(Path file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file");
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + 4) {
+                throw new IOException("Invalid checkpoint size: " + size);
+            }
+            long contentSize = size - 4;
+
+            ByteBuffer trailer = ByteBuffer.allocate(4);
+            while (trailer.hasRemaining()) {
+                if (channel.read(trailer, contentSize + trailer.position()) < 0) {
+                    throw new IOException("Truncated checkpoint: " + file);
+                }
+            }
+            if ((int) checksum(channel, contentSize) != trailer.getInt(0)) {
+                throw new IOException("Checkpoint checksum mismatch: " + file);
+            }
+
+            ChannelReader reader = new ChannelReader(channel, contentSize);
+            ByteBuffer header = reader.ensure(HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a checkpoint file: " + file);
+            }
+            short version = header.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version: " + version);
+            }
+            boolean hasTransactions = (header.getShort() & FLAG_TRANSACTIONS) != 0;
+            long inputOffset = header.getLong();
+            int entityCount = header.getInt();
+            int currencyCount = header.getInt();
+            int dayCount = header.getInt();
+            int monthCount = header.getInt();
+            long transactionCount = header.getLong();
+
+            Entity[] entityList = new Entity[entityCount];
+            Map<String, Entity> entities = new HashMap<>(entityCount * 2);
+            for (int i = 0; i < entityCount; i++) {
+                String name = reader.getString();
+                ByteBuffer totals = reader.ensure(16);
+                entityList[i] = new Entity(name, totals.getDouble(), totals.getDouble());
+                entities.put(name, entityList[i]);
+            }
+
+            String[] currencies = new String[currencyCount];
+            for (int i = 0; i < currencyCount; i++) {
+                currencies[i] = reader.getString();
+            }
+
+            Map<LocalDate, DailySummary> dailySummaries = new HashMap<>(dayCount * 2);
+            for (int i = 0; i < dayCount; i++) {
+                ByteBuffer day = reader.ensure(DAY_SIZE);
+                LocalDate date = LocalDate.ofEpochDay(day.getLong());
+                int count = day.getInt();
+                dailySummaries.put(date, new DailySummary(day.getDouble(), day.getDouble(), count));
+            }
+
+            Map<YearMonth, DailySummary> monthlySummaries = new HashMap<>(monthCount * 2);
+            for (int i = 0; i < monthCount; i++) {
+                ByteBuffer month = reader.ensure(MONTH_SIZE);
+                YearMonth yearMonth = YearMonth.of(month.getInt(), month.get());
+                int count = month.getInt();
+                monthlySummaries.put(yearMonth, new DailySummary(month.getDouble(), month.getDouble(), count));
+            }
+
+            if (hasTransactions) {
+                CashflowDirection[] directions = CashflowDirection.values();
+                List<List<ITransaction>> restored = new ArrayList<>(entityCount);
+                for (int i = 0; i < entityCount; i++) {
+                    restored.add(new ArrayList<>());
+                }
+
+                for (long i = 0; i < transactionCount; i++) {
+                    ByteBuffer record = reader.ensure(TRANSACTION_SIZE);
+                    int entityIndex = record.getInt();
+                    String currency = currencies[record.getInt()];
+                    CashflowDirection direction = directions[record.get()];
+                    LocalDate date = LocalDate.ofEpochDay(record.getLong());
+                    double usdValue = record.getDouble();
+                    long instructionId = record.getLong();
+
+                    restored.get(entityIndex).add(new SettledTransaction(
+                            entityList[entityIndex].getName(),
+                            direction,
+                            currency,
+                            usdValue,
+                            date,
+                            instructionId
+                    ));
+                }
+
+                for (int i = 0; i < entityCount; i++) {
+                    entityList[i].attachTransactions(restored.get(i));
+                }
+            }
+
+            return new Checkpoint(inputOffset, entities, dailySummaries, monthlySummaries);
+        }
+        catch (IndexOutOfBoundsException | java.nio.BufferUnderflowException e) {
+            throw new IOException("Truncated checkpoint: " + file, e);
+        }
+    }
+
+    /**
+     * Computes the CRC32 of the first bytes of a file
+     * @param channel the file
+     * @param length the number of bytes
+     * @return the checksum
+     */
+    private static long checksum(FileChannel channel, long length) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        for (long position = 0; position < length; ) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), length - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            buffer.flip();
+            crc.update(buffer);
+            position += read;
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Reads a UTF-8 string
+     * @param buffer the buffer to read from
+     * @param length the length of the string in bytes
+     * @return the decoded string
+     */
+    private static String getString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Internal class used for reading the content of a checkpoint sequentially through a fixed size buffer
+     */
+    private static final class ChannelReader {
+        ChannelReader(FileChannel channel, long limit) {
+            this.channel = channel;
+            this.limit = limit;
+            buffer.flip();
+        }
+
+        /**
+         * Makes sure the buffer holds a number of bytes, reading more of the file if needed
+         * @param bytes the number of bytes about to be read, at most the size of the buffer
+         * @return the buffer, positioned on the bytes
+         */
+        ByteBuffer ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return buffer;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                buffer.limit((int) Math.min(buffer.capacity(), buffer.position() + limit - position));
+                int read = buffer.hasRemaining() ? channel.read(buffer, position) : -1;
+                if (read < 0) {
+                    throw new java.nio.BufferUnderflowException();
+                }
+                position += read;
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        /**
+         * Reads a length prefixed UTF-8 string
+         */
+        String getString() throws IOException {
+            int length = ensure(2).getShort() & 0xFFFF;
+            return Checkpoint.getString(ensure(length), length);
+        }
+
+        private final FileChannel channel;
+        private final long limit;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        private long position = 0;
+    }
+
+    /**
+     * Internal class used for writing through a fixed size buffer while computing the checksum
+     */
+    private static final class ChecksummedWriter {
+        ChecksummedWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Makes sure there is enough room in the buffer, flushing it if needed
+         * @param bytes the number of bytes about to be written
+         */
+        void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        /**
+         * Writes a length prefixed UTF-8 string
+         * @param value the string to be written
+         */
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IOException("String too long for checkpoint: " + value.length());
+            }
+            ensure(2 + bytes.length);
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+
+        /**
+         * Flushes the remaining data followed by the checksum trailer
+         */
+        void finish() throws IOException {
+            flush();
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        private final FileChannel channel;
+        private final CRC32 crc = new CRC32();
+    }
+
+    public static final int MAGIC = 0x4A504D43; // "JPMC"
+    public static final short VERSION = 3;
+
+    private static final short FLAG_TRANSACTIONS = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 2 + 8 + 4 + 4 + 4 + 4 + 8;
+    private static final int DAY_SIZE = 8 + 4 + 8 + 8;
+    private static final int MONTH_SIZE = 4 + 1 + 4 + 8 + 8;
+    private static final int TRANSACTION_SIZE = 4 + 4 + 1 + 8 + 8 + 8;
+    // holds the longest string, 2 + 65535 bytes
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+
+    private final long inputOffset;
+    private final Map<String, Entity> entities;
+    private final Map<LocalDate, DailySummary> dailySummaries;
+    private final Map<YearMonth, DailySummary> monthlySummaries;
+}
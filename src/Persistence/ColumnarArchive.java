@@ -0,0 +1,1075 @@
+package Persistence;
+
+import Components.AggregateQuery;
+import Components.AggregateQuery.GroupKey;
+import Components.AggregateRow;
+import Components.DailySummary;
+import Components.ITransaction;
+import Components.ITransaction.CashflowDirection;
+import Components.RankingEntry;
+import Components.SettledTransaction;
+import Helpers.AmountKernel;
+import Helpers.RoaringBitmap;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Columnar archive of settled transactions, read through memory mapping, for reports over date ranges which do not
+ * need the original input to be parsed again
+ *
+ * The transactions are sorted by settlement day and stored in row groups, each one holding its own columns and the
+ * minimum and maximum day of its rows (zone map), so a report over a date range only maps the pages of the row groups
+ * overlapping the range, and of those only the columns it needs.
+ *
+ * Layout (big endian):
+ *   header    : int magic, short version, short flags
+ *   row groups: long[] amount (fixed point, see {@link #AMOUNT_SCALE}), long[] instructionId, int[] entity,
+ *               int[] day runs (day delta from the previous run or from the minimum day, run length),
+ *               short[] currency, byte[] direction, padded to 8 bytes
+ *   footer    : int entityCount, entity names, int currencyCount, currency names (short length, UTF-8 bytes),
+ *               int rowGroupCount, row group entries (long offset, int rowCount, int runCount, int minDay, int maxDay)
+ *   trailer   : long footer offset, int magic
+ * Note: Unlike checkpoints, the archive has no checksum, since verifying it would mean reading the whole file
+ *
+ * The daily summaries, and the aggregations grouped by date and direction only, aggregate each day run directly over
+ * the mapped amount and direction columns with the {@link AmountKernel} selected at runtime (SIMD when available).
+ * The sums of the runs, entities and groups are kept in doubles, like the totals of the report, so they do not wrap
+ * once they pass the range of the fixed point amounts.
+ */
+public final class ColumnarArchive {
+    /**
+     * Writes an archive with row groups of the default size
+     * @param file the destination file
+     * @param transactions the transactions to be archived, in any order
+     * @throws IOException if the archive could not be written
+     */
+    public static void write(Path file, Collection<? extends ITransaction> transactions) throws IOException {
+        write(file, transactions, DEFAULT_ROW_GROUP_SIZE);
+    }
+
+    /**
+     * Writes an archive
+     * Note: The data is written to a temporary file which atomically replaces the target once synced to disk
+     * @param file the destination file
+     * @param transactions the transactions to be archived, in any order
+     * @param rowGroupSize the maximum number of rows in a row group
+     * @throws IOException if the archive could not be written
+     */
+    public static void write(Path file, Collection<? extends ITransaction> transactions, int rowGroupSize)
+            throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file");
+        }
+        if (transactions == null) {
+            throw new IllegalArgumentException("transactions");
+        }
+        if (rowGroupSize <= 0 || rowGroupSize > MAX_ROW_GROUP_SIZE) {
+            throw new IllegalArgumentException("rowGroupSize");
+        }
+
+        // the sort is stable, so the transactions of a day keep their order
+        List<ITransaction> sorted = new ArrayList<>(transactions);
+        sorted.sort(Comparator.comparing(ITransaction::getActualSettlementDate));
+
+        Map<String, Integer> entityIds = new LinkedHashMap<>();
+        Map<String, Integer> currencyIds = new LinkedHashMap<>();
+        for (ITransaction transaction : sorted) {
+            entityIds.putIfAbsent(transaction.getEntityName(), entityIds.size());
+            currencyIds.putIfAbsent(transaction.getCurrency(), currencyIds.size());
+        }
+        if (currencyIds.size() > 0xFFFF) {
+            throw new IOException("Too many currencies for an archive: " + currencyIds.size());
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(
+                temporary,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).flip();
+            writeFully(channel, header);
+
+            List<long[]> rowGroups = new ArrayList<>();
+            for (int from = 0; from < sorted.size(); from += rowGroupSize) {
+                List<ITransaction> rows = sorted.subList(from, Math.min(from + rowGroupSize, sorted.size()));
+                long offset = channel.position();
+                rowGroups.add(writeRowGroup(channel, rows, entityIds, currencyIds, offset));
+            }
+
+            long footerOffset = channel.position();
+            ByteArrayBuilder footer = new ByteArrayBuilder();
+            footer.putInt(entityIds.size());
+            for (String entity : entityIds.keySet()) {
+                footer.putString(entity);
+            }
+            footer.putInt(currencyIds.size());
+            for (String currency : currencyIds.keySet()) {
+                footer.putString(currency);
+            }
+            footer.putInt(rowGroups.size());
+            for (long[] rowGroup : rowGroups) {
+                footer.putLong(rowGroup[0]);
+                for (int i = 1; i < rowGroup.length; i++) {
+                    footer.putInt((int) rowGroup[i]);
+                }
+            }
+            footer.putLong(footerOffset);
+            footer.putInt(MAGIC);
+            writeFully(channel, footer.toByteBuffer());
+            channel.force(true);
+        }
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Opens an archive, mapping its row groups in memory
+     * @param file the archive file
+     * @return the archive
+     * @throws IOException if the file could not be read, is not an archive or has an unsupported version
+     */
+    public static ColumnarArchive open(Path file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file");
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE) {
+                throw new IOException("Not an archive file: " + file);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+            readFully(channel, trailer, size - TRAILER_SIZE);
+            if (header.getInt(0) != MAGIC || trailer.getInt(8) != MAGIC) {
+                throw new IOException("Not an archive file: " + file);
+            }
+            if (header.getShort(4) != VERSION) {
+                throw new IOException("Unsupported archive version: " + header.getShort(4));
+            }
+            long footerOffset = trailer.getLong(0);
+            if (footerOffset < HEADER_SIZE || footerOffset > size - TRAILER_SIZE) {
+                throw new IOException("Corrupted archive footer: " + file);
+            }
+
+            ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset,
+                    size - TRAILER_SIZE - footerOffset);
+            String[] entities = new String[footer.getInt()];
+            for (int i = 0; i < entities.length; i++) {
+                entities[i] = getString(footer);
+            }
+            String[] currencies = new String[footer.getInt()];
+            for (int i = 0; i < currencies.length; i++) {
+                currencies[i] = getString(footer);
+            }
+
+            int rowGroupCount = footer.getInt();
+            RowGroup[] rowGroups = new RowGroup[rowGroupCount];
+            for (int i = 0; i < rowGroupCount; i++) {
+                long offset = footer.getLong();
+                int rowCount = footer.getInt();
+                int runCount = footer.getInt();
+                int minDay = footer.getInt();
+                int maxDay = footer.getInt();
+                long groupSize = rowGroupSize(rowCount, runCount);
+                if (offset < HEADER_SIZE || offset + groupSize > footerOffset) {
+                    throw new IOException("Corrupted archive row group: " + file);
+                }
+                rowGroups[i] = new RowGroup(rowCount, runCount, minDay, maxDay,
+                        channel.map(FileChannel.MapMode.READ_ONLY, offset, groupSize));
+            }
+            return new ColumnarArchive(entities, currencies, rowGroups);
+        }
+        catch (IndexOutOfBoundsException | BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException("Truncated archive: " + file, e);
+        }
+    }
+
+    /**
+     * Getter used for obtaining the number of archived transactions
+     * @return the number of rows
+     */
+    public long getRowCount() {
+        long rowCount = 0;
+        for (RowGroup rowGroup : rowGroups) {
+            rowCount += rowGroup.rowCount;
+        }
+        return rowCount;
+    }
+
+    /**
+     * Getter used for obtaining the number of row groups
+     * @return the number of row groups
+     */
+    public int getRowGroupCount() {
+        return rowGroups.length;
+    }
+
+    /**
+     * Getter used for obtaining how many row groups were scanned by the reports so far, the others being skipped
+     * thanks to their zone map
+     * @return the number of scanned row groups
+     */
+    public long getScannedRowGroupCount() {
+        return scannedRowGroups.get();
+    }
+
+    /**
+     * Computes the daily summaries of a range of settlement days, reading only the day, direction and amount columns
+     * @param from the first day of the range (inclusive) or null for no lower bound
+     * @param to the last day of the range (inclusive) or null for no upper bound
+     * @return the summaries of the days with cashflow, chronologically ordered
+     */
+    public NavigableMap<LocalDate, DailySummary> getDailySummaries(LocalDate from, LocalDate to) {
+        long fromDay = from == null ? Long.MIN_VALUE : from.toEpochDay();
+        long toDay = to == null ? Long.MAX_VALUE : to.toEpochDay();
+        NavigableMap<LocalDate, DailySummary> result = new TreeMap<>();
+        DirectionAggregates aggregates = new DirectionAggregates();
+
+        for (RowGroup rowGroup : rowGroups) {
+            if (!rowGroup.overlaps(fromDay, toDay)) {
+                continue;
+            }
+            scannedRowGroups.incrementAndGet();
+
+            int row = 0;
+            long day = rowGroup.minDay;
+            for (int run = 0; run < rowGroup.runCount; run++) {
+                day += rowGroup.getRunDelta(run);
+                int runEnd = row + rowGroup.getRunLength(run);
+                if (day >= fromDay && day <= toDay) {
+                    aggregates.clear();
+                    rowGroup.aggregate(row, runEnd, aggregates);
+                    double incoming = aggregates.sums[CashflowDirection.Incoming.ordinal()] / AMOUNT_SCALE;
+                    double outgoing = aggregates.sums[CashflowDirection.Outgoing.ordinal()] / AMOUNT_SCALE;
+                    // a day may span two row groups
+                    result.computeIfAbsent(LocalDate.ofEpochDay(day), date -> new DailySummary())
+                            .merge(new DailySummary(incoming, outgoing, runEnd - row));
+                }
+                row = runEnd;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Ranks the entities by their cashflow in a direction, reading only the day, entity, direction and amount columns
+     * @param direction the direction of the cashflow we are interested in
+     * @param from the first settlement day of the range (inclusive) or null for no lower bound
+     * @param to the last settlement day of the range (inclusive) or null for no upper bound
+     * @param limit the maximum number of entries returned
+     * @return the entries with the largest cashflow, reverse ordered by the cashflow and then ordered by name
+     */
+    public List<RankingEntry> getRanking(CashflowDirection direction, LocalDate from, LocalDate to, int limit) {
+        if (direction == null) {
+            throw new IllegalArgumentException("direction");
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit");
+        }
+
+        long fromDay = from == null ? Long.MIN_VALUE : from.toEpochDay();
+        long toDay = to == null ? Long.MAX_VALUE : to.toEpochDay();
+        boolean ranged = from != null || to != null;
+        double[] sums = new double[entities.length];
+
+        for (RowGroup rowGroup : rowGroups) {
+            if (!rowGroup.overlaps(fromDay, toDay)) {
+                continue;
+            }
+            scannedRowGroups.incrementAndGet();
+
+            int row = 0;
+            long day = rowGroup.minDay;
+            for (int run = 0; run < rowGroup.runCount; run++) {
+                day += rowGroup.getRunDelta(run);
+                int runEnd = row + rowGroup.getRunLength(run);
+                if (day >= fromDay && day <= toDay) {
+                    for (int i = row; i < runEnd; i++) {
+                        if (rowGroup.getDirection(i) == direction) {
+                            sums[rowGroup.getEntity(i)] += rowGroup.getAmount(i);
+                        }
+                    }
+                }
+                row = runEnd;
+            }
+        }
+
+        return rank(sums, ranged, limit);
+    }
+
+    /**
+     * Computes the daily summaries of a selection of rows, e.g. the rows of a currency and a direction obtained from
+     * an {@link ArchiveIndex}
+     * @param rows the ids of the selected rows
+     * @return the summaries of the days with selected rows, chronologically ordered
+     */
+    public NavigableMap<LocalDate, DailySummary> getDailySummaries(RoaringBitmap rows) {
+        if (rows == null) {
+            throw new IllegalArgumentException("rows");
+        }
+
+        NavigableMap<LocalDate, DailySummary> result = new TreeMap<>();
+        RowCursor cursor = new RowCursor();
+        // the rows are sorted by day, so the selected rows of a day follow each other
+        DailySummary[] summaryOfDay = {null};
+        long[] currentDay = {Long.MIN_VALUE};
+        rows.forEach(row -> {
+            cursor.seek(row);
+            if (cursor.day != currentDay[0]) {
+                currentDay[0] = cursor.day;
+                summaryOfDay[0] = result.computeIfAbsent(LocalDate.ofEpochDay(cursor.day), date -> new DailySummary());
+            }
+            summaryOfDay[0].add(cursor.rowGroup.getDirection(cursor.row),
+                    cursor.rowGroup.getAmount(cursor.row) / AMOUNT_SCALE);
+        });
+        return result;
+    }
+
+    /**
+     * Ranks the entities by the cashflow of a selection of rows, e.g. the outgoing AED rows obtained from an
+     * {@link ArchiveIndex}
+     * Note: The amounts of the selected rows are added whatever their direction, so the direction should be part of
+     * the selection
+     * @param rows the ids of the selected rows
+     * @param limit the maximum number of entries returned
+     * @return the entries with the largest cashflow, reverse ordered by the cashflow and then ordered by name
+     */
+    public List<RankingEntry> getRanking(RoaringBitmap rows, int limit) {
+        if (rows == null) {
+            throw new IllegalArgumentException("rows");
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit");
+        }
+
+        double[] sums = new double[entities.length];
+        RowCursor cursor = new RowCursor();
+        rows.forEach(row -> {
+            cursor.seek(row);
+            sums[cursor.rowGroup.getEntity(cursor.row)] += cursor.rowGroup.getAmount(cursor.row);
+        });
+        return rank(sums, true, limit);
+    }
+
+    /**
+     * Executes an aggregation in a single pass over the row groups overlapping its date range, reading only the
+     * columns its filters and group keys need
+     * The entity and currency filters are resolved against the dictionaries once, each row is mapped to a group
+     * number mixing the ids of its keys, and the aggregates are computed in fixed point
+     * @param query the query
+     * @return the groups, in the order of the query
+     */
+    public List<AggregateRow> aggregate(AggregateQuery query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query");
+        }
+        if (rowGroups.length == 0) {
+            return query.order(Collections.emptyList());
+        }
+
+        long fromDay = query.getFrom() == null ? Long.MIN_VALUE : query.getFrom().toEpochDay();
+        long toDay = query.getTo() == null ? Long.MAX_VALUE : query.getTo().toEpochDay();
+        boolean[] entityMask = mask(entities, query.getEntities());
+        boolean[] currencyMask = mask(currencies, query.getCurrencies());
+        CashflowDirection direction = query.getDirection();
+
+        // group number = sum of key id * weight, the weight of a key being the product of the radixes of the next ones
+        List<GroupKey> groupBy = query.getGroupBy();
+        long[] firstBuckets = new long[groupBy.size()];
+        long[] radixes = new long[groupBy.size()];
+        long[] weights = new long[groupBy.size()];
+        long weight = 1;
+        try {
+            for (int k = groupBy.size() - 1; k >= 0; k--) {
+                GroupKey key = groupBy.get(k);
+                switch (key) {
+                    case Entity:
+                        radixes[k] = entities.length;
+                        break;
+                    case Currency:
+                        radixes[k] = currencies.length;
+                        break;
+                    case Direction:
+                        radixes[k] = DIRECTIONS.length;
+                        break;
+                    default:
+                        firstBuckets[k] = bucket(key, rowGroups[0].minDay);
+                        radixes[k] = bucket(key, rowGroups[rowGroups.length - 1].maxDay) - firstBuckets[k] + 1;
+                }
+                weights[k] = weight;
+                weight = Math.multiplyExact(weight, radixes[k]);
+            }
+        }
+        catch (ArithmeticException e) {
+            throw new IllegalStateException("Too many groups for the archive: " + groupBy, e);
+        }
+        long entityWeight = 0;
+        long currencyWeight = 0;
+        long directionWeight = 0;
+        for (int k = 0; k < groupBy.size(); k++) {
+            switch (groupBy.get(k)) {
+                case Entity:
+                    entityWeight = weights[k];
+                    break;
+                case Currency:
+                    currencyWeight = weights[k];
+                    break;
+                case Direction:
+                    directionWeight = weights[k];
+                    break;
+            }
+        }
+        boolean readEntity = entityMask != null || entityWeight != 0;
+        boolean readCurrency = currencyMask != null || currencyWeight != 0;
+        boolean readDirection = direction != null || directionWeight != 0;
+
+        GroupTable groups = new GroupTable();
+        DirectionAggregates aggregates = new DirectionAggregates();
+        for (RowGroup rowGroup : rowGroups) {
+            if (!rowGroup.overlaps(fromDay, toDay)) {
+                continue;
+            }
+            scannedRowGroups.incrementAndGet();
+
+            int row = 0;
+            long day = rowGroup.minDay;
+            for (int run = 0; run < rowGroup.runCount; run++) {
+                day += rowGroup.getRunDelta(run);
+                int runEnd = row + rowGroup.getRunLength(run);
+                if (day >= fromDay && day <= toDay) {
+                    // the date keys are the same for the whole run
+                    long runGroup = 0;
+                    for (int k = 0; k < groupBy.size(); k++) {
+                        if (isDateKey(groupBy.get(k))) {
+                            runGroup += (bucket(groupBy.get(k), day) - firstBuckets[k]) * weights[k];
+                        }
+                    }
+
+                    if (!readEntity && !readCurrency) {
+                        // only the direction varies within the run, so the run is aggregated by the amount kernel
+                        aggregates.clear();
+                        rowGroup.aggregate(row, runEnd, aggregates);
+                        for (int d = 0; d < DIRECTIONS.length; d++) {
+                            if (aggregates.counts[d] != 0 && (direction == null || direction.ordinal() == d)) {
+                                groups.merge(runGroup + d * directionWeight, aggregates.counts[d],
+                                        aggregates.sums[d], aggregates.mins[d], aggregates.maxs[d]);
+                            }
+                        }
+                        row = runEnd;
+                        continue;
+                    }
+
+                    for (int i = row; i < runEnd; i++) {
+                        long group = runGroup;
+                        if (readDirection) {
+                            CashflowDirection rowDirection = rowGroup.getDirection(i);
+                            if (direction != null && rowDirection != direction) {
+                                continue;
+                            }
+                            group += rowDirection.ordinal() * directionWeight;
+                        }
+                        if (readEntity) {
+                            int entity = rowGroup.getEntity(i);
+                            if (entityMask != null && !entityMask[entity]) {
+                                continue;
+                            }
+                            group += entity * entityWeight;
+                        }
+                        if (readCurrency) {
+                            int currency = rowGroup.getCurrency(i);
+                            if (currencyMask != null && !currencyMask[currency]) {
+                                continue;
+                            }
+                            group += currency * currencyWeight;
+                        }
+                        groups.add(group, rowGroup.getAmount(i));
+                    }
+                }
+                row = runEnd;
+            }
+        }
+
+        List<AggregateRow> rows = new ArrayList<>(groups.size);
+        for (int slot = 0; slot < groups.groups.length; slot++) {
+            if (groups.counts[slot] == 0) {
+                continue;
+            }
+
+            List<Object> keys = new ArrayList<>(groupBy.size());
+            for (int k = 0; k < groupBy.size(); k++) {
+                int id = (int) (groups.groups[slot] / weights[k] % radixes[k]);
+                switch (groupBy.get(k)) {
+                    case Entity:
+                        keys.add(entities[id]);
+                        break;
+                    case Currency:
+                        keys.add(currencies[id]);
+                        break;
+                    case Direction:
+                        keys.add(DIRECTIONS[id]);
+                        break;
+                    default:
+                        keys.add(dateKeyOf(groupBy.get(k), firstBuckets[k] + id));
+                }
+            }
+            rows.add(new AggregateRow(keys, groups.counts[slot], groups.sums[slot] / AMOUNT_SCALE,
+                    groups.mins[slot] / AMOUNT_SCALE, groups.maxs[slot] / AMOUNT_SCALE));
+        }
+        return query.order(rows);
+    }
+
+    /**
+     * Getter used for obtaining the entity dictionary
+     * @return the names of the entities, indexed by their id
+     */
+    public List<String> getEntityNames() {
+        return Collections.unmodifiableList(Arrays.asList(entities));
+    }
+
+    /**
+     * Getter used for obtaining the currency dictionary
+     * @return the currencies, indexed by their id
+     */
+    public List<String> getCurrencies() {
+        return Collections.unmodifiableList(Arrays.asList(currencies));
+    }
+
+    /**
+     * Reads the transactions of a range of settlement days, e.g. for ingesting them into a report
+     * @param from the first day of the range (inclusive) or null for no lower bound
+     * @param to the last day of the range (inclusive) or null for no upper bound
+     * @return the transactions ordered by settlement day
+     */
+    public List<ITransaction> getTransactions(LocalDate from, LocalDate to) {
+        long fromDay = from == null ? Long.MIN_VALUE : from.toEpochDay();
+        long toDay = to == null ? Long.MAX_VALUE : to.toEpochDay();
+        List<ITransaction> result = new ArrayList<>();
+
+        for (RowGroup rowGroup : rowGroups) {
+            if (!rowGroup.overlaps(fromDay, toDay)) {
+                continue;
+            }
+            scannedRowGroups.incrementAndGet();
+
+            int row = 0;
+            long day = rowGroup.minDay;
+            for (int run = 0; run < rowGroup.runCount; run++) {
+                day += rowGroup.getRunDelta(run);
+                int runEnd = row + rowGroup.getRunLength(run);
+                if (day >= fromDay && day <= toDay) {
+                    LocalDate date = LocalDate.ofEpochDay(day);
+                    for (int i = row; i < runEnd; i++) {
+                        result.add(new SettledTransaction(
+                                entities[rowGroup.getEntity(i)],
+                                rowGroup.getDirection(i),
+                                currencies[rowGroup.getCurrency(i)],
+                                rowGroup.getAmount(i) / AMOUNT_SCALE,
+                                date,
+                                rowGroup.getInstructionId(i)
+                        ));
+                    }
+                }
+                row = runEnd;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Getter used for obtaining a row group, for building indexes
+     * @param index the index of the row group
+     * @return the row group
+     */
+    RowGroup getRowGroup(int index) {
+        return rowGroups[index];
+    }
+
+    private ColumnarArchive(String[] entities, String[] currencies, RowGroup[] rowGroups) {
+        this.entities = entities;
+        this.currencies = currencies;
+        this.rowGroups = rowGroups;
+    }
+
+    /**
+     * Ranks the entities by their sums
+     * @param skipZero whether the entities without cashflow are left out
+     */
+    private List<RankingEntry> rank(double[] sums, boolean skipZero, int limit) {
+        Comparator<RankingEntry> order = Comparator.comparingDouble(RankingEntry::getAmount).reversed()
+                .thenComparing(RankingEntry::getEntityName);
+        // the head of the queue is the entry to be dropped first, so only the top entries are ever kept
+        PriorityQueue<RankingEntry> top = new PriorityQueue<>(Math.min(limit, 1024) + 1, order.reversed());
+        for (int entity = 0; entity < sums.length; entity++) {
+            // entities without cashflow in the range are not listed
+            if (skipZero && sums[entity] == 0) {
+                continue;
+            }
+
+            RankingEntry entry = new RankingEntry(entities[entity], sums[entity] / AMOUNT_SCALE);
+            if (top.size() < limit) {
+                top.add(entry);
+            }
+            else if (limit > 0 && order.compare(entry, top.peek()) < 0) {
+                top.poll();
+                top.add(entry);
+            }
+        }
+
+        List<RankingEntry> ranking = new ArrayList<>(top);
+        ranking.sort(order);
+        return ranking;
+    }
+
+    /**
+     * Resolves a filter against a dictionary
+     * @return whether each id is selected, or null for no filter
+     */
+    private static boolean[] mask(String[] dictionary, Set<String> selected) {
+        if (selected == null) {
+            return null;
+        }
+
+        boolean[] mask = new boolean[dictionary.length];
+        for (int id = 0; id < dictionary.length; id++) {
+            mask[id] = selected.contains(dictionary[id]);
+        }
+        return mask;
+    }
+
+    private static boolean isDateKey(GroupKey key) {
+        return key == GroupKey.Date || key == GroupKey.Week || key == GroupKey.Month;
+    }
+
+    /**
+     * Numbers the bucket of a date key holding a day: the epoch day, the week counted from the Monday before the
+     * epoch or the month counted from year 0
+     */
+    private static long bucket(GroupKey key, long day) {
+        switch (key) {
+            case Date:
+                return day;
+            case Week:
+                // the epoch day 0 is a Thursday
+                return Math.floorDiv(day + 3, 7);
+            case Month:
+                LocalDate date = LocalDate.ofEpochDay(day);
+                return date.getYear() * 12L + date.getMonthValue() - 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Converts the bucket of a date key back to the value of the key
+     */
+    private static Object dateKeyOf(GroupKey key, long bucket) {
+        switch (key) {
+            case Date:
+                return LocalDate.ofEpochDay(bucket);
+            case Week:
+                return LocalDate.ofEpochDay(bucket * 7 - 3);
+            default:
+                return YearMonth.of((int) Math.floorDiv(bucket, 12), Math.floorMod(bucket, 12) + 1);
+        }
+    }
+
+    /**
+     * Writes the columns of a row group
+     * @return the row group entry of the footer: offset, row count, run count, minimum and maximum day
+     */
+    private static long[] writeRowGroup(FileChannel channel, List<ITransaction> rows, Map<String, Integer> entityIds,
+                                        Map<String, Integer> currencyIds, long offset) throws IOException {
+        int rowCount = rows.size();
+        long minDay = rows.get(0).getActualSettlementDate().toEpochDay();
+        long maxDay = rows.get(rowCount - 1).getActualSettlementDate().toEpochDay();
+        if (minDay < Integer.MIN_VALUE || maxDay > Integer.MAX_VALUE) {
+            throw new IOException("Settlement day out of the archive range: " + maxDay);
+        }
+
+        // (day delta, run length) pairs
+        int[] runs = new int[2 * rowCount];
+        int runCount = 0;
+        long previousDay = minDay;
+        for (ITransaction row : rows) {
+            long day = row.getActualSettlementDate().toEpochDay();
+            if (runCount > 0 && day == previousDay) {
+                runs[2 * runCount - 1]++;
+                continue;
+            }
+            runs[2 * runCount] = (int) (day - previousDay);
+            runs[2 * runCount + 1] = 1;
+            runCount++;
+            previousDay = day;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) rowGroupSize(rowCount, runCount));
+        for (ITransaction row : rows) {
+            buffer.putLong(toFixedPoint(row.getUsdValue()));
+        }
+        for (ITransaction row : rows) {
+            buffer.putLong(row.getInstructionId());
+        }
+        for (ITransaction row : rows) {
+            buffer.putInt(entityIds.get(row.getEntityName()));
+        }
+        for (int i = 0; i < 2 * runCount; i++) {
+            buffer.putInt(runs[i]);
+        }
+        for (ITransaction row : rows) {
+            buffer.putShort(currencyIds.get(row.getCurrency()).shortValue());
+        }
+        for (ITransaction row : rows) {
+            buffer.put((byte) row.getCashflowDirection().ordinal());
+        }
+        buffer.position(buffer.capacity());
+        buffer.flip();
+        writeFully(channel, buffer);
+
+        return new long[] {offset, rowCount, runCount, minDay, maxDay};
+    }
+
+    private static long toFixedPoint(double amount) throws IOException {
+        double scaled = Math.rint(amount * AMOUNT_SCALE);
+        if (Double.isNaN(scaled) || Math.abs(scaled) >= Long.MAX_VALUE) {
+            throw new IOException("Amount out of the archive range: " + amount);
+        }
+        return (long) scaled;
+    }
+
+    /**
+     * Getter used for obtaining the size of a row group, padded to 8 bytes
+     */
+    private static long rowGroupSize(int rowCount, int runCount) {
+        long size = 23L * rowCount + 8L * runCount;
+        return (size + 7) & ~7L;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated archive");
+            }
+        }
+    }
+
+    /**
+     * Reads a length prefixed UTF-8 string
+     * @param buffer the buffer to read from
+     * @return the decoded string
+     */
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Internal class locating rows by their id, for ids given in increasing order
+     */
+    private final class RowCursor {
+        /**
+         * Moves to a row, which must not come before the current one
+         * @param id the id of the row
+         */
+        void seek(int id) {
+            while (rowGroup == null || id >= groupStart + rowGroup.rowCount) {
+                if (rowGroup != null) {
+                    groupStart += rowGroup.rowCount;
+                }
+                if (groupIndex + 1 == rowGroups.length) {
+                    throw new IllegalArgumentException("rows");
+                }
+                rowGroup = rowGroups[++groupIndex];
+                run = 0;
+                runEnd = rowGroup.getRunLength(0);
+                day = rowGroup.minDay + rowGroup.getRunDelta(0);
+            }
+
+            row = id - (int) groupStart;
+            while (row >= runEnd) {
+                run++;
+                runEnd += rowGroup.getRunLength(run);
+                day += rowGroup.getRunDelta(run);
+            }
+        }
+
+        RowGroup rowGroup = null;
+        // the row within the row group and its settlement day
+        int row = 0;
+        long day = 0;
+        private int groupIndex = -1;
+        private long groupStart = 0;
+        private int run = 0;
+        private int runEnd = 0;
+    }
+
+    /**
+     * Internal class giving access to the mapped columns of a row group
+     */
+    static final class RowGroup {
+        RowGroup(int rowCount, int runCount, int minDay, int maxDay, MappedByteBuffer columns) {
+            this.rowCount = rowCount;
+            this.runCount = runCount;
+            this.minDay = minDay;
+            this.maxDay = maxDay;
+            this.columns = columns;
+            instructionIdColumn = 8L * rowCount;
+            entityColumn = 16L * rowCount;
+            runColumn = 20L * rowCount;
+            currencyColumn = runColumn + 8L * runCount;
+            directionColumn = currencyColumn + 2L * rowCount;
+        }
+
+        boolean overlaps(long fromDay, long toDay) {
+            return maxDay >= fromDay && minDay <= toDay;
+        }
+
+        long getAmount(int row) {
+            return columns.getLong(8 * row);
+        }
+
+        long getInstructionId(int row) {
+            return columns.getLong((int) (instructionIdColumn + 8L * row));
+        }
+
+        int getEntity(int row) {
+            return columns.getInt((int) (entityColumn + 4L * row));
+        }
+
+        int getRunDelta(int run) {
+            return columns.getInt((int) (runColumn + 8L * run));
+        }
+
+        int getRunLength(int run) {
+            return columns.getInt((int) (runColumn + 8L * run + 4));
+        }
+
+        int getCurrency(int row) {
+            return columns.getShort((int) (currencyColumn + 2L * row)) & 0xFFFF;
+        }
+
+        CashflowDirection getDirection(int row) {
+            return DIRECTIONS[columns.get((int) (directionColumn + row))];
+        }
+
+        /**
+         * Adds the amounts of a range of rows to the aggregates of their direction, with the amount kernel
+         */
+        void aggregate(int from, int to, DirectionAggregates aggregates) {
+            long[] counts = aggregates.counts.clone();
+            Arrays.fill(aggregates.fixedPointSums, 0);
+            KERNEL.aggregate(columns, 0, (int) directionColumn, from, to,
+                    aggregates.counts, aggregates.fixedPointSums, aggregates.mins, aggregates.maxs);
+
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                long count = aggregates.counts[d] - counts[d];
+                // the kernel sum wraps around if the rows can add up beyond the range of a long
+                double largest = Math.max(Math.abs((double) aggregates.mins[d]), Math.abs((double) aggregates.maxs[d]));
+                if (count * largest < 0x1p63) {
+                    aggregates.sums[d] += aggregates.fixedPointSums[d];
+                    continue;
+                }
+                for (int i = from; i < to; i++) {
+                    if (getDirection(i).ordinal() == d) {
+                        aggregates.sums[d] += getAmount(i);
+                    }
+                }
+            }
+        }
+
+        final int rowCount;
+        final int runCount;
+        final int minDay;
+        final int maxDay;
+        private final MappedByteBuffer columns;
+        private final long instructionIdColumn;
+        private final long entityColumn;
+        private final long runColumn;
+        private final long currencyColumn;
+        private final long directionColumn;
+    }
+
+    /**
+     * Internal class holding the fixed point aggregates of a range of rows, indexed by direction ordinal
+     */
+    private static final class DirectionAggregates {
+        void clear() {
+            Arrays.fill(counts, 0);
+            Arrays.fill(sums, 0);
+            Arrays.fill(mins, Long.MAX_VALUE);
+            Arrays.fill(maxs, Long.MIN_VALUE);
+        }
+
+        final long[] counts = new long[DIRECTIONS.length];
+        final double[] sums = new double[DIRECTIONS.length];
+        // the sums of a single call of the amount kernel
+        final long[] fixedPointSums = new long[DIRECTIONS.length];
+        final long[] mins = new long[DIRECTIONS.length];
+        final long[] maxs = new long[DIRECTIONS.length];
+    }
+
+    /**
+     * Internal class holding the aggregates of the groups of a query, in an open addressing hash table keyed by the
+     * group numbers
+     */
+    private static final class GroupTable {
+        void add(long group, long amount) {
+            merge(group, 1, amount, amount, amount);
+        }
+
+        /**
+         * Adds the aggregates of rows of a group, count being positive
+         */
+        void merge(long group, long count, double sum, long min, long max) {
+            int slot = find(group);
+            if (counts[slot] == 0) {
+                if (2 * (size + 1) > groups.length) {
+                    grow();
+                    slot = find(group);
+                }
+                groups[slot] = group;
+                mins[slot] = min;
+                maxs[slot] = max;
+                size++;
+            }
+            counts[slot] += count;
+            sums[slot] += sum;
+            mins[slot] = Math.min(mins[slot], min);
+            maxs[slot] = Math.max(maxs[slot], max);
+        }
+
+        /**
+         * Finds the slot of a group, or the free slot where it would be inserted
+         */
+        private int find(long group) {
+            int mask = groups.length - 1;
+            long hash = group * 0x9E3779B97F4A7C15L;
+            int slot = (int) (hash ^ (hash >>> 32)) & mask;
+            while (counts[slot] != 0 && groups[slot] != group) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldGroups = groups;
+            long[] oldCounts = counts;
+            double[] oldSums = sums;
+            long[] oldMins = mins;
+            long[] oldMaxs = maxs;
+            int capacity = 2 * oldGroups.length;
+            groups = new long[capacity];
+            counts = new long[capacity];
+            sums = new double[capacity];
+            mins = new long[capacity];
+            maxs = new long[capacity];
+
+            for (int old = 0; old < oldGroups.length; old++) {
+                if (oldCounts[old] == 0) {
+                    continue;
+                }
+                int slot = find(oldGroups[old]);
+                groups[slot] = oldGroups[old];
+                counts[slot] = oldCounts[old];
+                sums[slot] = oldSums[old];
+                mins[slot] = oldMins[old];
+                maxs[slot] = oldMaxs[old];
+            }
+        }
+
+        // a slot is free while its count is 0
+        long[] groups = new long[16];
+        long[] counts = new long[16];
+        double[] sums = new double[16];
+        long[] mins = new long[16];
+        long[] maxs = new long[16];
+        int size = 0;
+    }
+
+    /**
+     * Internal class used for building the footer in memory
+     */
+    private static final class ByteArrayBuilder {
+        void putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IOException("String too long for an archive: " + value.length());
+            }
+            ensure(2 + bytes.length);
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+
+        ByteBuffer toByteBuffer() {
+            return buffer.duplicate().flip();
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+
+        private ByteBuffer buffer = ByteBuffer.allocate(4096);
+    }
+
+    public static final int MAGIC = 0x4A504D41; // "JPMA"
+    public static final short VERSION = 1;
+    /**
+     * Number of fixed point units per US Dollar, a hundredth of a cent, which leaves room for amounts up to 9e14 USD
+     */
+    public static final double AMOUNT_SCALE = 1e4;
+
+    private static final int DEFAULT_ROW_GROUP_SIZE = 64 * 1024;
+    // the columns of a row group must be addressable by an int
+    private static final int MAX_ROW_GROUP_SIZE = 64 * 1024 * 1024;
+    private static final int HEADER_SIZE = 8;
+    private static final int TRAILER_SIZE = 12;
+    private static final CashflowDirection[] DIRECTIONS = CashflowDirection.values();
+    private static final AmountKernel KERNEL = AmountKernel.getInstance();
+
+    private final String[] entities;
+    private final String[] currencies;
+    private final RowGroup[] rowGroups;
+    private final AtomicLong scannedRowGroups = new AtomicLong();
+}
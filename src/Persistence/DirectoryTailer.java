@@ -0,0 +1,262 @@
+package Persistence;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class used for continuously ingesting the files dropped into a directory, reading only the bytes appended to them
+ *
+ * The files matching a glob are read from the offset reached so far, up to their last complete line, and the lines
+ * are given to a consumer (e.g. ReportGenerator::ingest). The offsets are persisted in a small text file after each
+ * ingested chunk (one "offset TAB file name" line per file, replaced atomically), so a restarted tailer continues
+ * where the previous one stopped. A file which became shorter than its offset was replaced, so it is read again
+ * from its start.
+ * Note: The offsets are persisted right after the consumer returns, so a crash in between makes the chunk be read
+ * again; use a DuplicateFilter on the report if instructions must not be counted twice
+ */
+public final class DirectoryTailer implements Closeable {
+    /**
+     * Constructor, loading the offsets persisted by a previous tailer
+     * @param directory the landing directory
+     * @param glob the pattern of the file names to be ingested (e.g. "*.csv")
+     * @param offsetFile the file holding the per-file offsets, which might not exist yet
+     * @param consumer the consumer receiving whole lines of input
+     * @throws IOException if the offsets could not be read
+     */
+    public DirectoryTailer(Path directory, String glob, Path offsetFile, Consumer<String> consumer)
+            throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory");
+        }
+        if (glob == null) {
+            throw new IllegalArgumentException("glob");
+        }
+        if (offsetFile == null) {
+            throw new IllegalArgumentException("offsetFile");
+        }
+        if (consumer == null) {
+            throw new IllegalArgumentException("consumer");
+        }
+
+        this.directory = directory;
+        this.glob = glob;
+        this.offsetFile = offsetFile;
+        this.consumer = consumer;
+
+        if (Files.exists(offsetFile)) {
+            for (String line : Files.readAllLines(offsetFile, StandardCharsets.UTF_8)) {
+                int separator = line.indexOf('\t');
+                if (separator <= 0) {
+                    throw new IOException("Corrupted offset file: " + offsetFile);
+                }
+                offsets.put(line.substring(separator + 1), Long.parseLong(line.substring(0, separator)));
+            }
+        }
+    }
+
+    /**
+     * Ingests the bytes appended to the matching files since the previous poll, in the order of the file names
+     * @return the number of bytes ingested
+     * @throws IOException if a file could not be read or the offsets could not be persisted
+     */
+    public synchronized long poll() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+
+        long ingested = 0;
+        for (Path file : files) {
+            ingested += tail(file);
+        }
+
+        // files which were removed no longer need an offset, and would be read from the start if dropped again
+        if (offsets.size() > files.size()) {
+            List<String> present = new ArrayList<>();
+            for (Path file : files) {
+                present.add(file.getFileName().toString());
+            }
+            if (offsets.keySet().retainAll(present)) {
+                persistOffsets();
+            }
+        }
+        return ingested;
+    }
+
+    /**
+     * Starts polling in a background thread, each time the directory changes (or at least every pollMillis)
+     * Note: A failure stops the thread and is thrown by {@link #close()}
+     * @param pollMillis the maximum time between polls, which catches the changes a WatchService could miss
+     * @throws IOException if the directory could not be watched
+     */
+    public synchronized void start(long pollMillis) throws IOException {
+        if (pollMillis <= 0) {
+            throw new IllegalArgumentException("pollMillis");
+        }
+        if (thread != null) {
+            throw new IllegalStateException("The tailer is already started");
+        }
+
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        thread = new Thread(() -> watch(pollMillis), "tailer-" + directory.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Getter used for obtaining how much of a file was ingested
+     * @param file the file
+     * @return the offset in bytes right after the last ingested line or 0 if the file was not read yet
+     */
+    public synchronized long getOffset(Path file) {
+        return offsets.getOrDefault(file.getFileName().toString(), 0L);
+    }
+
+    /**
+     * Stops the background thread, if any
+     * @throws IOException if the background thread failed
+     */
+    @Override
+    public void close() throws IOException {
+        Thread watcher;
+        synchronized (this) {
+            watcher = thread;
+            if (watchService != null) {
+                watchService.close();
+            }
+        }
+
+        if (watcher != null) {
+            try {
+                watcher.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void watch(long pollMillis) {
+        try {
+            while (true) {
+                poll();
+
+                WatchKey key = watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    // the events only tell that something changed, the next poll finds out what
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        }
+        catch (ClosedWatchServiceException | InterruptedException e) {
+            // stopped by close
+        }
+        catch (IOException e) {
+            failure = e;
+        }
+        catch (RuntimeException e) {
+            failure = new IOException("The tailer failed", e);
+        }
+    }
+
+    /**
+     * Ingests the complete lines appended to a file since its offset
+     * @param file the file
+     * @return the number of bytes ingested
+     */
+    private long tail(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        long offset = offsets.getOrDefault(name, 0L);
+        long ingested = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < offset) {
+                offset = 0;
+            }
+
+            while (channel.size() > offset) {
+                buffer.clear();
+                if (channel.read(buffer, offset) <= 0) {
+                    break;
+                }
+
+                // a newline byte is never part of a multi-byte UTF-8 character, so whole lines decode on their own
+                int lineEnd = buffer.position() - 1;
+                while (lineEnd >= 0 && buffer.get(lineEnd) != '\n') {
+                    lineEnd--;
+                }
+                if (lineEnd < 0) {
+                    if (buffer.position() == buffer.capacity()) {
+                        throw new IOException("Line longer than " + buffer.capacity() + " bytes in " + file);
+                    }
+                    // the last line is still being written
+                    break;
+                }
+
+                consumer.accept(new String(buffer.array(), 0, lineEnd + 1, StandardCharsets.UTF_8));
+                offset += lineEnd + 1;
+                ingested += lineEnd + 1;
+                offsets.put(name, offset);
+                persistOffsets();
+            }
+        }
+        return ingested;
+    }
+
+    private void persistOffsets() throws IOException {
+        Path temporary = offsetFile.resolveSibling(offsetFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> offset : offsets.entrySet()) {
+                writer.write(offset.getValue() + "\t" + offset.getKey() + "\n");
+            }
+        }
+        Files.move(temporary, offsetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private final Path directory;
+    private final String glob;
+    private final Path offsetFile;
+    private final Consumer<String> consumer;
+    // offsets by file name, ordered so that the offset file is stable
+    private final Map<String, Long> offsets = new TreeMap<>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+    private WatchService watchService = null;
+    private Thread thread = null;
+    private volatile IOException failure = null;
+}
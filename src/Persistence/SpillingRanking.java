@@ -0,0 +1,474 @@
+package Persistence;
+
+import Components.ITransaction.CashflowDirection;
+import Components.RankingEntry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Class keeping the cashflow totals of the entities in bounded memory, spilling them to sorted run files, so that the
+ * ranking of more entities than the heap can hold only needs the disk
+ *
+ * The totals of at most a configured number of entities are kept in memory. When there are more, they are sorted by
+ * entity name and written to a run file, and the memory is cleared. The runs are organized in levels, like a
+ * log-structured merge tree: whenever a level holds {@link #MERGE_FAN_IN} runs they are merged into a single run of
+ * the next level, adding up the totals of the same entity, so the number of runs stays logarithmic and each total is
+ * rewritten a logarithmic number of times. Retractions are added as negative amounts, which the merges cancel out.
+ *
+ * A top N ranking is a k-way merge of the runs and of the totals in memory, keeping the N best entries in a heap. The
+ * full ranking is an external sort: the merged totals are cut into runs sorted by amount, which are merged again.
+ *
+ * Run layout (big endian): per entity, short nameLength, byte[] name (UTF-8), double incoming, double outgoing
+ * Note: The run files are created in the given directory, which the caller owns, and deleted once merged
+ */
+public final class SpillingRanking {
+    /**
+     * Constructor
+     * @param directory the directory receiving the run files, created if needed
+     * @param maxEntitiesInMemory the number of entities whose totals are kept in memory before being spilled
+     * @throws IOException if the directory could not be created
+     */
+    public SpillingRanking(Path directory, int maxEntitiesInMemory) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory");
+        }
+        if (maxEntitiesInMemory <= 0) {
+            throw new IllegalArgumentException("maxEntitiesInMemory");
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.maxEntitiesInMemory = maxEntitiesInMemory;
+    }
+
+    /**
+     * Adds a cashflow to the total of an entity, spilling the totals in memory if there are too many of them
+     * @param entityName the name of the entity
+     * @param direction the direction of the cashflow
+     * @param amount the amount in US Dollars, negative for retracting a cashflow
+     * @throws IOException if the totals could not be spilled
+     */
+    public void add(String entityName, CashflowDirection direction, double amount) throws IOException {
+        if (entityName == null) {
+            throw new IllegalArgumentException("entityName");
+        }
+        if (direction == null) {
+            throw new IllegalArgumentException("direction");
+        }
+
+        double[] totals = inMemory.get(entityName);
+        if (totals == null) {
+            totals = new double[DIRECTIONS];
+            inMemory.put(entityName, totals);
+        }
+        totals[direction.ordinal()] += amount;
+
+        if (inMemory.size() > maxEntitiesInMemory) {
+            spill();
+        }
+    }
+
+    /**
+     * Ranks the entities by their total cashflow in a direction
+     * @param direction the direction of the cashflow
+     * @param limit the maximum number of entries returned
+     * @return the entries with the largest cashflow, reverse ordered by the cashflow and then ordered by name
+     * @throws IOException if the runs could not be read
+     */
+    public List<RankingEntry> getTop(CashflowDirection direction, int limit) throws IOException {
+        if (direction == null) {
+            throw new IllegalArgumentException("direction");
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit");
+        }
+
+        // the head of the queue is the entry to be dropped first, so only the top entries are ever kept
+        PriorityQueue<RankingEntry> top = new PriorityQueue<>(Math.min(limit, 1024) + 1, RANKING_ORDER.reversed());
+        int d = direction.ordinal();
+        mergeByName(nameOrderedCursors(), (name, incoming, outgoing) -> {
+            RankingEntry entry = new RankingEntry(name, d == 0 ? incoming : outgoing);
+            if (top.size() < limit) {
+                top.add(entry);
+            }
+            else if (limit > 0 && RANKING_ORDER.compare(entry, top.peek()) < 0) {
+                top.poll();
+                top.add(entry);
+            }
+        });
+
+        List<RankingEntry> ranking = new ArrayList<>(top);
+        ranking.sort(RANKING_ORDER);
+        return ranking;
+    }
+
+    /**
+     * Passes every entity to a consumer, reverse ordered by its total cashflow in a direction and then by name,
+     * sorting them externally so that only a bounded number of entries is held in memory
+     * @param direction the direction of the cashflow
+     * @param consumer the consumer of the entries
+     * @throws IOException if the runs could not be read or written
+     */
+    public void forEachRanked(CashflowDirection direction, Consumer<RankingEntry> consumer) throws IOException {
+        if (direction == null) {
+            throw new IllegalArgumentException("direction");
+        }
+        if (consumer == null) {
+            throw new IllegalArgumentException("consumer");
+        }
+
+        int d = direction.ordinal();
+        List<Path> sortedRuns = new ArrayList<>();
+        List<RankingEntry> chunk = new ArrayList<>();
+        try {
+            // the amount of the ranked direction is written as the incoming total of the sorted runs
+            mergeByName(nameOrderedCursors(), (name, incoming, outgoing) -> {
+                chunk.add(new RankingEntry(name, d == 0 ? incoming : outgoing));
+                if (chunk.size() == maxEntitiesInMemory) {
+                    sortedRuns.add(writeRankedRun(chunk));
+                    chunk.clear();
+                }
+            });
+            chunk.sort(RANKING_ORDER);
+
+            List<Cursor> cursors = new ArrayList<>();
+            for (Path run : sortedRuns) {
+                cursors.add(new RunReader(run));
+            }
+            cursors.add(new MemoryCursor(chunk));
+            PriorityQueue<Cursor> queue = new PriorityQueue<>(CURSOR_RANKING_ORDER);
+            for (Cursor cursor : cursors) {
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+            while (!queue.isEmpty()) {
+                Cursor cursor = queue.poll();
+                consumer.accept(new RankingEntry(cursor.name, cursor.incoming));
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+        }
+        finally {
+            for (Path run : sortedRuns) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    /**
+     * Getter used for obtaining the number of run files
+     * @return the number of runs holding spilled totals
+     */
+    public int getRunCount() {
+        int runCount = 0;
+        for (List<Path> level : levels) {
+            runCount += level.size();
+        }
+        return runCount;
+    }
+
+    /**
+     * Getter used for obtaining the number of entities whose totals are currently in memory
+     * @return the number of entities in memory
+     */
+    public int getEntitiesInMemory() {
+        return inMemory.size();
+    }
+
+    /**
+     * Writes the totals in memory to a run of the first level, merging the levels which are full
+     */
+    private void spill() throws IOException {
+        List<Map.Entry<String, double[]>> sorted = new ArrayList<>(inMemory.entrySet());
+        sorted.sort(Map.Entry.comparingByKey());
+        Path run = newRunFile();
+        try (RunWriter writer = new RunWriter(run)) {
+            for (Map.Entry<String, double[]> entity : sorted) {
+                writer.write(entity.getKey(), entity.getValue()[0], entity.getValue()[1]);
+            }
+        }
+        inMemory.clear();
+        addRun(0, run);
+    }
+
+    private void addRun(int level, Path run) throws IOException {
+        if (level == levels.size()) {
+            levels.add(new ArrayList<>());
+        }
+        List<Path> runs = levels.get(level);
+        runs.add(run);
+        if (runs.size() < MERGE_FAN_IN) {
+            return;
+        }
+
+        List<Cursor> cursors = new ArrayList<>();
+        for (Path input : runs) {
+            cursors.add(new RunReader(input));
+        }
+        Path merged = newRunFile();
+        try (RunWriter writer = new RunWriter(merged)) {
+            mergeByName(cursors, writer::write);
+        }
+        for (Path input : runs) {
+            Files.delete(input);
+        }
+        runs.clear();
+        addRun(level + 1, merged);
+    }
+
+    /**
+     * Opens a cursor on every run and one on the totals in memory, each one ordered by entity name
+     */
+    private List<Cursor> nameOrderedCursors() throws IOException {
+        List<Cursor> cursors = new ArrayList<>();
+        for (List<Path> level : levels) {
+            for (Path run : level) {
+                cursors.add(new RunReader(run));
+            }
+        }
+        cursors.add(new MemoryCursor(new TreeMap<>(inMemory)));
+        return cursors;
+    }
+
+    /**
+     * Merges cursors ordered by entity name, passing the sum of the totals of each entity to a consumer
+     * Note: The cursors are closed
+     */
+    private static void mergeByName(List<Cursor> cursors, TotalsConsumer consumer) throws IOException {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(Comparator.comparing((Cursor cursor) -> cursor.name));
+        try {
+            for (Cursor cursor : cursors) {
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+            while (!queue.isEmpty()) {
+                Cursor cursor = queue.poll();
+                String name = cursor.name;
+                double incoming = cursor.incoming;
+                double outgoing = cursor.outgoing;
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+                while (!queue.isEmpty() && queue.peek().name.equals(name)) {
+                    cursor = queue.poll();
+                    incoming += cursor.incoming;
+                    outgoing += cursor.outgoing;
+                    if (cursor.advance()) {
+                        queue.add(cursor);
+                    }
+                }
+                consumer.accept(name, incoming, outgoing);
+            }
+        }
+        finally {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    private Path writeRankedRun(List<RankingEntry> entries) throws IOException {
+        entries.sort(RANKING_ORDER);
+        Path run = newRunFile();
+        try (RunWriter writer = new RunWriter(run)) {
+            for (RankingEntry entry : entries) {
+                writer.write(entry.getEntityName(), entry.getAmount(), 0);
+            }
+        }
+        return run;
+    }
+
+    private Path newRunFile() throws IOException {
+        return Files.createTempFile(directory, "ranking", ".run");
+    }
+
+    /**
+     * Internal interface receiving the totals of an entity
+     */
+    private interface TotalsConsumer {
+        void accept(String name, double incoming, double outgoing) throws IOException;
+    }
+
+    /**
+     * Internal class iterating over the totals of entities, in the order of their source
+     */
+    private abstract static class Cursor {
+        /**
+         * Moves to the next entity
+         * @return true if there is one; false at the end
+         */
+        abstract boolean advance() throws IOException;
+
+        void close() throws IOException {
+        }
+
+        String name;
+        double incoming;
+        double outgoing;
+    }
+
+    /**
+     * Internal class iterating over totals held in memory
+     */
+    private static final class MemoryCursor extends Cursor {
+        MemoryCursor(SortedMap<String, double[]> totals) {
+            entities = totals.entrySet().iterator();
+            entries = null;
+        }
+
+        MemoryCursor(List<RankingEntry> ranked) {
+            entities = null;
+            entries = ranked.iterator();
+        }
+
+        @Override
+        boolean advance() {
+            if (entities != null && entities.hasNext()) {
+                Map.Entry<String, double[]> entity = entities.next();
+                name = entity.getKey();
+                incoming = entity.getValue()[0];
+                outgoing = entity.getValue()[1];
+                return true;
+            }
+            if (entries != null && entries.hasNext()) {
+                RankingEntry entry = entries.next();
+                name = entry.getEntityName();
+                incoming = entry.getAmount();
+                outgoing = 0;
+                return true;
+            }
+            return false;
+        }
+
+        private final Iterator<Map.Entry<String, double[]>> entities;
+        private final Iterator<RankingEntry> entries;
+    }
+
+    /**
+     * Internal class reading a run file through a buffer
+     */
+    private static final class RunReader extends Cursor {
+        RunReader(Path run) throws IOException {
+            channel = FileChannel.open(run, StandardOpenOption.READ);
+            buffer.flip();
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            if (!ensure(2)) {
+                return false;
+            }
+            int nameLength = buffer.getShort() & 0xFFFF;
+            if (!ensure(nameLength + 16)) {
+                throw new IOException("Truncated ranking run");
+            }
+            byte[] bytes = new byte[nameLength];
+            buffer.get(bytes);
+            name = new String(bytes, StandardCharsets.UTF_8);
+            incoming = buffer.getDouble();
+            outgoing = buffer.getDouble();
+            return true;
+        }
+
+        @Override
+        void close() throws IOException {
+            channel.close();
+        }
+
+        /**
+         * Reads until the buffer holds a number of bytes
+         * @return true if it does; false if the run ended before
+         */
+        private boolean ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return true;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    buffer.flip();
+                    return false;
+                }
+            }
+            buffer.flip();
+            return true;
+        }
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * Internal class writing a run file through a buffer
+     */
+    private static final class RunWriter implements AutoCloseable {
+        RunWriter(Path run) throws IOException {
+            channel = FileChannel.open(run, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void write(String name, double incoming, double outgoing) throws IOException {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IOException("Entity name too long for a ranking run: " + name.length());
+            }
+            if (buffer.remaining() < bytes.length + 18) {
+                flush();
+            }
+            buffer.putShort((short) bytes.length).put(bytes).putDouble(incoming).putDouble(outgoing);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            }
+            finally {
+                channel.close();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * The number of runs of a level which are merged into a run of the next level
+     */
+    public static final int MERGE_FAN_IN = 16;
+
+    private static final int DIRECTIONS = CashflowDirection.values().length;
+    // a record is at most 2 + 65535 + 16 bytes
+    private static final int BUFFER_SIZE = 128 * 1024;
+    private static final Comparator<RankingEntry> RANKING_ORDER =
+            Comparator.comparingDouble(RankingEntry::getAmount).reversed().thenComparing(RankingEntry::getEntityName);
+    private static final Comparator<Cursor> CURSOR_RANKING_ORDER =
+            Comparator.comparingDouble((Cursor cursor) -> cursor.incoming).reversed()
+                    .thenComparing((Cursor cursor) -> cursor.name);
+
+    private final Path directory;
+    private final int maxEntitiesInMemory;
+    private final Map<String, double[]> inMemory = new HashMap<>();
+    // the runs of each level, a run of level L holding the totals of up to MERGE_FAN_IN^L spills
+    private final List<List<Path>> levels = new ArrayList<>();
+}
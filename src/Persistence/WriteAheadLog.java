@@ -0,0 +1,351 @@
+package Persistence;
+
+import Components.ITransaction;
+import Components.ITransaction.CashflowDirection;
+import Components.SettledTransaction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Append-only log of accepted transactions and cancellations, stored in fixed size memory mapped segments
+ * Note: Records are made durable in groups, either every groupCommitSize appends or when calling {@link #sync()}
+ *
+ * Record layout (big endian):
+ *   int payloadLength, int CRC32 of the payload,
+ *   payload : long inputOffset, byte type, long instructionId, followed for the added transactions by
+ *             byte direction, int epochDay, double usdValue,
+ *             short entityLength, byte[] entity (UTF-8), byte currencyLength, byte[] currency (UTF-8)
+ * An amendment is logged as the cancellation of the instruction followed by the added transaction.
+ * A zero payload length marks the end of the written data in a segment.
+ *
+ * The input offset is a position in the whole input of a report: the number of characters of text input processed
+ * plus one per batch of decoded records (see ReportGenerator#getInputOffset()). Both only ever increase it, so the
+ * offsets of the records never decrease, which is all the replay and the discarding of segments rely on.
+ */
+public final class WriteAheadLog implements Closeable {
+    /**
+     * Interface used for visiting the records of the log
+     */
+    public interface RecordVisitor {
+        /**
+         * Called for each replayed record
+         * @param transaction the added transaction or null if the record cancels the instruction
+         * @param instructionId the id of the instruction (NO_INSTRUCTION_ID for transactions without an id)
+         * @param inputOffset the input offset right after the line which produced the record
+         */
+        void visit(ITransaction transaction, long instructionId, long inputOffset);
+    }
+
+    /**
+     * Constructor, opening (or creating) the log stored in a directory
+     * @param directory the directory holding the log segments
+     * @param segmentSize the size in bytes of a single segment
+     * @param groupCommitSize the number of appended records after which the log is synced to disk
+     * @throws IOException if the log could not be opened
+     */
+    public WriteAheadLog(Path directory, int segmentSize, int groupCommitSize) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory");
+        }
+        if (segmentSize < MAX_RECORD_SIZE + 8) {
+            throw new IllegalArgumentException("segmentSize");
+        }
+        if (groupCommitSize <= 0) {
+            throw new IllegalArgumentException("groupCommitSize");
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.groupCommitSize = groupCommitSize;
+
+        Files.createDirectories(directory);
+        List<Path> segments = listSegments();
+
+        if (segments.isEmpty()) {
+            openSegment(0);
+        }
+        else {
+            Path last = segments.get(segments.size() - 1);
+            openSegment(segmentNumber(last));
+            // continue appending right after the last valid record
+            scan(current, Long.MIN_VALUE, null);
+        }
+    }
+
+    /**
+     * Appends a transaction to the log
+     * @param transaction the accepted transaction
+     * @param inputOffset the input offset right after the line which produced the transaction
+     * @throws IOException if the record could not be appended
+     */
+    public void append(ITransaction transaction, long inputOffset) throws IOException {
+        if (transaction == null) {
+            throw new IllegalArgumentException("transaction");
+        }
+
+        byte[] entity = transaction.getEntityName().getBytes(StandardCharsets.UTF_8);
+        byte[] currency = transaction.getCurrency().getBytes(StandardCharsets.UTF_8);
+        if (entity.length > 0xFFFF || currency.length > 0xFF) {
+            throw new IOException("Transaction fields too long for the log");
+        }
+
+        int payloadLength = ADD_PAYLOAD_SIZE + entity.length + currency.length;
+        int start = beginRecord(payloadLength, inputOffset, TYPE_ADD, transaction.getInstructionId());
+
+        current.put((byte) transaction.getCashflowDirection().ordinal());
+        current.putInt((int) transaction.getActualSettlementDate().toEpochDay());
+        current.putDouble(transaction.getUsdValue());
+        current.putShort((short) entity.length);
+        current.put(entity);
+        current.put((byte) currency.length);
+        current.put(currency);
+
+        endRecord(start, payloadLength);
+    }
+
+    /**
+     * Appends the cancellation of an instruction to the log
+     * @param instructionId the id of the cancelled instruction
+     * @param inputOffset the input offset right after the line which cancelled the instruction
+     * @throws IOException if the record could not be appended
+     */
+    public void appendCancel(long instructionId, long inputOffset) throws IOException {
+        int start = beginRecord(MIN_PAYLOAD_SIZE, inputOffset, TYPE_CANCEL, instructionId);
+        endRecord(start, MIN_PAYLOAD_SIZE);
+    }
+
+    /**
+     * Forces all the appended records to disk
+     */
+    public void sync() {
+        if (pendingRecords > 0) {
+            current.force();
+            pendingRecords = 0;
+        }
+    }
+
+    /**
+     * Replays the logged transactions in the order they were appended
+     * @param afterOffset only the records with an input offset greater than this one are replayed
+     * @param visitor the visitor receiving the replayed transactions
+     * @return the greatest input offset found in the log, or afterOffset if no record was replayed
+     * @throws IOException if the segments could not be read
+     */
+    public long replay(long afterOffset, RecordVisitor visitor) throws IOException {
+        if (visitor == null) {
+            throw new IllegalArgumentException("visitor");
+        }
+
+        long lastOffset = afterOffset;
+        for (Path segment : listSegments()) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                lastOffset = Math.max(lastOffset, scan(buffer, afterOffset, visitor));
+            }
+        }
+        return lastOffset;
+    }
+
+    /**
+     * Deletes the segments whose records are all covered by a checkpoint
+     * @param inputOffset the input offset covered by the checkpoint
+     * @throws IOException if the segments could not be read or deleted
+     */
+    public void discardUpTo(long inputOffset) throws IOException {
+        List<Path> segments = listSegments();
+        // the segment being written to is always kept
+        for (int i = 0; i < segments.size() - 1; i++) {
+            long lastOffset;
+            try (FileChannel channel = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+                lastOffset = scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), Long.MIN_VALUE, null);
+            }
+            if (lastOffset > inputOffset) {
+                break;
+            }
+            Files.delete(segments.get(i));
+        }
+    }
+
+    /**
+     * Syncs the pending records and releases the log
+     */
+    @Override
+    public void close() throws IOException {
+        sync();
+        channel.close();
+    }
+
+    /**
+     * Walks over the valid records of a segment, leaving the buffer positioned after the last one
+     * @param buffer the segment buffer
+     * @param afterOffset only the records with an input offset greater than this one are visited
+     * @param visitor the visitor receiving the records or null if they should only be skipped
+     * @return the greatest input offset found in the segment or Long.MIN_VALUE if there is none
+     */
+    private long scan(ByteBuffer buffer, long afterOffset, RecordVisitor visitor) {
+        CashflowDirection[] directions = CashflowDirection.values();
+        CRC32 checksum = new CRC32();
+        long lastOffset = Long.MIN_VALUE;
+
+        buffer.position(0);
+        while (buffer.remaining() >= 8) {
+            int start = buffer.position();
+            int payloadLength = buffer.getInt(start);
+            if (payloadLength < MIN_PAYLOAD_SIZE || payloadLength > buffer.remaining() - 8) {
+                break;
+            }
+
+            ByteBuffer payload = buffer.duplicate();
+            payload.position(start + 8);
+            payload.limit(start + 8 + payloadLength);
+            checksum.reset();
+            checksum.update(payload);
+            if ((int) checksum.getValue() != buffer.getInt(start + 4)) {
+                // torn write at the tail of the log
+                break;
+            }
+
+            buffer.position(start + 8);
+            long inputOffset = buffer.getLong();
+            lastOffset = inputOffset;
+
+            byte type = buffer.get();
+            long instructionId = buffer.getLong();
+
+            if (visitor != null && inputOffset > afterOffset && type == TYPE_CANCEL) {
+                visitor.visit(null, instructionId, inputOffset);
+            }
+            else if (visitor != null && inputOffset > afterOffset) {
+                CashflowDirection direction = directions[buffer.get()];
+                LocalDate settlementDate = LocalDate.ofEpochDay(buffer.getInt());
+                double usdValue = buffer.getDouble();
+                byte[] entity = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(entity);
+                byte[] currency = new byte[buffer.get() & 0xFF];
+                buffer.get(currency);
+
+                visitor.visit(
+                        new SettledTransaction(
+                                new String(entity, StandardCharsets.UTF_8),
+                                direction,
+                                new String(currency, StandardCharsets.UTF_8),
+                                usdValue,
+                                settlementDate,
+                                instructionId),
+                        instructionId,
+                        inputOffset
+                );
+            }
+
+            buffer.position(start + 8 + payloadLength);
+        }
+        return lastOffset;
+    }
+
+    /**
+     * Writes the common part of a record, leaving its length and checksum to be filled in by endRecord
+     * @return the position where the record starts
+     */
+    private int beginRecord(int payloadLength, long inputOffset, byte type, long instructionId) throws IOException {
+        // keep room for the end marker of the segment
+        if (current.remaining() < 8 + payloadLength + 4) {
+            rollSegment();
+        }
+
+        int start = current.position();
+        current.position(start + 8);
+        current.putLong(inputOffset);
+        current.put(type);
+        current.putLong(instructionId);
+        return start;
+    }
+
+    /**
+     * Seals a record by writing its checksum and length
+     * @param start the position where the record starts
+     * @param payloadLength the length of the record payload
+     */
+    private void endRecord(int start, int payloadLength) {
+        ByteBuffer payload = current.duplicate();
+        payload.position(start + 8);
+        payload.limit(start + 8 + payloadLength);
+        crc.reset();
+        crc.update(payload);
+
+        current.putInt(start + 4, (int) crc.getValue());
+        // the length is written last so that a partially written record is never considered valid
+        current.putInt(start, payloadLength);
+
+        if (++pendingRecords >= groupCommitSize) {
+            sync();
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        sync();
+        channel.close();
+        openSegment(currentSegment + 1);
+    }
+
+    private void openSegment(long number) throws IOException {
+        currentSegment = number;
+        channel = FileChannel.open(
+                directory.resolve(String.format(SEGMENT_FORMAT, number)),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        current = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_GLOB)) {
+            for (Path segment : stream) {
+                segments.add(segment);
+            }
+        }
+        // the segment numbers are zero padded, so the names sort in append order
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(4, name.length() - 4));
+    }
+
+    private static final String SEGMENT_FORMAT = "wal-%016d.log";
+    private static final String SEGMENT_GLOB = "wal-*.log";
+    private static final byte TYPE_ADD = 0;
+    private static final byte TYPE_CANCEL = 1;
+    private static final int MIN_PAYLOAD_SIZE = 8 + 1 + 8;
+    private static final int ADD_PAYLOAD_SIZE = MIN_PAYLOAD_SIZE + 1 + 4 + 8 + 2 + 1;
+    private static final int MAX_RECORD_SIZE = 8 + ADD_PAYLOAD_SIZE + 0xFFFF + 0xFF;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int groupCommitSize;
+    private final CRC32 crc = new CRC32();
+
+    private FileChannel channel;
+    private MappedByteBuffer current;
+    private long currentSegment;
+    private int pendingRecords = 0;
+}
@@ -1,58 +1,1284 @@
+import Components.AggregateQuery;
+import Components.AggregateRow;
+import Components.DailyDistribution;
+import Components.DailySummary;
 import Components.IOutput;
 import Components.ITransaction.CashflowDirection;
 import Components.Entity;
 import Components.ITransaction;
+import Components.ITransactionSink;
+import Components.InstructionBatch;
+import Components.RankingEntry;
+import Components.TimeBuckets;
+import Components.TimeBuckets.Resolution;
+import Helpers.DuplicateFilter;
+import Helpers.GzipSegment;
+import Helpers.HeavyHitters;
+import Helpers.InstructionIndex;
+import Helpers.PartialAggregation;
+import Helpers.QuantileSketch;
+import Helpers.RankingSort;
+import Helpers.HyperLogLog;
 import Helpers.ParsingUtil;
+import Helpers.ReportFormat;
+import Metrics.EngineMetrics;
+import Metrics.IngestBatchEvent;
+import Metrics.ReportQueryEvent;
+import Metrics.MetricsRegistry;
+import Persistence.Checkpoint;
+import Persistence.ColumnarArchive;
+import Persistence.SpillingRanking;
+import Persistence.WriteAheadLog;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.GZIPInputStream;
 
 /**
  * @author Alexandru Dochioiu
  * Date : 20/10/17
  *
  * Class used for generating a report based on a list of transactions
+ * Note: Ingest, checkpoints and queries (including printing) can be called from different threads, as they are
+ * serialized by a read-write lock: ingest waits for the running queries, queries run concurrently with each other
  */
-public class ReportGenerator {
+public class ReportGenerator implements ITransactionSink {
     /**
      * Constructor
      * @param input the string to be processed for generating the report
      * @param outDestination the class used for outputting data
      */
     public ReportGenerator(String input, IOutput outDestination) {
+        this(outDestination);
         if (input == null) {
             throw new IllegalArgumentException("input");
         }
+        ingest(input);
+    }
+
+    /**
+     * Constructor for an empty report, to be filled incrementally using {@link #ingest(String)}
+     * @param outDestination the class used for outputting data
+     */
+    public ReportGenerator(IOutput outDestination) {
         if (outDestination == null) {
             throw new IllegalArgumentException("outDestination");
         }
         outputDestination = outDestination;
-        parseInput(input);
+    }
+
+    /**
+     * Restores a report from a checkpoint previously written using {@link #writeCheckpoint(Path, boolean)}
+     * Note: Ingest can be resumed from {@link #getInputOffset()}
+     * @param checkpointFile the checkpoint file
+     * @param outDestination the class used for outputting data
+     * @return the restored report
+     * @throws IOException if the checkpoint could not be read or is corrupted
+     */
+    public static ReportGenerator restoreCheckpoint(Path checkpointFile, IOutput outDestination) throws IOException {
+        ReportGenerator reportGenerator = new ReportGenerator(outDestination);
+        Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+
+        reportGenerator.entities.putAll(checkpoint.getEntities());
+        reportGenerator.entityList.addAll(checkpoint.getEntities().values());
+        reportGenerator.monthlySummaries.putAll(checkpoint.getMonthlySummaries());
+        reportGenerator.inputOffset = checkpoint.getInputOffset();
+
+        for (Map.Entry<LocalDate, DailySummary> day : checkpoint.getDailySummaries().entrySet()) {
+            reportGenerator.dailySummaries.put(day.getKey(), day.getValue());
+            reportGenerator.timeBuckets.merge(Resolution.Day, day.getKey(), day.getValue());
+            reportGenerator.trackSettlementDay(day.getKey().toEpochDay());
+        }
+        // the weeks of the days rolled up by the retention are not part of the checkpoint
+        for (Map.Entry<YearMonth, DailySummary> month : checkpoint.getMonthlySummaries().entrySet()) {
+            reportGenerator.timeBuckets.merge(Resolution.Month, month.getKey().atDay(1), month.getValue());
+        }
+
+        // the instructions can only be amended, and the distributions rebuilt, if the checkpoint holds the transactions
+        for (Entity entity : reportGenerator.entities.values()) {
+            for (ITransaction transaction : entity.getTransactions()) {
+                reportGenerator.addToDailyDistribution(transaction);
+                if (transaction.getInstructionId() != ITransaction.NO_INSTRUCTION_ID) {
+                    reportGenerator.instructionIndex.put(transaction.getInstructionId(), transaction);
+                }
+            }
+        }
+
+        return reportGenerator;
+    }
+
+    /**
+     * Restores a report after a crash, by loading the last checkpoint (if any) and replaying the transactions
+     * logged after it
+     * Note: The log is attached to the returned report, so the following ingest keeps being logged
+     * @param checkpointFile the checkpoint file, which might not exist yet
+     * @param log the write-ahead log
+     * @param outDestination the class used for outputting data
+     * @return the restored report
+     * @throws IOException if the checkpoint or the log could not be read
+     */
+    public static ReportGenerator recover(Path checkpointFile, WriteAheadLog log, IOutput outDestination)
+            throws IOException {
+        if (checkpointFile == null) {
+            throw new IllegalArgumentException("checkpointFile");
+        }
+        if (log == null) {
+            throw new IllegalArgumentException("log");
+        }
+
+        ReportGenerator reportGenerator = Files.exists(checkpointFile) ?
+                restoreCheckpoint(checkpointFile, outDestination) :
+                new ReportGenerator(outDestination);
+
+        reportGenerator.inputOffset = log.replay(
+                reportGenerator.inputOffset,
+                (transaction, instructionId, offset) -> {
+                    if (transaction == null) {
+                        reportGenerator.retractInstruction(instructionId);
+                    }
+                    else {
+                        reportGenerator.addTransaction(transaction);
+                    }
+                }
+        );
+        reportGenerator.attachWriteAheadLog(log);
+
+        return reportGenerator;
+    }
+
+    /**
+     * Makes every accepted transaction be appended to a write-ahead log, synced once per ingested batch
+     * @param log the write-ahead log or null to stop logging
+     */
+    public void attachWriteAheadLog(WriteAheadLog log) {
+        writeAheadLog = log;
+    }
+
+    /**
+     * Makes the following ingest drop the instructions which were already seen
+     * Note: Only the plain instructions and the New records which could be parsed are checked, a New record being a
+     * duplicate only while its instruction is live
+     * @param filter the filter used for detecting duplicates or null to accept all the instructions
+     */
+    public void setDuplicateFilter(DuplicateFilter filter) {
+        duplicateFilter = filter;
+        duplicateCount = 0;
+    }
+
+    /**
+     * Getter used for obtaining the number of instructions discarded as duplicates
+     * @return the number of duplicates discarded since the current duplicate filter was set, 0 if there is none
+     */
+    public long getRejectedDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * Makes the report keep the details of the most recent settlement days only
+     *
+     * The retained days are counted back from the latest settlement date ingested so far (the watermark). As the
+     * watermark advances, older days are expired a few at a time during ingest: their daily summary is rolled up
+     * into its month (or dropped) and the entities drop their transactions. The entity totals are not altered. A
+     * late transaction settled before the retained days only goes to the entity totals and to its month.
+     * Note: Instructions settled before the retained days can no longer be amended or cancelled
+     * @param detailDays the number of settlement days to keep the details for
+     * @param rollUpToMonths whether the expired daily summaries are rolled up into monthly summaries
+     */
+    public void setRetention(int detailDays, boolean rollUpToMonths) {
+        if (detailDays <= 0) {
+            throw new IllegalArgumentException("detailDays");
+        }
+
+        retentionDays = detailDays;
+        rollUpExpiredDays = rollUpToMonths;
+    }
+
+    /**
+     * Makes the report rank the entities approximately, in fixed memory, instead of keeping every entity
+     *
+     * The entities and their transactions are not kept: the cashflow of each direction is fed to a
+     * {@link HeavyHitters} summary monitoring a fixed number of entities, and the rankings list the estimated totals
+     * along with their error (see {@link RankingEntry#getError()}). The summaries of the days, weeks, months and years
+     * stay exact.
+     *
+     * The ranking takes fixed memory, but some state still grows with the input: the summaries and distributions
+     * grow with the settlement days (unless a retention is set), the instruction index keeps the entity name, value,
+     * direction and settlement day of each live instruction with an id, and {@link #ingestFiles(List, int)} holds
+     * the totals of the distinct entities of each input until it is merged.
+     * Note: Rankings over a date range, entity summaries, aggregations, checkpoints and archives need the entities, so
+     * they are not available in this mode, which must be chosen before anything is ingested
+     * @param capacity the number of entities monitored per direction
+     */
+    public void setApproximateRanking(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity");
+        }
+
+        lock.writeLock().lock();
+        try {
+            requireRankingModeUnchosen();
+            heavyHitters = new HeavyHitters[CashflowDirection.values().length];
+            instructionIndex = new InstructionIndex(INITIAL_INSTRUCTIONS, true);
+            for (int d = 0; d < heavyHitters.length; d++) {
+                heavyHitters[d] = new HeavyHitters(capacity);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Makes the report rank the entities exactly in bounded memory, spilling their totals to disk, instead of keeping
+     * every entity
+     *
+     * The entities and their transactions are not kept: the cashflow of each direction is added to the total of its
+     * entity in a {@link SpillingRanking}, which holds a bounded number of totals in memory and writes the others to
+     * sorted run files merged during ingest. A ranking merges the runs, and printing a full ranking sorts the totals
+     * externally. The summaries of the days, weeks, months and years are unchanged.
+     * Note: Rankings over a date range, entity summaries, aggregations, checkpoints and archives need the entities, so
+     * they are not available in this mode, which must be chosen before anything is ingested
+     * @param directory the directory receiving the run files, owned by the caller
+     * @param maxEntitiesInMemory the number of entity totals kept in memory before being spilled
+     * @throws IOException if the directory could not be created
+     */
+    public void setSpillingRanking(Path directory, int maxEntitiesInMemory) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory");
+        }
+        if (maxEntitiesInMemory <= 0) {
+            throw new IllegalArgumentException("maxEntitiesInMemory");
+        }
+
+        lock.writeLock().lock();
+        try {
+            requireRankingModeUnchosen();
+            spillingRanking = new SpillingRanking(directory, maxEntitiesInMemory);
+            instructionIndex = new InstructionIndex(INITIAL_INSTRUCTIONS, true);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Getter used for obtaining the largest cashflow an entity missing from an approximate ranking may have
+     * @param direction the direction of the cashflow
+     * @return the bound in US Dollars, 0 when the ranking is exact
+     */
+    public double getRankingErrorBound(CashflowDirection direction) {
+        if (direction == null) {
+            throw new IllegalArgumentException("direction");
+        }
+
+        lock.readLock().lock();
+        try {
+            return heavyHitters == null ? 0 : heavyHitters[direction.ordinal()].getErrorBound();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Getter used for obtaining the number of rejected amend, cancel and new-with-id records
+     * Note: A record is rejected when it references an instruction which is not live, or when it reuses the id
+     * of a live instruction
+     * @return the number of rejected records
+     */
+    public long getRejectedAmendCount() {
+        return rejectedAmendCount;
+    }
+
+    /**
+     * Adds more input to the report
+     * Note: The input is expected to contain only complete lines
+     * @param input the string to be processed
+     */
+    public void ingest(String input) {
+        if (input == null) {
+            throw new IllegalArgumentException("input");
+        }
+
+        lock.writeLock().lock();
+        try {
+            parseInput(input);
+            inputOffset += input.length();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds streamed input to the report, processing it in batches of whole lines
+     * Note: The reader is consumed until its end but it is not closed
+     * @param input the reader of the input to be processed
+     * @throws IOException if the input could not be read
+     */
+    public void ingest(Reader input) throws IOException {
+        if (input == null) {
+            throw new IllegalArgumentException("input");
+        }
+
+        char[] buffer = new char[READ_BUFFER_SIZE];
+        StringBuilder pending = new StringBuilder();
+        int read;
+
+        while ((read = input.read(buffer)) >= 0) {
+            int lastLineEnd = read - 1;
+            while (lastLineEnd >= 0 && buffer[lastLineEnd] != '\n') {
+                lastLineEnd--;
+            }
+
+            // a line split across reads is kept until it is complete
+            if (lastLineEnd < 0) {
+                pending.append(buffer, 0, read);
+                continue;
+            }
+
+            pending.append(buffer, 0, lastLineEnd + 1);
+            ingest(pending.toString());
+            pending.setLength(0);
+            pending.append(buffer, lastLineEnd + 1, read - lastLineEnd - 1);
+        }
+
+        if (pending.length() > 0) {
+            ingest(pending.toString());
+        }
+    }
+
+    /**
+     * Ingests a set of files concurrently, one worker per file, merging their partial aggregations in the order of
+     * the list, so the result does not depend on which worker completes first
+     * Note: The plain instructions of a file are aggregated by its worker while the New, Amend and Cancel records are
+     * applied in order during the merge, so they can refer to the instructions of earlier files. Gzip compressed files
+     * are decompressed on the fly and the ones made of several members are split between the workers (see
+     * {@link GzipSegment}). When a write-ahead log, a duplicate filter or a retention policy is set, the files are
+     * ingested one after the other instead.
+     * @param files the files to be ingested, each one containing whole lines (UTF-8), possibly gzip compressed
+     * @param parallelism the maximum number of files (or parts of a gzip file) read at the same time
+     * @throws IOException if a file could not be read
+     */
+    public void ingestFiles(List<Path> files, int parallelism) throws IOException {
+        if (files == null) {
+            throw new IllegalArgumentException("files");
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism");
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+
+        if (writeAheadLog != null || duplicateFilter != null || retentionDays >= 0) {
+            for (Path file : files) {
+                try (Reader input = openFile(file)) {
+                    ingest(input);
+                }
+            }
+            return;
+        }
+
+        // the threads are only started as the tasks are submitted
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        try {
+            // for each file, either the aggregation of the whole file or the segments of a gzip file
+            List<Future<PartialAggregation>> partials = new ArrayList<>();
+            List<List<GzipSegment>> segmentsOfFiles = new ArrayList<>();
+            List<List<Future<GzipSegment>>> decodedOfFiles = new ArrayList<>();
+            for (Path file : files) {
+                if (GzipSegment.isGzip(file)) {
+                    List<GzipSegment> segments = GzipSegment.split(file, parallelism, !keepsEntities());
+                    List<Future<GzipSegment>> decoded = new ArrayList<>();
+                    for (GzipSegment segment : segments) {
+                        decoded.add(workers.submit(segment::decode));
+                    }
+                    partials.add(null);
+                    segmentsOfFiles.add(segments);
+                    decodedOfFiles.add(decoded);
+                    continue;
+                }
+
+                partials.add(workers.submit(() -> {
+                    PartialAggregation partial = new PartialAggregation(!keepsEntities());
+                    // like the sequential ingest, the invalid bytes are replaced instead of failing the file
+                    try (Reader input = openFile(file)) {
+                        partial.ingest(input);
+                    }
+                    return partial;
+                }));
+                segmentsOfFiles.add(null);
+                decodedOfFiles.add(null);
+            }
+
+            // the files are merged in order, as soon as the previous ones are merged
+            for (int i = 0; i < files.size(); i++) {
+                if (partials.get(i) != null) {
+                    mergePartial(partials.get(i).get());
+                }
+                else {
+                    mergeGzipSegments(segmentsOfFiles.get(i), decodedOfFiles.get(i));
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while ingesting files");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to ingest the files", e.getCause());
+        }
+        finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Opens a file for reading, decompressing it if it is gzip compressed
+     * @param file the file
+     * @return the reader of the (decompressed) lines
+     */
+    private static Reader openFile(Path file) throws IOException {
+        InputStream input = Files.newInputStream(file);
+        try {
+            if (GzipSegment.isGzip(file)) {
+                input = new GZIPInputStream(input, READ_BUFFER_SIZE);
+            }
+        }
+        catch (IOException e) {
+            input.close();
+            throw e;
+        }
+        return new InputStreamReader(input, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Merges the segments of a gzip file in order, joining the lines split between two segments
+     * Note: The segments starting before the end of the previous one began at a false member header and are dropped
+     * @param segments the segments of the file
+     * @param decoded the decoding of each segment
+     */
+    private void mergeGzipSegments(List<GzipSegment> segments, List<Future<GzipSegment>> decoded)
+            throws InterruptedException, ExecutionException {
+        long nextStart = 0;
+        ByteArrayOutputStream splitLine = new ByteArrayOutputStream();
+
+        for (int i = 0; i < segments.size(); i++) {
+            if (segments.get(i).getStart() < nextStart) {
+                decoded.get(i).cancel(true);
+                continue;
+            }
+
+            GzipSegment segment = decoded.get(i).get();
+            splitLine.writeBytes(segment.getHead());
+            // the joined line comes before the lines of the segment, as the amendments depend on the order
+            if (segment.getTail() != null) {
+                ingest(splitLine.toString(StandardCharsets.UTF_8));
+                splitLine.reset();
+                splitLine.writeBytes(segment.getTail());
+            }
+            mergePartial(segment.getAggregation());
+            nextStart = segment.getEnd();
+        }
+
+        if (splitLine.size() > 0) {
+            ingest(splitLine.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Merges the aggregation of an input into the report, then applies its records with an instruction id
+     * @param partial the partial aggregation
+     */
+    private void mergePartial(PartialAggregation partial) {
+        lock.writeLock().lock();
+        try {
+            // the totals of the entities are streamed into the ranking, as the report does not keep the entities
+            for (Map.Entry<String, double[]> totals : partial.getEntityTotals().entrySet()) {
+                for (CashflowDirection direction : CashflowDirection.values()) {
+                    double amount = totals.getValue()[direction.ordinal()];
+                    if (amount == 0) {
+                        continue;
+                    }
+                    if (heavyHitters != null) {
+                        heavyHitters[direction.ordinal()].add(totals.getKey(), amount);
+                    }
+                    else {
+                        spill(totals.getKey(), direction, amount);
+                    }
+                }
+            }
+
+            for (Entity entity : partial.getEntities().values()) {
+                TimeBuckets bucketsOfEntity = entityBuckets.get(entity.getName());
+                if (bucketsOfEntity != null) {
+                    entity.forEachTransaction(null, null, transaction -> bucketsOfEntity.add(
+                            transaction.getActualSettlementDate(),
+                            transaction.getCashflowDirection(),
+                            transaction.getUsdValue()));
+                }
+
+                Entity existing = entities.get(entity.getName());
+                if (existing == null) {
+                    entities.put(entity.getName(), entity);
+                    entityList.add(entity);
+                }
+                else {
+                    existing.merge(entity);
+                }
+            }
+
+            for (Map.Entry<LocalDate, DailySummary> day : partial.getDailySummaries().entrySet()) {
+                trackSettlementDay(day.getKey().toEpochDay());
+                timeBuckets.merge(Resolution.Day, day.getKey(), day.getValue());
+                DailySummary summaryOfDay = dailySummaries.get(day.getKey());
+                if (summaryOfDay == null) {
+                    dailySummaries.put(day.getKey(), day.getValue());
+                }
+                else {
+                    summaryOfDay.merge(day.getValue());
+                }
+            }
+
+            for (Map.Entry<LocalDate, DailyDistribution> day : partial.getDailyDistributions().entrySet()) {
+                DailyDistribution distributionOfDay = dailyDistributions.get(day.getKey());
+                if (distributionOfDay == null) {
+                    dailyDistributions.put(day.getKey(), day.getValue());
+                }
+                else {
+                    distributionOfDay.merge(day.getValue());
+                }
+            }
+
+            acceptedCount += partial.getAcceptedCount();
+            rejectedCount += partial.getMalformedCount();
+            EngineMetrics.LINES.add(partial.getLineCount());
+            EngineMetrics.ACCEPTED.add(partial.getAcceptedCount());
+            EngineMetrics.REJECTED_MALFORMED.add(partial.getMalformedCount());
+
+            long inputEnd = inputOffset + partial.getCharacterCount();
+            InstructionBatch records = partial.getInstructionRecords();
+            for (int i = 0; i < records.size(); i++) {
+                applyRecord(records.getType(i), records.getTransaction(i), records.getInstructionId(i), inputEnd);
+            }
+            inputOffset = inputEnd;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Registers gauges giving the size of the report: report.entities, report.days, report.months,
+     * report.liveInstructions and report.inputOffset (in characters, see {@link #getInputOffset()})
+     * Note: The gauges are read without synchronization, so they are only indicative while ingest is running
+     * @param registry the registry receiving the gauges
+     */
+    public void registerGauges(MetricsRegistry registry) {
+        if (registry == null) {
+            throw new IllegalArgumentException("registry");
+        }
+
+        registry.gauge("report.entities", entityList::size);
+        registry.gauge("report.days", dailySummaries::size);
+        registry.gauge("report.months", monthlySummaries::size);
+        registry.gauge("report.liveInstructions", instructionIndex::size);
+        registry.gauge("report.inputOffset", () -> inputOffset);
+    }
+
+    /**
+     * Getter used for obtaining how much of the input was processed so far
+     * @return the number of input characters processed, plus one per batch applied by {@link #addBatch}
+     */
+    public long getInputOffset() {
+        return inputOffset;
+    }
+
+    /**
+     * Writes a binary checkpoint of the report, which can be restored using
+     * {@link #restoreCheckpoint(Path, IOutput)}
+     * Note: The instructions ingested before the checkpoint can be amended after a restore only if the
+     * transactions are included
+     * @param checkpointFile the destination file
+     * @param includeTransactions whether the individual transactions should also be stored
+     * @throws IOException if the checkpoint could not be written
+     */
+    public void writeCheckpoint(Path checkpointFile, boolean includeTransactions) throws IOException {
+        lock.writeLock().lock();
+        try {
+            requireEntities();
+            new Checkpoint(inputOffset, entities, dailySummaries, monthlySummaries).write(checkpointFile, includeTransactions);
+
+            // the logged transactions covered by the checkpoint are no longer needed for recovery
+            if (writeAheadLog != null) {
+                writeAheadLog.discardUpTo(inputOffset);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the retained transactions to a columnar archive, which can serve reports over date ranges without the
+     * input being parsed again (see {@link ColumnarArchive})
+     * Note: The transactions evicted by the retention policy are only part of the monthly summaries, so they are not
+     * archived
+     * @param archiveFile the destination file
+     * @throws IOException if the archive could not be written
+     */
+    public void writeArchive(Path archiveFile) throws IOException {
+        if (archiveFile == null) {
+            throw new IllegalArgumentException("archiveFile");
+        }
+
+        List<ITransaction> transactions = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            requireEntities();
+            for (Entity entity : entityList) {
+                transactions.addAll(entity.getTransactions());
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        ColumnarArchive.write(archiveFile, transactions);
+    }
+
+    /**
+     * Getter used for obtaining the daily summaries of a range of settlement days
+     * @param from the first day of the range (inclusive) or null for no lower bound
+     * @param to the last day of the range (inclusive) or null for no upper bound
+     * @return copies of the summaries of the days with cashflow, chronologically ordered
+     */
+    public NavigableMap<LocalDate, DailySummary> getDailySummaries(LocalDate from, LocalDate to) {
+        NavigableMap<LocalDate, DailySummary> result = new TreeMap<>();
+
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<LocalDate, DailySummary> day : dailySummaries.entrySet()) {
+                if ((from == null || !day.getKey().isBefore(from)) && (to == null || !day.getKey().isAfter(to))) {
+                    result.put(day.getKey(), copyOf(day.getValue()));
+                }
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Getter used for obtaining the summaries of the months rolled up by the retention policy
+     * @return copies of the monthly summaries, chronologically ordered
+     */
+    public NavigableMap<YearMonth, DailySummary> getMonthlySummaries() {
+        NavigableMap<YearMonth, DailySummary> result = new TreeMap<>();
+
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<YearMonth, DailySummary> month : monthlySummaries.entrySet()) {
+                result.put(month.getKey(), copyOf(month.getValue()));
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Getter used for obtaining the summary of the day, ISO week, month or year holding a settlement day
+     * Note: The days are the retained daily summaries, while the weeks, months and years account for every accepted
+     * transaction whatever the retention policy (except for the weeks of the days rolled up before a checkpoint)
+     * @param resolution the resolution of the period
+     * @param date a day of the period
+     * @return a copy of the summary, empty if there is no cashflow in the period
+     */
+    public DailySummary getSummary(Resolution resolution, LocalDate date) {
+        if (resolution == null) {
+            throw new IllegalArgumentException("resolution");
+        }
+        if (date == null) {
+            throw new IllegalArgumentException("date");
+        }
+
+        lock.readLock().lock();
+        try {
+            DailySummary summary = resolution == Resolution.Day ?
+                    dailySummaries.get(date) :
+                    timeBuckets.get(resolution, date);
+            return copyOrEmpty(summary);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Getter used for obtaining the summaries of the periods overlapping a range of settlement days
+     * @param resolution the resolution of the periods
+     * @param from the first day of the range (inclusive) or null for no lower bound
+     * @param to the last day of the range (inclusive) or null for no upper bound
+     * @return copies of the summaries of the periods with cashflow, keyed by their first day and chronologically
+     * ordered
+     */
+    public NavigableMap<LocalDate, DailySummary> getSummaries(Resolution resolution, LocalDate from, LocalDate to) {
+        if (resolution == null) {
+            throw new IllegalArgumentException("resolution");
+        }
+        if (resolution == Resolution.Day) {
+            return getDailySummaries(from, to);
+        }
+
+        NavigableMap<LocalDate, DailySummary> result = new TreeMap<>();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<LocalDate, DailySummary> bucket : timeBuckets.getRange(resolution, from, to).entrySet()) {
+                result.put(bucket.getKey(), copyOf(bucket.getValue()));
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Getter used for obtaining the summary of an entity over the day, ISO week, month or year holding a settlement
+     * day
+     * Note: The buckets of an entity are built from its retained transactions the first time they are requested,
+     * then maintained during ingest
+     * @param entityName the name of the entity
+     * @param resolution the resolution of the period
+     * @param date a day of the period
+     * @return a copy of the summary, empty if the entity has no cashflow in the period
+     */
+    public DailySummary getEntitySummary(String entityName, Resolution resolution, LocalDate date) {
+        if (entityName == null) {
+            throw new IllegalArgumentException("entityName");
+        }
+        if (resolution == null) {
+            throw new IllegalArgumentException("resolution");
+        }
+        if (date == null) {
+            throw new IllegalArgumentException("date");
+        }
+
+        lock.readLock().lock();
+        try {
+            requireEntities();
+            TimeBuckets bucketsOfEntity = entityBuckets.get(entityName);
+            if (bucketsOfEntity != null) {
+                return copyOrEmpty(bucketsOfEntity.get(resolution, date));
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            Entity entity = entities.get(entityName);
+            if (entity == null) {
+                return new DailySummary();
+            }
+
+            TimeBuckets bucketsOfEntity = entityBuckets.get(entityName);
+            if (bucketsOfEntity == null) {
+                TimeBuckets built = new TimeBuckets(EnumSet.allOf(Resolution.class));
+                entity.forEachTransaction(null, null, transaction -> built.add(
+                        transaction.getActualSettlementDate(),
+                        transaction.getCashflowDirection(),
+                        transaction.getUsdValue()));
+                entityBuckets.put(entityName, built);
+                bucketsOfEntity = built;
+            }
+            return copyOrEmpty(bucketsOfEntity.get(resolution, date));
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Estimates quantiles of the USD amounts of the transactions settled over a range of days, e.g. the p50 and the
+     * p99 trade size, by merging the quantile sketches of the days (see {@link QuantileSketch} for the accuracy)
+     * Note: Only the retained days are covered, and amended or cancelled transactions are still counted
+     * @param from the first settlement day of the range (inclusive) or null for no lower bound
+     * @param to the last settlement day of the range (inclusive) or null for no upper bound
+     * @param quantiles the quantiles, each one between 0 (the smallest amount) and 1 (the largest amount)
+     * @return the amounts in US Dollars, in the order of the quantiles, NaN if no transaction settled in the range
+     */
+    public double[] getAmountQuantiles(LocalDate from, LocalDate to, double... quantiles) {
+        QuantileSketch amounts = new QuantileSketch();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<LocalDate, DailyDistribution> day : dailyDistributions.entrySet()) {
+                if ((from == null || !day.getKey().isBefore(from)) && (to == null || !day.getKey().isAfter(to))) {
+                    amounts.merge(day.getValue().getAmounts());
+                }
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        return amounts.getQuantiles(quantiles);
+    }
+
+    /**
+     * Estimates the number of distinct entities with transactions settled over a range of days, by merging the
+     * distinct count sketches of the days (see {@link HyperLogLog} for the accuracy)
+     * Note: Only the retained days are covered, and amended or cancelled transactions are still counted
+     * @param from the first settlement day of the range (inclusive) or null for no lower bound
+     * @param to the last settlement day of the range (inclusive) or null for no upper bound
+     * @return the estimated number of entities
+     */
+    public long getDistinctEntityCount(LocalDate from, LocalDate to) {
+        HyperLogLog entityNames = new HyperLogLog();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<LocalDate, DailyDistribution> day : dailyDistributions.entrySet()) {
+                if ((from == null || !day.getKey().isBefore(from)) && (to == null || !day.getKey().isAfter(to))) {
+                    entityNames.merge(day.getValue().getEntities());
+                }
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        return entityNames.estimate();
+    }
+
+    /**
+     * Estimates quantiles of the USD amounts of the transactions of an entity (see {@link Entity#getAmounts()})
+     * @param entityName the name of the entity
+     * @param quantiles the quantiles, each one between 0 (the smallest amount) and 1 (the largest amount)
+     * @return the amounts in US Dollars, in the order of the quantiles, NaN if the entity is unknown
+     */
+    public double[] getEntityAmountQuantiles(String entityName, double... quantiles) {
+        if (entityName == null) {
+            throw new IllegalArgumentException("entityName");
+        }
+
+        lock.readLock().lock();
+        try {
+            requireEntities();
+            Entity entity = entities.get(entityName);
+            return entity == null ? new QuantileSketch().getQuantiles(quantiles) :
+                    entity.getAmounts().getQuantiles(quantiles);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ranks the entities by their cashflow in a direction
+     * Note: When a date range is given only the transactions settled in the retained days are counted, otherwise
+     * the entity totals are used
+     * @param direction the direction of the cashflow we are interested in
+     * @param from the first settlement day of the range (inclusive) or null for no lower bound
+     * @param to the last settlement day of the range (inclusive) or null for no upper bound
+     * @param limit the maximum number of entries returned
+     * @return the entries with the largest cashflow, reverse ordered by the cashflow and then ordered by name
+     */
+    public List<RankingEntry> getRanking(CashflowDirection direction, LocalDate from, LocalDate to, int limit) {
+        if (direction == null) {
+            throw new IllegalArgumentException("direction");
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit");
+        }
+
+        Comparator<RankingEntry> order = Comparator.comparingDouble(RankingEntry::getAmount).reversed()
+                .thenComparing(RankingEntry::getEntityName);
+        // the head of the queue is the entry to be dropped first, so only the top entries are ever kept
+        PriorityQueue<RankingEntry> top = new PriorityQueue<>(Math.min(limit, 1024) + 1, order.reversed());
+        boolean ranged = from != null || to != null;
+
+        lock.readLock().lock();
+        try {
+            if (heavyHitters != null) {
+                if (ranged) {
+                    throw new IllegalStateException("The approximate ranking has no date ranges");
+                }
+                return heavyHitters[direction.ordinal()].getTop(limit);
+            }
+            if (spillingRanking != null) {
+                if (ranged) {
+                    throw new IllegalStateException("The spilling ranking has no date ranges");
+                }
+                return spillingRanking.getTop(direction, limit);
+            }
+
+            for (Entity entity : entityList) {
+                double amount = ranged ?
+                        entity.getDirectedCashflow(direction, from, to) :
+                        entity.getTotalDirectedCashflow(direction);
+                // entities without cashflow in the range are not listed
+                if (ranged && amount == 0) {
+                    continue;
+                }
+
+                RankingEntry entry = new RankingEntry(entity.getName(), amount);
+                if (top.size() < limit) {
+                    top.add(entry);
+                }
+                else if (limit > 0 && order.compare(entry, top.peek()) < 0) {
+                    top.poll();
+                    top.add(entry);
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+
+        List<RankingEntry> ranking = new ArrayList<>(top);
+        ranking.sort(order);
+        return ranking;
+    }
+
+    /**
+     * Executes an aggregation over the retained transactions, e.g. the weekly outgoing cashflow of a set of entities
+     * per currency
+     * Note: Only the transactions settled in the retained days are aggregated, the days rolled up by the retention
+     * policy being only part of the monthly summaries
+     * @param query the query
+     * @return the groups, in the order of the query
+     */
+    public List<AggregateRow> aggregate(AggregateQuery query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query");
+        }
+
+        AggregateQuery.Accumulator accumulator = query.newAccumulator();
+        lock.readLock().lock();
+        try {
+            requireEntities();
+            if (query.getEntities() == null) {
+                for (Entity entity : entityList) {
+                    entity.forEachTransaction(query.getFrom(), query.getTo(), accumulator::add);
+                }
+            }
+            else {
+                for (String entityName : query.getEntities()) {
+                    Entity entity = entities.get(entityName);
+                    if (entity != null) {
+                        entity.forEachTransaction(query.getFrom(), query.getTo(), accumulator::add);
+                    }
+                }
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        return accumulator.getRows();
     }
 
      private void parseInput(String input)
      {
-         String[] lines = input.split("\n");
-         String entityName;
+         long start = EngineMetrics.BATCH_LATENCY.startTimer();
+         IngestBatchEvent event = new IngestBatchEvent();
+         event.begin();
+         long acceptedBefore = acceptedCount;
+         long rejectedBefore = rejectedCount;
+         int lineCount = 0;
 
          ITransaction transaction;
+         long instructionId;
+         // offset right after the current line, relative to the start of the input
+         long lineEnd = 0;
+
+         for (int lineStart = 0; lineStart < input.length(); lineStart = (int) lineEnd) {
+             int separator = input.indexOf('\n', lineStart);
+             lineEnd = separator < 0 ? input.length() : separator + 1;
 
-         for (String line : lines) {
              //Skip empty lines
-             if (line.equals("")) {
+             if (separator == lineStart) {
                  continue;
              }
+             String line = input.substring(lineStart, separator < 0 ? input.length() : separator);
+             EngineMetrics.LINES.increment();
+             lineCount++;
 
-            transaction = ParsingUtil.lineToTransaction(line);
+             ParsingUtil.RecordType recordType = ParsingUtil.getRecordType(line);
 
-            // If we failed to parse that line, just skip it
-            if (transaction == null) {
-                // Ideally an error would be logged here
-                continue;
+             // If we do not know what the line is, just skip it
+             if (recordType == null) {
+                 rejectMalformed();
+                 continue;
+             }
+
+             switch (recordType) {
+                 case Instruction:
+                     transaction = ParsingUtil.lineToTransaction(line);
+                     instructionId = ITransaction.NO_INSTRUCTION_ID;
+                     break;
+                 case Cancel:
+                     transaction = null;
+                     instructionId = ParsingUtil.getInstructionId(line);
+                     break;
+                 default:
+                     transaction = ParsingUtil.recordToTransaction(line);
+                     instructionId = transaction == null ? ITransaction.NO_INSTRUCTION_ID : transaction.getInstructionId();
+                     break;
+             }
+
+             // Skip the instructions which were already ingested
+             if (transaction != null && isDuplicate(recordType, line, instructionId)) {
+                 duplicateCount++;
+                 EngineMetrics.REJECTED_DUPLICATE.increment();
+                 rejectedCount++;
+                 continue;
+             }
+             applyRecord(recordType, transaction, instructionId, inputOffset + lineEnd);
+         }
+
+         // group commit: a single sync for the whole batch of lines
+         if (writeAheadLog != null) {
+             writeAheadLog.sync();
+         }
+
+         EngineMetrics.BATCH_LATENCY.recordSince(start);
+         if (event.shouldCommit()) {
+             event.lines = lineCount;
+             event.characters = input.length();
+             event.accepted = (int) (acceptedCount - acceptedBefore);
+             event.rejected = (int) (rejectedCount - rejectedBefore);
+             event.commit();
+         }
+     }
+
+    /**
+     * Applies a batch of decoded instructions, like the ingest of the matching lines
+     * Note: A batch counts as one position of the input offset, so that its logged records come after the ones already
+     * logged and covered by a checkpoint, and are replayed by {@link #recover(Path, WriteAheadLog, IOutput)}
+     * @param batch the instructions to be applied
+     */
+    @Override
+    public void addBatch(InstructionBatch batch) {
+        if (batch == null) {
+            throw new IllegalArgumentException("batch");
+        }
+
+        lock.writeLock().lock();
+        try {
+            long start = EngineMetrics.BATCH_LATENCY.startTimer();
+            IngestBatchEvent event = new IngestBatchEvent();
+            event.begin();
+            long acceptedBefore = acceptedCount;
+            long rejectedBefore = rejectedCount;
+
+            long batchOffset = inputOffset + 1;
+            for (int i = 0; i < batch.size(); i++) {
+                EngineMetrics.LINES.increment();
+                applyRecord(batch.getType(i), batch.getTransaction(i), batch.getInstructionId(i), batchOffset);
+            }
+            inputOffset = batchOffset;
+
+            if (writeAheadLog != null) {
+                writeAheadLog.sync();
+            }
+
+            EngineMetrics.BATCH_LATENCY.recordSince(start);
+            if (event.shouldCommit()) {
+                event.lines = batch.size();
+                // the records were decoded from the binary protocol, there is no text input
+                event.characters = 0;
+                event.accepted = (int) (acceptedCount - acceptedBefore);
+                event.rejected = (int) (rejectedCount - rejectedBefore);
+                event.commit();
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether a parsed instruction was already ingested
+     * Note: Only the payloads of the plain instructions and of the New records are remembered, the Amend and Cancel
+     * records being applied in any case. A New record seen before is only a duplicate while its instruction is live,
+     * so an instruction sent again after it was cancelled is accepted.
+     * @param recordType the kind of record
+     * @param line the line of the record
+     * @param instructionId the id of the instruction the record refers to
+     * @return true if the record should be dropped; false otherwise
+     */
+     private boolean isDuplicate(ParsingUtil.RecordType recordType, String line, long instructionId) {
+         if (duplicateFilter == null) {
+             return false;
+         }
+
+         switch (recordType) {
+             case Instruction:
+                 return !duplicateFilter.accept(line);
+             case New:
+                 return !duplicateFilter.accept(line) && instructionIndex.contains(instructionId);
+             default:
+                 return false;
+         }
+     }
+
+    /**
+     * Applies a single record to the report
+     * @param recordType the kind of record
+     * @param transaction the transaction created by the record or null if it could not be parsed (always null for a
+     *                    Cancel record)
+     * @param instructionId the id of the instruction the record refers to
+     * @param lineEnd the input offset right after the line of the record
+     */
+     private void applyRecord(ParsingUtil.RecordType recordType, ITransaction transaction, long instructionId,
+                              long lineEnd) {
+         switch (recordType) {
+             case Instruction:
+                 // If we failed to parse that line, just skip it
+                 if (transaction != null) {
+                     acceptTransaction(transaction, lineEnd);
+                 }
+                 else {
+                     rejectMalformed();
+                 }
+                 break;
+             case New:
+                 if (transaction == null) {
+                     rejectMalformed();
+                 }
+                 // the id of a live instruction cannot be reused
+                 else if (instructionIndex.contains(instructionId)) {
+                     rejectAmendment();
+                 }
+                 else {
+                     acceptTransaction(transaction, lineEnd);
+                 }
+                 break;
+             case Amend:
+                 if (transaction == null) {
+                     rejectMalformed();
+                 }
+                 else if (cancelInstruction(instructionId, lineEnd)) {
+                     acceptTransaction(transaction, lineEnd);
+                 }
+                 else {
+                     rejectAmendment();
+                 }
+                 break;
+             case Cancel:
+                 if (!cancelInstruction(instructionId, lineEnd)) {
+                     rejectAmendment();
+                 }
+                 break;
+         }
+     }
+
+    /**
+     * Counts a line which could not be parsed
+     */
+     private void rejectMalformed() {
+        rejectedCount++;
+        EngineMetrics.REJECTED_MALFORMED.increment();
+     }
+
+    /**
+     * Counts a rejected New, Amend or Cancel record
+     */
+     private void rejectAmendment() {
+        rejectedAmendCount++;
+        rejectedCount++;
+        EngineMetrics.REJECTED_AMEND.increment();
+     }
+
+    /**
+     * Accounts for a newly ingested transaction and appends it to the write-ahead log
+     * @param transaction the accepted transaction
+     * @param lineEnd the input offset right after the line of the transaction
+     */
+     private void acceptTransaction(ITransaction transaction, long lineEnd) {
+        addTransaction(transaction);
+        acceptedCount++;
+        EngineMetrics.ACCEPTED.increment();
+
+        if (writeAheadLog != null) {
+            try {
+                writeAheadLog.append(transaction, lineEnd);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+     }
+
+    /**
+     * Cancels a live instruction and appends the cancellation to the write-ahead log
+     * @param instructionId the id of the instruction
+     * @param lineEnd the input offset right after the line cancelling the instruction
+     * @return true if the instruction was cancelled; false if there is no live instruction with that id
+     */
+     private boolean cancelInstruction(long instructionId, long lineEnd) {
+        if (!retractInstruction(instructionId)) {
+            return false;
+        }
+        EngineMetrics.CANCELLED.increment();
+
+        if (writeAheadLog != null) {
+            try {
+                writeAheadLog.appendCancel(instructionId, lineEnd);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+        }
+        return true;
+     }
 
-            entityName = transaction.getEntityName();
+    /**
+     * Accounts for a transaction in the entity totals and in the daily summaries
+     * @param transaction the accepted transaction
+     */
+     private void addTransaction(ITransaction transaction) {
+        String entityName = transaction.getEntityName();
+        long settlementDay = transaction.getActualSettlementDate().toEpochDay();
+        trackSettlementDay(settlementDay);
+        // late transaction for a day which already expired, only its totals are kept
+        boolean expired = settlementDay < retentionHorizon();
 
+        if (heavyHitters != null) {
+            heavyHitters[transaction.getCashflowDirection().ordinal()].add(entityName, transaction.getUsdValue());
+            addToTimeBuckets(transaction, null);
+        }
+        else if (spillingRanking != null) {
+            spill(entityName, transaction.getCashflowDirection(), transaction.getUsdValue());
+            addToTimeBuckets(transaction, null);
+        }
+        else {
             Entity entity;
 
             // Get the entity from the HashMap or create it if nonexistent
@@ -62,17 +1288,143 @@ public class ReportGenerator {
             else {
                 entity = new Entity(entityName);
                 entities.put(entityName, entity);
+                entityList.add(entity);
             }
 
             // link the transaction to the entity
-            entity.addTransaction(transaction);
+            if (expired) {
+                entity.addExpiredTransaction(transaction);
+            }
+            else {
+                entity.addTransaction(transaction);
+            }
+            addToTimeBuckets(transaction, entityBuckets.get(entityName));
+        }
 
+        if (!expired) {
             addToDailySummary(
                 transaction.getActualSettlementDate(),
                 transaction.getCashflowDirection(),
                 transaction.getUsdValue()
-             );
-         }
+            );
+            addToDailyDistribution(transaction);
+        }
+        else if (rollUpExpiredDays) {
+            addToMonthlySummary(YearMonth.from(transaction.getActualSettlementDate()), transaction);
+        }
+
+        // the instructions of expired days cannot be retracted, so they are not indexed
+        if (transaction.getInstructionId() != ITransaction.NO_INSTRUCTION_ID && !expired) {
+            instructionIndex.put(transaction.getInstructionId(), transaction);
+        }
+
+        applyRetention();
+     }
+
+    /**
+     * Updates the range of settlement days seen so far
+     * @param settlementDay the epoch day of a settlement
+     */
+     private void trackSettlementDay(long settlementDay) {
+        watermarkDay = Math.max(watermarkDay, settlementDay);
+        // the days before the horizon already expired, so a late or bogus old date does not bring them back
+        oldestRetainedDay = Math.min(oldestRetainedDay, Math.max(settlementDay, retentionHorizon()));
+     }
+
+    /**
+     * Getter used for obtaining the first settlement day whose details are retained
+     * @return the epoch day of the retention horizon
+     */
+     private long retentionHorizon() {
+        if (retentionDays < 0 || watermarkDay == Long.MIN_VALUE) {
+            return Long.MIN_VALUE;
+        }
+        return watermarkDay - retentionDays + 1;
+     }
+
+    /**
+     * Expires a bounded number of days and entities, so that the retention never pauses ingest
+     */
+     private void applyRetention() {
+        long horizon = retentionHorizon();
+        if (horizon == Long.MIN_VALUE) {
+            return;
+        }
+
+        for (int steps = 0; oldestRetainedDay < horizon && steps < RETENTION_STEPS; steps++) {
+            dailyDistributions.remove(LocalDate.ofEpochDay(oldestRetainedDay));
+            DailySummary expired = dailySummaries.remove(LocalDate.ofEpochDay(oldestRetainedDay));
+            if (expired != null && rollUpExpiredDays) {
+                YearMonth month = YearMonth.from(LocalDate.ofEpochDay(oldestRetainedDay));
+                DailySummary summaryOfMonth = monthlySummaries.get(month);
+                if (summaryOfMonth == null) {
+                    monthlySummaries.put(month, expired);
+                }
+                else {
+                    summaryOfMonth.merge(expired);
+                }
+            }
+            oldestRetainedDay++;
+        }
+
+        // a sweep over all the entities is started each time the horizon moved since the previous one
+        if (sweepCursor >= entityList.size() || sweepHorizon == Long.MIN_VALUE) {
+            if (sweepHorizon >= horizon) {
+                return;
+            }
+            sweepHorizon = horizon;
+            sweepCursor = 0;
+        }
+
+        LocalDate sweepDate = LocalDate.ofEpochDay(sweepHorizon);
+        for (int steps = 0; sweepCursor < entityList.size() && steps < RETENTION_STEPS; steps++) {
+            for (ITransaction evicted : entityList.get(sweepCursor++).evictTransactionsBefore(sweepDate)) {
+                if (evicted.getInstructionId() != ITransaction.NO_INSTRUCTION_ID) {
+                    instructionIndex.remove(evicted.getInstructionId());
+                }
+            }
+        }
+     }
+
+    /**
+     * Retracts the contribution of a live instruction from the entity totals and from the daily summaries
+     * @param instructionId the id of the instruction
+     * @return true if the instruction was retracted; false if there is no live instruction with that id
+     */
+     private boolean retractInstruction(long instructionId) {
+        ITransaction transaction = instructionIndex.remove(instructionId);
+        if (transaction == null) {
+            return false;
+        }
+
+        // the details of expired days are gone, so their instructions cannot be retracted anymore
+        if (transaction.getActualSettlementDate().toEpochDay() < retentionHorizon()) {
+            return false;
+        }
+
+        if (heavyHitters != null) {
+            heavyHitters[transaction.getCashflowDirection().ordinal()].remove(transaction.getEntityName(),
+                    transaction.getUsdValue());
+        }
+        else if (spillingRanking != null) {
+            spill(transaction.getEntityName(), transaction.getCashflowDirection(), -transaction.getUsdValue());
+        }
+        else {
+            entities.get(transaction.getEntityName()).removeTransaction(transaction);
+        }
+
+        LocalDate date = transaction.getActualSettlementDate();
+        timeBuckets.remove(date, transaction.getCashflowDirection(), transaction.getUsdValue());
+        TimeBuckets bucketsOfEntity = entityBuckets.get(transaction.getEntityName());
+        if (bucketsOfEntity != null) {
+            bucketsOfEntity.remove(date, transaction.getCashflowDirection(), transaction.getUsdValue());
+        }
+        DailySummary summaryOfDay = dailySummaries.get(date);
+        summaryOfDay.remove(transaction.getCashflowDirection(), transaction.getUsdValue());
+        if (summaryOfDay.isEmpty()) {
+            dailySummaries.remove(date);
+        }
+        return true;
      }
 
     /**
@@ -80,47 +1432,146 @@ public class ReportGenerator {
      * Note: Prints only for days in which transactions got executed (there is cashflow in either direction)
      */
     public void printDailySummaries() {
-        List<LocalDate> sortedDates = new ArrayList<>(dailySummaries.keySet());
-        Collections.sort(sortedDates, (day1, day2) -> day2.compareTo(day1));
+        long start = EngineMetrics.PRINT_DAILY_LATENCY.startTimer();
+        ReportQueryEvent event = new ReportQueryEvent();
+        event.begin();
+        List<LocalDate> sortedDates;
+
+        lock.readLock().lock();
+        try {
+            sortedDates = new ArrayList<>(dailySummaries.keySet());
+            Collections.sort(sortedDates, (day1, day2) -> day2.compareTo(day1));
 
-        String header = String.format("%-" + String.valueOf(printColumnSize) + "s", "Date") +
-                String.format("%-" + String.valueOf(printColumnSize) + "s", "Incoming") +
-                String.format("%-" + String.valueOf(printColumnSize) + "s", "Outgoing");
+            ReportFormat format = new ReportFormat(printColumnSize);
+            outputDestination.outputString(format.appendColumn("Date").appendColumn("Incoming").appendColumn("Outgoing").toRow());
 
-        outputDestination.outputString(header);
-        for ( LocalDate date : sortedDates) {
-            outputDestination.outputString(String.format("%-" + String.valueOf(printColumnSize) + "s", ParsingUtil.dateFormat.format(date)) +
-                    dailySummaries.get(date).toString());
+            for ( LocalDate date : sortedDates) {
+                DailySummary summaryOfDay = dailySummaries.get(date);
+                outputDestination.outputString(format.appendColumn(date)
+                        .appendColumn(summaryOfDay.incoming)
+                        .appendColumn(summaryOfDay.outgoing)
+                        .toRow());
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        EngineMetrics.PRINT_DAILY_LATENCY.recordSince(start);
+        if (event.shouldCommit()) {
+            event.type = "daily";
+            event.rows = sortedDates.size();
+            if (!sortedDates.isEmpty()) {
+                event.rangeStart = sortedDates.get(sortedDates.size() - 1).toString();
+                event.rangeEnd = sortedDates.get(0).toString();
+            }
+            event.commit();
         }
      }
 
+    /**
+     * Prints the reverse chronologically ordered summary of the months rolled up by the retention policy
+     * Note: Prints only for months which had expired days
+     */
+    public void printMonthlySummaries() {
+        long start = EngineMetrics.PRINT_MONTHLY_LATENCY.startTimer();
+        ReportQueryEvent event = new ReportQueryEvent();
+        event.begin();
+        List<YearMonth> sortedMonths;
+
+        lock.readLock().lock();
+        try {
+            sortedMonths = new ArrayList<>(monthlySummaries.keySet());
+            Collections.sort(sortedMonths, (month1, month2) -> month2.compareTo(month1));
+
+            ReportFormat format = new ReportFormat(printColumnSize);
+            outputDestination.outputString(format.appendColumn("Month").appendColumn("Incoming").appendColumn("Outgoing").toRow());
+
+            for (YearMonth month : sortedMonths) {
+                DailySummary summaryOfMonth = monthlySummaries.get(month);
+                outputDestination.outputString(format.appendColumn(monthFormat.format(month))
+                        .appendColumn(summaryOfMonth.incoming)
+                        .appendColumn(summaryOfMonth.outgoing)
+                        .toRow());
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        EngineMetrics.PRINT_MONTHLY_LATENCY.recordSince(start);
+        if (event.shouldCommit()) {
+            event.type = "monthly";
+            event.rows = sortedMonths.size();
+            if (!sortedMonths.isEmpty()) {
+                event.rangeStart = sortedMonths.get(sortedMonths.size() - 1).toString();
+                event.rangeEnd = sortedMonths.get(0).toString();
+            }
+            event.commit();
+        }
+    }
+
     /**
      * Prints the list of entities and total cashflow in the desired direction
-     * Note: The list is reverse ordered using the magnitude of cashflow
+     * Note: The list is reverse ordered using the magnitude of cashflow, entities with the same cashflow being listed
+     * in the order they first appeared (see {@link RankingSort}). With an approximate ranking only the monitored
+     * entities are listed, with their estimated totals
      * @param direction the direction of the cashflow we are interested in
      */
      public void printRanking(CashflowDirection direction) {
-         List<Entity> sortedEntities = new ArrayList<>(entities.values());
-
-         String header = String.format("%-" + String.valueOf(printColumnSize) + "s", "Entity") +
-                 String.format("%-" + String.valueOf(printColumnSize) + "s", String.valueOf(direction));
-
-         Collections.sort(
-                 sortedEntities,
-                 (entity1, entity2) -> Double.compare(
-                         entity2.getTotalDirectedCashflow(direction),
-                         entity1.getTotalDirectedCashflow(direction))
-         );
-
-         outputDestination.outputString(header);
-         for (Entity entity : sortedEntities) {
-             outputDestination.outputString(
-                     String.format(
-                             "%-" + String.valueOf(printColumnSize) + "s",
-                             entity.getName()) +
-                     String.format(
-                             "%-" + String.valueOf(printColumnSize) + ".2f",
-                             entity.getTotalDirectedCashflow(direction)));
+         long start = EngineMetrics.PRINT_RANKING_LATENCY.startTimer();
+         ReportQueryEvent event = new ReportQueryEvent();
+         event.begin();
+         int rowCount;
+
+         lock.readLock().lock();
+         try {
+             ReportFormat format = new ReportFormat(printColumnSize);
+             outputDestination.outputString(format.appendColumn("Entity").appendColumn(String.valueOf(direction)).toRow());
+
+             if (heavyHitters != null) {
+                 List<RankingEntry> ranking = heavyHitters[direction.ordinal()].getTop(Integer.MAX_VALUE);
+                 for (RankingEntry entry : ranking) {
+                     outputDestination.outputString(format.appendColumn(entry.getEntityName())
+                             .appendColumn(entry.getAmount())
+                             .toRow());
+                 }
+                 rowCount = ranking.size();
+             }
+             else if (spillingRanking != null) {
+                 int[] printed = new int[1];
+                 spillingRanking.forEachRanked(direction, entry -> {
+                     outputDestination.outputString(format.appendColumn(entry.getEntityName())
+                             .appendColumn(entry.getAmount())
+                             .toRow());
+                     printed[0]++;
+                 });
+                 rowCount = printed[0];
+             }
+             else {
+                 // the totals are sorted as primitives, the names being looked up for the printed rows only
+                 double[] amounts = new double[entityList.size()];
+                 for (int i = 0; i < amounts.length; i++) {
+                     amounts[i] = entityList.get(i).getTotalDirectedCashflow(direction);
+                 }
+
+                 for (int index : RankingSort.sortDescending(amounts)) {
+                     outputDestination.outputString(format.appendColumn(entityList.get(index).getName())
+                             .appendColumn(amounts[index])
+                             .toRow());
+                 }
+                 rowCount = amounts.length;
+             }
+         }
+         catch (IOException e) {
+             throw new UncheckedIOException(e);
+         }
+         finally {
+             lock.readLock().unlock();
+         }
+         EngineMetrics.PRINT_RANKING_LATENCY.recordSince(start);
+         if (event.shouldCommit()) {
+             event.type = "ranking " + direction;
+             event.rows = rowCount;
+             event.commit();
          }
      }
 
@@ -141,34 +1592,141 @@ public class ReportGenerator {
             dailySummaries.put(date, summaryOfDay);
         }
 
-        switch (direction) {
-            case Incoming:
-                summaryOfDay.incoming += amount;
-                break;
-            case Outgoing:
-                summaryOfDay.outgoing += amount;
-                break;
+        summaryOfDay.add(direction, amount);
+     }
+
+    /**
+     * Adds the cashflow of a transaction to the summary of its month
+     * @param month the month when the cashflow happened
+     * @param transaction the transaction
+     */
+     private void addToMonthlySummary(YearMonth month, ITransaction transaction) {
+        DailySummary summaryOfMonth = monthlySummaries.get(month);
+
+        if (summaryOfMonth == null) {
+            summaryOfMonth = new DailySummary();
+            monthlySummaries.put(month, summaryOfMonth);
         }
+
+        summaryOfMonth.add(transaction.getCashflowDirection(), transaction.getUsdValue());
      }
 
-    private IOutput outputDestination;
-    private final Map<String, Entity> entities = new HashMap<>();
-    private final Map<LocalDate, DailySummary> dailySummaries= new HashMap<>();
+    /**
+     * Adds the cashflow of a transaction to the time buckets of the report and, if tracked, of its entity
+     * @param transaction the transaction
+     * @param bucketsOfEntity the buckets of the entity or null if they are not tracked
+     */
+     private void addToTimeBuckets(ITransaction transaction, TimeBuckets bucketsOfEntity) {
+        timeBuckets.add(transaction.getActualSettlementDate(), transaction.getCashflowDirection(),
+                transaction.getUsdValue());
+        if (bucketsOfEntity != null) {
+            bucketsOfEntity.add(transaction.getActualSettlementDate(), transaction.getCashflowDirection(),
+                    transaction.getUsdValue());
+        }
+     }
 
-    public static int printColumnSize = 20;
+    /**
+     * Adds a transaction to the distribution of its settlement day
+     * @param transaction the transaction
+     */
+     private void addToDailyDistribution(ITransaction transaction) {
+        DailyDistribution distributionOfDay = dailyDistributions.get(transaction.getActualSettlementDate());
+        if (distributionOfDay == null) {
+            distributionOfDay = new DailyDistribution();
+            dailyDistributions.put(transaction.getActualSettlementDate(), distributionOfDay);
+        }
+        distributionOfDay.add(transaction);
+     }
+
+    /**
+     * Checks that the entities are kept, i.e. that the ranking is exact
+     */
+    private void requireEntities() {
+        if (heavyHitters != null) {
+            throw new IllegalStateException("The entities are not kept by an approximate ranking");
+        }
+        if (spillingRanking != null) {
+            throw new IllegalStateException("The entities are not kept by a spilling ranking");
+        }
+    }
+
+    /**
+     * Checks whether the entities are kept, i.e. whether the ranking is the default exact one
+     * @return true if the entities are kept; false otherwise
+     */
+    private boolean keepsEntities() {
+        return heavyHitters == null && spillingRanking == null;
+    }
+
+    /**
+     * Checks that nothing was ingested and that the ranking is still the default exact one
+     */
+    private void requireRankingModeUnchosen() {
+        if (heavyHitters != null || spillingRanking != null) {
+            throw new IllegalStateException("The ranking mode is already chosen");
+        }
+        if (!entities.isEmpty() || !dailySummaries.isEmpty() || !monthlySummaries.isEmpty()) {
+            throw new IllegalStateException("The ranking mode must be chosen before ingest");
+        }
+    }
 
     /**
-     * Internal class used for storing the total cashflow summary for a single day
+     * Adds a cashflow to the spilling ranking
      */
-    class DailySummary
-    {
-        @Override
-        public String toString() {
-            return String.format("%-" + String.valueOf(printColumnSize) + ".2f", incoming) +
-                    String.format("%-" + String.valueOf(printColumnSize) + ".2f", outgoing);
+    private void spill(String entityName, CashflowDirection direction, double amount) {
+        try {
+            spillingRanking.add(entityName, direction, amount);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
+
+    private static DailySummary copyOf(DailySummary summary) {
+        return new DailySummary(summary.incoming, summary.outgoing, summary.transactionCount);
+    }
 
-        public double incoming = 0;
-        public double outgoing = 0;
+    private static DailySummary copyOrEmpty(DailySummary summary) {
+        return summary == null ? new DailySummary() : copyOf(summary);
     }
+
+    private IOutput outputDestination;
+    // ingest and checkpoints take the write lock, the queries take the read lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Entity> entities = new HashMap<>();
+    private final Map<LocalDate, DailySummary> dailySummaries= new HashMap<>();
+    private final Map<LocalDate, DailyDistribution> dailyDistributions = new HashMap<>();
+    private long inputOffset = 0;
+    private WriteAheadLog writeAheadLog = null;
+    private DuplicateFilter duplicateFilter = null;
+    private InstructionIndex instructionIndex = new InstructionIndex(INITIAL_INSTRUCTIONS);
+    private long rejectedAmendCount = 0;
+    private long acceptedCount = 0;
+    private long rejectedCount = 0;
+    private long duplicateCount = 0;
+
+    // retention of the settlement day details
+    private final Map<YearMonth, DailySummary> monthlySummaries = new HashMap<>();
+    // the week, month and year buckets of every accepted transaction, the days being the daily summaries
+    private final TimeBuckets timeBuckets = new TimeBuckets(EnumSet.of(Resolution.Week, Resolution.Month,
+            Resolution.Year));
+    // the buckets of the entities whose summaries were requested
+    private final Map<String, TimeBuckets> entityBuckets = new HashMap<>();
+    private final List<Entity> entityList = new ArrayList<>();
+    // per direction ordinal, set when the ranking is approximate and the entities are not kept
+    private HeavyHitters[] heavyHitters = null;
+    private SpillingRanking spillingRanking = null;
+    private int retentionDays = -1;
+    private boolean rollUpExpiredDays = false;
+    private long watermarkDay = Long.MIN_VALUE;
+    private long oldestRetainedDay = Long.MAX_VALUE;
+    private long sweepHorizon = Long.MIN_VALUE;
+    private int sweepCursor = 0;
+
+    private static final int RETENTION_STEPS = 8;
+    private static final int INITIAL_INSTRUCTIONS = 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final DateTimeFormatter monthFormat = DateTimeFormatter.ofPattern("MMM yyyy");
+
+    public static int printColumnSize = 20;
 }
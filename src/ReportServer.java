@@ -0,0 +1,386 @@
+import Components.DailySummary;
+import Components.ITransaction.CashflowDirection;
+import Components.RankingEntry;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Server answering queries over a report on the loopback interface, over HTTP
+ *
+ * The requests are handled on virtual threads when the JVM provides them (Java 21 or later), otherwise on a fixed
+ * pool of platform threads. The queries only hold the read lock of the report while copying the aggregates, so
+ * they run concurrently with each other and wait for ingest one batch at a time.
+ *
+ * GET /daily?from=&to=&format=             the daily summaries, newest first
+ * GET /monthly?format=                     the monthly summaries rolled up by the retention policy, newest first
+ * GET /ranking?direction=&from=&to=&top=&format=
+ *                                          the entities ranked by their cashflow in a direction (Incoming/Outgoing)
+ * POST /ingest                             ingests the request body, which must contain whole lines
+ *
+ * The dates are in the ISO format (yyyy-MM-dd) and the format is either json (default) or csv. Bad parameters are
+ * answered with 400 and the queries the report fails to answer with 500. The amounts which are not finite (NaN or
+ * infinite) are written as null in JSON, which has no literal for them.
+ * Note: Call {@link #enableNoDelay()} before starting the first server of the JVM for low latency responses
+ */
+public final class ReportServer implements Closeable {
+    /**
+     * Constructor, starting the HTTP server
+     * @param reportGenerator the report to be queried
+     * @param port the local port or 0 for any free port
+     * @throws IOException if the server could not be started
+     */
+    public ReportServer(ReportGenerator reportGenerator, int port) throws IOException {
+        if (reportGenerator == null) {
+            throw new IllegalArgumentException("reportGenerator");
+        }
+        if (port < 0 || port > 0xFFFF) {
+            throw new IllegalArgumentException("port");
+        }
+
+        this.reportGenerator = reportGenerator;
+        executor = newExecutor();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Disables Nagle's algorithm on the connections of the JDK HTTP servers, unless the JVM was started with an
+     * explicit setting
+     *
+     * The server sends the headers and the body of a response in separate writes, so with Nagle's algorithm enabled
+     * every response waits for the delayed ACK of the client (about 40ms).
+     * Note: This sets the sun.net.httpserver.nodelay system property, which applies to every HttpServer of the JVM
+     * and is read once, when the first one is created, so it must be called before that
+     */
+    public static void enableNoDelay() {
+        if (System.getProperty(NODELAY_PROPERTY) == null) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+    }
+
+    /**
+     * Getter used for obtaining the port the report is served on
+     * @return the local port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Getter used for obtaining whether the requests are handled on virtual threads
+     * @return true if a virtual thread is started per request
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Stops the HTTP server
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            boolean ingest = path.equals("/ingest");
+
+            if (!ingest && !path.equals("/daily") && !path.equals("/monthly") && !path.equals("/ranking")) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (!exchange.getRequestMethod().equals(ingest ? "POST" : "GET")) {
+                exchange.getResponseHeaders().set("Allow", ingest ? "POST" : "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            Map<String, String> parameters;
+            String body;
+            try {
+                parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+                boolean csv = isCsv(parameters);
+
+                switch (path) {
+                    case "/daily":
+                        body = daily(parameters, csv);
+                        break;
+                    case "/monthly":
+                        body = monthly(csv);
+                        break;
+                    case "/ranking":
+                        body = ranking(parameters, csv);
+                        break;
+                    default:
+                        body = ingest(exchange);
+                        csv = false;
+                        break;
+                }
+                exchange.getResponseHeaders().set("Content-Type", csv ? CSV_TYPE : JSON_TYPE);
+            }
+            catch (IllegalArgumentException | DateTimeParseException e) {
+                send(exchange, 400, "text/plain; charset=utf-8", "Bad request: " + e.getMessage() + "\n");
+                return;
+            }
+            // e.g. a query the ranking mode of the report does not support, or a failed read of its spilled runs
+            catch (IllegalStateException | UncheckedIOException e) {
+                send(exchange, 500, "text/plain; charset=utf-8", "Internal error: " + e.getMessage() + "\n");
+                return;
+            }
+
+            send(exchange, 200, null, body);
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private String daily(Map<String, String> parameters, boolean csv) {
+        NavigableMap<LocalDate, DailySummary> days = reportGenerator.getDailySummaries(
+                parseDate(parameters.get("from")),
+                parseDate(parameters.get("to"))
+        );
+
+        StringBuilder body = new StringBuilder(64 + days.size() * 48);
+        body.append(csv ? "date,incoming,outgoing,transactions\n" : "[");
+        boolean first = true;
+
+        for (Map.Entry<LocalDate, DailySummary> day : days.descendingMap().entrySet()) {
+            appendSummary(body, day.getKey().toString(), day.getValue(), csv, first);
+            first = false;
+        }
+        return csv ? body.toString() : body.append("]\n").toString();
+    }
+
+    private String monthly(boolean csv) {
+        NavigableMap<YearMonth, DailySummary> months = reportGenerator.getMonthlySummaries();
+
+        StringBuilder body = new StringBuilder(64 + months.size() * 48);
+        body.append(csv ? "month,incoming,outgoing,transactions\n" : "[");
+        boolean first = true;
+
+        for (Map.Entry<YearMonth, DailySummary> month : months.descendingMap().entrySet()) {
+            appendSummary(body, month.getKey().toString(), month.getValue(), csv, first);
+            first = false;
+        }
+        return csv ? body.toString() : body.append("]\n").toString();
+    }
+
+    private String ranking(Map<String, String> parameters, boolean csv) {
+        String top = parameters.get("top");
+        int limit = top == null ? Integer.MAX_VALUE : Integer.parseInt(top);
+        if (limit < 0) {
+            throw new IllegalArgumentException("top");
+        }
+
+        List<RankingEntry> ranking = reportGenerator.getRanking(
+                parseDirection(parameters.get("direction")),
+                parseDate(parameters.get("from")),
+                parseDate(parameters.get("to")),
+                limit
+        );
+
+        StringBuilder body = new StringBuilder(64 + ranking.size() * 48);
+        body.append(csv ? "entity,amount\n" : "[");
+
+        for (int i = 0; i < ranking.size(); i++) {
+            RankingEntry entry = ranking.get(i);
+            if (csv) {
+                appendCsvText(body, entry.getEntityName());
+                body.append(',').append(entry.getAmount()).append('\n');
+            }
+            else {
+                body.append(i == 0 ? "\n" : ",\n").append("{\"entity\":");
+                appendJsonText(body, entry.getEntityName());
+                body.append(",\"amount\":");
+                appendJsonNumber(body, entry.getAmount());
+                // approximate rankings give the largest overestimation of the amount
+                if (entry.getError() != 0) {
+                    body.append(",\"error\":");
+                    appendJsonNumber(body, entry.getError());
+                }
+                body.append('}');
+            }
+        }
+        return csv ? body.toString() : body.append("]\n").toString();
+    }
+
+    private String ingest(HttpExchange exchange) {
+        try {
+            reportGenerator.ingest(new BufferedReader(
+                    new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return "{\"inputOffset\":" + reportGenerator.getInputOffset() + "}\n";
+    }
+
+    private static void appendSummary(StringBuilder body, String key, DailySummary summary, boolean csv,
+                                      boolean first) {
+        if (csv) {
+            body.append(key).append(',').append(summary.incoming).append(',').append(summary.outgoing)
+                    .append(',').append(summary.transactionCount).append('\n');
+            return;
+        }
+
+        body.append(first ? "\n" : ",\n")
+                .append("{\"date\":\"").append(key)
+                .append("\",\"incoming\":");
+        appendJsonNumber(body, summary.incoming);
+        body.append(",\"outgoing\":");
+        appendJsonNumber(body, summary.outgoing);
+        body.append(",\"transactions\":").append(summary.transactionCount).append('}');
+    }
+
+    private static void appendJsonNumber(StringBuilder body, double value) {
+        if (Double.isFinite(value)) {
+            body.append(value);
+        }
+        else {
+            body.append("null");
+        }
+    }
+
+    private static void appendJsonText(StringBuilder body, String text) {
+        body.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                body.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+                body.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                body.append(c);
+            }
+        }
+        body.append('"');
+    }
+
+    private static void appendCsvText(StringBuilder body, String text) {
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0) {
+            body.append(text);
+            return;
+        }
+        body.append('"').append(text.replace("\"", "\"\"")).append('"');
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (contentType != null) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream response = exchange.getResponseBody()) {
+            response.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException(pair);
+            }
+            parameters.put(
+                    URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8)
+            );
+        }
+        return parameters;
+    }
+
+    private static boolean isCsv(Map<String, String> parameters) {
+        String format = parameters.getOrDefault("format", "json");
+        if (!format.equals("json") && !format.equals("csv")) {
+            throw new IllegalArgumentException("format");
+        }
+        return format.equals("csv");
+    }
+
+    private static LocalDate parseDate(String date) {
+        return date == null || date.isEmpty() ? null : LocalDate.parse(date);
+    }
+
+    private static CashflowDirection parseDirection(String direction) {
+        if (direction == null) {
+            throw new IllegalArgumentException("direction");
+        }
+        for (CashflowDirection value : CashflowDirection.values()) {
+            if (value.name().equalsIgnoreCase(direction)) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("direction");
+    }
+
+    /**
+     * Creates the executor handling the requests: one virtual thread per request if the JVM supports them
+     * Note: The virtual thread executor is looked up reflectively, as the project is built for Java 11
+     */
+    private ExecutorService newExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService virtualExecutor = (ExecutorService) factory.invoke(null);
+            virtualThreads = true;
+            return virtualExecutor;
+        }
+        catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+        }
+    }
+
+    // lets thousands of clients connect at once while the handlers catch up
+    private static final int BACKLOG = 4096;
+    private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+    private static final String JSON_TYPE = "application/json; charset=utf-8";
+    private static final String CSV_TYPE = "text/csv; charset=utf-8";
+
+    private final ReportGenerator reportGenerator;
+    private final ExecutorService executor;
+    private final HttpServer server;
+    private boolean virtualThreads = false;
+}
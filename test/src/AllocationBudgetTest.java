@@ -0,0 +1,134 @@
+import Components.IOutput;
+import Components.ITransaction;
+import Helpers.FeedGenerator;
+import Helpers.ParsingUtil;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Regression tests checking that the hot paths stay within their declared allocation budgets
+ *
+ * The bytes allocated by the test thread are read from the ThreadMXBean before and after running the measured code
+ * several times, once it had the chance to be compiled. The budgets leave room for the objects which are retained
+ * (e.g. a transaction per line, a String per rendered row), but not for temporary arrays and Strings such as the
+ * ones created by String.split or String.format.
+ */
+public class AllocationBudgetTest {
+    // declared budgets, in bytes
+    private static final double PARSED_LINE_BUDGET = 256;
+    private static final double INGESTED_LINE_BUDGET = 448;
+    private static final double REPORT_ROW_BUDGET = 160;
+
+    private static final int LINE_COUNT = 20_000;
+    private static final int ROUNDS = 10;
+    private static final IOutput DISCARDED_OUTPUT = str -> { };
+
+    private static com.sun.management.ThreadMXBean threadBean;
+    private static String input;
+    private static String[] lines;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        }
+
+        FeedGenerator feed = new FeedGenerator(11, LINE_COUNT, 500);
+        feed.setZipfExponent(1);
+        StringWriter writer = new StringWriter();
+        feed.writeTo(writer);
+        input = writer.toString();
+        lines = input.split("\n");
+    }
+
+    /**
+     * Tests the bytes allocated for parsing a line into a transaction
+     */
+    @Test
+    public void lineToTransactionStaysWithinBudget() {
+        double bytesPerLine = measure(() -> {
+            long settled = 0;
+            for (String line : lines) {
+                ITransaction transaction = ParsingUtil.lineToTransaction(line);
+                settled += transaction.getActualSettlementDate().getDayOfMonth();
+            }
+            return settled;
+        }) / LINE_COUNT;
+
+        Assert.assertTrue("Parsing allocated " + bytesPerLine + " bytes per line", bytesPerLine <= PARSED_LINE_BUDGET);
+    }
+
+    /**
+     * Tests the bytes allocated for ingesting a line into a report which already knows its entities and days
+     */
+    @Test
+    public void ingestStaysWithinBudget() {
+        ReportGenerator reportGenerator = new ReportGenerator(input, DISCARDED_OUTPUT);
+
+        double bytesPerLine = measure(() -> {
+            reportGenerator.ingest(input);
+            return reportGenerator.getInputOffset();
+        }) / LINE_COUNT;
+
+        Assert.assertTrue("Ingest allocated " + bytesPerLine + " bytes per line", bytesPerLine <= INGESTED_LINE_BUDGET);
+    }
+
+    /**
+     * Tests the bytes allocated per rendered row of the daily summaries and of the ranking
+     */
+    @Test
+    public void reportsStayWithinBudget() {
+        int[] rows = { 0 };
+        ReportGenerator reportGenerator = new ReportGenerator(input, str -> rows[0]++);
+
+        double bytesPerRow = measure(() -> {
+            reportGenerator.printDailySummaries();
+            reportGenerator.printRanking(ITransaction.CashflowDirection.Incoming);
+            return rows[0];
+        });
+        bytesPerRow /= rows[0] / (double) (ROUNDS + WARMUP_ROUNDS);
+
+        Assert.assertTrue("Rendering allocated " + bytesPerRow + " bytes per row", bytesPerRow <= REPORT_ROW_BUDGET);
+    }
+
+    /**
+     * Runs an operation a few times for warmup, then measures the bytes it allocates
+     * @param operation the measured operation
+     * @return the mean bytes allocated by one run of the operation
+     */
+    private static double measure(Operation operation) {
+        Assume.assumeTrue("The JVM does not measure the allocated bytes",
+                threadBean != null && threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += operation.run();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ROUNDS; i++) {
+            sink += operation.run();
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        Assert.assertNotEquals("The operation should have done some work", 0, sink);
+        return allocated / (double) ROUNDS;
+    }
+
+    private interface Operation {
+        long run();
+    }
+
+    private static final int WARMUP_ROUNDS = 10;
+}
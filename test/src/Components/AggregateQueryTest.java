@@ -0,0 +1,93 @@
+package Components;
+
+import Components.AggregateQuery.Aggregate;
+import Components.AggregateQuery.GroupKey;
+import Components.ITransaction.CashflowDirection;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class AggregateQueryTest {
+    /**
+     * Tests the aggregates of groups keyed by week and direction, over a filtered date range
+     */
+    @Test
+    public void groupsAreAggregated() {
+        List<ITransaction> transactions = new ArrayList<>();
+        // Monday 4th to Sunday 17th of January 2016
+        for (int day = 0; day < 14; day++) {
+            LocalDate date = LocalDate.of(2016, 1, 4).plusDays(day);
+            transactions.add(new SettledTransaction("foo", CashflowDirection.Outgoing, "SGP", day, date));
+            transactions.add(new SettledTransaction("bar", CashflowDirection.Incoming, "AED", 100, date));
+        }
+
+        AggregateQuery query = new AggregateQuery();
+        query.setDateRange(LocalDate.of(2016, 1, 6), null);
+        query.setGroupBy(GroupKey.Week, GroupKey.Direction);
+        List<AggregateRow> rows = query.execute(transactions);
+
+        Assert.assertEquals("Two weeks and two directions were expected", 4, rows.size());
+        AggregateRow first = rows.get(0);
+        Assert.assertEquals("A week should be keyed by its Monday",
+                Arrays.asList(LocalDate.of(2016, 1, 4), CashflowDirection.Incoming), first.getKeys());
+        Assert.assertEquals("The range starts on Wednesday", 5, first.getCount());
+        AggregateRow second = rows.get(1);
+        Assert.assertEquals(CashflowDirection.Outgoing, second.getKey(1));
+        Assert.assertEquals("The sum does not match", 2 + 3 + 4 + 5 + 6, second.getSum(), 0);
+        Assert.assertEquals("The minimum does not match", 2, second.getMin(), 0);
+        Assert.assertEquals("The maximum does not match", 6, second.getMax(), 0);
+        Assert.assertEquals("The average does not match", 4, second.getAverage(), 0);
+        Assert.assertEquals("The second week should come last", LocalDate.of(2016, 1, 11), rows.get(3).getKey(0));
+    }
+
+    /**
+     * Tests that a query grouped by entity and ordered by sum is a ranking
+     */
+    @Test
+    public void orderedQueryRanksTheGroups() {
+        List<ITransaction> transactions = new ArrayList<>();
+        LocalDate date = LocalDate.of(2016, 1, 29);
+        transactions.add(new SettledTransaction("foo", CashflowDirection.Incoming, "SGP", 10, date));
+        transactions.add(new SettledTransaction("bar", CashflowDirection.Incoming, "SGP", 30, date));
+        transactions.add(new SettledTransaction("baz", CashflowDirection.Incoming, "USD", 20, date.plusDays(3)));
+        transactions.add(new SettledTransaction("qux", CashflowDirection.Incoming, "SGP", 30, date));
+        transactions.add(new SettledTransaction("foo", CashflowDirection.Incoming, "SGP", 25, date));
+        transactions.add(new SettledTransaction("bar", CashflowDirection.Outgoing, "SGP", 500, date));
+
+        AggregateQuery query = new AggregateQuery();
+        query.setDirection(CashflowDirection.Incoming);
+        query.setGroupBy(GroupKey.Entity);
+        query.setOrderBy(Aggregate.Sum);
+        query.setLimit(3);
+        List<AggregateRow> rows = query.execute(transactions);
+        Assert.assertEquals("The ties should be ordered by name", Arrays.asList("foo", "bar", "qux"),
+                Arrays.asList(rows.get(0).getKey(0), rows.get(1).getKey(0), rows.get(2).getKey(0)));
+        Assert.assertEquals(35, rows.get(0).getSum(), 0);
+
+        query.setCurrencies(Arrays.asList("SGP"));
+        query.setEntities(Arrays.asList("bar", "baz"));
+        query.setGroupBy(GroupKey.Month, GroupKey.Currency);
+        query.setOrderBy(null);
+        rows = query.execute(transactions);
+        Assert.assertEquals("Only bar has incoming SGP transactions", 1, rows.size());
+        Assert.assertEquals(Arrays.asList(YearMonth.of(2016, 1), "SGP"), rows.get(0).getKeys());
+        Assert.assertEquals(30, rows.get(0).getSum(), 0);
+    }
+
+    /**
+     * Tests that a key cannot be grouped by twice
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateGroupKeyIsRejected() {
+        new AggregateQuery().setGroupBy(GroupKey.Date, GroupKey.Date);
+    }
+}
@@ -5,6 +5,8 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.time.LocalDate;
+
 /**
  * @author Alexandru Dochioiu
  * Date : 21/10/17
@@ -212,4 +214,52 @@ public class EntityTest {
                 1e-6
         );
     }
+
+    /**
+     * Tests that removing a transaction retracts its cashflow
+     * Tests that a transaction which was never added cannot be removed
+     */
+    @Test
+    public void removeTransactionRetractsCashflow() {
+        entity = new Entity(entityName);
+        FakeTransaction kept = new FakeTransaction(10, ITransaction.CashflowDirection.Incoming);
+        FakeTransaction removed = new FakeTransaction(2.5, ITransaction.CashflowDirection.Incoming);
+
+        entity.addTransaction(kept);
+        entity.addTransaction(removed);
+
+        Assert.assertTrue("The transaction should have been removed", entity.removeTransaction(removed));
+        Assert.assertFalse("The transaction was already removed", entity.removeTransaction(removed));
+        Assert.assertEquals(
+                "The removed cashflow was not retracted",
+                10,
+                entity.getTotalDirectedCashflow(ITransaction.CashflowDirection.Incoming),
+                1e-6
+        );
+        Assert.assertEquals("Only one transaction should be left", 1, entity.getTransactions().size());
+    }
+
+    /**
+     * Tests that the cashflow of a range only counts the transactions settled within the range (inclusive)
+     * Tests that the bounds are optional
+     */
+    @Test
+    public void getDirectedCashflowCountsOnlyTheRange() {
+        entity = new Entity(entityName);
+        entity.addTransaction(new FakeTransaction(1, ITransaction.CashflowDirection.Incoming, LocalDate.of(2016, 1, 4)));
+        entity.addTransaction(new FakeTransaction(2, ITransaction.CashflowDirection.Incoming, LocalDate.of(2016, 1, 5)));
+        entity.addTransaction(new FakeTransaction(4, ITransaction.CashflowDirection.Incoming, LocalDate.of(2016, 1, 6)));
+        entity.addTransaction(new FakeTransaction(8, ITransaction.CashflowDirection.Outgoing, LocalDate.of(2016, 1, 5)));
+
+        Assert.assertEquals("The range should be inclusive", 6, entity.getDirectedCashflow(
+                ITransaction.CashflowDirection.Incoming, LocalDate.of(2016, 1, 5), LocalDate.of(2016, 1, 6)), 1e-6);
+        Assert.assertEquals("The lower bound should be optional", 3, entity.getDirectedCashflow(
+                ITransaction.CashflowDirection.Incoming, null, LocalDate.of(2016, 1, 5)), 1e-6);
+        Assert.assertEquals("Both bounds should be optional", 7, entity.getDirectedCashflow(
+                ITransaction.CashflowDirection.Incoming, null, null), 1e-6);
+        Assert.assertEquals("Only the outgoing cashflow should be counted", 8, entity.getDirectedCashflow(
+                ITransaction.CashflowDirection.Outgoing, LocalDate.of(2016, 1, 5), null), 1e-6);
+        Assert.assertEquals("An empty range should have no cashflow", 0, entity.getDirectedCashflow(
+                ITransaction.CashflowDirection.Incoming, LocalDate.of(2016, 1, 6), LocalDate.of(2016, 1, 5)), 1e-6);
+    }
 }
@@ -0,0 +1,44 @@
+package Components;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class SettlementCalendarTest {
+    /**
+     * Tests that AED and SAR use the Sunday to Thursday calendar, regardless of the case
+     */
+    @Test
+    public void forCurrencyGivesCalendarOfCurrency() {
+        Assert.assertSame("AED", SettlementCalendar.SUNDAY_TO_THURSDAY, SettlementCalendar.forCurrency("AED"));
+        Assert.assertSame("sar", SettlementCalendar.SUNDAY_TO_THURSDAY, SettlementCalendar.forCurrency("sar"));
+        Assert.assertSame("SGP", SettlementCalendar.MONDAY_TO_FRIDAY, SettlementCalendar.forCurrency("SGP"));
+    }
+
+    /**
+     * Tests that the cached settlement dates stay correct over colliding cache slots
+     */
+    @Test
+    public void cachedSettlementDatesStayCorrect() {
+        LocalDate first = LocalDate.of(2016, 1, 1);
+
+        for (int pass = 0; pass < 2; pass++) {
+            for (int day = 0; day < 3 * 4096; day += 7 * pass + 1) {
+                LocalDate desired = first.plusDays(day);
+                LocalDate settlement = SettlementCalendar.SUNDAY_TO_THURSDAY.settlementDate(desired);
+                DayOfWeek dayOfWeek = settlement.getDayOfWeek();
+
+                Assert.assertTrue("The settlement date should be on a workday",
+                        dayOfWeek != DayOfWeek.FRIDAY && dayOfWeek != DayOfWeek.SATURDAY);
+                Assert.assertTrue("The settlement date should be the first workday on or after the desired one",
+                        !settlement.isBefore(desired) && settlement.toEpochDay() - desired.toEpochDay() <= 2);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package Components;
+
+import Components.ITransaction.CashflowDirection;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class SettlementSeriesTest {
+    /**
+     * Tests the range sums against a scan of the transactions, while days are appended, inserted, retracted and
+     * evicted
+     */
+    @Test
+    public void rangeSumsMatchAScan() {
+        SplittableRandom random = new SplittableRandom(3);
+        SettlementSeries series = new SettlementSeries();
+        List<SettledTransaction> transactions = new ArrayList<>();
+        LocalDate start = LocalDate.of(2016, 1, 1);
+
+        for (int step = 0; step < 3_000; step++) {
+            int operation = random.nextInt(10);
+            if (operation < 6 || transactions.isEmpty()) {
+                // mostly increasing days, sometimes late ones
+                int day = step / 5 - (operation == 0 ? random.nextInt(100) : 0);
+                SettledTransaction transaction = new SettledTransaction("foo",
+                        random.nextBoolean() ? CashflowDirection.Incoming : CashflowDirection.Outgoing, "USD",
+                        random.nextInt(1_000) / 4.0, start.plusDays(day));
+                series.add(transaction.getActualSettlementDate(), transaction.getCashflowDirection(),
+                        transaction.getUsdValue());
+                transactions.add(transaction);
+            }
+            else if (operation < 9) {
+                SettledTransaction transaction = transactions.remove(random.nextInt(transactions.size()));
+                Assert.assertTrue("The transaction should be retracted", series.remove(
+                        transaction.getActualSettlementDate(), transaction.getCashflowDirection(),
+                        transaction.getUsdValue()));
+            }
+            else {
+                LocalDate horizon = start.plusDays(step / 5 - 150);
+                series.removeBefore(horizon);
+                transactions.removeIf(transaction -> transaction.getActualSettlementDate().isBefore(horizon));
+            }
+
+            if (step % 50 == 0) {
+                LocalDate from = start.plusDays(random.nextInt(700) - 50);
+                LocalDate to = from.plusDays(random.nextInt(60));
+                assertSameCashflow(transactions, series, from, to);
+                assertSameCashflow(transactions, series, null, to);
+                assertSameCashflow(transactions, series, from, null);
+            }
+        }
+        assertSameCashflow(transactions, series, null, null);
+        Assert.assertEquals("Only the active days should be held",
+                transactions.stream().map(SettledTransaction::getActualSettlementDate).distinct().count(),
+                series.getDayCount());
+    }
+
+    /**
+     * Tests that a day whose transactions were all retracted has exactly no cashflow
+     */
+    @Test
+    public void retractedDaysHaveNoCashflow() {
+        SettlementSeries series = new SettlementSeries();
+        LocalDate day = LocalDate.of(2016, 1, 4);
+        series.add(day.minusDays(1), CashflowDirection.Incoming, 1e9);
+        series.add(day, CashflowDirection.Incoming, 0.1);
+        series.add(day, CashflowDirection.Incoming, 0.2);
+        series.add(day.plusDays(1), CashflowDirection.Incoming, 0.3);
+        series.remove(day, CashflowDirection.Incoming, 0.1);
+        series.remove(day, CashflowDirection.Incoming, 0.2);
+
+        Assert.assertEquals("No cashflow was expected", 0, series.getCashflow(CashflowDirection.Incoming, day, day), 0);
+        Assert.assertEquals("The day should be dropped", 2, series.getDayCount());
+        Assert.assertEquals("The range should not be affected by the preceding days",
+                0.3, series.getCashflow(CashflowDirection.Incoming, day, null), 0);
+        Assert.assertFalse("Nothing is left to retract", series.remove(day, CashflowDirection.Incoming, 0.1));
+    }
+
+    /**
+     * Tests that merged series add up their common days
+     */
+    @Test
+    public void mergedSeriesAddUp() {
+        SettlementSeries series = new SettlementSeries();
+        SettlementSeries other = new SettlementSeries();
+        LocalDate day = LocalDate.of(2016, 1, 4);
+        for (int i = 0; i < 10; i += 2) {
+            series.add(day.plusDays(i), CashflowDirection.Incoming, 1);
+            other.add(day.plusDays(2 * i), CashflowDirection.Outgoing, 10);
+        }
+
+        series.merge(other);
+        Assert.assertEquals("The common and distinct days should be kept", 7, series.getDayCount());
+        Assert.assertEquals(5, series.getCashflow(CashflowDirection.Incoming, null, null), 0);
+        Assert.assertEquals(50, series.getCashflow(CashflowDirection.Outgoing, null, null), 0);
+        Assert.assertEquals(1 + 10, series.getCashflow(CashflowDirection.Incoming, day, day) +
+                series.getCashflow(CashflowDirection.Outgoing, day, day), 0);
+        series.add(day.plusDays(20), CashflowDirection.Outgoing, 5);
+        Assert.assertEquals(55, series.getCashflow(CashflowDirection.Outgoing, day, day.plusDays(20)), 0);
+    }
+
+    private static void assertSameCashflow(List<SettledTransaction> transactions, SettlementSeries series,
+                                           LocalDate from, LocalDate to) {
+        for (CashflowDirection direction : CashflowDirection.values()) {
+            double expected = 0;
+            for (SettledTransaction transaction : transactions) {
+                LocalDate date = transaction.getActualSettlementDate();
+                if (transaction.getCashflowDirection() == direction && (from == null || !date.isBefore(from)) &&
+                        (to == null || !date.isAfter(to))) {
+                    expected += transaction.getUsdValue();
+                }
+            }
+            Assert.assertEquals("The cashflow of the range does not match",
+                    expected, series.getCashflow(direction, from, to), 1e-6);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package Components;
+
+import Components.ITransaction.CashflowDirection;
+import Components.TimeBuckets.Resolution;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.NavigableMap;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class TimeBucketsTest {
+    /**
+     * Tests that a cashflow is added to the day, ISO week, month and year holding its settlement day
+     */
+    @Test
+    public void cashflowIsBucketed() {
+        TimeBuckets buckets = new TimeBuckets(EnumSet.allOf(Resolution.class));
+        // Friday 1st of January 2016 belongs to the week starting on Monday 28th of December 2015
+        buckets.add(LocalDate.of(2016, 1, 1), CashflowDirection.Incoming, 10);
+        buckets.add(LocalDate.of(2015, 12, 31), CashflowDirection.Outgoing, 5);
+        buckets.add(LocalDate.of(2016, 1, 4), CashflowDirection.Incoming, 20);
+        buckets.add(LocalDate.of(2016, 3, 31), CashflowDirection.Incoming, 40);
+
+        DailySummary week = buckets.get(Resolution.Week, LocalDate.of(2016, 1, 3));
+        Assert.assertEquals("The week does not match", 10, week.incoming, 0);
+        Assert.assertEquals("The week does not match", 5, week.outgoing, 0);
+        Assert.assertEquals("The week does not match", 2, week.transactionCount);
+        Assert.assertEquals("January does not match",
+                30, buckets.get(Resolution.Month, LocalDate.of(2016, 1, 9)).incoming, 0);
+        Assert.assertEquals("2016 does not match",
+                70, buckets.get(Resolution.Year, LocalDate.of(2016, 6, 1)).incoming, 0);
+        Assert.assertEquals("2015 does not match",
+                5, buckets.get(Resolution.Year, LocalDate.of(2015, 1, 1)).outgoing, 0);
+        Assert.assertNull("February has no cashflow", buckets.get(Resolution.Month, LocalDate.of(2016, 2, 1)));
+
+        NavigableMap<LocalDate, DailySummary> weeks =
+                buckets.getRange(Resolution.Week, LocalDate.of(2016, 1, 1), null);
+        Assert.assertEquals("The weeks should be keyed by their Monday",
+                "[2015-12-28, 2016-01-04, 2016-03-28]", weeks.keySet().toString());
+        NavigableMap<LocalDate, DailySummary> months =
+                buckets.getRange(Resolution.Month, null, LocalDate.of(2016, 2, 1));
+        Assert.assertEquals("[2015-12-01, 2016-01-01]", months.keySet().toString());
+    }
+
+    /**
+     * Tests that a retracted cashflow leaves no empty bucket behind
+     */
+    @Test
+    public void retractedCashflowIsRemoved() {
+        TimeBuckets buckets = new TimeBuckets(EnumSet.of(Resolution.Week, Resolution.Year));
+        buckets.add(LocalDate.of(2016, 1, 4), CashflowDirection.Incoming, 20);
+        buckets.add(LocalDate.of(2016, 1, 12), CashflowDirection.Incoming, 30);
+        buckets.remove(LocalDate.of(2016, 1, 4), CashflowDirection.Incoming, 20);
+
+        Assert.assertNull("The week should be empty", buckets.get(Resolution.Week, LocalDate.of(2016, 1, 4)));
+        Assert.assertEquals("[2016-01-11]", buckets.getRange(Resolution.Week, null, null).keySet().toString());
+        Assert.assertEquals(30, buckets.get(Resolution.Year, LocalDate.of(2016, 1, 4)).incoming, 0);
+    }
+
+    /**
+     * Tests that a month summary only updates the months and the years
+     */
+    @Test
+    public void mergedMonthSkipsTheFinerBuckets() {
+        TimeBuckets buckets = new TimeBuckets(EnumSet.allOf(Resolution.class));
+        buckets.merge(Resolution.Month, LocalDate.of(2016, 2, 1), new DailySummary(10, 20, 3));
+
+        Assert.assertNull(buckets.get(Resolution.Day, LocalDate.of(2016, 2, 1)));
+        Assert.assertNull(buckets.get(Resolution.Week, LocalDate.of(2016, 2, 1)));
+        Assert.assertEquals(3, buckets.get(Resolution.Month, LocalDate.of(2016, 2, 29)).transactionCount);
+        Assert.assertEquals(20, buckets.get(Resolution.Year, LocalDate.of(2016, 12, 31)).outgoing, 0);
+    }
+
+    /**
+     * Tests that a resolution which is not maintained cannot be read
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void missingResolutionIsRejected() {
+        new TimeBuckets(EnumSet.of(Resolution.Month)).get(Resolution.Week, LocalDate.of(2016, 1, 1));
+    }
+}
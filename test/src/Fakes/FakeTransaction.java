@@ -14,6 +14,11 @@ public class FakeTransaction implements ITransaction {
         this.direction = direction;
     }
 
+    public FakeTransaction(double usdValue, CashflowDirection direction, LocalDate actualSettlementDate) {
+        this(usdValue, direction);
+        this.actualSettlementDate = actualSettlementDate;
+    }
+
     public String getEntityName() {
         throw new UnsupportedOperationException();
     }
@@ -26,10 +31,19 @@ public class FakeTransaction implements ITransaction {
         return direction;
     }
 
-    public LocalDate getActualSettlementDate() {
+    public String getCurrency() {
         throw new UnsupportedOperationException();
     }
 
+    public LocalDate getActualSettlementDate() {
+        return actualSettlementDate;
+    }
+
+    public long getInstructionId() {
+        return NO_INSTRUCTION_ID;
+    }
+
     private double usdValue;
     private CashflowDirection direction;
+    private LocalDate actualSettlementDate = LocalDate.of(2016, 1, 4);
 }
@@ -0,0 +1,73 @@
+package Helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class AmountKernelTest {
+    /**
+     * Tests that the kernel selected for the runtime gives the results of the scalar kernel, over ranges which are not
+     * aligned to the vector length and with both directions in any order
+     */
+    @Test
+    public void selectedKernelMatchesTheScalarOne() {
+        int rowCount = 1_000;
+        int amountColumn = 8;
+        int directionColumn = amountColumn + 8 * rowCount;
+        ByteBuffer columns = ByteBuffer.allocate(directionColumn + rowCount);
+        SplittableRandom random = new SplittableRandom(7);
+        for (int row = 0; row < rowCount; row++) {
+            columns.putLong(amountColumn + 8 * row, random.nextLong(-1_000_000_000L, 1_000_000_000L));
+            // runs of a direction, then alternating rows
+            columns.put(directionColumn + row, (byte) (row < 500 ? (row / 37) & 1 : random.nextInt(2)));
+        }
+
+        AmountKernel kernel = AmountKernel.getInstance();
+        int[][] ranges = {{0, rowCount}, {0, 0}, {3, 4}, {5, 12}, {1, 999}, {17, 530}, {640, 641}, {0, 37}};
+        for (int[] range : ranges) {
+            long[][] expected = aggregate(AmountKernel.scalar(), columns, amountColumn, directionColumn, range);
+            long[][] actual = aggregate(kernel, columns, amountColumn, directionColumn, range);
+            for (int i = 0; i < expected.length; i++) {
+                Assert.assertArrayEquals("Wrong aggregates of " + Arrays.toString(range) + " by " + kernel.getName(),
+                        expected[i], actual[i]);
+            }
+        }
+    }
+
+    /**
+     * Tests the aggregates of the scalar kernel, including a direction without rows
+     */
+    @Test
+    public void scalarKernelAggregatesByDirection() {
+        ByteBuffer columns = ByteBuffer.allocate(4 * 9);
+        long[] amounts = {5, -3, 12, 7};
+        byte[] directions = {1, 1, 1, 0};
+        for (int row = 0; row < amounts.length; row++) {
+            columns.putLong(8 * row, amounts[row]);
+            columns.put(32 + row, directions[row]);
+        }
+
+        long[][] aggregates = aggregate(AmountKernel.scalar(), columns, 0, 32, new int[]{0, 3});
+        Assert.assertArrayEquals("Wrong counts", new long[]{0, 3}, aggregates[0]);
+        Assert.assertArrayEquals("Wrong sums", new long[]{0, 14}, aggregates[1]);
+        Assert.assertArrayEquals("Wrong minimums", new long[]{Long.MAX_VALUE, -3}, aggregates[2]);
+        Assert.assertArrayEquals("Wrong maximums", new long[]{Long.MIN_VALUE, 12}, aggregates[3]);
+    }
+
+    private static long[][] aggregate(AmountKernel kernel, ByteBuffer columns, int amountColumn, int directionColumn,
+                                      int[] range) {
+        long[][] aggregates = new long[4][2];
+        Arrays.fill(aggregates[2], Long.MAX_VALUE);
+        Arrays.fill(aggregates[3], Long.MIN_VALUE);
+        kernel.aggregate(columns, amountColumn, directionColumn, range[0], range[1],
+                aggregates[0], aggregates[1], aggregates[2], aggregates[3]);
+        return aggregates;
+    }
+}
@@ -0,0 +1,128 @@
+package Helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class DuplicateFilterTest {
+    /**
+     * Tests that a repeated instruction is rejected and counted
+     */
+    @Test
+    public void repeatedInstructionIsRejected() {
+        DuplicateFilter filter = new DuplicateFilter(100, 0.01);
+        String line = "foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25";
+
+        Assert.assertTrue("The first occurrence should be accepted", filter.accept(line));
+        Assert.assertFalse("The second occurrence should be rejected", filter.accept(line));
+        Assert.assertEquals("One duplicate was expected to be counted", 1, filter.getDuplicateCount());
+        Assert.assertEquals("One distinct instruction was expected", 1, filter.getDistinctCount());
+    }
+
+    /**
+     * Tests that instructions differing only by formatting are considered duplicates
+     */
+    @Test
+    public void normalizedInstructionsAreConsideredDuplicates() {
+        DuplicateFilter filter = new DuplicateFilter(100, 0.01);
+
+        Assert.assertTrue(filter.accept("foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25"));
+        Assert.assertFalse(
+                "Whitespace around numbers and trailing decimal zeros should not make an instruction distinct",
+                filter.accept("foo,B,0.5,SGP,01 Jan 2016,02 Jan 2016, 200,100.250")
+        );
+        Assert.assertTrue(
+                "Entities differing by letter case should be distinct",
+                filter.accept("FOO,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25")
+        );
+        Assert.assertTrue(
+                "Currencies differing by letter case should be distinct",
+                filter.accept("foo,B,0.50,sgp,01 Jan 2016,02 Jan 2016,200,100.25")
+        );
+        Assert.assertTrue(
+                "Integer values should not lose their trailing zeros",
+                filter.accept("foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,20,100.25")
+        );
+    }
+
+    /**
+     * Tests that distinct instructions are never rejected, even well past the expected number of instructions
+     */
+    @Test
+    public void distinctInstructionsAreAccepted() {
+        DuplicateFilter filter = new DuplicateFilter(1000, 0.01);
+
+        for (int i = 0; i < 100000; i++) {
+            Assert.assertTrue(
+                    "A distinct instruction was rejected",
+                    filter.accept("entity" + i + ",S,0.22,AED,05 Jan 2016,07 Jan 2016," + (i + 1) + ",150.5")
+            );
+        }
+        Assert.assertEquals("No duplicates were expected", 0, filter.getDuplicateCount());
+    }
+
+    /**
+     * Tests that only the repeats of the instructions within the window of recent instructions are dropped, by
+     * comparing the filter with a window of the last accepted keys
+     */
+    @Test
+    public void repeatsWithinTheWindowAreDropped() {
+        int window = 100;
+        DuplicateFilter filter = new DuplicateFilter(window, 0.01, Long::parseLong);
+        Deque<Long> recent = new ArrayDeque<>();
+        Random random = new Random(11);
+
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(300);
+            boolean expected = !recent.contains(key);
+            Assert.assertEquals("Wrong decision for " + key + " at " + i,
+                    expected, filter.accept(String.valueOf(key)));
+            if (expected) {
+                recent.addLast(key);
+                if (recent.size() > window) {
+                    recent.removeFirst();
+                }
+            }
+        }
+        Assert.assertEquals("Wrong number of duplicates",
+                100_000 - filter.getDistinctCount(), filter.getDuplicateCount());
+    }
+
+    /**
+     * Tests that an instruction seen before the window of recent instructions is accepted again
+     */
+    @Test
+    public void repeatBeforeTheWindowIsAccepted() {
+        DuplicateFilter filter = new DuplicateFilter(10, 0.01);
+        String line = "foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25";
+
+        Assert.assertTrue(filter.accept(line));
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(filter.accept("entity" + i + ",S,0.22,AED,05 Jan 2016,07 Jan 2016,1,150.5"));
+        }
+        Assert.assertTrue("A repeat older than the window should be accepted", filter.accept(line));
+        Assert.assertFalse("A recent repeat should be dropped", filter.accept(line));
+    }
+
+    /**
+     * Tests that a custom key function is used for detecting the duplicates
+     */
+    @Test
+    public void customKeyIsUsed() {
+        // key on the entity only
+        DuplicateFilter filter = new DuplicateFilter(100, 0.01, line -> line.substring(0, line.indexOf(',')).hashCode());
+
+        Assert.assertTrue(filter.accept("foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25"));
+        Assert.assertFalse(
+                "Instructions with the same custom key should be considered duplicates",
+                filter.accept("foo,S,0.22,AED,05 Jan 2016,07 Jan 2016,450,150.5")
+        );
+    }
+}
@@ -0,0 +1,104 @@
+package Helpers;
+
+import Components.ITransaction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.time.DayOfWeek;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class FeedGeneratorTest {
+    /**
+     * Tests that the same seed produces the same feed, whether it is written or read
+     */
+    @Test
+    public void sameSeedProducesSameFeed() throws IOException {
+        String written = write(feed(7, 50_000));
+
+        StringBuilder read = new StringBuilder();
+        try (Reader reader = feed(7, 50_000).openReader()) {
+            char[] buffer = new char[1000];
+            int length;
+            while ((length = reader.read(buffer, 0, buffer.length)) >= 0) {
+                read.append(buffer, 0, length);
+            }
+        }
+
+        Assert.assertEquals("The read feed does not match the written one", written, read.toString());
+        Assert.assertNotEquals("A different seed should produce a different feed", written, write(feed(8, 50_000)));
+    }
+
+    /**
+     * Tests that the generated lines parse, except for the injected malformed ones
+     */
+    @Test
+    public void generatedLinesParseExceptMalformedOnes() throws IOException {
+        String[] lines = write(feed(1, 20_000)).split("\n");
+        int malformed = 0;
+
+        for (String line : lines) {
+            ITransaction transaction = ParsingUtil.lineToTransaction(line);
+            if (transaction == null) {
+                malformed++;
+                continue;
+            }
+
+            DayOfWeek day = transaction.getActualSettlementDate().getDayOfWeek();
+            if (transaction.getCurrency().equals("AED") || transaction.getCurrency().equals("SAR")) {
+                Assert.assertTrue("AED and SAR should not settle on Friday or Saturday",
+                        day != DayOfWeek.FRIDAY && day != DayOfWeek.SATURDAY);
+            }
+            else {
+                Assert.assertTrue("Other currencies should not settle on weekends",
+                        day != DayOfWeek.SATURDAY && day != DayOfWeek.SUNDAY);
+            }
+        }
+
+        Assert.assertEquals("The number of lines does not match the expected value", 20_000, lines.length);
+        Assert.assertEquals("The malformed ratio does not match the configured one", 0.1, malformed / 20_000.0, 0.01);
+    }
+
+    /**
+     * Tests that a Zipf exponent makes the lowest ranked entities the most popular
+     */
+    @Test
+    public void zipfExponentSkewsEntityPopularity() throws IOException {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String line : write(feed(3, 100_000)).split("\n")) {
+            counts.merge(line.substring(0, line.indexOf(',') < 0 ? line.length() : line.indexOf(',')), 1, Integer::sum);
+        }
+
+        // with an exponent of 1, entity1 is expected twice as often as entity2 and ten times as often as entity10
+        Assert.assertEquals("entity1 / entity2", 2.0, counts.get("entity1") / (double) counts.get("entity2"), 0.2);
+        Assert.assertEquals("entity1 / entity10", 10.0, counts.get("entity1") / (double) counts.get("entity10"), 1.5);
+    }
+
+    /**
+     * Tests that an invalid malformed ratio is rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void setMalformedRatioThrowsForInvalidRatio() {
+        new FeedGenerator(0, 10, 10).setMalformedRatio(1.5);
+    }
+
+    private static FeedGenerator feed(long seed, long lineCount) {
+        FeedGenerator generator = new FeedGenerator(seed, lineCount, 1000);
+        generator.setZipfExponent(1);
+        generator.setMalformedRatio(0.1);
+        return generator;
+    }
+
+    private static String write(FeedGenerator generator) throws IOException {
+        StringWriter writer = new StringWriter();
+        generator.writeTo(writer);
+        return writer.toString();
+    }
+}
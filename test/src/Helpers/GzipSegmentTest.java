@@ -0,0 +1,170 @@
+package Helpers;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class GzipSegmentTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that the segments start at member headers
+     */
+    @Test
+    public void splitStartsAtMemberHeaders() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("feed.csv.gz");
+        List<Long> memberStarts = writeMembers(file, feed(80_000), 50_000, false);
+
+        List<GzipSegment> segments = GzipSegment.split(file, 4);
+
+        Assert.assertTrue("The file should be split", segments.size() > 1);
+        Assert.assertEquals("The first segment should start the file", 0, segments.get(0).getStart());
+        for (GzipSegment segment : segments) {
+            Assert.assertTrue("A segment does not start at a member", memberStarts.contains(segment.getStart()));
+        }
+    }
+
+    /**
+     * Tests that following the segments from the start of the file gives every line exactly once, even when some
+     * segments start at headers which are part of the compressed data
+     */
+    @Test
+    public void decodedSegmentsCoverEveryLine() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("feed.csv.gz");
+        writeMembers(file, feed(60_000), 50_000, true);
+
+        List<GzipSegment> segments = GzipSegment.split(file, 8);
+        long nextStart = 0;
+        long lineCount = 0;
+        int skippedSegments = 0;
+        ByteArrayOutputStream splitLine = new ByteArrayOutputStream();
+        for (GzipSegment segment : segments) {
+            if (segment.getStart() < nextStart) {
+                skippedSegments++;
+                continue;
+            }
+            Assert.assertEquals("The segments should follow each other", nextStart, segment.getStart());
+
+            segment.decode();
+            splitLine.writeBytes(segment.getHead());
+            if (segment.getTail() != null) {
+                // the empty lines are not counted
+                if (splitLine.size() > 1) {
+                    lineCount++;
+                }
+                splitLine.reset();
+                splitLine.writeBytes(segment.getTail());
+            }
+            lineCount += segment.getAggregation().getLineCount();
+            nextStart = segment.getEnd();
+        }
+
+        byte[] content;
+        try (InputStream input = new GZIPInputStream(Files.newInputStream(file))) {
+            content = input.readAllBytes();
+        }
+        Assert.assertEquals("The whole file should be decoded", Files.size(file), nextStart);
+        Assert.assertEquals("The last line should be complete", 0, splitLine.size());
+        Assert.assertEquals("Every line should be decoded once", countLines(content), lineCount);
+        Assert.assertTrue("Some segments should start at a false header", skippedSegments > 0);
+    }
+
+    /**
+     * Tests that a corrupted member is detected
+     */
+    @Test(expected = ZipException.class)
+    public void corruptedMemberIsRejected() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("feed.csv.gz");
+        writeMembers(file, feed(1_000), 10_000, false);
+        byte[] bytes = Files.readAllBytes(file);
+        // a byte in the middle of the compressed data
+        bytes[bytes.length / 2] ^= 0x55;
+        Files.write(file, bytes);
+
+        for (GzipSegment segment : GzipSegment.split(file, 1)) {
+            segment.decode();
+        }
+    }
+
+    private static byte[] feed(int lineCount) throws IOException {
+        FeedGenerator feed = new FeedGenerator(3, lineCount, 40);
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+        try (Reader input = feed.openReader()) {
+            while ((read = input.read(buffer)) >= 0) {
+                text.append(buffer, 0, read);
+            }
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long countLines(byte[] content) {
+        long count = 0;
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] == '\n' && i > 0 && content[i - 1] != '\n') {
+                count++;
+            }
+        }
+        return content.length > 0 && content[content.length - 1] != '\n' ? count + 1 : count;
+    }
+
+    /**
+     * Writes the content as consecutive gzip members, cut at arbitrary bytes
+     * @param stored whether every other member is stored without compression, after a line holding gzip header bytes
+     * @return the offsets where the members start
+     */
+    private static List<Long> writeMembers(Path file, byte[] content, int memberSize, boolean stored) throws IOException {
+        List<Long> starts = new ArrayList<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int from = 0, member = 0; from < content.length; from += memberSize, member++) {
+            starts.add((long) bytes.size());
+            boolean storedMember = stored && member % 2 == 1;
+            try (OutputStream out = storedMember ? new StoredOutputStream(bytes) : new GZIPOutputStream(bytes)) {
+                if (storedMember) {
+                    out.write(FALSE_HEADER_LINE);
+                }
+                out.write(content, from, Math.min(memberSize, content.length - from));
+                if (storedMember) {
+                    out.write(FALSE_HEADER_LINE);
+                }
+            }
+        }
+        Files.write(file, bytes.toByteArray());
+        return starts;
+    }
+
+    /**
+     * Gzip member without compression, so that its data shows up as is in the file
+     */
+    private static final class StoredOutputStream extends GZIPOutputStream {
+        StoredOutputStream(OutputStream out) throws IOException {
+            super(out);
+            def.setLevel(Deflater.NO_COMPRESSION);
+        }
+    }
+
+    // a malformed line looking like a member header
+    private static final byte[] FALSE_HEADER_LINE = {'\n', 0x1F, (byte) 0x8B, 8, 0, 0, 0, 0, 0, 0, (byte) 0xFF, '\n'};
+}
@@ -0,0 +1,103 @@
+package Helpers;
+
+import Components.RankingEntry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class HeavyHittersTest {
+    /**
+     * Tests that the totals are exact while every key is monitored
+     */
+    @Test
+    public void totalsAreExactWithinCapacity() {
+        HeavyHitters heavyHitters = new HeavyHitters(4);
+        heavyHitters.add("a", 10);
+        heavyHitters.add("b", 30);
+        heavyHitters.add("a", 25);
+        heavyHitters.add("c", 5);
+        Assert.assertTrue("A monitored key should be retracted", heavyHitters.remove("b", 10));
+        Assert.assertFalse("An unknown key should not be retracted", heavyHitters.remove("d", 1));
+
+        List<RankingEntry> top = heavyHitters.getTop(2);
+        Assert.assertEquals("Wrong number of entries", 2, top.size());
+        Assert.assertEquals("a", top.get(0).getEntityName());
+        Assert.assertEquals(35, top.get(0).getAmount(), 1e-9);
+        Assert.assertEquals("b", top.get(1).getEntityName());
+        Assert.assertEquals(20, top.get(1).getAmount(), 1e-9);
+        Assert.assertEquals("The totals should be exact", 0, top.get(1).getError(), 0);
+        Assert.assertEquals("No key was evicted", 0, heavyHitters.getErrorBound(), 0);
+    }
+
+    /**
+     * Tests that a small key monitored after a large one does not make the large one the first to be evicted
+     */
+    @Test
+    public void smallKeyAfterLargeOneIsEvictedFirst() {
+        HeavyHitters heavyHitters = new HeavyHitters(2);
+        heavyHitters.add("a", 10);
+        heavyHitters.add("b", 1);
+        heavyHitters.add("c", 1);
+
+        List<RankingEntry> top = heavyHitters.getTop(2);
+        Assert.assertEquals("The large key should stay monitored", "a", top.get(0).getEntityName());
+        Assert.assertEquals(10, top.get(0).getAmount(), 0);
+        Assert.assertEquals("The small key should be taken over", "c", top.get(1).getEntityName());
+        Assert.assertEquals(2, top.get(1).getAmount(), 0);
+        Assert.assertEquals("Wrong error", 1, top.get(1).getError(), 0);
+        Assert.assertEquals("Wrong error bound", 1, heavyHitters.getErrorBound(), 0);
+    }
+
+    /**
+     * Tests the guarantees of the summary on a skewed stream with more keys than counters: the actual total of a
+     * listed key is within its error, every key above (total amount / capacity) is listed and the keys which are not
+     * listed are below the error bound
+     */
+    @Test
+    public void estimatesAreBoundedOnASkewedStream() {
+        int capacity = 64;
+        HeavyHitters heavyHitters = new HeavyHitters(capacity);
+        Map<String, Double> exact = new HashMap<>();
+        SplittableRandom random = new SplittableRandom(3);
+        for (int i = 0; i < 100_000; i++) {
+            // 10 keys with 2.5% of the stream each, above the 1/64 guaranteed to be listed, among many small ones
+            String key = "k" + (random.nextInt(4) == 0 ? random.nextInt(10) : 10 + random.nextInt(5_000));
+            double amount = 1 + random.nextInt(1_000);
+            heavyHitters.add(key, amount);
+            exact.merge(key, amount, Double::sum);
+        }
+
+        List<RankingEntry> top = heavyHitters.getTop(Integer.MAX_VALUE);
+        Assert.assertEquals("Every counter should be used", capacity, top.size());
+        Map<String, Double> listed = new HashMap<>();
+        for (RankingEntry entry : top) {
+            double actual = exact.get(entry.getEntityName());
+            Assert.assertTrue("The total of " + entry + " is underestimated", entry.getAmount() >= actual - 1e-6);
+            Assert.assertTrue("The error of " + entry + " is too small",
+                    entry.getAmount() - entry.getError() <= actual + 1e-6);
+            listed.put(entry.getEntityName(), entry.getAmount());
+        }
+
+        double threshold = heavyHitters.getTotalAmount() / capacity;
+        for (Map.Entry<String, Double> key : exact.entrySet()) {
+            if (key.getValue() > threshold) {
+                Assert.assertTrue("The heavy key " + key.getKey() + " is missing", listed.containsKey(key.getKey()));
+            }
+            if (!listed.containsKey(key.getKey())) {
+                Assert.assertTrue("The total of " + key.getKey() + " exceeds the error bound",
+                        key.getValue() <= heavyHitters.getErrorBound() + 1e-6);
+            }
+        }
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue("The large key k" + i + " is missing", listed.containsKey("k" + i));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package Helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class HyperLogLogTest {
+    /**
+     * Tests that the estimates are within a few standard errors, for small and large counts, and that duplicates are
+     * not counted
+     */
+    @Test
+    public void estimatesAreAccurate() {
+        HyperLogLog small = new HyperLogLog();
+        for (int i = 0; i < 3; i++) {
+            for (int entity = 0; entity < 100; entity++) {
+                small.add("entity" + entity);
+            }
+        }
+        Assert.assertEquals("Wrong small count", 100, small.estimate(), 2);
+
+        HyperLogLog large = new HyperLogLog();
+        for (int entity = 0; entity < 500_000; entity++) {
+            large.add("account" + entity);
+        }
+        Assert.assertEquals("Wrong large count", 500_000, large.estimate(), 3 * large.getRelativeError() * 500_000);
+    }
+
+    /**
+     * Tests that merging sketches counts the union of their values
+     */
+    @Test
+    public void mergeCountsTheUnion() {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        for (int entity = 0; entity < 60_000; entity++) {
+            first.add("account" + entity);
+        }
+        for (int entity = 40_000; entity < 100_000; entity++) {
+            second.add("account" + entity);
+        }
+
+        first.merge(second);
+        Assert.assertEquals("Wrong union count", 100_000, first.estimate(), 3 * first.getRelativeError() * 100_000);
+        Assert.assertEquals("The other sketch should not be modified",
+                60_000, second.estimate(), 3 * second.getRelativeError() * 60_000);
+    }
+}
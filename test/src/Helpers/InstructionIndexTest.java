@@ -0,0 +1,129 @@
+package Helpers;
+
+import Components.ITransaction;
+import Components.ITransaction.CashflowDirection;
+import Components.SettledTransaction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class InstructionIndexTest {
+    /**
+     * Tests that an indexed transaction can be found and removed
+     */
+    @Test
+    public void indexedTransactionCanBeFoundAndRemoved() {
+        InstructionIndex index = new InstructionIndex(0);
+        ITransaction transaction = transaction(7);
+
+        Assert.assertNull("No previous transaction was expected", index.put(7, transaction));
+        Assert.assertSame("The indexed transaction was not found", transaction, index.get(7));
+        Assert.assertSame("The removed transaction is not the indexed one", transaction, index.remove(7));
+        Assert.assertNull("The transaction should no longer be indexed", index.get(7));
+        Assert.assertEquals("The index should be empty", 0, index.size());
+    }
+
+    /**
+     * Tests that a negative instruction id cannot be indexed
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void putThrowsForNegativeInstructionId() {
+        new InstructionIndex(16).put(-1, transaction(-1));
+    }
+
+    /**
+     * Tests that the index behaves like a map over a long sequence of random operations, including growth and
+     * the deletion of colliding entries
+     */
+    @Test
+    public void randomOperationsMatchReferenceMap() {
+        InstructionIndex index = new InstructionIndex(16);
+        Map<Long, ITransaction> reference = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200000; i++) {
+            long id = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                Assert.assertSame("Removed the wrong transaction", reference.remove(id), index.remove(id));
+            }
+            else {
+                ITransaction transaction = transaction(id);
+                Assert.assertSame("Replaced the wrong transaction", reference.put(id, transaction), index.put(id, transaction));
+            }
+        }
+
+        Assert.assertEquals("The index size does not match the reference one", reference.size(), index.size());
+        for (long id = 0; id < 5000; id++) {
+            Assert.assertSame("The index does not match the reference for id " + id, reference.get(id), index.get(id));
+        }
+    }
+
+    /**
+     * Tests that a compact index returns the entity, value, direction and settlement date of the indexed
+     * transactions over a long sequence of random operations, including dates before the epoch
+     */
+    @Test
+    public void compactIndexKeepsWhatARetractionNeeds() {
+        InstructionIndex index = new InstructionIndex(16, true);
+        Map<Long, ITransaction> reference = new HashMap<>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 100000; i++) {
+            long id = random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                assertSameCashflow(reference.remove(id), index.remove(id));
+            }
+            else {
+                ITransaction transaction = new SettledTransaction(
+                        "entity" + random.nextInt(100),
+                        CashflowDirection.values()[random.nextInt(2)],
+                        "SGP",
+                        random.nextDouble() * 1e6,
+                        LocalDate.of(1900 + random.nextInt(200), 1 + random.nextInt(12), 1 + random.nextInt(28)),
+                        id
+                );
+                assertSameCashflow(reference.put(id, transaction), index.put(id, transaction));
+            }
+        }
+
+        Assert.assertEquals("The index size does not match the reference one", reference.size(), index.size());
+        for (long id = 0; id < 3000; id++) {
+            Assert.assertEquals("The index does not match the reference for id " + id,
+                    reference.containsKey(id), index.contains(id));
+            assertSameCashflow(reference.get(id), index.get(id));
+        }
+    }
+
+    private static void assertSameCashflow(ITransaction expected, ITransaction actual) {
+        if (expected == null) {
+            Assert.assertNull("No transaction was expected", actual);
+            return;
+        }
+        Assert.assertNotNull("A transaction was expected", actual);
+        Assert.assertEquals("Wrong entity", expected.getEntityName(), actual.getEntityName());
+        Assert.assertEquals("Wrong direction", expected.getCashflowDirection(), actual.getCashflowDirection());
+        Assert.assertEquals("Wrong value", expected.getUsdValue(), actual.getUsdValue(), 0);
+        Assert.assertEquals("Wrong settlement date", expected.getActualSettlementDate(),
+                actual.getActualSettlementDate());
+        Assert.assertEquals("Wrong instruction id", expected.getInstructionId(), actual.getInstructionId());
+    }
+
+    private static ITransaction transaction(long instructionId) {
+        return new SettledTransaction(
+                "foo",
+                CashflowDirection.Incoming,
+                "SGP",
+                1,
+                LocalDate.of(2016, 1, 4),
+                instructionId
+        );
+    }
+}
@@ -93,6 +93,103 @@ public class ParsingUtilTest {
         );
     }
 
+    /**
+     * Tests that the kind of record is recognised from the number of fields and the record marker
+     */
+    @Test
+    public void getRecordTypeRecognisesRecords() {
+        Assert.assertEquals(
+                ParsingUtil.RecordType.Instruction,
+                ParsingUtil.getRecordType("foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25")
+        );
+        Assert.assertEquals(
+                "An entity named like a record marker should still be a plain instruction",
+                ParsingUtil.RecordType.Instruction,
+                ParsingUtil.getRecordType("A,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25")
+        );
+        Assert.assertEquals(
+                ParsingUtil.RecordType.New,
+                ParsingUtil.getRecordType("N,12,foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25")
+        );
+        Assert.assertEquals(
+                ParsingUtil.RecordType.Amend,
+                ParsingUtil.getRecordType("A,12,foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25")
+        );
+        Assert.assertEquals(ParsingUtil.RecordType.Cancel, ParsingUtil.getRecordType("C,12"));
+        Assert.assertNull("No record type was expected", ParsingUtil.getRecordType("unexpected input"));
+    }
+
+    /**
+     * Tests that trailing empty fields, which the original split(",") parsing ignored, do not change the kind of
+     * record
+     */
+    @Test
+    public void getRecordTypeIgnoresTrailingEmptyFields() {
+        String line = "foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25,,";
+        Assert.assertEquals(
+                "A plain instruction with trailing empty fields should still be recognised",
+                ParsingUtil.RecordType.Instruction,
+                ParsingUtil.getRecordType(line)
+        );
+        Assert.assertNotNull("The instruction should still be parsed", ParsingUtil.lineToTransaction(line));
+        Assert.assertEquals(
+                ParsingUtil.RecordType.New,
+                ParsingUtil.getRecordType("N,12,foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25,")
+        );
+        Assert.assertEquals(ParsingUtil.RecordType.Cancel, ParsingUtil.getRecordType("C,12,,"));
+        Assert.assertNull(
+                "A missing field followed by an empty one should not be recognised",
+                ParsingUtil.getRecordType("foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,")
+        );
+    }
+
+    /**
+     * Tests that the transaction of a record carries the instruction id
+     */
+    @Test
+    public void recordToTransactionParsesInstructionId() {
+        ITransaction transaction = ParsingUtil.recordToTransaction(
+                "N,12,foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25");
+
+        Assert.assertEquals("The instruction id is not the expected one", 12, transaction.getInstructionId());
+        Assert.assertEquals("The entity name is not the expected one", "foo", transaction.getEntityName());
+
+        Assert.assertNull(
+                "No transaction is created for a malformed instruction id",
+                ParsingUtil.recordToTransaction("N,x,foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25")
+        );
+        Assert.assertEquals(
+                "A negative instruction id should not be accepted",
+                ITransaction.NO_INSTRUCTION_ID,
+                ParsingUtil.getInstructionId("C,-5")
+        );
+    }
+
+    /**
+     * Tests that the values outside of the plain format are parsed like by Double.parseDouble and LocalDate.parse
+     */
+    @Test
+    public void lineToTransactionParsesUnusualValuesLikeTheJdk() {
+        ITransaction transaction = lineToTransaction("foo,S,1e-1,SGP,01 Jan 2016,31 Feb 2016,10,+2.50,,");
+
+        Assert.assertNotNull("The line should have been parsed", transaction);
+        Assert.assertEquals(
+                "The USD value is not the expected one",
+                Double.parseDouble("+2.50") * Integer.parseInt("10") * Double.parseDouble("1e-1"),
+                transaction.getUsdValue(),
+                0
+        );
+        Assert.assertEquals(
+                "A day past the end of the month should be moved to the last day of the month",
+                LocalDate.of(2016, 2, 29),
+                transaction.getActualSettlementDate()
+        );
+        Assert.assertNull("A lower case month should not be parsed",
+                lineToTransaction("foo,S,0.1,SGP,01 Jan 2016,02 jan 2016,10,2.5"));
+        Assert.assertNull("A day out of range should not be parsed",
+                lineToTransaction("foo,S,0.1,SGP,01 Jan 2016,32 Jan 2016,10,2.5"));
+    }
+
     /**
      * Tests that a null input causes the method to throw
      */
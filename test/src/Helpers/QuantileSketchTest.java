@@ -0,0 +1,88 @@
+package Helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class QuantileSketchTest {
+    /**
+     * Tests that the estimated quantiles of a long stream have the requested rank, in bounded memory
+     */
+    @Test
+    public void quantilesHaveTheRequestedRank() {
+        QuantileSketch sketch = new QuantileSketch();
+        double[] values = new double[200_000];
+        Random random = new Random(5);
+        for (int i = 0; i < values.length; i++) {
+            // a skewed distribution, like trade sizes
+            values[i] = Math.exp(random.nextGaussian() * 2);
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        double[] quantiles = {0.01, 0.25, 0.5, 0.9, 0.99};
+        double[] estimates = sketch.getQuantiles(quantiles);
+        for (int q = 0; q < quantiles.length; q++) {
+            Assert.assertEquals("Wrong rank of the quantile " + quantiles[q],
+                    quantiles[q], rankOf(values, estimates[q]), 0.01);
+        }
+        Assert.assertEquals("Wrong minimum", values[0], sketch.getQuantile(0), 0);
+        Assert.assertEquals("Wrong maximum", values[values.length - 1], sketch.getQuantile(1), 0);
+        Assert.assertEquals("Wrong count", values.length, sketch.getCount());
+        Assert.assertTrue("Too many values retained: " + sketch.getRetainedCount(), sketch.getRetainedCount() < 1_000);
+    }
+
+    /**
+     * Tests that merging the sketches of the parts of a stream estimates the quantiles of the whole stream, including
+     * parts of very different lengths
+     */
+    @Test
+    public void mergedSketchesEstimateTheWholeStream() {
+        QuantileSketch merged = new QuantileSketch();
+        double[] values = new double[100_000];
+        int[] partLengths = {10, 60_000, 3, 39_987};
+        SplittableRandom random = new SplittableRandom(9);
+        int next = 0;
+        for (int partLength : partLengths) {
+            QuantileSketch part = new QuantileSketch();
+            for (int i = 0; i < partLength; i++) {
+                values[next] = random.nextDouble() * 1_000;
+                part.add(values[next++]);
+            }
+            merged.merge(part);
+            Assert.assertEquals("The part should not be modified", partLength, part.getCount());
+        }
+        Arrays.sort(values);
+
+        Assert.assertEquals("Wrong count", values.length, merged.getCount());
+        Assert.assertEquals("Wrong rank of the median", 0.5, rankOf(values, merged.getQuantile(0.5)), 0.01);
+        Assert.assertEquals("Wrong rank of the p99", 0.99, rankOf(values, merged.getQuantile(0.99)), 0.01);
+    }
+
+    /**
+     * Tests that the quantiles of a short stream are exact, and that an empty sketch has none
+     */
+    @Test
+    public void shortStreamsAreExact() {
+        QuantileSketch sketch = new QuantileSketch();
+        Assert.assertTrue("An empty sketch has no quantile", Double.isNaN(sketch.getQuantile(0.5)));
+
+        for (int value = 100; value >= 1; value--) {
+            sketch.add(value);
+        }
+        Assert.assertArrayEquals("Wrong quantiles", new double[]{1, 10, 50, 99, 100},
+                sketch.getQuantiles(0, 0.1, 0.5, 0.99, 1), 0);
+    }
+
+    private static double rankOf(double[] sorted, double value) {
+        int index = Arrays.binarySearch(sorted, value);
+        return (index < 0 ? -index - 1 : index) / (double) sorted.length;
+    }
+}
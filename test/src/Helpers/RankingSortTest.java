@@ -0,0 +1,87 @@
+package Helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class RankingSortTest {
+    /**
+     * Tests that the order is the one of a stable sort by descending amount, including ties, amounts differing only
+     * in their last bits, negative amounts, signed zeros and infinities
+     */
+    @Test
+    public void orderMatchesAStableDescendingSort() {
+        Random random = new Random(5);
+        double[] amounts = new double[200_000];
+        for (int i = 0; i < amounts.length; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    amounts[i] = random.nextInt(1_000);
+                    break;
+                case 1:
+                    amounts[i] = 1e6 + random.nextInt(4) * Math.ulp(1e6);
+                    break;
+                case 2:
+                    amounts[i] = -random.nextDouble() * 1e9;
+                    break;
+                default:
+                    amounts[i] = random.nextDouble() * 1e9;
+            }
+        }
+        amounts[10] = -0.0;
+        amounts[11] = 0.0;
+        amounts[12] = Double.POSITIVE_INFINITY;
+        amounts[13] = Double.NEGATIVE_INFINITY;
+        double[] copy = amounts.clone();
+
+        Integer[] expected = new Integer[amounts.length];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = i;
+        }
+        Arrays.sort(expected, (index1, index2) -> Double.compare(amounts[index2] + 0.0, amounts[index1] + 0.0));
+
+        int[] order = RankingSort.sortDescending(amounts);
+        Assert.assertArrayEquals("The amounts should not be modified", copy, amounts, 0);
+        Assert.assertEquals("Wrong number of indexes", expected.length, order.length);
+        for (int i = 0; i < order.length; i++) {
+            Assert.assertEquals("Wrong index at " + i, (int) expected[i], order[i]);
+        }
+    }
+
+    /**
+     * Tests that the radix sort orders signed longs, whether they differ in their high or in their low bytes only
+     */
+    @Test
+    public void radixSortOrdersSignedLongs() {
+        Random random = new Random(3);
+        for (long mask : new long[] {-1L, 0xFFFFFL, 0xFFL}) {
+            long[] keys = new long[50_000];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = random.nextLong() & mask;
+            }
+            long[] expected = keys.clone();
+            Arrays.sort(expected);
+
+            RankingSort.radixSort(keys, 0);
+            Assert.assertArrayEquals("Wrong order for the mask " + Long.toHexString(mask), expected, keys);
+        }
+    }
+
+    /**
+     * Tests the orders of no amount and of a single amount
+     */
+    @Test
+    public void smallInputsAreSorted() {
+        Assert.assertEquals("Wrong order of no amount", 0, RankingSort.sortDescending(new double[0]).length);
+        Assert.assertArrayEquals("Wrong order of one amount",
+                new int[] {0}, RankingSort.sortDescending(new double[] {3}));
+        Assert.assertArrayEquals("Wrong order of two amounts",
+                new int[] {1, 0}, RankingSort.sortDescending(new double[] {-1, 2}));
+    }
+}
@@ -0,0 +1,50 @@
+package Helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class ReportFormatTest {
+    /**
+     * Tests that the amounts are formatted like by String.format, including the half up rounding of the shortest
+     * decimal representation and the amounts written in scientific notation by Double.toString
+     */
+    @Test
+    public void amountsMatchStringFormat() {
+        ReportFormat format = new ReportFormat(20);
+        double[] amounts = { 0, -0.0, 0.005, 0.125, 1.005, 2.675, 9.995, 14899.5, 12345678.125, 9.9999e-4, 1e15, 1e300 };
+        for (double amount : amounts) {
+            Assert.assertEquals("Formatting " + amount,
+                    String.format("%-20.2f", amount), format.appendColumn(amount).toRow());
+        }
+
+        Random random = new Random(3);
+        for (int i = 0; i < 100_000; i++) {
+            double amount = random.nextDouble() * Math.pow(10, random.nextInt(20) - 5) * (random.nextBoolean() ? 1 : -1);
+            Assert.assertEquals("Formatting " + amount,
+                    String.format("%-20.2f", amount), format.appendColumn(amount).toRow());
+        }
+    }
+
+    /**
+     * Tests that the text and date columns are padded like by String.format
+     */
+    @Test
+    public void columnsArePaddedToTheirWidth() {
+        ReportFormat format = new ReportFormat(12);
+        LocalDate date = LocalDate.of(2016, 1, 4);
+
+        Assert.assertEquals(
+                "The row does not match the expected one",
+                String.format("%-12s%-12s%-12s", "Date", ParsingUtil.dateFormat.format(date), "longer than a column"),
+                format.appendColumn("Date").appendColumn(date).appendColumn("longer than a column").toRow()
+        );
+        Assert.assertEquals("A new row should start empty", "a           ", format.appendColumn("a").toRow());
+    }
+}
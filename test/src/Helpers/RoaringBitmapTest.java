@@ -0,0 +1,101 @@
+package Helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class RoaringBitmapTest {
+    /**
+     * Tests that the set holds the added values, in increasing order, across sparse and dense chunks
+     */
+    @Test
+    public void valuesAreKept() {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        BitSet expected = new BitSet();
+        SplittableRandom random = new SplittableRandom(1);
+
+        // a sparse chunk, a dense chunk and a chunk becoming dense while values are added out of order
+        for (int i = 0; i < 100; i++) {
+            add(bitmap, expected, random.nextInt(1 << 16));
+        }
+        for (int i = 0; i < 30_000; i++) {
+            add(bitmap, expected, (1 << 16) + random.nextInt(1 << 16));
+        }
+        for (int i = 0; i < 5_000; i++) {
+            add(bitmap, expected, (5 << 16) + random.nextInt(8_000));
+        }
+        bitmap.addRange(1_000_000, 1_200_000);
+        expected.set(1_000_000, 1_200_000);
+        bitmap.addRange(2_000_000, 2_000_010);
+        expected.set(2_000_000, 2_000_010);
+
+        assertSameSet(expected, bitmap);
+        Assert.assertFalse("An absent value was found", bitmap.contains(3 << 16));
+        Assert.assertFalse("A negative value was found", bitmap.contains(-1));
+        Assert.assertTrue("A dense chunk should take less than 2 bytes per value",
+                bitmap.getSizeInBytes() < 2L * expected.cardinality());
+    }
+
+    /**
+     * Tests the intersection and the union of sets with any mix of container types
+     */
+    @Test
+    public void andOrMatchBitSets() {
+        SplittableRandom random = new SplittableRandom(2);
+        RoaringBitmap first = new RoaringBitmap();
+        RoaringBitmap second = new RoaringBitmap();
+        BitSet expectedFirst = new BitSet();
+        BitSet expectedSecond = new BitSet();
+
+        // for each chunk, a density of either side: sparse, dense or absent
+        int[] densities = {0, 100, 20_000};
+        int chunk = 0;
+        for (int firstDensity : densities) {
+            for (int secondDensity : densities) {
+                for (int i = 0; i < firstDensity; i++) {
+                    add(first, expectedFirst, (chunk << 16) + random.nextInt(1 << 16));
+                }
+                for (int i = 0; i < secondDensity; i++) {
+                    add(second, expectedSecond, (chunk << 16) + random.nextInt(1 << 16));
+                }
+                chunk++;
+            }
+        }
+        // a large intersection of two dense chunks stays a bitmap
+        first.addRange(chunk << 16, (chunk << 16) + 50_000);
+        expectedFirst.set(chunk << 16, (chunk << 16) + 50_000);
+        second.addRange((chunk << 16) + 10_000, (chunk + 1) << 16);
+        expectedSecond.set((chunk << 16) + 10_000, (chunk + 1) << 16);
+
+        BitSet expectedAnd = (BitSet) expectedFirst.clone();
+        expectedAnd.and(expectedSecond);
+        BitSet expectedOr = (BitSet) expectedFirst.clone();
+        expectedOr.or(expectedSecond);
+
+        assertSameSet(expectedAnd, RoaringBitmap.and(first, second));
+        assertSameSet(expectedOr, RoaringBitmap.or(first, second));
+        assertSameSet(expectedFirst, first);
+        assertSameSet(expectedSecond, second);
+    }
+
+    private static void add(RoaringBitmap bitmap, BitSet expected, int value) {
+        bitmap.add(value);
+        expected.set(value);
+    }
+
+    private static void assertSameSet(BitSet expected, RoaringBitmap actual) {
+        Assert.assertEquals("The cardinality does not match", expected.cardinality(), actual.getCardinality());
+        Assert.assertArrayEquals("The values do not match", expected.stream().toArray(), actual.toArray());
+        for (int value = expected.nextSetBit(0); value >= 0; value = expected.nextSetBit(value + 1)) {
+            if (!actual.contains(value)) {
+                Assert.fail("The value " + value + " was not found");
+            }
+        }
+    }
+}
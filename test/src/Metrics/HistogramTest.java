@@ -0,0 +1,66 @@
+package Metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class HistogramTest {
+    /**
+     * Tests that every value falls in a bucket whose upper bound is within 12.5% of it
+     */
+    @Test
+    public void bucketsBoundValuesWithinPrecision() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            long upperBound = Histogram.upperBound(Histogram.bucketOf(value));
+
+            Assert.assertTrue("The bucket should contain the value " + value, upperBound >= value);
+            Assert.assertTrue("The bucket of " + value + " is too wide", upperBound - value <= value / 8);
+        }
+        Assert.assertEquals("The largest value should fall in the last bucket",
+                Long.MAX_VALUE, Histogram.upperBound(Histogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    /**
+     * Tests that the percentiles, mean and maximum match the recorded values
+     */
+    @Test
+    public void snapshotGivesPercentilesOfRecordedValues() {
+        Histogram histogram = new MetricsRegistry().histogram("latency");
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals("The count does not match the expected value", 1000, snapshot.getCount());
+        Assert.assertEquals("The mean does not match the expected value", 500.5, snapshot.getMean(), 1e-9);
+        Assert.assertEquals("The maximum does not match the expected value", 1000, snapshot.getMax());
+        Assert.assertEquals("The median does not match the expected value", 500, snapshot.getPercentile(0.5), 500 / 8);
+        Assert.assertEquals("The p99 does not match the expected value", 990, snapshot.getPercentile(0.99), 990 / 8);
+        Assert.assertEquals("The p100 should be the maximum", 1000, snapshot.getPercentile(1));
+    }
+
+    /**
+     * Tests that nothing is recorded while the registry is disabled
+     */
+    @Test
+    public void disabledRegistryRecordsNothing() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Histogram histogram = registry.histogram("latency");
+        Counter counter = registry.counter("events");
+
+        registry.setEnabled(false);
+        histogram.recordSince(histogram.startTimer());
+        histogram.record(5);
+        counter.increment();
+
+        Assert.assertEquals("No value should be recorded", 0, histogram.snapshot().getCount());
+        Assert.assertEquals("No event should be counted", 0, counter.get());
+    }
+}
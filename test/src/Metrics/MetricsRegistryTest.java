@@ -0,0 +1,87 @@
+package Metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class MetricsRegistryTest {
+    /**
+     * Tests that a name always gives the same metric, and cannot be reused for another kind of metric
+     */
+    @Test
+    public void sameNameGivesSameMetric() {
+        MetricsRegistry registry = new MetricsRegistry();
+
+        Assert.assertSame("The registered counter was expected", registry.counter("events"), registry.counter("events"));
+        try {
+            registry.histogram("events");
+            Assert.fail("A counter name should not be reusable for a histogram");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests that the text exporter writes every metric, with the counter rates from the second export on
+     */
+    @Test
+    public void textExporterWritesEveryMetric() throws InterruptedException {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("ingest.lines").add(3);
+        registry.gauge("report.entities", () -> 7);
+        registry.histogram("parse.latency").record(100);
+
+        List<String> lines = new ArrayList<>();
+        TextExporter exporter = new TextExporter(lines::add);
+        exporter.export(registry);
+
+        Assert.assertTrue("The counter was not exported", lines.contains("ingest.lines 3"));
+        Assert.assertTrue("The gauge was not exported", lines.contains("report.entities 7"));
+        Assert.assertTrue("The histogram count was not exported", lines.contains("parse.latency.count 1"));
+        Assert.assertTrue("The histogram maximum was not exported", lines.contains("parse.latency.max 100"));
+
+        lines.clear();
+        Thread.sleep(10);
+        exporter.export(registry);
+        Assert.assertTrue("The counter rate was not exported", lines.contains("ingest.lines.rate 0"));
+    }
+
+    /**
+     * Tests that the metrics are served over HTTP
+     */
+    @Test
+    public void httpExporterServesMetrics() throws IOException {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("ingest.lines").add(42);
+
+        try (HttpExporter exporter = new HttpExporter(registry, 0)) {
+            HttpURLConnection connection = (HttpURLConnection)
+                    new URL("http://127.0.0.1:" + exporter.getPort() + "/metrics").openConnection();
+
+            Assert.assertEquals("The request should succeed", 200, connection.getResponseCode());
+            try (InputStream body = connection.getInputStream()) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                int read;
+                while ((read = body.read(buffer)) >= 0) {
+                    bytes.write(buffer, 0, read);
+                }
+                Assert.assertEquals("The served metrics do not match the expected ones",
+                        "ingest.lines 42\n", new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package Network;
+
+import Components.ITransaction;
+import Components.ITransaction.CashflowDirection;
+import Components.ITransactionSink;
+import Components.InstructionBatch;
+import Helpers.ParsingUtil.RecordType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class IngestServerTest {
+    private CollectingSink sink;
+    private IngestServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        sink = new CollectingSink();
+        server = new IngestServer(sink, 0);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    /**
+     * Tests that the constructor throws for a null sink
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsForNullSink() throws IOException {
+        new IngestServer(null, 0);
+    }
+
+    /**
+     * Tests that every kind of record is decoded into the matching batch entry, in order
+     * Tests that the fixed point amounts give the same value as the parsed decimals
+     */
+    @Test
+    public void recordsAreDecodedInOrder() throws IOException {
+        try (IngestClient client = new IngestClient(server.getAddress())) {
+            client.sendInstruction("foo", CashflowDirection.Outgoing, 0.50, "SGP", LocalDate.of(2016, 1, 1), 200, 100.25);
+            client.sendNew(7, "bar", CashflowDirection.Incoming, 0.22, "AED", LocalDate.of(2016, 1, 7), 450, 150.5);
+            client.sendAmend(7, "bar", CashflowDirection.Incoming, 0.22, "AED", LocalDate.of(2016, 1, 7), 10, 1.5);
+            client.sendCancel(7);
+
+            Assert.assertEquals("Four records should have been applied", 4, client.sync());
+        }
+
+        Assert.assertEquals("Four entries were expected", 4, sink.types.size());
+        Assert.assertEquals("The record kind does not match", RecordType.Instruction, sink.types.get(0));
+        Assert.assertEquals("The record kind does not match", RecordType.New, sink.types.get(1));
+        Assert.assertEquals("The record kind does not match", RecordType.Amend, sink.types.get(2));
+        Assert.assertEquals("The record kind does not match", RecordType.Cancel, sink.types.get(3));
+
+        ITransaction first = sink.transactions.get(0);
+        Assert.assertEquals("The entity does not match", "foo", first.getEntityName());
+        Assert.assertEquals("The currency does not match", "SGP", first.getCurrency());
+        Assert.assertEquals("The direction does not match", CashflowDirection.Outgoing, first.getCashflowDirection());
+        Assert.assertEquals("The value should match the parsed decimals exactly",
+                100.25 * 200 * 0.50, first.getUsdValue(), 0);
+        // 01 Jan 2016 is a Friday
+        Assert.assertEquals("The settlement date does not match",
+                LocalDate.of(2016, 1, 1), first.getActualSettlementDate());
+        Assert.assertEquals("A plain instruction has no id",
+                ITransaction.NO_INSTRUCTION_ID, first.getInstructionId());
+
+        Assert.assertEquals("The value should match the parsed decimals exactly",
+                150.5 * 450 * 0.22, sink.transactions.get(1).getUsdValue(), 0);
+        Assert.assertEquals("The instruction id does not match", 7, sink.transactions.get(1).getInstructionId());
+        Assert.assertNull("A cancellation has no transaction", sink.transactions.get(3));
+        Assert.assertEquals("The cancelled id does not match", 7, (long) sink.instructionIds.get(3));
+    }
+
+    /**
+     * Tests that the records spanning several batch frames and reads are all applied
+     */
+    @Test
+    public void largeFeedsAreAppliedCompletely() throws IOException {
+        int count = 100_000;
+
+        try (IngestClient client = new IngestClient(server.getAddress(), 4096)) {
+            for (int i = 0; i < count; i++) {
+                client.sendInstruction("entity" + (i % 1000), CashflowDirection.Incoming, 1, "USD",
+                        LocalDate.of(2016, 1, 4).plusDays(i % 30), 1, 1);
+            }
+            Assert.assertEquals("Every record should have been applied", count, client.sync());
+        }
+
+        Assert.assertEquals("Every record should have reached the sink", count, sink.types.size());
+        Assert.assertEquals("The server count does not match", count, server.getRecordCount());
+        Assert.assertEquals("The last entity does not match",
+                "entity999", sink.transactions.get(count - 1).getEntityName());
+    }
+
+    /**
+     * Tests that a connection sending an undefined entity is closed, without applying the malformed batch
+     */
+    @Test
+    public void malformedFramesCloseTheConnection() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(server.getAddress())) {
+            ByteBuffer frame = ByteBuffer.allocate(4 + 1 + WireFormat.RECORD_SIZE);
+            frame.putInt(1 + WireFormat.RECORD_SIZE).put(WireFormat.BATCH)
+                    .put(WireFormat.RECORD_INSTRUCTION).put((byte) 'B').putShort((short) 0).putInt(0)
+                    .putLong(-1).putInt(16801).putInt(1).putLong(100000000L).putLong(100000000L);
+            frame.flip();
+            channel.write(frame);
+
+            Assert.assertEquals("The server should have closed the connection",
+                    -1, channel.read(ByteBuffer.allocate(16)));
+        }
+
+        Assert.assertEquals("One protocol error was expected", 1, server.getProtocolErrorCount());
+        Assert.assertTrue("Nothing should have been applied", sink.types.isEmpty());
+    }
+
+    /**
+     * Tests that a batch the sink fails to apply only closes its connection, another client still being served
+     */
+    @Test
+    public void sinkFailuresOnlyCloseTheirConnection() throws IOException {
+        server.close();
+        server = new IngestServer(batch -> {
+            if (batch.getTransaction(0) != null && batch.getTransaction(0).getEntityName().equals("bad")) {
+                throw new IllegalArgumentException("entity");
+            }
+            sink.addBatch(batch);
+        }, 0);
+
+        try (IngestClient failing = new IngestClient(server.getAddress())) {
+            failing.sendInstruction("bad", CashflowDirection.Outgoing, 1, "USD", LocalDate.of(2016, 1, 4), 1, 1);
+            try {
+                failing.sync();
+                Assert.fail("The connection of the failed batch should have been closed");
+            }
+            catch (IOException e) {
+                // expected
+            }
+        }
+
+        try (IngestClient client = new IngestClient(server.getAddress())) {
+            client.sendInstruction("foo", CashflowDirection.Outgoing, 1, "USD", LocalDate.of(2016, 1, 4), 1, 1);
+            Assert.assertEquals("The record should have been applied", 1, client.sync());
+        }
+        Assert.assertEquals("One sink error was expected", 1, server.getSinkErrorCount());
+        Assert.assertEquals("Only the record of the second client should have been applied", 1, sink.types.size());
+    }
+
+    /**
+     * Tests that the client rejects amounts which cannot be sent in fixed point
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void clientThrowsForHugeAmounts() throws IOException {
+        try (IngestClient client = new IngestClient(server.getAddress())) {
+            client.sendInstruction("foo", CashflowDirection.Outgoing, 1, "USD", LocalDate.of(2016, 1, 4), 1, 1e12);
+        }
+    }
+
+    class CollectingSink implements ITransactionSink {
+        public void addBatch(InstructionBatch batch) {
+            for (int i = 0; i < batch.size(); i++) {
+                types.add(batch.getType(i));
+                transactions.add(batch.getTransaction(i));
+                instructionIds.add(batch.getInstructionId(i));
+            }
+        }
+
+        public final List<RecordType> types = new ArrayList<>();
+        public final List<ITransaction> transactions = new ArrayList<>();
+        public final List<Long> instructionIds = new ArrayList<>();
+    }
+}
@@ -0,0 +1,93 @@
+package Persistence;
+
+import Components.DailySummary;
+import Components.ITransaction;
+import Components.ITransaction.CashflowDirection;
+import Components.SettledTransaction;
+import Helpers.RoaringBitmap;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class ArchiveIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ColumnarArchive archive;
+    private ArchiveIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        List<ITransaction> transactions = new ArrayList<>();
+        String[] currencies = {"AED", "SGP", "USD"};
+        for (int day = 0; day < 30; day++) {
+            LocalDate date = LocalDate.of(2016, 1, 4).plusDays(day);
+            for (int i = 0; i < 10; i++) {
+                transactions.add(new SettledTransaction("entity" + i % 4,
+                        i % 2 == 0 ? CashflowDirection.Outgoing : CashflowDirection.Incoming,
+                        currencies[i % 3], 10 * i + day, date));
+            }
+        }
+
+        Path file = folder.getRoot().toPath().resolve("report.archive");
+        ColumnarArchive.write(file, transactions, 64);
+        archive = ColumnarArchive.open(file);
+        index = ArchiveIndex.build(archive);
+    }
+
+    /**
+     * Tests that the bitmaps select the expected rows
+     */
+    @Test
+    public void bitmapsSelectTheRows() {
+        Assert.assertEquals("AED is used by 4 rows a day", 4 * 30, index.getCurrencyRows("AED").getCardinality());
+        Assert.assertEquals("Half of the rows are outgoing",
+                150, index.getDirectionRows(CashflowDirection.Outgoing).getCardinality());
+        Assert.assertEquals("entity0 has 3 rows a day", 3 * 30, index.getEntityRows("entity0").getCardinality());
+        Assert.assertTrue("An unknown currency has no rows", index.getCurrencyRows("EUR").isEmpty());
+
+        RoaringBitmap week = index.getDayRows(LocalDate.of(2016, 1, 11), LocalDate.of(2016, 1, 17));
+        Assert.assertEquals("A week has 70 rows", 70, week.getCardinality());
+        Assert.assertEquals("The week starts with the 8th day", 70, week.toArray()[0]);
+        Assert.assertEquals("The whole archive should be selected",
+                300, index.getDayRows(null, null).getCardinality());
+    }
+
+    /**
+     * Tests a filtered report: the outgoing AED cashflow of a week, per day and per entity
+     */
+    @Test
+    public void filteredReportsAggregateTheSelectedRows() {
+        LocalDate from = LocalDate.of(2016, 1, 11);
+        LocalDate to = LocalDate.of(2016, 1, 17);
+        RoaringBitmap rows = RoaringBitmap.and(index.getCurrencyRows("AED"),
+                RoaringBitmap.and(index.getDirectionRows(CashflowDirection.Outgoing), index.getDayRows(from, to)));
+
+        // the outgoing AED rows of a day are i = 0 and 6, of entity0 and entity2
+        NavigableMap<LocalDate, DailySummary> summaries = archive.getDailySummaries(rows);
+        Assert.assertEquals("Every day of the week should be summarized", 7, summaries.size());
+        int day = 7;
+        for (DailySummary summary : summaries.values()) {
+            Assert.assertEquals("The outgoing cashflow does not match", 60 + 2 * day, summary.outgoing, 0);
+            Assert.assertEquals("There is no incoming AED row", 0, summary.incoming, 0);
+            Assert.assertEquals("Two rows a day were expected", 2, summary.transactionCount);
+            day++;
+        }
+
+        // entity0: the days 7 to 13, entity2: 60 more each day
+        Assert.assertEquals("[entity2=490.0, entity0=70.0]", archive.getRanking(rows, 10).toString());
+    }
+}
@@ -0,0 +1,183 @@
+package Persistence;
+
+import Components.DailySummary;
+import Components.Entity;
+import Components.ITransaction;
+import Components.ITransaction.CashflowDirection;
+import Components.SettledTransaction;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class CheckpointTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Map<String, Entity> entities;
+    private Map<LocalDate, DailySummary> dailySummaries;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        entities = new HashMap<>();
+        dailySummaries = new HashMap<>();
+        file = folder.getRoot().toPath().resolve("report.ckpt");
+
+        Entity foo = new Entity("foo");
+        foo.addTransaction(new SettledTransaction(
+                "foo", CashflowDirection.Outgoing, "SGP", 10025.0, LocalDate.of(2016, 1, 4)));
+        foo.addTransaction(new SettledTransaction(
+                "foo", CashflowDirection.Incoming, "AED", 14899.5, LocalDate.of(2016, 1, 7)));
+        entities.put("foo", foo);
+
+        dailySummaries.put(LocalDate.of(2016, 1, 4), new DailySummary(0, 10025.0, 1));
+        dailySummaries.put(LocalDate.of(2016, 1, 7), new DailySummary(14899.5, 0, 1));
+    }
+
+    /**
+     * Tests that the aggregates and the input offset survive a write/read round trip
+     */
+    @Test
+    public void aggregatesAreRestored() throws IOException {
+        new Checkpoint(1234, entities, dailySummaries).write(file, false);
+        Checkpoint restored = Checkpoint.read(file);
+
+        Assert.assertEquals("The input offset was not restored", 1234, restored.getInputOffset());
+
+        Entity foo = restored.getEntities().get("foo");
+        Assert.assertNotNull("The entity was not restored", foo);
+        Assert.assertEquals(
+                "The incoming cashflow was not restored",
+                14899.5,
+                foo.getTotalDirectedCashflow(CashflowDirection.Incoming),
+                0
+        );
+        Assert.assertEquals(
+                "The outgoing cashflow was not restored",
+                10025.0,
+                foo.getTotalDirectedCashflow(CashflowDirection.Outgoing),
+                0
+        );
+        Assert.assertTrue("No transactions were expected", foo.getTransactions().isEmpty());
+
+        DailySummary day = restored.getDailySummaries().get(LocalDate.of(2016, 1, 7));
+        Assert.assertNotNull("The daily summary was not restored", day);
+        Assert.assertEquals("The incoming cashflow of the day was not restored", 14899.5, day.incoming, 0);
+    }
+
+    /**
+     * Tests that the transactions are restored when requested, without altering the entity totals
+     */
+    @Test
+    public void transactionsAreRestoredWhenIncluded() throws IOException {
+        new Checkpoint(0, entities, dailySummaries).write(file, true);
+        Entity foo = Checkpoint.read(file).getEntities().get("foo");
+
+        Assert.assertEquals("The transactions were not restored", 2, foo.getTransactions().size());
+
+        ITransaction second = foo.getTransactions().get(1);
+        Assert.assertEquals("The currency was not restored", "AED", second.getCurrency());
+        Assert.assertEquals(
+                "The direction was not restored",
+                CashflowDirection.Incoming,
+                second.getCashflowDirection()
+        );
+        Assert.assertEquals(
+                "The settlement date was not restored",
+                LocalDate.of(2016, 1, 7),
+                second.getActualSettlementDate()
+        );
+        Assert.assertEquals(
+                "The totals should not be altered by the restored transactions",
+                14899.5,
+                foo.getTotalDirectedCashflow(CashflowDirection.Incoming),
+                0
+        );
+    }
+
+    /**
+     * Tests that a checkpoint larger than the read buffer is restored, with records and names straddling its refills
+     */
+    @Test
+    public void largeCheckpointIsRestored() throws IOException {
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longName.append((char) ('a' + i % 26));
+        }
+        for (int e = 0; e < 3000; e++) {
+            String name = longName.toString() + e;
+            Entity entity = new Entity(name);
+            for (int t = 0; t < 30; t++) {
+                entity.addTransaction(new SettledTransaction(
+                        name, CashflowDirection.Incoming, "SGP", t + 1, LocalDate.of(2016, 1, 4).plusDays(t)));
+            }
+            entities.put(name, entity);
+        }
+
+        new Checkpoint(7, entities, dailySummaries).write(file, true);
+        Map<String, Entity> restored = Checkpoint.read(file).getEntities();
+
+        Assert.assertEquals("Wrong number of entities", entities.size(), restored.size());
+        for (Entity entity : entities.values()) {
+            Entity copy = restored.get(entity.getName());
+            Assert.assertNotNull("The entity was not restored", copy);
+            Assert.assertEquals("The transactions were not restored",
+                    entity.getTransactions().size(), copy.getTransactions().size());
+            Assert.assertEquals("The incoming cashflow was not restored",
+                    entity.getTotalDirectedCashflow(CashflowDirection.Incoming),
+                    copy.getTotalDirectedCashflow(CashflowDirection.Incoming), 0);
+        }
+    }
+
+    /**
+     * Tests that the currencies of the transactions are restored when there are more of them than a short can index
+     */
+    @Test
+    public void manyCurrenciesAreRestored() throws IOException {
+        Entity bar = new Entity("bar");
+        for (int i = 0; i < 70_000; i++) {
+            bar.addTransaction(new SettledTransaction(
+                    "bar", CashflowDirection.Outgoing, "C" + i, i, LocalDate.of(2016, 1, 4)));
+        }
+        entities.put("bar", bar);
+
+        new Checkpoint(0, entities, dailySummaries).write(file, true);
+        Entity restored = Checkpoint.read(file).getEntities().get("bar");
+
+        Assert.assertEquals("The transactions were not restored", 70_000, restored.getTransactions().size());
+        for (ITransaction transaction : restored.getTransactions()) {
+            Assert.assertEquals("Wrong currency for " + transaction.getUsdValue(),
+                    "C" + (int) transaction.getUsdValue(), transaction.getCurrency());
+        }
+    }
+
+    /**
+     * Tests that a corrupted checkpoint is rejected
+     */
+    @Test(expected = IOException.class)
+    public void corruptedCheckpointIsRejected() throws IOException {
+        new Checkpoint(0, entities, dailySummaries).write(file, true);
+
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(raw.length() / 2);
+            int value = raw.read();
+            raw.seek(raw.length() / 2);
+            raw.write(value ^ 0xFF);
+        }
+
+        Checkpoint.read(file);
+    }
+}
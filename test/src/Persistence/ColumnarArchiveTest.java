@@ -0,0 +1,205 @@
+package Persistence;
+
+import Components.AggregateQuery;
+import Components.AggregateQuery.Aggregate;
+import Components.AggregateQuery.GroupKey;
+import Components.AggregateRow;
+import Components.DailySummary;
+import Components.ITransaction;
+import Components.ITransaction.CashflowDirection;
+import Components.RankingEntry;
+import Components.SettledTransaction;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class ColumnarArchiveTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<ITransaction> transactions;
+    private Path file;
+
+    @Before
+    public void setUp() {
+        file = folder.getRoot().toPath().resolve("report.archive");
+        transactions = new ArrayList<>();
+
+        // thirty days with three transactions each, added in reverse chronological order
+        for (int day = 29; day >= 0; day--) {
+            LocalDate date = LocalDate.of(2016, 1, 4).plusDays(day);
+            transactions.add(new SettledTransaction("foo", CashflowDirection.Outgoing, "SGP", 100.25 + day, date));
+            transactions.add(new SettledTransaction("bar", CashflowDirection.Incoming, "AED", 10.5, date, day));
+            transactions.add(new SettledTransaction("baz", CashflowDirection.Incoming, "USD", 20 * day, date));
+        }
+    }
+
+    /**
+     * Tests that the transactions survive a write/read round trip, ordered by settlement day
+     */
+    @Test
+    public void transactionsAreRestored() throws IOException {
+        ColumnarArchive.write(file, transactions, 4);
+        ColumnarArchive archive = ColumnarArchive.open(file);
+
+        List<ITransaction> restored = archive.getTransactions(null, null);
+        Assert.assertEquals("Every transaction should be archived", transactions.size(), archive.getRowCount());
+        Assert.assertEquals("Every transaction should be restored", transactions.size(), restored.size());
+        Assert.assertEquals("The row groups should hold 4 rows", 23, archive.getRowGroupCount());
+
+        ITransaction first = restored.get(0);
+        Assert.assertEquals("The earliest transaction should come first", LocalDate.of(2016, 1, 4),
+                first.getActualSettlementDate());
+        Assert.assertEquals("The order within a day should be kept", "foo", first.getEntityName());
+        Assert.assertEquals(CashflowDirection.Outgoing, first.getCashflowDirection());
+        Assert.assertEquals("SGP", first.getCurrency());
+        Assert.assertEquals(100.25, first.getUsdValue(), 0);
+        Assert.assertEquals(ITransaction.NO_INSTRUCTION_ID, first.getInstructionId());
+
+        ITransaction last = restored.get(restored.size() - 1);
+        Assert.assertEquals("The latest transaction should come last", LocalDate.of(2016, 2, 2),
+                last.getActualSettlementDate());
+        Assert.assertEquals("baz", last.getEntityName());
+        Assert.assertEquals("The instruction id was not restored",
+                29, restored.get(restored.size() - 2).getInstructionId());
+    }
+
+    /**
+     * Tests that the reports over a range only scan the row groups whose zone map overlaps the range
+     */
+    @Test
+    public void rangeReportsSkipRowGroups() throws IOException {
+        ColumnarArchive.write(file, transactions, 6);
+        ColumnarArchive archive = ColumnarArchive.open(file);
+
+        LocalDate day = LocalDate.of(2016, 1, 14);
+        NavigableMap<LocalDate, DailySummary> summaries = archive.getDailySummaries(day, day);
+        Assert.assertEquals("A single day was expected", 1, summaries.size());
+        Assert.assertEquals("The incoming cashflow does not match", 10.5 + 200, summaries.get(day).incoming, 0);
+        Assert.assertEquals("The outgoing cashflow does not match", 110.25, summaries.get(day).outgoing, 0);
+        Assert.assertEquals("The transaction count does not match", 3, summaries.get(day).transactionCount);
+        Assert.assertEquals("Only the row group of the day should be scanned", 1, archive.getScannedRowGroupCount());
+
+        List<RankingEntry> ranking = archive.getRanking(CashflowDirection.Incoming, day, day.plusDays(1), 10);
+        Assert.assertEquals("[baz=420.0, bar=21.0]", ranking.toString());
+        Assert.assertEquals("Only the row group of the two days should be scanned", 2,
+                archive.getScannedRowGroupCount());
+    }
+
+    /**
+     * Tests that a day spanning several row groups is summarized once
+     */
+    @Test
+    public void daysSpanningRowGroupsAreMerged() throws IOException {
+        ColumnarArchive.write(file, transactions, 2);
+        ColumnarArchive archive = ColumnarArchive.open(file);
+
+        NavigableMap<LocalDate, DailySummary> summaries = archive.getDailySummaries(null, null);
+        Assert.assertEquals("Every day should be summarized", 30, summaries.size());
+        for (DailySummary summary : summaries.values()) {
+            Assert.assertEquals("Each day has three transactions", 3, summary.transactionCount);
+        }
+    }
+
+    /**
+     * Tests that the aggregations over the columns match the ones over the transactions in memory
+     */
+    @Test
+    public void aggregateMatchesTheTransactions() throws IOException {
+        ColumnarArchive.write(file, transactions, 8);
+        ColumnarArchive archive = ColumnarArchive.open(file);
+
+        List<AggregateQuery> queries = new ArrayList<>();
+        queries.add(new AggregateQuery());
+        AggregateQuery query = new AggregateQuery();
+        query.setGroupBy(GroupKey.Date, GroupKey.Direction);
+        queries.add(query);
+        query = new AggregateQuery();
+        query.setDateRange(LocalDate.of(2016, 1, 10), LocalDate.of(2016, 1, 25));
+        query.setGroupBy(GroupKey.Month, GroupKey.Week, GroupKey.Currency);
+        queries.add(query);
+        query = new AggregateQuery();
+        query.setDirection(CashflowDirection.Incoming);
+        query.setEntities(Arrays.asList("bar", "baz", "unknown"));
+        query.setGroupBy(GroupKey.Entity);
+        query.setOrderBy(Aggregate.Sum);
+        query.setLimit(1);
+        queries.add(query);
+        query = new AggregateQuery();
+        query.setCurrencies(Arrays.asList("SGP", "USD"));
+        query.setGroupBy(GroupKey.Currency, GroupKey.Entity, GroupKey.Week);
+        query.setOrderBy(Aggregate.Max);
+        queries.add(query);
+
+        for (AggregateQuery expectedQuery : queries) {
+            List<AggregateRow> expected = expectedQuery.execute(transactions);
+            List<AggregateRow> actual = archive.aggregate(expectedQuery);
+            Assert.assertEquals("The groups do not match", expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                Assert.assertEquals("The keys do not match", expected.get(i).getKeys(), actual.get(i).getKeys());
+                Assert.assertEquals("The count does not match", expected.get(i).getCount(), actual.get(i).getCount());
+                Assert.assertEquals("The sum does not match", expected.get(i).getSum(), actual.get(i).getSum(), 1e-9);
+                Assert.assertEquals("The minimum does not match", expected.get(i).getMin(), actual.get(i).getMin(), 0);
+                Assert.assertEquals("The maximum does not match", expected.get(i).getMax(), actual.get(i).getMax(), 0);
+            }
+        }
+    }
+
+    /**
+     * Tests that the sums of amounts near the limit of the fixed point range, whose total does not fit in it, match
+     * the sums in memory instead of wrapping around
+     */
+    @Test
+    public void sumsBeyondTheFixedPointRangeDoNotWrap() throws IOException {
+        transactions.clear();
+        LocalDate date = LocalDate.of(2016, 1, 4);
+        for (int i = 0; i < 12; i++) {
+            LocalDate day = date.plusDays(i / 4);
+            transactions.add(new SettledTransaction("foo", CashflowDirection.Outgoing, "USD", 9e14, day));
+            transactions.add(new SettledTransaction("bar", CashflowDirection.Outgoing, "USD", 1, day));
+        }
+        ColumnarArchive.write(file, transactions, 8);
+        ColumnarArchive archive = ColumnarArchive.open(file);
+
+        List<RankingEntry> ranking = archive.getRanking(CashflowDirection.Outgoing, null, null, 2);
+        Assert.assertEquals("The largest entity does not match", "foo", ranking.get(0).getEntityName());
+        Assert.assertEquals("The total does not match", 12 * 9e14, ranking.get(0).getAmount(), 1);
+
+        NavigableMap<LocalDate, DailySummary> days = archive.getDailySummaries(null, null);
+        Assert.assertEquals("The daily total does not match", 4 * 9e14 + 4, days.get(date).outgoing, 1);
+
+        AggregateQuery query = new AggregateQuery();
+        query.setGroupBy(GroupKey.Direction);
+        Assert.assertEquals("The sum does not match",
+                12 * 9e14 + 12, archive.aggregate(query).get(0).getSum(), 1);
+        query.setGroupBy(GroupKey.Entity);
+        query.setOrderBy(Aggregate.Sum);
+        Assert.assertEquals("The sum of the entity does not match",
+                12 * 9e14, archive.aggregate(query).get(0).getSum(), 1);
+    }
+
+    /**
+     * Tests that a file which is not an archive is rejected
+     */
+    @Test(expected = IOException.class)
+    public void invalidFileIsRejected() throws IOException {
+        Files.write(file, "foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25\n".getBytes(StandardCharsets.UTF_8));
+        ColumnarArchive.open(file);
+    }
+}
@@ -0,0 +1,131 @@
+package Persistence;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class DirectoryTailerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private Path offsetFile;
+    private List<String> ingested;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("landing").toPath();
+        offsetFile = folder.getRoot().toPath().resolve("offsets");
+        ingested = new ArrayList<>();
+    }
+
+    /**
+     * Tests that the constructor throws for a null consumer
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsForNullConsumer() throws IOException {
+        new DirectoryTailer(directory, "*.csv", offsetFile, null);
+    }
+
+    /**
+     * Tests that only the complete lines appended since the previous poll are ingested
+     * Tests that the files not matching the glob are ignored
+     */
+    @Test
+    public void pollIngestsOnlyTheAppendedLines() throws IOException {
+        DirectoryTailer tailer = new DirectoryTailer(directory, "*.csv", offsetFile, ingested::add);
+        Path file = directory.resolve("desk1.csv");
+        append(file, "a\nb\npartial");
+        append(directory.resolve("notes.txt"), "ignored\n");
+
+        Assert.assertEquals("The complete lines should be ingested", 4, tailer.poll());
+        Assert.assertEquals("The ingested lines do not match", "a\nb\n", String.join("", ingested));
+
+        append(file, " line\nc\n");
+        Assert.assertEquals("The completed lines should be ingested", 15, tailer.poll());
+        Assert.assertEquals("The appended lines do not match", "partial line\nc\n", ingested.get(1));
+        Assert.assertEquals("The offset does not match", 19, tailer.getOffset(file));
+        Assert.assertEquals("Nothing new should be ingested", 0, tailer.poll());
+    }
+
+    /**
+     * Tests that a restarted tailer continues from the persisted offsets
+     */
+    @Test
+    public void offsetsArePersistedAcrossRestarts() throws IOException {
+        Path first = directory.resolve("desk1.csv");
+        Path second = directory.resolve("desk2.csv");
+        append(first, "a\n");
+        append(second, "b\n");
+        new DirectoryTailer(directory, "*.csv", offsetFile, ingested::add).poll();
+
+        append(first, "c\n");
+        DirectoryTailer restarted = new DirectoryTailer(directory, "*.csv", offsetFile, ingested::add);
+        Assert.assertEquals("The offset should have been restored", 2, restarted.getOffset(second));
+        restarted.poll();
+
+        Assert.assertEquals("The files should be read in name order without repeating lines",
+                "a\nb\nc\n", String.join("", ingested));
+    }
+
+    /**
+     * Tests that a file replaced by a shorter one is read again from its start
+     */
+    @Test
+    public void replacedFilesAreReadFromTheStart() throws IOException {
+        DirectoryTailer tailer = new DirectoryTailer(directory, "*.csv", offsetFile, ingested::add);
+        Path file = directory.resolve("desk1.csv");
+        append(file, "first file\n");
+        tailer.poll();
+
+        Files.delete(file);
+        append(file, "new\n");
+        tailer.poll();
+
+        Assert.assertEquals("The replaced file should be read again", "new\n", ingested.get(1));
+    }
+
+    /**
+     * Tests that the background thread picks up the files dropped after it started
+     */
+    @Test
+    public void startedTailerIngestsNewFiles() throws Exception {
+        List<String> lines = new ArrayList<>();
+        DirectoryTailer tailer = new DirectoryTailer(directory, "*.csv", offsetFile, input -> {
+            synchronized (lines) {
+                lines.add(input);
+                lines.notifyAll();
+            }
+        });
+        tailer.start(50);
+        append(directory.resolve("desk1.csv"), "a\n");
+
+        synchronized (lines) {
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (lines.isEmpty() && System.currentTimeMillis() < deadline) {
+                lines.wait(100);
+            }
+        }
+        tailer.close();
+
+        Assert.assertEquals("The dropped file should have been ingested", "a\n", String.join("", lines));
+    }
+
+    private static void append(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,94 @@
+package Persistence;
+
+import Components.ITransaction.CashflowDirection;
+import Components.RankingEntry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class SpillingRankingTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath().resolve("runs");
+    }
+
+    /**
+     * Tests that the rankings of spilled totals, including retracted amounts, are the exact rankings
+     */
+    @Test
+    public void rankingsOfSpilledTotalsAreExact() throws IOException {
+        SpillingRanking ranking = new SpillingRanking(directory, 50);
+        Map<String, double[]> exact = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 40_000; i++) {
+            String name = "entity" + random.nextInt(5_000);
+            CashflowDirection direction = CashflowDirection.values()[random.nextInt(2)];
+            // whole amounts add up exactly whatever the order of the merges
+            double amount = random.nextInt(10) == 0 ? -random.nextInt(100) : random.nextInt(10_000);
+            ranking.add(name, direction, amount);
+            exact.computeIfAbsent(name, key -> new double[2])[direction.ordinal()] += amount;
+        }
+        Assert.assertTrue("Too many totals in memory", ranking.getEntitiesInMemory() <= 50);
+        Assert.assertTrue("The runs should have been merged", ranking.getRunCount() < 2 * SpillingRanking.MERGE_FAN_IN);
+
+        for (CashflowDirection direction : CashflowDirection.values()) {
+            List<RankingEntry> expected = new ArrayList<>();
+            for (Map.Entry<String, double[]> entity : exact.entrySet()) {
+                expected.add(new RankingEntry(entity.getKey(), entity.getValue()[direction.ordinal()]));
+            }
+            expected.sort(Comparator.comparingDouble(RankingEntry::getAmount).reversed()
+                    .thenComparing(RankingEntry::getEntityName));
+
+            assertSameRanking(expected.subList(0, 20), ranking.getTop(direction, 20));
+            List<RankingEntry> all = new ArrayList<>();
+            ranking.forEachRanked(direction, all::add);
+            assertSameRanking(expected, all);
+        }
+    }
+
+    /**
+     * Tests that the merged runs and the runs of the external sort are deleted
+     */
+    @Test
+    public void mergedRunsAreDeleted() throws IOException {
+        SpillingRanking ranking = new SpillingRanking(directory, 10);
+        for (int i = 0; i < 10_000; i++) {
+            ranking.add("entity" + i, CashflowDirection.Incoming, i);
+        }
+        ranking.forEachRanked(CashflowDirection.Incoming, entry -> { });
+
+        try (Stream<Path> files = Files.list(directory)) {
+            Assert.assertEquals("Wrong number of run files", ranking.getRunCount(), files.count());
+        }
+        List<RankingEntry> top = ranking.getTop(CashflowDirection.Incoming, 2);
+        Assert.assertEquals("Wrong first entity", "entity9999", top.get(0).getEntityName());
+        Assert.assertEquals("Wrong second entity", "entity9998", top.get(1).getEntityName());
+    }
+
+    private static void assertSameRanking(List<RankingEntry> expected, List<RankingEntry> actual) {
+        Assert.assertEquals("Wrong number of entries", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals("Wrong entity at " + i,
+                    expected.get(i).getEntityName(), actual.get(i).getEntityName());
+            Assert.assertEquals("Wrong amount at " + i,
+                    expected.get(i).getAmount(), actual.get(i).getAmount(), 0);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package Persistence;
+
+import Components.ITransaction;
+import Components.ITransaction.CashflowDirection;
+import Components.SettledTransaction;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class WriteAheadLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private List<ITransaction> replayed;
+    private List<Long> replayedOffsets;
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath().resolve("wal");
+        replayed = new ArrayList<>();
+        replayedOffsets = new ArrayList<>();
+    }
+
+    /**
+     * Tests that the appended transactions are replayed after reopening the log
+     */
+    @Test
+    public void appendedTransactionsAreReplayedAfterReopening() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(directory, SEGMENT_SIZE, 2)) {
+            log.append(transaction("foo", 10.5), 10);
+            log.append(transaction("bar", 20.25), 20);
+            log.append(transaction("baz", 30), 30);
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(directory, SEGMENT_SIZE, 2)) {
+            long lastOffset = log.replay(Long.MIN_VALUE, this::record);
+
+            Assert.assertEquals("The last replayed offset is not the expected one", 30, lastOffset);
+        }
+
+        Assert.assertEquals("The number of replayed transactions is not the expected one", 3, replayed.size());
+        Assert.assertEquals("The entity name was not replayed", "bar", replayed.get(1).getEntityName());
+        Assert.assertEquals("The currency was not replayed", "AED", replayed.get(1).getCurrency());
+        Assert.assertEquals("The USD value was not replayed", 20.25, replayed.get(1).getUsdValue(), 0);
+        Assert.assertEquals(
+                "The settlement date was not replayed",
+                LocalDate.of(2016, 1, 7),
+                replayed.get(1).getActualSettlementDate()
+        );
+    }
+
+    /**
+     * Tests that only the records after the given offset are replayed
+     */
+    @Test
+    public void replayStartsAfterTheGivenOffset() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(directory, SEGMENT_SIZE, 1)) {
+            log.append(transaction("foo", 1), 10);
+            log.append(transaction("bar", 2), 20);
+            log.append(transaction("baz", 3), 30);
+
+            log.replay(20, this::record);
+        }
+
+        Assert.assertEquals("Only one transaction was expected to be replayed", 1, replayed.size());
+        Assert.assertEquals("The wrong transaction was replayed", "baz", replayed.get(0).getEntityName());
+        Assert.assertEquals("The wrong offset was replayed", Long.valueOf(30), replayedOffsets.get(0));
+    }
+
+    /**
+     * Tests that the log rolls over to new segments and that the segments covered by a checkpoint are discarded
+     */
+    @Test
+    public void segmentsAreRolledAndDiscarded() throws IOException {
+        int records = 5000;
+
+        try (WriteAheadLog log = new WriteAheadLog(directory, SEGMENT_SIZE, 100)) {
+            for (int i = 1; i <= records; i++) {
+                log.append(transaction("entity" + i, i), i);
+            }
+
+            Assert.assertTrue("The log was expected to span several segments", segmentCount() > 1);
+
+            log.replay(Long.MIN_VALUE, this::record);
+            Assert.assertEquals("Not all the transactions were replayed", records, replayed.size());
+
+            log.discardUpTo(records);
+            Assert.assertEquals("Only the active segment was expected to be kept", 1, segmentCount());
+        }
+    }
+
+    private void record(ITransaction transaction, long instructionId, long inputOffset) {
+        replayed.add(transaction);
+        replayedOffsets.add(inputOffset);
+    }
+
+    /**
+     * Tests that cancellations are replayed along with the instruction id
+     */
+    @Test
+    public void cancellationsAreReplayed() throws IOException {
+        List<Long> cancelled = new ArrayList<>();
+
+        try (WriteAheadLog log = new WriteAheadLog(directory, SEGMENT_SIZE, 1)) {
+            log.append(transaction("foo", 1), 10);
+            log.appendCancel(42, 20);
+
+            log.replay(Long.MIN_VALUE, (transaction, instructionId, inputOffset) -> {
+                if (transaction == null) {
+                    cancelled.add(instructionId);
+                }
+            });
+        }
+
+        Assert.assertEquals("One cancellation was expected to be replayed", 1, cancelled.size());
+        Assert.assertEquals("The wrong instruction id was replayed", Long.valueOf(42), cancelled.get(0));
+    }
+
+    private long segmentCount() throws IOException {
+        return Files.list(directory).count();
+    }
+
+    private static ITransaction transaction(String entity, double usdValue) {
+        return new SettledTransaction(
+                entity,
+                CashflowDirection.Incoming,
+                "AED",
+                usdValue,
+                LocalDate.of(2016, 1, 7)
+        );
+    }
+
+    private static final int SEGMENT_SIZE = 128 * 1024;
+}
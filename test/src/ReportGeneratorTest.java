@@ -1,19 +1,57 @@
+import Components.AggregateQuery;
+import Components.AggregateRow;
+import Components.DailySummary;
 import Components.IOutput;
 
 import Components.ITransaction;
+import Components.ITransaction.CashflowDirection;
+import Components.InstructionBatch;
+import Components.RankingEntry;
+import Components.TimeBuckets.Resolution;
+import Helpers.DuplicateFilter;
+import Helpers.FeedGenerator;
+import Helpers.ParsingUtil;
+import Metrics.EngineMetrics;
+import Network.IngestClient;
+import Network.IngestServer;
+import Persistence.ColumnarArchive;
+import Persistence.WriteAheadLog;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * @author Alexandru Dochioiu
  * Date : 21/10/17
  */
 public class ReportGeneratorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private final int printColumnSize = ReportGenerator.printColumnSize;
     private MockOutput outputDestination;
     private ReportGenerator reportGenerator;
@@ -363,6 +401,1090 @@ public class ReportGeneratorTest {
         );
     }
 
+    /**
+     * Tests that a report restored from a checkpoint prints the same output and resumes from the checkpointed offset
+     */
+    @Test
+    public void restoredCheckpointMatchesOriginalReport() throws IOException {
+        String inputData = "foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25\n" +
+                "bar,S,0.22,AED,05 Jan 2016,07 Jan 2016,450,150.5\n";
+        String moreInputData = "bar,S,0.7,AED,05 Oct 2016,07 Oct 2016,100,120.5\n";
+        Path checkpointFile = folder.getRoot().toPath().resolve("report.ckpt");
+
+        reportGenerator = new ReportGenerator(inputData, outputDestination);
+        reportGenerator.writeCheckpoint(checkpointFile, true);
+        reportGenerator.ingest(moreInputData);
+        reportGenerator.printDailySummaries();
+        reportGenerator.printRanking(ITransaction.CashflowDirection.Incoming);
+        List<String> expected = new ArrayList<>(outputDestination.outputted);
+
+        MockOutput restoredOutput = new MockOutput();
+        ReportGenerator restored = ReportGenerator.restoreCheckpoint(checkpointFile, restoredOutput);
+        Assert.assertEquals(
+                "The restored input offset does not match the checkpointed one",
+                inputData.length(),
+                restored.getInputOffset()
+        );
+
+        restored.ingest(moreInputData);
+        restored.printDailySummaries();
+        restored.printRanking(ITransaction.CashflowDirection.Incoming);
+
+        Assert.assertEquals(
+                "The restored report output does not match the original one",
+                expected,
+                restoredOutput.outputted
+        );
+    }
+
+    /**
+     * Tests that the instructions applied as batches are replayed by the recovery, with and without a checkpoint
+     */
+    @Test
+    public void recoveryReplaysAppliedBatches() throws IOException {
+        for (boolean checkpointed : new boolean[] {false, true}) {
+            Path checkpointFile = folder.getRoot().toPath().resolve("batches" + checkpointed + ".ckpt");
+            Path logDirectory = folder.getRoot().toPath().resolve("batches" + checkpointed + ".wal");
+            List<RankingEntry> expected;
+
+            try (WriteAheadLog log = new WriteAheadLog(logDirectory, 1024 * 1024, 16)) {
+                reportGenerator = new ReportGenerator(outputDestination);
+                reportGenerator.attachWriteAheadLog(log);
+                if (checkpointed) {
+                    reportGenerator.ingest("bar,B,1,USD,04 Jan 2016,04 Jan 2016,5,1\n");
+                    reportGenerator.writeCheckpoint(checkpointFile, false);
+                }
+                InstructionBatch batch = new InstructionBatch(1);
+                batch.add(ParsingUtil.RecordType.Instruction,
+                        ParsingUtil.lineToTransaction("foo,B,1,USD,04 Jan 2016,04 Jan 2016,10,1"));
+                reportGenerator.addBatch(batch);
+                expected = reportGenerator.getRanking(CashflowDirection.Outgoing, null, null, 10);
+            }
+            Assert.assertEquals("Wrong number of entities before the crash", checkpointed ? 2 : 1, expected.size());
+
+            try (WriteAheadLog log = new WriteAheadLog(logDirectory, 1024 * 1024, 16)) {
+                ReportGenerator recovered = ReportGenerator.recover(checkpointFile, log, new MockOutput());
+                Assert.assertEquals("The recovered ranking does not match the one before the crash",
+                        expected.toString(),
+                        recovered.getRanking(CashflowDirection.Outgoing, null, null, 10).toString());
+            }
+        }
+    }
+
+    /**
+     * Tests that the recovery replays text lines and binary batches interleaved before and after the checkpoint, the
+     * records of both referring to each other's instructions
+     */
+    @Test
+    public void recoveryReplaysInterleavedTextAndBatches() throws IOException {
+        Path checkpointFile = folder.getRoot().toPath().resolve("interleaved.ckpt");
+        Path logDirectory = folder.getRoot().toPath().resolve("interleaved.wal");
+        List<RankingEntry> expected;
+
+        try (WriteAheadLog log = new WriteAheadLog(logDirectory, 1024 * 1024, 16)) {
+            reportGenerator = new ReportGenerator(outputDestination);
+            reportGenerator.attachWriteAheadLog(log);
+            reportGenerator.ingest("N,1,foo,B,1,USD,04 Jan 2016,04 Jan 2016,10,1\n");
+            InstructionBatch batch = new InstructionBatch(2);
+            batch.add(ParsingUtil.RecordType.New,
+                    ParsingUtil.recordToTransaction("N,2,bar,B,1,USD,04 Jan 2016,04 Jan 2016,20,1"));
+            reportGenerator.addBatch(batch);
+            reportGenerator.writeCheckpoint(checkpointFile, true);
+
+            reportGenerator.ingest("A,2,bar,B,1,USD,04 Jan 2016,04 Jan 2016,30,1\n");
+            batch.clear();
+            batch.addCancel(1);
+            batch.add(ParsingUtil.RecordType.Instruction,
+                    ParsingUtil.lineToTransaction("baz,B,1,USD,04 Jan 2016,04 Jan 2016,40,1"));
+            reportGenerator.addBatch(batch);
+            reportGenerator.ingest("qux,B,1,USD,04 Jan 2016,04 Jan 2016,50,1\n");
+            expected = reportGenerator.getRanking(CashflowDirection.Outgoing, null, null, 10);
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(logDirectory, 1024 * 1024, 16)) {
+            ReportGenerator recovered = ReportGenerator.recover(checkpointFile, log, new MockOutput());
+            Assert.assertEquals("The recovered ranking does not match the one before the crash",
+                    expected.toString(),
+                    recovered.getRanking(CashflowDirection.Outgoing, null, null, 10).toString());
+            Assert.assertEquals("The recovered offset does not match the one before the crash",
+                    reportGenerator.getInputOffset(), recovered.getInputOffset());
+        }
+        Assert.assertEquals("The cancelled instruction should be retracted", "foo", expected.get(3).getEntityName());
+        Assert.assertEquals("The cancelled instruction should be retracted", 0, expected.get(3).getAmount(), 0);
+    }
+
+    /**
+     * Tests that a report recovered from a checkpoint and the write-ahead log matches the report before the crash
+     */
+    @Test
+    public void recoveredReportMatchesReportBeforeCrash() throws IOException {
+        Path checkpointFile = folder.getRoot().toPath().resolve("report.ckpt");
+        Path logDirectory = folder.getRoot().toPath().resolve("wal");
+        String inputData = "foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25\n";
+        String moreInputData = "bar,S,0.22,AED,05 Jan 2016,07 Jan 2016,450,150.5\n" +
+                "bar,S,0.7,AED,05 Oct 2016,07 Oct 2016,100,120.5\n";
+
+        try (WriteAheadLog log = new WriteAheadLog(logDirectory, 1024 * 1024, 16)) {
+            reportGenerator = new ReportGenerator(outputDestination);
+            reportGenerator.attachWriteAheadLog(log);
+            reportGenerator.ingest(inputData);
+            reportGenerator.writeCheckpoint(checkpointFile, false);
+            reportGenerator.ingest(moreInputData);
+            reportGenerator.printDailySummaries();
+            reportGenerator.printRanking(ITransaction.CashflowDirection.Incoming);
+        }
+
+        MockOutput recoveredOutput = new MockOutput();
+        try (WriteAheadLog log = new WriteAheadLog(logDirectory, 1024 * 1024, 16)) {
+            ReportGenerator recovered = ReportGenerator.recover(checkpointFile, log, recoveredOutput);
+
+            Assert.assertEquals(
+                    "The recovered input offset does not cover all the ingested input",
+                    inputData.length() + moreInputData.length(),
+                    recovered.getInputOffset()
+            );
+
+            recovered.printDailySummaries();
+            recovered.printRanking(ITransaction.CashflowDirection.Incoming);
+        }
+
+        Assert.assertEquals(
+                "The recovered report output does not match the original one",
+                outputDestination.outputted,
+                recoveredOutput.outputted
+        );
+    }
+
+    /**
+     * Tests that replayed instructions are not counted twice when a duplicate filter is set
+     */
+    @Test
+    public void duplicateInstructionsAreDiscarded() {
+        String inputData = "bar,S,0.22,AED,05 Jan 2016,07 Jan 2016,450,150.5\n" +
+                "foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25\n";
+
+        reportGenerator = new ReportGenerator(outputDestination);
+        reportGenerator.setDuplicateFilter(new DuplicateFilter(1000, 0.01));
+        reportGenerator.ingest(inputData);
+        // the gateway replays the last instruction after a reconnect
+        reportGenerator.ingest("foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25\n");
+        reportGenerator.printRanking(ITransaction.CashflowDirection.Outgoing);
+
+        Assert.assertEquals(
+                "One duplicate was expected to be discarded",
+                1,
+                reportGenerator.getRejectedDuplicateCount()
+        );
+        Assert.assertEquals(
+                "The duplicate instruction should not be counted twice",
+                String.format("%-" + String.valueOf(printColumnSize) + "s", "foo") +
+                        String.format("%-" + String.valueOf(printColumnSize) + ".2f", 10025.0),
+                outputDestination.outputted.get(1)
+        );
+    }
+
+    /**
+     * Tests that the duplicate filter only drops the replayed payloads of live instructions: an instruction sent
+     * again after it was cancelled, repeated amendments and cancellations are applied, and malformed lines are
+     * counted as malformed
+     */
+    @Test
+    public void instructionsSentAgainAfterACancelAreAccepted() {
+        String instruction = "N,5,foo,B,0.50,SGP,04 Jan 2016,04 Jan 2016,200,100.25\n";
+        long malformed = EngineMetrics.REJECTED_MALFORMED.get();
+
+        reportGenerator = new ReportGenerator(outputDestination);
+        reportGenerator.setDuplicateFilter(new DuplicateFilter(1000, 0.01));
+        EngineMetrics.REGISTRY.setEnabled(true);
+        try {
+            reportGenerator.ingest(instruction + instruction +
+                    "A,5,foo,B,0.50,SGP,04 Jan 2016,04 Jan 2016,300,100.25\n" +
+                    "A,5,foo,B,0.50,SGP,04 Jan 2016,04 Jan 2016,300,100.25\n" +
+                    "C,5\n" +
+                    instruction +
+                    "C,5\n" +
+                    "C,5\n" +
+                    instruction +
+                    "garbage\n" +
+                    "garbage\n");
+        }
+        finally {
+            EngineMetrics.REGISTRY.setEnabled(false);
+        }
+        reportGenerator.printRanking(ITransaction.CashflowDirection.Outgoing);
+
+        Assert.assertEquals("Only the replay of the live instruction is a duplicate",
+                1, reportGenerator.getRejectedDuplicateCount());
+        Assert.assertEquals("Only the cancellation of a cancelled instruction should be rejected",
+                1, reportGenerator.getRejectedAmendCount());
+        Assert.assertEquals("Two malformed lines were expected", 2, EngineMetrics.REJECTED_MALFORMED.get() - malformed);
+        Assert.assertEquals(
+                "The instruction sent again should be counted once",
+                String.format("%-" + String.valueOf(printColumnSize) + "s", "foo") +
+                        String.format("%-" + String.valueOf(printColumnSize) + ".2f", 10025.0),
+                outputDestination.outputted.get(1)
+        );
+    }
+
+    /**
+     * Tests that amending an instruction replaces its contribution and that cancelling one retracts it
+     */
+    @Test
+    public void amendAndCancelRetractOriginalContribution() {
+        String inputData = "N,1,foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25\n" +
+                "N,2,bar,S,0.22,AED,05 Jan 2016,07 Jan 2016,450,150.5\n" +
+                "N,3,bar,S,0.7,AED,05 Oct 2016,07 Oct 2016,100,120.5\n" +
+                // foo buys half the units
+                "A,1,foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,100,100.25\n" +
+                "C,3\n" +
+                // unknown instructions cannot be amended or cancelled
+                "C,99\n" +
+                "A,98,foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,100,100.25\n";
+
+        reportGenerator = new ReportGenerator(inputData, outputDestination);
+        reportGenerator.printDailySummaries();
+
+        Assert.assertEquals("Two rejected records were expected", 2, reportGenerator.getRejectedAmendCount());
+        Assert.assertEquals(
+                "The cancelled instruction should not leave an empty day behind",
+                3,
+                outputDestination.outputted.size()
+        );
+        Assert.assertEquals(
+                "The amended instruction was not applied to the daily summary",
+                String.format("%-" + String.valueOf(printColumnSize) + "s", "04 Jan 2016") +
+                        String.format("%-" + String.valueOf(printColumnSize) + ".2f", 0.0) +
+                        String.format("%-" + String.valueOf(printColumnSize) + ".2f", 5012.5),
+                outputDestination.outputted.get(2)
+        );
+
+        outputDestination.outputted.clear();
+        reportGenerator.printRanking(ITransaction.CashflowDirection.Incoming);
+
+        Assert.assertEquals(
+                "The cancelled instruction was not retracted from the entity",
+                String.format("%-" + String.valueOf(printColumnSize) + "s", "bar") +
+                        String.format("%-" + String.valueOf(printColumnSize) + ".2f", 14899.5),
+                outputDestination.outputted.get(1)
+        );
+    }
+
+    /**
+     * Tests that amendments and cancellations are recovered from the write-ahead log
+     */
+    @Test
+    public void amendmentsAreRecoveredFromWriteAheadLog() throws IOException {
+        Path checkpointFile = folder.getRoot().toPath().resolve("report.ckpt");
+        Path logDirectory = folder.getRoot().toPath().resolve("wal");
+
+        try (WriteAheadLog log = new WriteAheadLog(logDirectory, 1024 * 1024, 16)) {
+            reportGenerator = new ReportGenerator(outputDestination);
+            reportGenerator.attachWriteAheadLog(log);
+            reportGenerator.ingest("N,1,foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25\n" +
+                    "N,2,bar,S,0.22,AED,05 Jan 2016,07 Jan 2016,450,150.5\n");
+            reportGenerator.writeCheckpoint(checkpointFile, true);
+            reportGenerator.ingest("A,1,foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,100,100.25\nC,2\n");
+            reportGenerator.printDailySummaries();
+        }
+
+        MockOutput recoveredOutput = new MockOutput();
+        try (WriteAheadLog log = new WriteAheadLog(logDirectory, 1024 * 1024, 16)) {
+            ReportGenerator.recover(checkpointFile, log, recoveredOutput).printDailySummaries();
+        }
+
+        Assert.assertEquals(
+                "The recovered report output does not match the original one",
+                outputDestination.outputted,
+                recoveredOutput.outputted
+        );
+    }
+
+    /**
+     * Tests that the expired settlement days are rolled up by month while the entity totals are kept
+     */
+    @Test
+    public void expiredDaysAreRolledUpIntoMonths() {
+        reportGenerator = new ReportGenerator(outputDestination);
+        reportGenerator.setRetention(2, true);
+        reportGenerator.ingest("N,1,foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25\n" +
+                "bar,S,0.22,AED,05 Jan 2016,07 Jan 2016,450,150.5\n" +
+                "bar,S,0.1,SGP,01 Jan 2016,02 Jan 2016,10,10\n" +
+                "bar,S,0.1,SGP,07 Mar 2016,07 Mar 2016,10,10\n" +
+                "bar,S,0.1,SGP,07 Mar 2016,08 Mar 2016,10,100\n" +
+                // late transaction for a day which already expired
+                "foo,S,0.1,SGP,01 Jan 2016,02 Jan 2016,10,10\n" +
+                // the instruction settled on an expired day cannot be cancelled anymore
+                "C,1\n");
+
+        reportGenerator.printDailySummaries();
+        Assert.assertEquals("Only the two most recent days were expected", 3, outputDestination.outputted.size());
+        Assert.assertEquals(
+                "The most recent day does not match the expected one",
+                String.format("%-" + String.valueOf(printColumnSize) + "s", "08 Mar 2016") +
+                        String.format("%-" + String.valueOf(printColumnSize) + ".2f", 100.0) +
+                        String.format("%-" + String.valueOf(printColumnSize) + ".2f", 0.0),
+                outputDestination.outputted.get(1)
+        );
+
+        outputDestination.outputted.clear();
+        reportGenerator.printMonthlySummaries();
+        Assert.assertEquals(
+                "January was expected to be the only rolled up month",
+                String.format("%-" + String.valueOf(printColumnSize) + "s", "Jan 2016") +
+                        String.format("%-" + String.valueOf(printColumnSize) + ".2f", 14899.5 + 10 + 10) +
+                        String.format("%-" + String.valueOf(printColumnSize) + ".2f", 10025.0),
+                outputDestination.outputted.get(1)
+        );
+        Assert.assertEquals("One rolled up month was expected", 2, outputDestination.outputted.size());
+
+        outputDestination.outputted.clear();
+        reportGenerator.printRanking(ITransaction.CashflowDirection.Incoming);
+        Assert.assertEquals(
+                "The entity totals should include the expired days",
+                String.format("%-" + String.valueOf(printColumnSize) + "s", "bar") +
+                        String.format("%-" + String.valueOf(printColumnSize) + ".2f", 14899.5 + 10 + 10 + 100),
+                outputDestination.outputted.get(1)
+        );
+        Assert.assertEquals("The cancellation was expected to be rejected", 1, reportGenerator.getRejectedAmendCount());
+    }
+
+    /**
+     * Tests that a late transaction for a long expired day neither holds back the expiry of the retained days nor
+     * stays attached to its entity, while it still counts in the entity totals and in its month
+     */
+    @Test
+    public void lateTransactionsDoNotHoldBackTheRetention() {
+        reportGenerator = new ReportGenerator(outputDestination);
+        reportGenerator.setRetention(2, true);
+        reportGenerator.ingest("bar,S,0.1,SGP,07 Mar 2016,07 Mar 2016,10,10\n" +
+                "bar,S,0.1,SGP,08 Mar 2016,08 Mar 2016,10,20\n" +
+                "N,5,bar,S,0.1,SGP,01 Jan 1990,02 Jan 1990,10,30\n" +
+                "bar,S,0.1,SGP,09 Mar 2016,09 Mar 2016,10,40\n" +
+                "C,5\n");
+
+        reportGenerator.printDailySummaries();
+        Assert.assertEquals("Only the two most recent days were expected", 3, outputDestination.outputted.size());
+        Assert.assertTrue("The oldest retained day should be 08 Mar 2016",
+                outputDestination.outputted.get(2).startsWith("08 Mar 2016"));
+
+        outputDestination.outputted.clear();
+        reportGenerator.printMonthlySummaries();
+        Assert.assertEquals("Two rolled up months were expected", 3, outputDestination.outputted.size());
+        Assert.assertTrue("The late transaction should be rolled up into its month",
+                outputDestination.outputted.get(2).startsWith("Jan 1990"));
+
+        outputDestination.outputted.clear();
+        reportGenerator.printRanking(ITransaction.CashflowDirection.Incoming);
+        Assert.assertEquals(
+                "The entity totals should include the late transaction",
+                String.format("%-" + String.valueOf(printColumnSize) + "s", "bar") +
+                        String.format("%-" + String.valueOf(printColumnSize) + ".2f", 10.0 + 20 + 30 + 40),
+                outputDestination.outputted.get(1)
+        );
+        Assert.assertEquals("The cancellation was expected to be rejected", 1, reportGenerator.getRejectedAmendCount());
+    }
+
+    /**
+     * Tests that streamed input produces the same report as the same input given at once, even when the lines are
+     * split across reads
+     */
+    @Test
+    public void streamedInputMatchesWholeInput() throws IOException {
+        FeedGenerator feed = new FeedGenerator(5, 20_000, 50);
+        feed.setMalformedRatio(0.05);
+        StringWriter writer = new StringWriter();
+        feed.writeTo(writer);
+
+        reportGenerator = new ReportGenerator(writer.toString(), outputDestination);
+        reportGenerator.printDailySummaries();
+        reportGenerator.printRanking(ITransaction.CashflowDirection.Outgoing);
+
+        MockOutput streamedOutput = new MockOutput();
+        ReportGenerator streamed = new ReportGenerator(streamedOutput);
+        streamed.ingest(new BufferedReader(feed.openReader(), 1000));
+        streamed.printDailySummaries();
+        streamed.printRanking(ITransaction.CashflowDirection.Outgoing);
+
+        Assert.assertEquals("The streamed report does not match the expected one",
+                outputDestination.outputted, streamedOutput.outputted);
+        Assert.assertEquals("The whole input should be accounted for",
+                writer.toString().length(), streamed.getInputOffset());
+    }
+
+    /**
+     * Tests that the ingest metrics count the lines by outcome
+     */
+    @Test
+    public void ingestMetricsCountLinesByOutcome() {
+        long lines = EngineMetrics.LINES.get();
+        long accepted = EngineMetrics.ACCEPTED.get();
+        long malformed = EngineMetrics.REJECTED_MALFORMED.get();
+        long amend = EngineMetrics.REJECTED_AMEND.get();
+        long batches = EngineMetrics.BATCH_LATENCY.snapshot().getCount();
+
+        EngineMetrics.REGISTRY.setEnabled(true);
+        try {
+            reportGenerator = new ReportGenerator("foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25\n" +
+                    "foo,B,zero,SGP,01 Jan 2016,02 Jan 2016,200,100.25\n" +
+                    "garbage\n" +
+                    "C,12\n" +
+                    "N,1,bar,S,0.22,AED,05 Jan 2016,07 Jan 2016,450,150.5\n", outputDestination);
+        }
+        finally {
+            EngineMetrics.REGISTRY.setEnabled(false);
+        }
+
+        Assert.assertEquals("Five lines were expected", 5, EngineMetrics.LINES.get() - lines);
+        Assert.assertEquals("Two accepted lines were expected", 2, EngineMetrics.ACCEPTED.get() - accepted);
+        Assert.assertEquals("Two malformed lines were expected", 2, EngineMetrics.REJECTED_MALFORMED.get() - malformed);
+        Assert.assertEquals("One rejected cancel was expected", 1, EngineMetrics.REJECTED_AMEND.get() - amend);
+        Assert.assertEquals("One batch was expected", 1, EngineMetrics.BATCH_LATENCY.snapshot().getCount() - batches);
+    }
+
+    /**
+     * Tests that the ingest batches, the settlement cache misses and the reports are recorded by the Flight Recorder
+     */
+    @Test
+    public void flightRecorderEventsAreEmitted() throws IOException {
+        Path recordingFile = folder.getRoot().toPath().resolve("events.jfr");
+        // the entity name takes more bytes than characters in UTF-8
+        String input = "f\u00f6o,B,0.50,SGP,01 Jan 2190,02 Jan 2190,200,100.25\ngarbage\n";
+
+        try (Recording recording = new Recording()) {
+            recording.enable("jpmc.IngestBatch");
+            recording.enable("jpmc.SettlementCacheMiss");
+            recording.enable("jpmc.ReportQuery");
+            recording.start();
+
+            // a date far from the other tests, so that it is not cached yet
+            reportGenerator = new ReportGenerator(input, outputDestination);
+            reportGenerator.printDailySummaries();
+
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+        RecordedEvent batch = findEvent(events, "jpmc.IngestBatch");
+        Assert.assertEquals("Two lines were expected", 2, batch.getInt("lines"));
+        Assert.assertEquals("One accepted line was expected", 1, batch.getInt("accepted"));
+        Assert.assertEquals("One rejected line was expected", 1, batch.getInt("rejected"));
+        Assert.assertEquals("The characters of the input were expected", input.length(), batch.getLong("characters"));
+
+        Assert.assertEquals("The cache miss does not match the desired date",
+                "2190-01-02", findEvent(events, "jpmc.SettlementCacheMiss").getString("desiredDate"));
+
+        RecordedEvent report = findEvent(events, "jpmc.ReportQuery");
+        Assert.assertEquals("The report type does not match", "daily", report.getString("type"));
+        Assert.assertEquals("One row was expected", 1, report.getInt("rows"));
+        // 02 Jan 2190 is a Saturday
+        Assert.assertEquals("The range does not match", "2190-01-04", report.getString("rangeStart"));
+    }
+
+    /**
+     * Tests that the ranking keeps only the top entries, ordered by cashflow and then by name
+     * Tests that a date range only counts the transactions settled within it
+     */
+    @Test
+    public void getRankingReturnsTheTopEntitiesOfTheRange() {
+        reportGenerator = new ReportGenerator(
+                "foo,S,1,USD,04 Jan 2016,04 Jan 2016,10,1\n" +
+                "bar,S,1,USD,04 Jan 2016,04 Jan 2016,30,1\n" +
+                "baz,S,1,USD,04 Jan 2016,04 Jan 2016,10,1\n" +
+                "foo,S,1,USD,05 Jan 2016,05 Jan 2016,50,1\n" +
+                "qux,B,1,USD,05 Jan 2016,05 Jan 2016,99,1\n", outputDestination);
+
+        List<RankingEntry> ranking = reportGenerator.getRanking(ITransaction.CashflowDirection.Incoming, null, null, 2);
+        Assert.assertEquals("Two entries were expected", 2, ranking.size());
+        Assert.assertEquals("The first entry does not match", "foo", ranking.get(0).getEntityName());
+        Assert.assertEquals("The first amount does not match", 60, ranking.get(0).getAmount(), 1e-6);
+        Assert.assertEquals("The second entry does not match", "bar", ranking.get(1).getEntityName());
+
+        ranking = reportGenerator.getRanking(ITransaction.CashflowDirection.Incoming,
+                LocalDate.of(2016, 1, 4), LocalDate.of(2016, 1, 4), 10);
+        Assert.assertEquals("Only the entities of the range were expected", 3, ranking.size());
+        Assert.assertEquals("The ties should be ordered by name", "baz", ranking.get(1).getEntityName());
+        Assert.assertEquals("The ties should be ordered by name", "foo", ranking.get(2).getEntityName());
+        Assert.assertEquals("The amount of the range does not match", 10, ranking.get(2).getAmount(), 1e-6);
+
+        Assert.assertTrue("No entries were expected", reportGenerator.getRanking(
+                ITransaction.CashflowDirection.Outgoing, null, null, 0).isEmpty());
+    }
+
+    /**
+     * Tests that the daily summaries of a range are copies of the days within it
+     */
+    @Test
+    public void getDailySummariesReturnsTheRange() {
+        reportGenerator = new ReportGenerator(
+                "foo,S,1,USD,04 Jan 2016,04 Jan 2016,10,1\n" +
+                "foo,B,1,USD,05 Jan 2016,05 Jan 2016,20,1\n" +
+                "foo,B,1,USD,06 Jan 2016,06 Jan 2016,30,1\n", outputDestination);
+
+        NavigableMap<LocalDate, DailySummary> days =
+                reportGenerator.getDailySummaries(LocalDate.of(2016, 1, 5), null);
+        Assert.assertEquals("Two days were expected", 2, days.size());
+        Assert.assertEquals("The first day does not match", LocalDate.of(2016, 1, 5), days.firstKey());
+        Assert.assertEquals("The outgoing cashflow does not match", 20, days.firstEntry().getValue().outgoing, 1e-6);
+
+        days.firstEntry().getValue().outgoing = 0;
+        Assert.assertEquals("The report should not be altered through the copies", 20, reportGenerator
+                .getDailySummaries(null, null).get(LocalDate.of(2016, 1, 5)).outgoing, 1e-6);
+    }
+
+    /**
+     * Tests that the instructions received by the binary ingest server give the same report as the matching lines
+     */
+    @Test
+    public void binaryIngestMatchesTextIngest() throws IOException {
+        MockOutput textOutput = new MockOutput();
+        ReportGenerator textReport = new ReportGenerator(
+                "foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25\n" +
+                "N,1,bar,S,0.22,AED,05 Jan 2016,07 Jan 2016,450,150.5\n" +
+                "N,2,baz,S,0.7,AED,05 Oct 2016,07 Oct 2016,100,120.5\n" +
+                "A,1,bar,S,0.22,AED,05 Jan 2016,08 Jan 2016,45,150.5\n" +
+                "C,2\n" +
+                "C,3\n", textOutput);
+
+        reportGenerator = new ReportGenerator(outputDestination);
+        try (IngestServer server = new IngestServer(reportGenerator, 0);
+             IngestClient client = new IngestClient(server.getAddress())) {
+            client.sendInstruction("foo", CashflowDirection.Outgoing, 0.50, "SGP", LocalDate.of(2016, 1, 2), 200, 100.25);
+            client.sendNew(1, "bar", CashflowDirection.Incoming, 0.22, "AED", LocalDate.of(2016, 1, 7), 450, 150.5);
+            client.sendNew(2, "baz", CashflowDirection.Incoming, 0.7, "AED", LocalDate.of(2016, 10, 7), 100, 120.5);
+            client.sendAmend(1, "bar", CashflowDirection.Incoming, 0.22, "AED", LocalDate.of(2016, 1, 8), 45, 150.5);
+            client.sendCancel(2);
+            client.sendCancel(3);
+
+            Assert.assertEquals("Six records should have been applied", 6, client.sync());
+        }
+
+        for (ReportGenerator report : new ReportGenerator[] { textReport, reportGenerator }) {
+            report.printDailySummaries();
+            report.printRanking(CashflowDirection.Incoming);
+            report.printRanking(CashflowDirection.Outgoing);
+        }
+        Assert.assertEquals("The reports do not match", textOutput.outputted, outputDestination.outputted);
+        Assert.assertEquals("The rejected cancel should be counted",
+                textReport.getRejectedAmendCount(), reportGenerator.getRejectedAmendCount());
+    }
+
+    /**
+     * Tests that ingesting files concurrently gives the same report as ingesting them one after the other, including
+     * the records amending or cancelling the instructions of earlier files
+     */
+    @Test
+    public void ingestFilesMatchesSequentialIngest() throws IOException {
+        List<Path> files = writeFeedFiles();
+
+        reportGenerator = new ReportGenerator(outputDestination);
+        reportGenerator.ingestFiles(files, 4);
+
+        ReportGenerator sequential = new ReportGenerator(new MockOutput());
+        for (Path file : files) {
+            try (BufferedReader input = Files.newBufferedReader(file)) {
+                sequential.ingest(input);
+            }
+        }
+
+        assertSameReport(sequential, reportGenerator);
+    }
+
+    /**
+     * Tests that ingesting files concurrently into a report which does not keep the entities gives the same report
+     * as the sequential ingest, the compact instruction index still amending and cancelling the instructions
+     */
+    @Test
+    public void ingestFilesWithoutEntitiesMatchesSequentialIngest() throws IOException {
+        List<Path> files = writeFeedFiles();
+        ReportGenerator sequential = new ReportGenerator(new MockOutput());
+        for (Path file : files) {
+            try (BufferedReader input = Files.newBufferedReader(file)) {
+                sequential.ingest(input);
+            }
+        }
+
+        reportGenerator = new ReportGenerator(outputDestination);
+        // enough counters for every entity, so the approximate totals are exact
+        reportGenerator.setApproximateRanking(1_000);
+        reportGenerator.ingestFiles(files, 4);
+        assertSameReport(sequential, reportGenerator);
+
+        ReportGenerator spilling = new ReportGenerator(new MockOutput());
+        spilling.setSpillingRanking(folder.getRoot().toPath().resolve("runs"), 10);
+        spilling.ingestFiles(files, 4);
+        assertSameReport(sequential, spilling);
+    }
+
+    /**
+     * Tests that a file with an invalid UTF-8 byte is ingested the same way by the concurrent ingest and by the
+     * sequential one used when a retention is set, the byte being replaced
+     */
+    @Test
+    public void ingestFilesReplacesInvalidBytesInEveryPath() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("invalid.csv");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.writeBytes("foo,B,0.50,SGP,04 Jan 2016,04 Jan 2016,200,100.25\nba".getBytes(StandardCharsets.UTF_8));
+        bytes.write(0xFF);
+        bytes.writeBytes("r,S,0.22,AED,05 Jan 2016,07 Jan 2016,450,150.5\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(file, bytes.toByteArray());
+
+        reportGenerator = new ReportGenerator(outputDestination);
+        reportGenerator.ingestFiles(Collections.singletonList(file), 2);
+        ReportGenerator sequential = new ReportGenerator(new MockOutput());
+        sequential.setRetention(10_000, false);
+        sequential.ingestFiles(Collections.singletonList(file), 2);
+
+        assertSameReport(sequential, reportGenerator);
+        Assert.assertEquals("The entity with the replaced byte does not match", "ba\uFFFDr",
+                reportGenerator.getRanking(CashflowDirection.Incoming, null, null, 1).get(0).getEntityName());
+    }
+
+    /**
+     * Tests that the report built from concurrently ingested files does not depend on the number of workers
+     */
+    @Test
+    public void ingestFilesIsDeterministic() throws IOException {
+        List<Path> files = writeFeedFiles();
+
+        reportGenerator = new ReportGenerator(outputDestination);
+        reportGenerator.ingestFiles(files, 1);
+        reportGenerator.printDailySummaries();
+        reportGenerator.printRanking(CashflowDirection.Incoming);
+
+        MockOutput parallelOutput = new MockOutput();
+        ReportGenerator parallel = new ReportGenerator(parallelOutput);
+        parallel.ingestFiles(files, 8);
+        parallel.printDailySummaries();
+        parallel.printRanking(CashflowDirection.Incoming);
+
+        Assert.assertEquals("The reports do not match", outputDestination.outputted, parallelOutput.outputted);
+        Assert.assertEquals("The rankings do not match",
+                reportGenerator.getRanking(CashflowDirection.Incoming, null, null, 10).toString(),
+                parallel.getRanking(CashflowDirection.Incoming, null, null, 10).toString());
+    }
+
+    /**
+     * Tests that gzip files are ingested like their decompressed content, both when their members are split between
+     * the workers and when they are read one after the other
+     */
+    @Test
+    public void ingestFilesDecompressesGzipMembers() throws IOException {
+        FeedGenerator feed = new FeedGenerator(7, 40_000, 40);
+        feed.setMalformedRatio(0.02);
+        StringWriter text = new StringWriter();
+        feed.writeTo(text);
+        text.write("N,1,entity1,S,1,USD,04 Jan 2016,04 Jan 2016,100,1\n");
+        feed.writeTo(text);
+        text.write("A,1,entity1,S,1,USD,04 Jan 2016,05 Jan 2016,300,1\n");
+        byte[] content = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        // members cut in the middle of the lines, as written by a block compressor
+        Path file = folder.getRoot().toPath().resolve("archive.csv.gz");
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        for (int from = 0; from < content.length; from += 20_011) {
+            try (GZIPOutputStream member = new GZIPOutputStream(members)) {
+                member.write(content, from, Math.min(20_011, content.length - from));
+            }
+        }
+        Files.write(file, members.toByteArray());
+
+        ReportGenerator expected = new ReportGenerator(new MockOutput());
+        expected.ingest(text.toString());
+
+        reportGenerator = new ReportGenerator(outputDestination);
+        reportGenerator.ingestFiles(Collections.singletonList(file), 4);
+        assertSameReport(expected, reportGenerator);
+
+        ReportGenerator sequential = new ReportGenerator(new MockOutput());
+        sequential.setDuplicateFilter(new DuplicateFilter(100_000, 0.01));
+        sequential.ingestFiles(Collections.singletonList(file), 4);
+        Assert.assertEquals("The whole decompressed input should be accounted for",
+                expected.getInputOffset(), sequential.getInputOffset());
+    }
+
+    /**
+     * Tests that the archive of a report serves the same reports over a date range as the report itself
+     */
+    @Test
+    public void writeArchiveServesTheSameRangeReports() throws IOException {
+        FeedGenerator feed = new FeedGenerator(11, 20_000, 40);
+        StringWriter text = new StringWriter();
+        feed.writeTo(text);
+        reportGenerator = new ReportGenerator(text.toString(), outputDestination);
+
+        Path file = folder.getRoot().toPath().resolve("report.archive");
+        reportGenerator.writeArchive(file);
+        ColumnarArchive archive = ColumnarArchive.open(file);
+
+        LocalDate from = LocalDate.of(2016, 3, 1);
+        LocalDate to = LocalDate.of(2016, 3, 31);
+        NavigableMap<LocalDate, DailySummary> expectedDays = reportGenerator.getDailySummaries(from, to);
+        NavigableMap<LocalDate, DailySummary> days = archive.getDailySummaries(from, to);
+        Assert.assertEquals("The days do not match", expectedDays.keySet(), days.keySet());
+        for (LocalDate day : days.keySet()) {
+            Assert.assertEquals("The outgoing cashflow does not match",
+                    expectedDays.get(day).outgoing, days.get(day).outgoing, 1e-2);
+            Assert.assertEquals("The transaction count does not match",
+                    expectedDays.get(day).transactionCount, days.get(day).transactionCount);
+        }
+
+        List<RankingEntry> expectedRanking = reportGenerator.getRanking(CashflowDirection.Incoming, from, to, 10);
+        List<RankingEntry> ranking = archive.getRanking(CashflowDirection.Incoming, from, to, 10);
+        Assert.assertEquals("The ranking size does not match", expectedRanking.size(), ranking.size());
+        for (int i = 0; i < expectedRanking.size(); i++) {
+            Assert.assertEquals("The ranking does not match",
+                    expectedRanking.get(i).getEntityName(), ranking.get(i).getEntityName());
+            Assert.assertEquals("The ranked amount does not match",
+                    expectedRanking.get(i).getAmount(), ranking.get(i).getAmount(), 1e-2);
+        }
+    }
+
+    /**
+     * Tests that the daily summaries and the ranking are special cases of aggregations
+     */
+    @Test
+    public void aggregateGeneralizesTheReports() throws IOException {
+        FeedGenerator feed = new FeedGenerator(13, 5_000, 40);
+        StringWriter text = new StringWriter();
+        feed.writeTo(text);
+        reportGenerator = new ReportGenerator(text.toString(), outputDestination);
+        LocalDate from = LocalDate.of(2016, 2, 1);
+        LocalDate to = LocalDate.of(2016, 2, 29);
+
+        AggregateQuery query = new AggregateQuery();
+        query.setDateRange(from, to);
+        query.setGroupBy(AggregateQuery.GroupKey.Date, AggregateQuery.GroupKey.Direction);
+        NavigableMap<LocalDate, DailySummary> days = new TreeMap<>();
+        for (AggregateRow row : reportGenerator.aggregate(query)) {
+            DailySummary summary = days.computeIfAbsent((LocalDate) row.getKey(0), day -> new DailySummary());
+            summary.merge(row.getKey(1) == CashflowDirection.Incoming ?
+                    new DailySummary(row.getSum(), 0, (int) row.getCount()) :
+                    new DailySummary(0, row.getSum(), (int) row.getCount()));
+        }
+        NavigableMap<LocalDate, DailySummary> expectedDays = reportGenerator.getDailySummaries(from, to);
+        Assert.assertEquals("The days do not match", expectedDays.keySet(), days.keySet());
+        for (LocalDate day : days.keySet()) {
+            Assert.assertEquals("The incoming cashflow does not match",
+                    expectedDays.get(day).incoming, days.get(day).incoming, 1e-6);
+            Assert.assertEquals("The outgoing cashflow does not match",
+                    expectedDays.get(day).outgoing, days.get(day).outgoing, 1e-6);
+            Assert.assertEquals("The transaction count does not match",
+                    expectedDays.get(day).transactionCount, days.get(day).transactionCount);
+        }
+
+        query = new AggregateQuery();
+        query.setDateRange(from, to);
+        query.setDirection(CashflowDirection.Outgoing);
+        query.setGroupBy(AggregateQuery.GroupKey.Entity);
+        query.setOrderBy(AggregateQuery.Aggregate.Sum);
+        query.setLimit(10);
+        List<AggregateRow> rows = reportGenerator.aggregate(query);
+        List<RankingEntry> expectedRanking = reportGenerator.getRanking(CashflowDirection.Outgoing, from, to, 10);
+        Assert.assertEquals("The ranking size does not match", expectedRanking.size(), rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Assert.assertEquals("The ranking does not match",
+                    expectedRanking.get(i).getEntityName(), rows.get(i).getKey(0));
+            Assert.assertEquals("The ranked amount does not match",
+                    expectedRanking.get(i).getAmount(), rows.get(i).getSum(), 1e-6);
+        }
+
+        // an entity filter only visits the selected entities
+        query.setEntities(Collections.singleton(expectedRanking.get(1).getEntityName()));
+        rows = reportGenerator.aggregate(query);
+        Assert.assertEquals("A single entity was expected", 1, rows.size());
+        Assert.assertEquals(expectedRanking.get(1).getAmount(), rows.get(0).getSum(), 1e-6);
+    }
+
+    /**
+     * Tests that the week, month and year summaries match the days they hold, and that the summaries of an entity
+     * keep being maintained once requested
+     */
+    @Test
+    public void coarseSummariesMatchTheDays() throws IOException {
+        FeedGenerator feed = new FeedGenerator(17, 5_000, 40);
+        StringWriter text = new StringWriter();
+        feed.writeTo(text);
+        reportGenerator = new ReportGenerator(text.toString(), outputDestination);
+        reportGenerator.ingest("N,1,foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,100.25\n");
+
+        for (Resolution resolution : Resolution.values()) {
+            NavigableMap<LocalDate, DailySummary> periods = reportGenerator.getSummaries(resolution, null, null);
+            Map<LocalDate, DailySummary> expected = new HashMap<>();
+            for (Map.Entry<LocalDate, DailySummary> day : reportGenerator.getDailySummaries(null, null).entrySet()) {
+                LocalDate period = periods.floorKey(day.getKey());
+                Assert.assertNotNull("The day is not part of a " + resolution, period);
+                expected.computeIfAbsent(period, first -> new DailySummary()).merge(day.getValue());
+            }
+
+            Assert.assertEquals("The " + resolution + " keys do not match", expected.keySet(), periods.keySet());
+            for (LocalDate period : periods.keySet()) {
+                DailySummary summary = reportGenerator.getSummary(resolution, period);
+                Assert.assertEquals("The incoming cashflow does not match",
+                        expected.get(period).incoming, summary.incoming, 1e-6);
+                Assert.assertEquals("The outgoing cashflow does not match",
+                        expected.get(period).outgoing, summary.outgoing, 1e-6);
+                Assert.assertEquals("The transaction count does not match",
+                        expected.get(period).transactionCount, summary.transactionCount);
+            }
+        }
+        Assert.assertEquals("The week starting on Monday 28th of December should be returned",
+                LocalDate.of(2015, 12, 28), reportGenerator.getSummaries(Resolution.Week,
+                        LocalDate.of(2016, 1, 2), LocalDate.of(2016, 1, 2)).firstKey());
+
+        // the 2nd of January 2016 is a Saturday, so the instruction settles on Monday the 4th
+        LocalDate monday = LocalDate.of(2016, 1, 4);
+        Assert.assertEquals("The entity summary does not match", 1,
+                reportGenerator.getEntitySummary("foo", Resolution.Week, monday).transactionCount);
+        reportGenerator.ingest("foo,S,0.1,SGP,01 Jan 2016,04 Jan 2016,10,10\n" +
+                "A,1,foo,B,0.50,SGP,01 Jan 2016,02 Jan 2016,200,1\n");
+        DailySummary week = reportGenerator.getEntitySummary("foo", Resolution.Week, monday);
+        Assert.assertEquals("The amended instruction should be accounted for", 100, week.outgoing, 1e-9);
+        Assert.assertEquals("The new transaction should be accounted for", 10, week.incoming, 1e-9);
+        Assert.assertEquals("The transaction count does not match", 2, week.transactionCount);
+        Assert.assertEquals("The month does not match", 2,
+                reportGenerator.getEntitySummary("foo", Resolution.Month, monday).transactionCount);
+        Assert.assertTrue("An unknown entity has no cashflow",
+                reportGenerator.getEntitySummary("unknown", Resolution.Year, LocalDate.of(2016, 1, 1)).isEmpty());
+    }
+
+    /**
+     * Tests that the expired days are still part of their month and year
+     */
+    @Test
+    public void coarseSummariesOutliveTheRetention() {
+        reportGenerator = new ReportGenerator(outputDestination);
+        reportGenerator.setRetention(2, false);
+        reportGenerator.ingest("foo,B,0.50,SGP,01 Jan 2016,04 Jan 2016,200,1\n" +
+                "bar,S,0.1,SGP,07 Mar 2016,07 Mar 2016,10,10\n" +
+                "bar,S,0.1,SGP,07 Mar 2016,08 Mar 2016,10,100\n");
+
+        Assert.assertTrue("The day should have expired",
+                reportGenerator.getSummary(Resolution.Day, LocalDate.of(2016, 1, 4)).isEmpty());
+        Assert.assertEquals("The week should be kept",
+                100, reportGenerator.getSummary(Resolution.Week, LocalDate.of(2016, 1, 4)).outgoing, 1e-9);
+        Assert.assertEquals("The month should be kept",
+                100, reportGenerator.getSummary(Resolution.Month, LocalDate.of(2016, 1, 4)).outgoing, 1e-9);
+        DailySummary year = reportGenerator.getSummary(Resolution.Year, LocalDate.of(2016, 1, 4));
+        Assert.assertEquals(100, year.outgoing, 1e-9);
+        Assert.assertEquals(10 + 100, year.incoming, 1e-9);
+    }
+
+    /**
+     * Tests that an approximate ranking bounds the exact cashflow of the entities it lists, lists the entities with
+     * a large share of the cashflow and keeps the summaries exact
+     */
+    @Test
+    public void approximateRankingBoundsTheExactRanking() throws IOException {
+        FeedGenerator feed = new FeedGenerator(19, 20_000, 2_000);
+        feed.setZipfExponent(1.2);
+        StringWriter text = new StringWriter();
+        feed.writeTo(text);
+        reportGenerator = new ReportGenerator(text.toString(), outputDestination);
+        ReportGenerator approximate = new ReportGenerator(outputDestination);
+        approximate.setApproximateRanking(100);
+        approximate.ingest(text.toString());
+
+        for (CashflowDirection direction : CashflowDirection.values()) {
+            Map<String, Double> exact = new HashMap<>();
+            for (RankingEntry entry : reportGenerator.getRanking(direction, null, null, Integer.MAX_VALUE)) {
+                exact.put(entry.getEntityName(), entry.getAmount());
+            }
+            List<RankingEntry> ranking = approximate.getRanking(direction, null, null, 10);
+            Assert.assertEquals("Wrong number of entries", 10, ranking.size());
+            for (RankingEntry entry : ranking) {
+                double actual = exact.get(entry.getEntityName());
+                Assert.assertTrue("Wrong estimate " + entry + " of " + actual,
+                        actual <= entry.getAmount() + 1e-6 && entry.getAmount() - entry.getError() <= actual + 1e-6);
+            }
+
+            // the 3 largest entities hold far more than 1% of the cashflow
+            List<RankingEntry> exactRanking = reportGenerator.getRanking(direction, null, null, 3);
+            for (int i = 0; i < exactRanking.size(); i++) {
+                Assert.assertEquals("Wrong entity at " + i,
+                        exactRanking.get(i).getEntityName(), ranking.get(i).getEntityName());
+            }
+            Assert.assertTrue("The error bound should be positive", approximate.getRankingErrorBound(direction) > 0);
+        }
+        Assert.assertEquals("The daily summaries should be exact",
+                reportGenerator.getDailySummaries(null, null).keySet(),
+                approximate.getDailySummaries(null, null).keySet());
+
+        try {
+            approximate.getRanking(CashflowDirection.Incoming, LocalDate.of(2016, 1, 1), null, 10);
+            Assert.fail("A ranged ranking needs the entities");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            approximate.aggregate(new AggregateQuery());
+            Assert.fail("An aggregation needs the entities");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests that a ranking spilling the entity totals to disk ranks and prints every entity like the exact one
+     */
+    @Test
+    public void spillingRankingMatchesTheExactRanking() throws IOException {
+        FeedGenerator feed = new FeedGenerator(23, 20_000, 2_000);
+        StringWriter text = new StringWriter();
+        feed.writeTo(text);
+        reportGenerator = new ReportGenerator(text.toString(), outputDestination);
+        MockOutput spilledOutput = new MockOutput();
+        ReportGenerator spilling = new ReportGenerator(spilledOutput);
+        spilling.setSpillingRanking(folder.getRoot().toPath().resolve("runs"), 100);
+        spilling.ingest(text.toString());
+
+        for (CashflowDirection direction : CashflowDirection.values()) {
+            List<RankingEntry> exact = reportGenerator.getRanking(direction, null, null, 10);
+            List<RankingEntry> ranking = spilling.getRanking(direction, null, null, 10);
+            Assert.assertEquals("Wrong number of entries", exact.size(), ranking.size());
+            for (int i = 0; i < exact.size(); i++) {
+                Assert.assertEquals("Wrong entity at " + i,
+                        exact.get(i).getEntityName(), ranking.get(i).getEntityName());
+                Assert.assertEquals("Wrong amount at " + i,
+                        exact.get(i).getAmount(), ranking.get(i).getAmount(), 1e-6);
+            }
+
+            int entityCount = reportGenerator.getRanking(direction, null, null, Integer.MAX_VALUE).size();
+            spilledOutput.outputted.clear();
+            spilling.printRanking(direction);
+            Assert.assertEquals("Wrong number of printed lines", entityCount + 1, spilledOutput.outputted.size());
+            Assert.assertTrue("Wrong first printed line", spilledOutput.outputted.get(1).startsWith(
+                    String.format("%-" + printColumnSize + "s", exact.get(0).getEntityName())));
+        }
+
+        try {
+            spilling.setApproximateRanking(100);
+            Assert.fail("The ranking mode is already chosen");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            spilling.getEntitySummary(reportGenerator.getRanking(CashflowDirection.Incoming, null, null, 1).get(0)
+                    .getEntityName(), Resolution.Month,
+                    LocalDate.of(2016, 1, 1));
+            Assert.fail("An entity summary needs the entities");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests that the distributions of the days, merged from the partial aggregations of concurrently ingested files,
+     * estimate the quantiles of the amounts and the distinct entities of the transactions
+     */
+    @Test
+    public void distributionsSketchTheTransactions() throws IOException {
+        reportGenerator = new ReportGenerator(outputDestination);
+        reportGenerator.ingestFiles(writeFeedFiles(), 4);
+        Path file = folder.getRoot().toPath().resolve("report.archive");
+        reportGenerator.writeArchive(file);
+        LocalDate from = LocalDate.of(2016, 2, 1);
+        LocalDate to = LocalDate.of(2016, 4, 30);
+        List<ITransaction> transactions = ColumnarArchive.open(file).getTransactions(from, to);
+
+        double[] amounts = new double[transactions.size()];
+        Map<String, Double> entityMaximums = new HashMap<>();
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = transactions.get(i).getUsdValue();
+        }
+        for (ITransaction transaction : ColumnarArchive.open(file).getTransactions(null, null)) {
+            entityMaximums.merge(transaction.getEntityName(), transaction.getUsdValue(), Math::max);
+        }
+        Arrays.sort(amounts);
+
+        double[] quantiles = reportGenerator.getAmountQuantiles(from, to, 0.5, 0.99);
+        assertRank(amounts, quantiles[0], 0.5);
+        assertRank(amounts, quantiles[1], 0.99);
+        long entityCount = transactions.stream().map(ITransaction::getEntityName).distinct().count();
+        Assert.assertEquals("Wrong distinct entity count",
+                entityCount, reportGenerator.getDistinctEntityCount(from, to), 0.02 * entityCount);
+
+        for (Map.Entry<String, Double> entity : entityMaximums.entrySet()) {
+            Assert.assertEquals("Wrong maximum of " + entity.getKey(), entity.getValue(),
+                    reportGenerator.getEntityAmountQuantiles(entity.getKey(), 1)[0], 1e-3);
+        }
+        Assert.assertTrue("An empty range has no quantile",
+                Double.isNaN(reportGenerator.getAmountQuantiles(LocalDate.of(2000, 1, 1), LocalDate.of(2000, 1, 2),
+                        0.5)[0]));
+    }
+
+    private static void assertRank(double[] sorted, double value, double quantile) {
+        int rank = Arrays.binarySearch(sorted, value);
+        double normalizedRank = (rank < 0 ? -rank - 1 : rank) / (double) sorted.length;
+        Assert.assertEquals("Wrong rank of the quantile " + quantile, quantile, normalizedRank, 0.02);
+    }
+
+    private static void assertSameReport(ReportGenerator expected, ReportGenerator actual) {
+        NavigableMap<LocalDate, DailySummary> expectedDays = expected.getDailySummaries(null, null);
+        NavigableMap<LocalDate, DailySummary> days = actual.getDailySummaries(null, null);
+        Assert.assertEquals("The days do not match", expectedDays.keySet(), days.keySet());
+        for (LocalDate day : days.keySet()) {
+            Assert.assertEquals("The incoming cashflow does not match",
+                    expectedDays.get(day).incoming, days.get(day).incoming, 1e-6);
+            Assert.assertEquals("The transaction count does not match",
+                    expectedDays.get(day).transactionCount, days.get(day).transactionCount);
+        }
+
+        List<RankingEntry> expectedRanking = expected.getRanking(CashflowDirection.Outgoing, null, null, 100);
+        List<RankingEntry> ranking = actual.getRanking(CashflowDirection.Outgoing, null, null, 100);
+        Assert.assertEquals("The ranking size does not match", expectedRanking.size(), ranking.size());
+        for (int i = 0; i < ranking.size(); i++) {
+            Assert.assertEquals("The ranking does not match",
+                    expectedRanking.get(i).getEntityName(), ranking.get(i).getEntityName());
+            Assert.assertEquals("The ranked amount does not match",
+                    expectedRanking.get(i).getAmount(), ranking.get(i).getAmount(), 1e-6);
+        }
+
+        Assert.assertEquals("The rejected records do not match",
+                expected.getRejectedAmendCount(), actual.getRejectedAmendCount());
+        Assert.assertEquals("The whole input should be accounted for",
+                expected.getInputOffset(), actual.getInputOffset());
+    }
+
+    /**
+     * Writes a few generated feeds, followed by a file amending and cancelling instructions of the first one
+     * @return the files, in ingest order
+     */
+    private List<Path> writeFeedFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            FeedGenerator feed = new FeedGenerator(i, 5_000, 40);
+            feed.setMalformedRatio(0.02);
+            files.add(folder.getRoot().toPath().resolve("desk" + i + ".csv"));
+            feed.writeTo(files.get(i));
+        }
+
+        Path first = folder.getRoot().toPath().resolve("desk-ids-0.csv");
+        Files.write(first, ("N,1,entity1,S,1,USD,04 Jan 2016,04 Jan 2016,100,1\n" +
+                "N,2,entity2,B,1,USD,04 Jan 2016,04 Jan 2016,200,1\n").getBytes(StandardCharsets.UTF_8));
+        Path second = folder.getRoot().toPath().resolve("desk-ids-1.csv");
+        Files.write(second, ("A,1,entity1,S,1,USD,04 Jan 2016,05 Jan 2016,300,1\n" +
+                "C,2\n" +
+                "C,3\n" +
+                "N,2,entity3,B,1,USD,04 Jan 2016,04 Jan 2016,1,1").getBytes(StandardCharsets.UTF_8));
+        files.add(2, first);
+        files.add(second);
+        return files;
+    }
+
+    private static RecordedEvent findEvent(List<RecordedEvent> events, String name) {
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                return event;
+            }
+        }
+        throw new AssertionError("No " + name + " event was recorded");
+    }
+
     class MockOutput implements IOutput {
         public void outputString(String str) {
             outputted.add(str);
@@ -0,0 +1,221 @@
+import Components.IOutput;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ */
+public class ReportServerTest {
+    private ReportGenerator reportGenerator;
+    private ReportServer server;
+
+    @BeforeClass
+    public static void enableNoDelay() {
+        ReportServer.enableNoDelay();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        reportGenerator = new ReportGenerator(
+                "foo,S,1,USD,04 Jan 2016,04 Jan 2016,10,1\n" +
+                "bar,S,1,USD,04 Jan 2016,04 Jan 2016,30,1\n" +
+                "foo,B,1,USD,05 Jan 2016,05 Jan 2016,20,1\n", NO_OUTPUT);
+        server = new ReportServer(reportGenerator, 0);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    /**
+     * Tests that the constructor throws for a null report
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsForNullReport() throws IOException {
+        new ReportServer(null, 0);
+    }
+
+    /**
+     * Tests that the daily summaries are served newest first, as JSON and as CSV
+     * Tests that the date range is applied
+     */
+    @Test
+    public void dailySummariesAreServed() throws IOException {
+        Assert.assertEquals("The JSON summaries do not match",
+                "[\n{\"date\":\"2016-01-05\",\"incoming\":0.0,\"outgoing\":20.0,\"transactions\":1},\n" +
+                "{\"date\":\"2016-01-04\",\"incoming\":40.0,\"outgoing\":0.0,\"transactions\":2}]\n",
+                get("/daily"));
+        Assert.assertEquals("The CSV summaries do not match",
+                "date,incoming,outgoing,transactions\n2016-01-04,40.0,0.0,2\n",
+                get("/daily?to=2016-01-04&format=csv"));
+    }
+
+    /**
+     * Tests that the ranking is served in the requested direction and limited to the top entries
+     */
+    @Test
+    public void rankingIsServed() throws IOException {
+        Assert.assertEquals("The JSON ranking does not match",
+                "[\n{\"entity\":\"bar\",\"amount\":30.0}]\n",
+                get("/ranking?direction=incoming&top=1"));
+        Assert.assertEquals("The CSV ranking does not match",
+                "entity,amount\nfoo,20.0\n",
+                get("/ranking?direction=Outgoing&from=2016-01-05&format=csv"));
+    }
+
+    /**
+     * Tests that the amounts which are not finite are written as null in JSON
+     */
+    @Test
+    public void nonFiniteAmountsAreWrittenAsNull() throws IOException {
+        post("/ingest", "baz,S,1,USD,06 Jan 2016,06 Jan 2016,10,1e308\n");
+
+        Assert.assertEquals("The infinite amount should be written as null",
+                "[\n{\"entity\":\"baz\",\"amount\":null}]\n",
+                get("/ranking?direction=incoming&top=1"));
+        Assert.assertEquals("The infinite summary should be written as null",
+                "[\n{\"date\":\"2016-01-06\",\"incoming\":null,\"outgoing\":0.0,\"transactions\":1}]\n",
+                get("/daily?from=2016-01-06"));
+    }
+
+    /**
+     * Tests that the ingested body is visible to the following queries
+     */
+    @Test
+    public void ingestIsApplied() throws IOException {
+        String input = "baz,S,1,USD,04 Jan 2016,04 Jan 2016,100,1\n";
+        long offset = reportGenerator.getInputOffset();
+
+        Assert.assertEquals("The input offset does not match",
+                "{\"inputOffset\":" + (offset + input.length()) + "}\n", post("/ingest", input));
+        Assert.assertEquals("The ingested entity should lead the ranking",
+                "entity,amount\nbaz,100.0\n", get("/ranking?direction=incoming&top=1&format=csv"));
+    }
+
+    /**
+     * Tests that invalid requests are rejected with the matching status
+     */
+    @Test
+    public void invalidRequestsAreRejected() throws IOException {
+        Assert.assertEquals("A missing direction should be rejected", 400, status("GET", "/ranking"));
+        Assert.assertEquals("A bad date should be rejected", 400, status("GET", "/daily?from=04 Jan 2016"));
+        Assert.assertEquals("A bad format should be rejected", 400, status("GET", "/daily?format=xml"));
+        Assert.assertEquals("A negative top should be rejected", 400,
+                status("GET", "/ranking?direction=incoming&top=-1"));
+        Assert.assertEquals("An unknown path should not be found", 404, status("GET", "/weekly"));
+        Assert.assertEquals("The ingest should only be posted", 405, status("GET", "/ingest"));
+    }
+
+    /**
+     * Tests that a query the report cannot answer, like a ranged ranking of an approximate ranking, gets a 500
+     */
+    @Test
+    public void unsupportedQueriesFail() throws IOException {
+        server.close();
+        reportGenerator = new ReportGenerator(NO_OUTPUT);
+        reportGenerator.setApproximateRanking(10);
+        reportGenerator.ingest("foo,S,1,USD,04 Jan 2016,04 Jan 2016,10,1\n");
+        server = new ReportServer(reportGenerator, 0);
+
+        Assert.assertEquals("The unranged ranking should be served", "entity,amount\nfoo,10.0\n",
+                get("/ranking?direction=incoming&format=csv"));
+        Assert.assertEquals("A ranged ranking should fail", 500,
+                status("GET", "/ranking?direction=incoming&from=2016-01-01"));
+    }
+
+    /**
+     * Tests that concurrent queries keep being answered while ingest runs, and that no cashflow is lost
+     */
+    @Test
+    public void queriesRunConcurrentlyWithIngest() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(16);
+        List<Future<?>> queries = new ArrayList<>();
+
+        Future<?> ingest = clients.submit(() -> {
+            for (int i = 0; i < 200; i++) {
+                reportGenerator.ingest("baz,S,1,USD,06 Jan 2016,06 Jan 2016,1,1\n");
+            }
+            return null;
+        });
+        for (int i = 0; i < 400; i++) {
+            queries.add(clients.submit(() -> {
+                Assert.assertTrue("The ranking should be served", get("/ranking?direction=incoming&top=3")
+                        .startsWith("["));
+                return null;
+            }));
+        }
+
+        ingest.get();
+        for (Future<?> query : queries) {
+            query.get();
+        }
+        clients.shutdown();
+        Assert.assertTrue("The clients should have finished", clients.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals("Every ingested line should be counted",
+                "date,incoming,outgoing,transactions\n2016-01-06,200.0,0.0,200\n",
+                get("/daily?from=2016-01-06&format=csv"));
+    }
+
+    private String get(String path) throws IOException {
+        HttpURLConnection connection = open("GET", path);
+        Assert.assertEquals("The request should succeed", 200, connection.getResponseCode());
+        return read(connection);
+    }
+
+    private String post(String path, String body) throws IOException {
+        HttpURLConnection connection = open("POST", path);
+        connection.setDoOutput(true);
+        try (OutputStream request = connection.getOutputStream()) {
+            request.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        Assert.assertEquals("The request should succeed", 200, connection.getResponseCode());
+        return read(connection);
+    }
+
+    private int status(String method, String path) throws IOException {
+        HttpURLConnection connection = open(method, path);
+        int status = connection.getResponseCode();
+        connection.disconnect();
+        return status;
+    }
+
+    private HttpURLConnection open(String method, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://127.0.0.1:" + server.getPort() + path.replace(" ", "%20")).openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private static String read(HttpURLConnection connection) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream response = connection.getInputStream()) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = response.read(buffer)) >= 0) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static final IOutput NO_OUTPUT = str -> { };
+}
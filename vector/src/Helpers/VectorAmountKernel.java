@@ -0,0 +1,86 @@
+package Helpers;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * @author Alexandru Dochioiu
+ * Date : 19/10/26
+ *
+ * Kernel aggregating the amounts by direction with the incubating Vector API (Java 16 to 18, compiled and run with
+ * --add-modules jdk.incubator.vector), loaded by {@link AmountKernel#getInstance()} when available
+ *
+ * The direction bytes of 8 rows are loaded at once and widened to two vectors of longs, whose comparison with 0 gives
+ * the mask of the outgoing rows. Each direction keeps its own sum, minimum and maximum vectors, updated by masked
+ * lanewise operations, and its count is the number of set lanes of its mask. The lanes are reduced at the end of the
+ * range, the rows left over being aggregated one at a time.
+ */
+public final class VectorAmountKernel extends AmountKernel {
+    /**
+     * Constructor, used reflectively by {@link AmountKernel}
+     */
+    public VectorAmountKernel() {
+    }
+
+    @Override
+    public String getName() {
+        return "vector";
+    }
+
+    @Override
+    public void aggregate(ByteBuffer columns, int amountColumn, int directionColumn, int from, int to,
+                          long[] counts, long[] sums, long[] mins, long[] maxs) {
+        // the vectors are kept in locals, so that they stay in registers
+        LongVector incomingSum = LongVector.zero(LONGS);
+        LongVector incomingMin = LongVector.broadcast(LONGS, Long.MAX_VALUE);
+        LongVector incomingMax = LongVector.broadcast(LONGS, Long.MIN_VALUE);
+        LongVector outgoingSum = incomingSum;
+        LongVector outgoingMin = incomingMin;
+        LongVector outgoingMax = incomingMax;
+        long incomingCount = 0;
+        long outgoingCount = 0;
+
+        int row = from;
+        for (int end = to - BYTES.length() + 1; row < end; row += BYTES.length()) {
+            ByteVector directions = ByteVector.fromByteBuffer(BYTES, columns, directionColumn + row,
+                    ByteOrder.BIG_ENDIAN);
+            for (int part = 0; part < PARTS; part++) {
+                LongVector outgoing = (LongVector) directions.convertShape(VectorOperators.B2L, LONGS, part);
+                LongVector amounts = LongVector.fromByteBuffer(LONGS, columns,
+                        amountColumn + 8 * (row + part * LONGS.length()), ByteOrder.BIG_ENDIAN);
+                VectorMask<Long> outgoingMask = outgoing.compare(VectorOperators.NE, 0);
+                VectorMask<Long> incomingMask = outgoingMask.not();
+
+                incomingSum = incomingSum.lanewise(VectorOperators.ADD, amounts, incomingMask);
+                incomingMin = incomingMin.lanewise(VectorOperators.MIN, amounts, incomingMask);
+                incomingMax = incomingMax.lanewise(VectorOperators.MAX, amounts, incomingMask);
+                incomingCount += incomingMask.trueCount();
+                outgoingSum = outgoingSum.lanewise(VectorOperators.ADD, amounts, outgoingMask);
+                outgoingMin = outgoingMin.lanewise(VectorOperators.MIN, amounts, outgoingMask);
+                outgoingMax = outgoingMax.lanewise(VectorOperators.MAX, amounts, outgoingMask);
+                outgoingCount += outgoingMask.trueCount();
+            }
+        }
+
+        counts[0] += incomingCount;
+        sums[0] += incomingSum.reduceLanes(VectorOperators.ADD);
+        mins[0] = Math.min(mins[0], incomingMin.reduceLanes(VectorOperators.MIN));
+        maxs[0] = Math.max(maxs[0], incomingMax.reduceLanes(VectorOperators.MAX));
+        counts[1] += outgoingCount;
+        sums[1] += outgoingSum.reduceLanes(VectorOperators.ADD);
+        mins[1] = Math.min(mins[1], outgoingMin.reduceLanes(VectorOperators.MIN));
+        maxs[1] = Math.max(maxs[1], outgoingMax.reduceLanes(VectorOperators.MAX));
+        aggregateRows(columns, amountColumn, directionColumn, row, to, counts, sums, mins, maxs);
+    }
+
+    // the direction bytes of 8 rows, widened to 2 vectors of 4 longs
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_64;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_256;
+    private static final int PARTS = BYTES.length() / LONGS.length();
+}